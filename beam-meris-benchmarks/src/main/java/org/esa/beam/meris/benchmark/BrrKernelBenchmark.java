@@ -0,0 +1,101 @@
+package org.esa.beam.meris.benchmark;
+
+import org.esa.beam.meris.brr.GaseousAbsorptionCorrection;
+import org.esa.beam.meris.brr.RayleighCorrection;
+import org.esa.beam.meris.dpm.PixelId;
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.meris.l2auxdata.L2AuxDataException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-pixel kernels of the BRR processing chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BrrKernelBenchmark {
+
+    private RayleighCorrection rayleighCorrection;
+    private RayleighCorrection.Workspace rayleighWorkspace;
+    private GaseousAbsorptionCorrection gasCorrection;
+    private PixelId pixelId;
+
+    private double deltaAzimuth;
+    private double mus;
+    private double muv;
+    private double airMass;
+    private double eta;
+    private double x2;
+    private double[] phaseRayl;
+    private double[] tauRayl;
+    private double[] refRayl;
+    private double[] tO3;
+    private float[][] rhoToa;
+    private float[][] rhoNg;
+
+    @Setup
+    public void setUp() throws L2AuxDataException {
+        final L2AuxData auxData = MerisTestPixel.loadAuxData();
+        rayleighCorrection = new RayleighCorrection(auxData);
+        rayleighWorkspace = new RayleighCorrection.Workspace();
+        gasCorrection = new GaseousAbsorptionCorrection(auxData);
+        pixelId = new PixelId(auxData);
+
+        deltaAzimuth = MerisTestPixel.getDeltaAzimuth();
+        mus = MerisTestPixel.getMus();
+        muv = MerisTestPixel.getMuv();
+        airMass = MerisTestPixel.getAirMass();
+
+        final double sins = Math.sin(Math.toRadians(MerisTestPixel.SUN_ZENITH));
+        final double sinv = Math.sin(Math.toRadians(MerisTestPixel.VIEW_ZENITH));
+        phaseRayl = new double[Constants.RAYSCATT_NUM_SER];
+        tauRayl = new double[Constants.L1_BAND_NUM];
+        refRayl = new double[Constants.L1_BAND_NUM];
+        rayleighCorrection.phase_rayleigh(mus, muv, sins, sinv, phaseRayl);
+        rayleighCorrection.tau_rayleigh(MerisTestPixel.PRESSURE, tauRayl);
+
+        rhoToa = new float[Constants.L1_BAND_NUM][1];
+        rhoNg = new float[Constants.L1_BAND_NUM][1];
+        for (int bandId = 0; bandId < Constants.L1_BAND_NUM; bandId++) {
+            rhoToa[bandId][0] = MerisTestPixel.RHO_TOA[bandId];
+        }
+        tO3 = new double[Constants.L1_BAND_NUM];
+        gasCorrection.trans_o3(airMass, MerisTestPixel.OZONE, tO3);
+        eta = rhoToa[Constants.bb760][0] / rhoToa[Constants.bb753][0];
+        x2 = rhoToa[Constants.bb900][0] / rhoToa[Constants.bb890][0];
+    }
+
+    @Benchmark
+    public double[] refRayleigh() {
+        rayleighCorrection.ref_rayleigh(deltaAzimuth, MerisTestPixel.SUN_ZENITH, MerisTestPixel.VIEW_ZENITH,
+                                        mus, muv, airMass, phaseRayl, tauRayl, refRayl, rayleighWorkspace);
+        return refRayl;
+    }
+
+    @Benchmark
+    public float[][] gasCorrection() {
+        gasCorrection.gas_correction(0, tO3, eta, x2, rhoToa, MerisTestPixel.DETECTOR, rhoNg, false);
+        return rhoNg;
+    }
+
+    @Benchmark
+    public PixelId.Pressure computePressure() {
+        return pixelId.computePressure(rhoToa[Constants.bb753][0], rhoToa[Constants.bb760][0], airMass,
+                                       MerisTestPixel.DETECTOR);
+    }
+}
@@ -0,0 +1,75 @@
+package org.esa.beam.meris.benchmark;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.meris.brr.operator.BrrOp;
+import org.esa.beam.meris.brr.operator.MerisL1BProduct;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One full target tile of {@link BrrOp}, computed by <code>computeTileStack</code> over a scene-sized
+ * {@link MerisL1BProduct}. A new operator instance is created for every invocation, so the tile is never
+ * taken from the JAI tile cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BrrOpBenchmark {
+
+    /**
+     * Width and height of the synthetic scene in pixels, the tile covers the whole scene.
+     */
+    @Param({"64", "256"})
+    private int sceneSize;
+
+    private Product l1bProduct;
+    private BrrOp brrOp;
+    private Product brrProduct;
+
+    @Setup
+    public void setUp() {
+        l1bProduct = MerisL1BProduct.create(sceneSize, sceneSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void createOperator() {
+        brrOp = new BrrOp();
+        brrOp.setSourceProduct("merisL1bProduct", l1bProduct);
+        // large enough for a single tile covering the whole scene
+        brrOp.setParameter("tileMemoryBudget", 1024);
+        brrProduct = brrOp.getTargetProduct();
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeOperator() {
+        brrProduct.dispose();
+        brrOp.dispose();
+    }
+
+    @TearDown
+    public void tearDown() {
+        l1bProduct.dispose();
+    }
+
+    @Benchmark
+    public Raster computeTileStack() {
+        return brrProduct.getBand("brr_1").getSourceImage().getTile(0, 0);
+    }
+}
@@ -0,0 +1,76 @@
+package org.esa.beam.meris.benchmark;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.meris.AlbedomapConstants;
+import org.esa.beam.meris.cloud.CloudAlgorithm;
+import org.esa.beam.util.ResourceInstaller;
+import org.esa.beam.util.SystemUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cloud probability neural nets, evaluated with the test pixel of <code>CloudAlgorithmTest</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CloudAlgorithmBenchmark {
+
+    private static final double[] CLOUD_IN = {
+            0.0778002, 0.0695650, 0.0591455, 0.0545394,
+            0.0460968, 0.0415193, 0.0420742, 0.0421471,
+            0.0421236, 0.293535, 1012.98, 762.190,
+            0.622985, 0.996135, -0.0447822
+    };
+
+    @Param({"nn_config_land.txt", "nn_config_ocean.txt"})
+    private String configName;
+
+    private CloudAlgorithm algorithm;
+    private double[] cloudIn;
+    private double[] scratch;
+
+    @Setup
+    public void setUp() throws IOException {
+        // same location as used by CloudProbabilityOp
+        final String auxdataSrcPath = "auxdata/cloudprob";
+        final File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(),
+                                               ".beam/" + AlbedomapConstants.SYMBOLIC_NAME + "/" + auxdataSrcPath);
+        final ResourceInstaller resourceInstaller = new ResourceInstaller(
+                ResourceInstaller.getSourceUrl(CloudAlgorithm.class), auxdataSrcPath, auxdataTargetDir);
+        resourceInstaller.install(".*", ProgressMonitor.NULL);
+
+        algorithm = new CloudAlgorithm(auxdataTargetDir, configName);
+        cloudIn = new double[CLOUD_IN.length];
+        scratch = algorithm.createScratch();
+    }
+
+    @Benchmark
+    public double computeCloudProbability() {
+        // computeCloudProbability clamps its input in place
+        System.arraycopy(CLOUD_IN, 0, cloudIn, 0, CLOUD_IN.length);
+        return algorithm.computeCloudProbability(cloudIn);
+    }
+
+    @Benchmark
+    public double computeCloudProbabilityWithScratch() {
+        System.arraycopy(CLOUD_IN, 0, cloudIn, 0, CLOUD_IN.length);
+        return algorithm.computeCloudProbability(cloudIn, scratch);
+    }
+}
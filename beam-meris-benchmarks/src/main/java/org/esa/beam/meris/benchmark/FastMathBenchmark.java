@@ -0,0 +1,106 @@
+package org.esa.beam.meris.benchmark;
+
+import org.esa.beam.util.math.FastMath;
+import org.esa.beam.util.math.MathUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The functions of {@link FastMath} compared to the ones of {@link Math}, for arguments in the ranges of the
+ * MERIS geometry and pressure computations. Each invocation evaluates all arguments.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class FastMathBenchmark {
+
+    private static final int SIZE = 1024;
+
+    private double[] angles;
+    private double[] exponents;
+    private double[] viewAzimuths;
+    private double[] sunAzimuths;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(5L);
+        angles = new double[SIZE];
+        exponents = new double[SIZE];
+        viewAzimuths = new double[SIZE];
+        sunAzimuths = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            angles[i] = 180.0 * random.nextDouble() * MathUtils.DTOR;
+            exponents[i] = -2.0 * random.nextDouble();
+            viewAzimuths[i] = -180.0 + 360.0 * random.nextDouble();
+            sunAzimuths[i] = 360.0 * random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public double cosStrict() {
+        double sum = 0.0;
+        for (double angle : angles) {
+            sum += Math.cos(angle);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double cosFast() {
+        double sum = 0.0;
+        for (double angle : angles) {
+            sum += FastMath.cos(angle);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double expStrict() {
+        double sum = 0.0;
+        for (double exponent : exponents) {
+            sum += Math.exp(exponent);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double expFast() {
+        double sum = 0.0;
+        for (double exponent : exponents) {
+            sum += FastMath.exp(exponent);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double azimuthDifferenceStrict() {
+        double sum = 0.0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += MathUtils.RTOD * Math.acos(Math.cos(MathUtils.DTOR * (viewAzimuths[i] - sunAzimuths[i])));
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double azimuthDifferenceFast() {
+        double sum = 0.0;
+        for (int i = 0; i < SIZE; i++) {
+            sum += FastMath.azimuthDifference(viewAzimuths[i], sunAzimuths[i]);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,75 @@
+package org.esa.beam.meris.benchmark;
+
+import org.esa.beam.util.math.FractIndex;
+import org.esa.beam.util.math.Interp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-linear interpolation as used by all auxiliary data look-up tables.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class InterpBenchmark {
+
+    private static final int SIZE = 16;
+
+    /**
+     * Number of dimensions of the interpolated array.
+     */
+    @Param({"2", "3", "4"})
+    private int rank;
+
+    private Object elements;
+    private FractIndex[] indexes;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(5L);
+        elements = createArray(rank, random);
+        final double[] tab = new double[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            tab[i] = i * 0.5;
+        }
+        indexes = FractIndex.createArray(rank);
+        for (FractIndex index : indexes) {
+            Interp.interpCoord(random.nextDouble() * tab[SIZE - 1], tab, index);
+        }
+    }
+
+    @Benchmark
+    public double interpolate() {
+        return Interp.interpolate(elements, indexes);
+    }
+
+    private static Object createArray(int rank, Random random) {
+        if (rank == 1) {
+            final float[] array = new float[SIZE];
+            for (int i = 0; i < SIZE; i++) {
+                array[i] = random.nextFloat();
+            }
+            return array;
+        }
+        final Object[] array = new Object[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            array[i] = createArray(rank - 1, random);
+        }
+        return array;
+    }
+}
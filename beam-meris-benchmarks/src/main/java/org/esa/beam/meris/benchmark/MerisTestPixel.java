@@ -0,0 +1,54 @@
+package org.esa.beam.meris.benchmark;
+
+import org.esa.beam.meris.brr.operator.MerisL1BProduct;
+import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.meris.l2auxdata.L2AuxDataException;
+import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+
+/**
+ * The input values of the benchmarked kernels, taken from the second pixel ("px2") of the
+ * synthetic {@link MerisL1BProduct}.
+ */
+final class MerisTestPixel {
+
+    static final int DETECTOR = 3258;
+    static final double SUN_ZENITH = 30.872784;
+    static final double SUN_AZIMUTH = 127.837845;
+    static final double VIEW_ZENITH = 29.379715;
+    static final double VIEW_AZIMUTH = 101.362305;
+    static final double PRESSURE = 1013.0095;
+    static final double OZONE = 370.97424;
+
+    /**
+     * TOA reflectances of px2 for the 15 MERIS bands.
+     */
+    static final float[] RHO_TOA = {
+            0.15335f, 0.13148f, 0.10763f, 0.09858f, 0.07834f,
+            0.05817f, 0.05162f, 0.05001f, 0.04896f, 0.04688f,
+            0.01951f, 0.04537f, 0.04329f, 0.04288f, 0.03143f
+    };
+
+    private MerisTestPixel() {
+    }
+
+    static double getDeltaAzimuth() {
+        final double deltaAzimuth = Math.abs(VIEW_AZIMUTH - SUN_AZIMUTH);
+        return deltaAzimuth > 180.0 ? 360.0 - deltaAzimuth : deltaAzimuth;
+    }
+
+    static double getMus() {
+        return Math.cos(Math.toRadians(SUN_ZENITH));
+    }
+
+    static double getMuv() {
+        return Math.cos(Math.toRadians(VIEW_ZENITH));
+    }
+
+    static double getAirMass() {
+        return 1.0 / getMus() + 1.0 / getMuv();
+    }
+
+    static L2AuxData loadAuxData() throws L2AuxDataException {
+        return L2AuxDataProvider.getInstance().getAuxdata(MerisL1BProduct.create());
+    }
+}
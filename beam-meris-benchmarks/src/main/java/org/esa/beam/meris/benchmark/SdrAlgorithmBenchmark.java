@@ -0,0 +1,116 @@
+package org.esa.beam.meris.benchmark;
+
+import com.bc.jnn.Jnn;
+import com.bc.jnn.JnnException;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
+import org.esa.beam.meris.sdr.SdrAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The SDR neural net, evaluated with the test pixel of <code>SdrAlgorithmTest</code>.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SdrAlgorithmBenchmark {
+
+    private static final String NEURAL_NET_RESOURCE_PATH = "/org/esa/beam/meris/sdr/run05_100.nna";
+
+    private SdrAlgorithm algorithm;
+    private SdrAlgorithm sharedAlgorithm;
+    private double[] scratch;
+    private SdrAlgorithm approximatedAlgorithm;
+    private double[] approximationScratch;
+    private double[] input;
+    private double[] output;
+
+    @Setup
+    public void setUp() throws IOException, JnnException {
+        final Reader reader = new InputStreamReader(
+                SdrAlgorithmBenchmark.class.getResourceAsStream(NEURAL_NET_RESOURCE_PATH));
+        try {
+            Jnn.setOptimizing(true);
+            algorithm = new SdrAlgorithm(Jnn.readNna(reader));
+        } finally {
+            reader.close();
+        }
+        final Reader perceptronReader = new InputStreamReader(
+                SdrAlgorithmBenchmark.class.getResourceAsStream(NEURAL_NET_RESOURCE_PATH));
+        try {
+            final MultiLayerPerceptron perceptron = MultiLayerPerceptron.read(perceptronReader);
+            sharedAlgorithm = SdrAlgorithm.create(perceptron);
+            approximatedAlgorithm = SdrAlgorithm.create(perceptron, 1.0E-4);
+        } finally {
+            perceptronReader.close();
+        }
+        scratch = sharedAlgorithm.createScratch();
+        approximationScratch = approximatedAlgorithm.createScratch();
+        input = new double[9];
+        output = new double[1];
+    }
+
+    @Benchmark
+    public double computeSdr() {
+        return algorithm.computeSdr(+1.86672E-02,
+                                    +4.12500E+02,
+                                    +5.10563E+00,
+                                    +3.86851E+01,
+                                    -1.39682E+02,
+                                    +4.96000E-01,
+                                    +2.90000E-01,
+                                    +1.58081E+00);
+    }
+
+    @Benchmark
+    public double[] computeSdrVector() {
+        fillInput();
+        algorithm.computeSdr(input, output);
+        return output;
+    }
+
+    @Benchmark
+    public double[] computeSdrVectorShared() {
+        fillInput();
+        sharedAlgorithm.computeSdr(input, output, 1, scratch);
+        return output;
+    }
+
+    /**
+     * Only the band inputs vary, like between the bands of a pixel in <code>SdrOp</code>.
+     */
+    @Benchmark
+    public double[] computeSdrVectorApproximated() {
+        fillInput();
+        approximatedAlgorithm.computeSdr(input, output, 1, approximationScratch);
+        return output;
+    }
+
+    private void fillInput() {
+        input[0] = +1.86672E-02;
+        input[1] = +4.12500E+02;
+        input[2] = +7.80593E-01;
+        input[3] = -6.78534E-02;
+        input[4] = -5.75805E-02;
+        input[5] = +9.96032E-01;
+        input[6] = +4.96000E-01;
+        input[7] = +2.90000E-01;
+        input[8] = +1.58081E+00;
+    }
+}
@@ -0,0 +1,257 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.meris.dpm.PixelId;
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.util.BitSetter;
+import org.esa.beam.util.math.MathUtils;
+
+/**
+ * The per-pixel MERIS L2 cloud classification (DPM Level 2, step 2.1), shared by the
+ * {@link CloudClassificationOp} and the {@link FusedBrrOp}.
+ * <p/>
+ * Instances do not hold mutable state and can be shared by concurrently computed tiles.
+ */
+class CloudClassifier implements Constants {
+
+    static final int BAND_BRIGHT_N = 0;
+    static final int BAND_SLOPE_N_1 = 1;
+    static final int BAND_SLOPE_N_2 = 2;
+
+    private final L2AuxData auxData;
+    private final PixelId pixelId;
+    private final RayleighCorrection rayleighCorrection;
+
+    CloudClassifier(L2AuxData auxData) {
+        this.auxData = auxData;
+        pixelId = new PixelId(auxData);
+        rayleighCorrection = new RayleighCorrection(auxData);
+    }
+
+    /**
+     * Sets the current pixel and computes its air mass and ECMWF pressure.
+     *
+     * @param sd        the source data of the tile
+     * @param pixelInfo the pixel structure
+     * @param x         the pixel's x co-ordinate
+     * @param y         the pixel's y co-ordinate
+     * @param index     the pixel's index into the source data arrays
+     */
+    void setPixel(SourceData sd, PixelInfo pixelInfo, int x, int y, int index) {
+        pixelInfo.x = x;
+        pixelInfo.y = y;
+        pixelInfo.index = index;
+        pixelInfo.airMass = HelperFunctions.calculateAirMass(sd.vza[index], sd.sza[index]);
+        if (sd.l1Flags.getSampleBit(x, y, L1_F_LAND)) {
+            // ECMWF pressure is only corrected for positive
+            // altitudes and only for land pixels
+            pixelInfo.ecmwfPressure = HelperFunctions.correctEcmwfPressure(sd.ecmwfPressure[index],
+                                                                           sd.altitude[index],
+                                                                           auxData.press_scale_height);
+        } else {
+            pixelInfo.ecmwfPressure = sd.ecmwfPressure[index];
+        }
+    }
+
+    PixelId.Pressure computePressure(SourceData sd, PixelInfo pixelInfo) {
+        return pixelId.computePressure(sd.rhoToa[bb753][pixelInfo.index],
+                                       sd.rhoToa[bb760][pixelInfo.index],
+                                       pixelInfo.airMass,
+                                       sd.detectorIndex[pixelInfo.index]);
+    }
+
+    /**
+     * Classifies the current pixel.
+     *
+     * @param sd        the source data of the tile
+     * @param ctp       the cloud top pressure, or -1 if not available
+     * @param press     the pressure computed by {@link #computePressure}
+     * @param pixelInfo the pixel structure
+     * @return the cloud classification flags, see {@link CloudClassificationOp#createFlagCoding()}
+     */
+    int classifyCloud(SourceData sd, float ctp, PixelId.Pressure press, PixelInfo pixelInfo) {
+        //boolean pcd_poly = Comp_Pressure(pixel) != 0;
+        boolean pcd_poly = press.error;
+        int flags = 0;
+
+        /* apply thresholds on pressure- step 2.1.2 */
+        double delta_press_thresh = pixelId.getPressureThreshold(sd.sza[pixelInfo.index], sd.vza[pixelInfo.index],
+                                                                 sd.l1Flags.getSampleBit(pixelInfo.x, pixelInfo.y, L1_F_LAND));
+        boolean[] pressureThreshFlags = pixelId.getPressureThreshFlags(pixelInfo.ecmwfPressure, press.value, ctp, delta_press_thresh);
+        boolean low_P_nn = pressureThreshFlags[0];
+        boolean low_P_poly = pressureThreshFlags[1];
+        boolean delta_p = pressureThreshFlags[2];
+
+        /* keep for display-debug - added for v2.1 */
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_LOW_NN_P, low_P_nn);
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_PCD_NN_P, true); /* DPM #2.1.5-25 */
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_LOW_POL_P, low_P_poly);
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_PCD_POL_P, pcd_poly); /* DPM #2.1.12-12 */
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_CONFIDENCE_P, delta_p);
+
+        final boolean[] resultFlags = pixelInfo.resultFlags;
+
+        // Compute slopes- step 2.1.7
+        spec_slopes(sd, pixelInfo, resultFlags);
+        boolean bright_f = resultFlags[0];
+        boolean slope_1_f = resultFlags[1];
+        boolean slope_2_f = resultFlags[2];
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_BRIGHT, bright_f);
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_SLOPE_1, slope_1_f);
+        flags = BitSetter.setFlag(flags, CloudClassificationOp.F_SLOPE_2, slope_2_f);
+
+        // table-driven classification- step 2.1.8
+        // DPM #2.1.8-1
+        boolean land_f = sd.l1Flags.getSampleBit(pixelInfo.x, pixelInfo.y, L1_F_LAND);
+        boolean is_cloud = is_cloudy(land_f,
+                                     bright_f,
+                                     low_P_nn, low_P_poly, delta_p,
+                                     slope_1_f, slope_2_f,
+                                     true, pcd_poly);
+
+        return BitSetter.setFlag(flags, CloudClassificationOp.F_CLOUD, is_cloud);
+    }
+
+    /**
+     * Computes the slope of Rayleigh-corrected reflectance.
+     *
+     * @param pixelInfo    the pixel structure
+     * @param result_flags the return values, <code>resultFlags[0]</code> contains low NN pressure flag (low_P_nn),
+     *                     <code>resultFlags[1]</code> contains low polynomial pressure flag (low_P_poly),
+     *                     <code>resultFlags[2]</code> contains pressure range flag (delta_p).
+     */
+    private void spec_slopes(SourceData dc, PixelInfo pixelInfo, boolean[] result_flags) {
+        final double[] phaseR = pixelInfo.phaseR;
+        final double[] tauR = pixelInfo.tauR;
+        final double[] rhoAg = pixelInfo.rhoAg;
+        final double[] rhoRay = pixelInfo.rhoRay;
+
+        double sins = Math.sin(dc.sza[pixelInfo.index] * MathUtils.DTOR);
+        double sinv = Math.sin(dc.vza[pixelInfo.index] * MathUtils.DTOR);
+        double mus = Math.cos(dc.sza[pixelInfo.index] * MathUtils.DTOR);
+        double muv = Math.cos(dc.vza[pixelInfo.index] * MathUtils.DTOR);
+        final double deltaAzimuth = HelperFunctions.computeAzimuthDifference(dc.vaa[pixelInfo.index], dc.saa[pixelInfo.index]);
+
+        /* Rayleigh phase function Fourier decomposition */
+        rayleighCorrection.phase_rayleigh(mus, muv, sins, sinv, phaseR);
+
+        double press = pixelInfo.ecmwfPressure; /* DPM #2.1.7-1 v1.1 */
+
+        /* Rayleigh optical thickness */
+        rayleighCorrection.tau_rayleigh(press, tauR); /* DPM #2.1.7-2 */
+
+        /* Rayleigh reflectance - DPM #2.1.7-3 - v1.3 */
+        rayleighCorrection.ref_rayleigh(deltaAzimuth, dc.sza[pixelInfo.index], dc.vza[pixelInfo.index],
+                                        mus, muv, pixelInfo.airMass, phaseR, tauR, rhoRay,
+                                        pixelInfo.rayleighWorkspace);
+
+        /* DPM #2.1.7-4 */
+        for (int band = bb412; band <= bb900; band++) {
+            rhoAg[band] = dc.rhoToa[band][pixelInfo.index] - rhoRay[band];
+        }
+
+
+        boolean isLand = dc.l1Flags.getSampleBit(pixelInfo.x, pixelInfo.y, L1_F_LAND);
+        /* Interpolate threshold on rayleigh corrected reflectance - DPM #2.1.7-9 */
+        double rhorc_442_thr = pixelId.getRhoRC442thr(dc.sza[pixelInfo.index], dc.vza[pixelInfo.index], deltaAzimuth, isLand);
+
+        boolean bright_f = pixelId.isBrightFlag(rhoAg, rhorc_442_thr,
+                                                dc.radiance[BAND_BRIGHT_N].getSampleFloat(pixelInfo.x, pixelInfo.y));
+
+        /* Spectral slope processor.brr 1 */
+        boolean slope1_f = pixelId.isSpectraSlope1Flag(rhoAg, dc.radiance[BAND_SLOPE_N_1].getSampleFloat(pixelInfo.x, pixelInfo.y));
+        /* Spectral slope processor.brr 2 */
+        boolean slope2_f = pixelId.isSpectraSlope2Flag(rhoAg, dc.radiance[BAND_SLOPE_N_2].getSampleFloat(pixelInfo.x, pixelInfo.y));
+
+
+        result_flags[0] = bright_f;
+        result_flags[1] = slope1_f;
+        result_flags[2] = slope2_f;
+    }
+
+    /**
+     * Table driven cloud classification decision.
+     * <p/>
+     * <b>DPM Ref.:</b> Level 2, Step 2.1.8 <br> <b>MEGS Ref.:</b> file classcloud.c, function class_cloud  <br>
+     *
+     * @param land_f
+     * @param bright_f
+     * @param low_P_nn
+     * @param low_P_poly
+     * @param delta_p
+     * @param slope_1_f
+     * @param slope_2_f
+     * @param pcd_nn
+     * @param pcd_poly
+     * @return <code>true</code> if cloud flag shall be set
+     */
+    private boolean is_cloudy(boolean land_f, boolean bright_f,
+                              boolean low_P_nn, boolean low_P_poly,
+                              boolean delta_p, boolean slope_1_f,
+                              boolean slope_2_f, boolean pcd_nn,
+                              boolean pcd_poly) {
+        boolean is_cloud;
+        int index = 0;
+
+        /* set bits of index according to inputs */
+        index = BitSetter.setFlag(index, CC_BRIGHT, bright_f);
+        index = BitSetter.setFlag(index, CC_LOW_P_NN, low_P_nn);
+        index = BitSetter.setFlag(index, CC_LOW_P_PO, low_P_poly);
+        index = BitSetter.setFlag(index, CC_DELTA_P, delta_p);
+        index = BitSetter.setFlag(index, CC_PCD_NN, pcd_nn);
+        index = BitSetter.setFlag(index, CC_PCD_PO, pcd_poly);
+        index = BitSetter.setFlag(index, CC_SLOPE_1, slope_1_f);
+        index = BitSetter.setFlag(index, CC_SLOPE_2, slope_2_f);
+        index &= 0xff;
+
+        /* readRecord decision table */
+        if (land_f) {
+            is_cloud = auxData.land_decision_table[index]; /* DPM #2.1.8-1 */
+        } else {
+            is_cloud = auxData.water_decision_table[index]; /* DPM #2.1.8-2 */
+        }
+
+        return is_cloud;
+    }
+
+    /**
+     * The source samples of one tile. The arrays are indexed by the pixel index within the tile.
+     */
+    static class SourceData {
+        float[][] rhoToa;
+        Tile[] radiance;
+        int[] detectorIndex;
+        float[] sza;
+        float[] vza;
+        float[] saa;
+        float[] vaa;
+        float[] altitude;
+        float[] ecmwfPressure;
+        Tile l1Flags;
+    }
+
+    /**
+     * The current pixel, together with the scratch buffers used while classifying it.
+     * An instance is created per tile, so concurrent tiles never share mutable state.
+     */
+    static class PixelInfo {
+        int index;
+        int x;
+        int y;
+        double airMass;
+        float ecmwfPressure;
+
+        //Rayleigh phase function coefficients, PR in DPM
+        final double[] phaseR = new double[RAYSCATT_NUM_SER];
+        //Rayleigh optical thickness, tauR0 in DPM
+        final double[] tauR = new double[L1_BAND_NUM];
+        //Rayleigh corrected reflectance
+        final double[] rhoAg = new double[L1_BAND_NUM];
+        //Rayleigh correction
+        final double[] rhoRay = new double[L1_BAND_NUM];
+        // bright, slope 1 and slope 2 flags
+        final boolean[] resultFlags = new boolean[3];
+        final RayleighCorrection.Workspace rayleighWorkspace = new RayleighCorrection.Workspace();
+    }
+}
@@ -0,0 +1,719 @@
+package org.esa.beam.meris.brr;
+
+import com.bc.ceres.core.ProgressMonitor;
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.esa.beam.framework.gpf.OperatorException;
+import org.esa.beam.framework.gpf.OperatorSpi;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
+import org.esa.beam.framework.gpf.annotations.Parameter;
+import org.esa.beam.framework.gpf.annotations.SourceProduct;
+import org.esa.beam.framework.gpf.annotations.TargetProduct;
+import org.esa.beam.gpf.operators.meris.MerisBasisOp;
+import org.esa.beam.meris.dpm.PixelId;
+import org.esa.beam.meris.gpf.TileAccessor;
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.meris.l2auxdata.L2AuxDataException;
+import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.util.BitSetter;
+import org.esa.beam.util.ProductUtils;
+import org.esa.beam.util.math.FractIndex;
+import org.esa.beam.util.math.MathUtils;
+
+import java.awt.Rectangle;
+import java.util.Map;
+
+
+/**
+ * Computes the MERIS L2 BRR in a single pass. Per tile, this operator runs the same steps as the
+ * <code>chains/Brr.xml</code> graph ({@link Rad2ReflOp}, {@link CloudClassificationOp}, {@link GaseousCorrectionOp},
+ * {@link LandClassificationOp}, {@link SmileCorrectionOp} and {@link RayleighCorrectionOp}), but keeps the
+ * intermediate results in per-thread buffers instead of intermediate products. Only the requested bands are
+ * written to the target product.
+ */
+@OperatorMetadata(alias = "Meris.FusedBrr",
+                  version = "2.4.1",
+                  authors = "Brockmann Consult",
+                  copyright = "(c) 2014 by Brockmann Consult",
+                  description = "MERIS L2 BRR, computing all steps of the BRR chain in a single pass.")
+public class FusedBrrOp extends MerisBasisOp implements Constants {
+
+    @SourceProduct(alias = "l1b")
+    private Product l1bProduct;
+    @TargetProduct
+    private Product targetProduct;
+    @Parameter(description = "If 'true' the gaseous and Rayleigh correction are also applied over water.",
+               defaultValue = "true")
+    boolean correctWater = true;
+    @Parameter(description = "If 'true' the L1b flags are copied to the target product.", defaultValue = "true")
+    boolean copyL1Flags = true;
+    @Parameter(description = "If 'true' the cloud, gaseous correction and land classification flags are written.",
+               defaultValue = "true")
+    boolean outputFlags = true;
+    @Parameter(description = "If 'true' the TOA reflectances are written.", defaultValue = "false")
+    boolean outputToar = false;
+    @Parameter(description = "If 'true' the Rayleigh coefficients are computed for quantized geometries and cached.",
+               defaultValue = "false")
+    boolean useCoefficientCache = false;
+    @Parameter(description = "The bin width used to quantize the angles for the Rayleigh coefficient cache.",
+               defaultValue = "0.05", unit = "deg", interval = "(0, 10]")
+    double cacheAngleBinWidth = 0.05;
+    @Parameter(description = "The bin width used to quantize the pressure for the Rayleigh coefficient cache.",
+               defaultValue = "0.5", unit = "hPa", interval = "(0, 100]")
+    double cachePressureBinWidth = 0.5;
+    @Parameter(description = "The maximum number of entries of the Rayleigh coefficient cache.",
+               defaultValue = "16384", interval = "[1, 1048576]")
+    int cacheCapacity = 16384;
+    @Parameter(description = "If 'true' table based approximations of the trigonometric and exponential " +
+                             "functions are used.", defaultValue = "false")
+    boolean fastMath = false;
+
+    private L2AuxData auxData;
+    private CloudClassifier cloudClassifier;
+    private GaseousAbsorptionCorrection gasCor;
+    private RayleighCorrection rayleighCorrection;
+    private RayleighCoefficientCache coefficientCache;
+
+    private RasterDataNode[] radianceBands;
+    private Band[] brrBands;
+    private Band[] rhoToaBands;
+    private Band rayCorrFlagBand;
+    private Band cloudFlagBand;
+    private Band gasFlagBand;
+    private Band landFlagBand;
+
+    private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+        @Override
+        protected Buffers initialValue() {
+            return new Buffers(0);
+        }
+    };
+
+    @Override
+    public void initialize() throws OperatorException {
+        try {
+            auxData = L2AuxDataProvider.getInstance().getAuxdata(l1bProduct);
+        } catch (L2AuxDataException e) {
+            throw new OperatorException("Could not load L2Auxdata", e);
+        }
+        cloudClassifier = new CloudClassifier(auxData);
+        gasCor = new GaseousAbsorptionCorrection(auxData);
+        rayleighCorrection = new RayleighCorrection(auxData);
+        rayleighCorrection.setFastMath(fastMath);
+        if (useCoefficientCache) {
+            coefficientCache = new RayleighCoefficientCache(rayleighCorrection, cacheAngleBinWidth,
+                                                            cachePressureBinWidth, cacheCapacity);
+        }
+        radianceBands = new RasterDataNode[L1_BAND_NUM];
+        for (int i = 0; i < L1_BAND_NUM; i++) {
+            radianceBands[i] = l1bProduct.getBand(EnvisatConstants.MERIS_L1B_SPECTRAL_BAND_NAMES[i]);
+        }
+        createTargetProduct();
+    }
+
+    private void createTargetProduct() {
+        targetProduct = createCompatibleProduct(l1bProduct, "MER", "MER_L2_BRR");
+
+        brrBands = new Band[L1_BAND_NUM];
+        for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+            brrBands[bandId] = addSpectralBand(RayleighCorrectionOp.BRR_BAND_PREFIX, bandId);
+        }
+        rayCorrFlagBand = addFlagBand(RayleighCorrectionOp.createFlagCoding(brrBands.length),
+                                      ProductData.TYPE_INT16);
+        if (outputToar) {
+            rhoToaBands = new Band[L1_BAND_NUM];
+            for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                rhoToaBands[bandId] = addSpectralBand(Rad2ReflOp.RHO_TOA_BAND_PREFIX, bandId);
+            }
+        }
+        if (outputFlags) {
+            cloudFlagBand = addFlagBand(CloudClassificationOp.createFlagCoding(), ProductData.TYPE_INT16);
+            gasFlagBand = addFlagBand(GaseousCorrectionOp.createFlagCoding(), ProductData.TYPE_INT8);
+            landFlagBand = addFlagBand(LandClassificationOp.createFlagCoding(), ProductData.TYPE_INT8);
+        }
+        if (copyL1Flags) {
+            ProductUtils.copyFlagBands(l1bProduct, targetProduct, true);
+        }
+        if (l1bProduct.getPreferredTileSize() != null) {
+            targetProduct.setPreferredTileSize(l1bProduct.getPreferredTileSize());
+        }
+    }
+
+    private Band addSpectralBand(String prefix, int bandId) {
+        Band band = targetProduct.addBand(prefix + "_" + (bandId + 1), ProductData.TYPE_FLOAT32);
+        ProductUtils.copySpectralBandProperties(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_SPECTRAL_BAND_NAMES[bandId]),
+                                                band);
+        band.setNoDataValueUsed(true);
+        band.setNoDataValue(BAD_VALUE);
+        return band;
+    }
+
+    private Band addFlagBand(FlagCoding flagCoding, int dataType) {
+        Band band = targetProduct.addBand(flagCoding.getName(), dataType);
+        band.setSampleCoding(flagCoding);
+        targetProduct.getFlagCodingGroup().add(flagCoding);
+        return band;
+    }
+
+    @Override
+    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
+        pm.beginTask("Processing frame...", 6);
+        try {
+            final SourceTiles st = loadSourceTiles(rectangle);
+            final Buffers b = getBuffers(rectangle.width * rectangle.height);
+
+            computeRhoToa(st, b);
+            pm.worked(1);
+            classifyClouds(st, b, rectangle);
+            pm.worked(1);
+            checkForCancellation();
+            correctGaseousAbsorption(st, b, rectangle);
+            pm.worked(1);
+            classifyLand(st, b, rectangle);
+            pm.worked(1);
+            checkForCancellation();
+            correctSmile(st, b);
+            pm.worked(1);
+            correctRayleigh(st, b, rectangle);
+
+            for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+                targetTiles.get(brrBands[bandId]).setSamples(b.brr[bandId]);
+            }
+            targetTiles.get(rayCorrFlagBand).setSamples(b.rayCorrFlags);
+            if (outputToar) {
+                for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                    targetTiles.get(rhoToaBands[bandId]).setSamples(b.rhoToa[bandId]);
+                }
+            }
+            if (outputFlags) {
+                targetTiles.get(cloudFlagBand).setSamples(b.cloudFlags);
+                targetTiles.get(gasFlagBand).setSamples(b.gasFlags);
+                targetTiles.get(landFlagBand).setSamples(b.landFlags);
+            }
+            pm.worked(1);
+        } catch (Exception e) {
+            throw new OperatorException(e);
+        } finally {
+            pm.done();
+        }
+    }
+
+    private SourceTiles loadSourceTiles(Rectangle rectangle) {
+        final SourceTiles st = new SourceTiles();
+        st.radianceTiles = new Tile[L1_BAND_NUM];
+        st.radiance = new float[L1_BAND_NUM][];
+        for (int i = 0; i < L1_BAND_NUM; i++) {
+            st.radianceTiles[i] = getSourceTile(radianceBands[i], rectangle);
+            st.radiance[i] = TileAccessor.getSamplesFloat(st.radianceTiles[i]);
+        }
+        st.detectorIndex = TileAccessor.getSamplesInt(
+                getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle));
+        st.l1FlagsTile = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME), rectangle);
+        st.l1Flags = TileAccessor.getSamplesInt(st.l1FlagsTile);
+        st.sza = getTiePoints(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME, rectangle);
+        st.vza = getTiePoints(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME, rectangle);
+        st.saa = getTiePoints(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME, rectangle);
+        st.vaa = getTiePoints(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME, rectangle);
+        st.altitude = getTiePoints(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME, rectangle);
+        st.ecmwfPressure = getTiePoints("atm_press", rectangle);
+        st.ozone = getTiePoints("ozone", rectangle);
+        st.windu = getTiePoints("zonal_wind", rectangle);
+        st.windv = getTiePoints("merid_wind", rectangle);
+        return st;
+    }
+
+    private float[] getTiePoints(String name, Rectangle rectangle) {
+        return TileAccessor.getSamplesFloat(getSourceTile(l1bProduct.getTiePointGrid(name), rectangle));
+    }
+
+    private Buffers getBuffers(int size) {
+        Buffers b = buffers.get();
+        if (b.size != size) {
+            // all buffer elements are written before they are read, so buffers of equal size are reused as they are
+            b = new Buffers(size);
+            buffers.set(b);
+        }
+        return b;
+    }
+
+    /**
+     * Radiance to reflectance conversion, see {@link Rad2ReflOp}.
+     */
+    private void computeRhoToa(SourceTiles st, Buffers b) {
+        final double[][] solarIrradianceInv = auxData.detector_solar_irradiance_inv;
+        final int size = b.size;
+        for (int i = 0; i < size; i++) {
+            if (BitSetter.isFlagSet(st.l1Flags[i], L1_F_INVALID)) {
+                for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                    b.rhoToa[bandId][i] = BAD_VALUE;
+                }
+            } else {
+                final double constantTerm = Rad2ReflOp.computeConstantTerm(st.sza[i], auxData.seasonal_factor);
+                final int detector = st.detectorIndex[i];
+                for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                    b.rhoToa[bandId][i] = Rad2ReflOp.computeRhoToa(st.radiance[bandId][i], constantTerm,
+                                                                   solarIrradianceInv[bandId][detector]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Cloud classification without cloud top pressure, see {@link CloudClassificationOp}.
+     */
+    private void classifyClouds(SourceTiles st, Buffers b, Rectangle rectangle) {
+        final CloudClassifier.SourceData sd = new CloudClassifier.SourceData();
+        sd.rhoToa = b.rhoToa;
+        sd.radiance = new Tile[3];
+        sd.radiance[CloudClassifier.BAND_BRIGHT_N] = st.radianceTiles[auxData.band_bright_n];
+        sd.radiance[CloudClassifier.BAND_SLOPE_N_1] = st.radianceTiles[auxData.band_slope_n_1];
+        sd.radiance[CloudClassifier.BAND_SLOPE_N_2] = st.radianceTiles[auxData.band_slope_n_2];
+        sd.detectorIndex = st.detectorIndex;
+        sd.sza = st.sza;
+        sd.vza = st.vza;
+        sd.saa = st.saa;
+        sd.vaa = st.vaa;
+        sd.altitude = st.altitude;
+        sd.ecmwfPressure = st.ecmwfPressure;
+        sd.l1Flags = st.l1FlagsTile;
+
+        final CloudClassifier.PixelInfo pixelInfo = new CloudClassifier.PixelInfo();
+        int i = 0;
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                b.cloudFlags[i] = 0;
+                if (!BitSetter.isFlagSet(st.l1Flags[i], L1_F_INVALID)) {
+                    cloudClassifier.setPixel(sd, pixelInfo, x, y, i);
+                    final PixelId.Pressure press = cloudClassifier.computePressure(sd, pixelInfo);
+                    b.cloudFlags[i] = cloudClassifier.classifyCloud(sd, -1, press, pixelInfo);
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Gaseous absorption correction, see {@link GaseousCorrectionOp}.
+     */
+    private void correctGaseousAbsorption(SourceTiles st, Buffers b, Rectangle rectangle) {
+        final float[][] rhoToa = b.rhoToa;
+        final int[] gasFlags = b.gasFlags;
+        final double[] dSumrho = new double[L1_BAND_NUM]; /* accumulator for rho above water */
+        final double[] T_o3 = new double[L1_BAND_NUM];   /* ozone transmission */
+
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x += Constants.SUBWIN_WIDTH) {
+                final int xWinEnd = Math.min(rectangle.x + rectangle.width, x + Constants.SUBWIN_WIDTH) - 1;
+                final int yWinEnd = Math.min(rectangle.y + rectangle.height, y + Constants.SUBWIN_HEIGHT) - 1;
+                boolean correctPixel = false;
+                boolean correctWaterPixel = false;
+                for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                    dSumrho[bandId] = 0.0;
+                }
+
+                for (int iy = y; iy <= yWinEnd; iy++) {
+                    for (int ix = x; ix <= xWinEnd; ix++) {
+                        final int i = getIndex(rectangle, ix, iy);
+                        gasFlags[i] = 0;
+                        if (!BitSetter.isFlagSet(st.l1Flags[i], L1_F_INVALID) &&
+                            !BitSetter.isFlagSet(b.cloudFlags[i], CloudClassificationOp.F_CLOUD) &&
+                            (correctWater || st.altitude[i] >= -50.0 || BitSetter.isFlagSet(st.l1Flags[i], L1_F_LAND))) {
+
+                            correctPixel = true;
+                            gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_DO_CORRECT);
+
+                            /* v4.2: average radiances for water pixels */
+                            if (!BitSetter.isFlagSet(st.l1Flags[i], L1_F_LAND)) {
+                                correctWaterPixel = true;
+                                for (int bandId = bb753; bandId <= bb900; bandId++) {
+                                    dSumrho[bandId] += rhoToa[bandId][i];
+                                }
+                            }
+                        } else {
+                            setBadValue(b.rhoNg, i);
+                        }
+                    }
+                }
+
+                if (correctPixel) {
+                    /* v4.2 average TOA radiance */
+                    double etaAverageForWater = 0.0;
+                    double x2AverageForWater = 0.0;
+                    boolean iOrinp0 = false;
+                    if (correctWaterPixel) {
+                        if ((dSumrho[bb753] > 0.0) && (dSumrho[bb760] > 0.0)) {
+                            etaAverageForWater = dSumrho[bb760] / dSumrho[bb753];
+                        } else {
+                            iOrinp0 = true;
+                            etaAverageForWater = 1.0;
+                        }
+
+                        if ((dSumrho[bb890] > 0.0) && (dSumrho[bb900] > 0.0)) {
+                            x2AverageForWater = dSumrho[bb900] / dSumrho[bb890];
+                        } else {
+                            iOrinp0 = true;
+                            x2AverageForWater = 1.0;
+                        }
+                    }
+
+                    /* ozone transmittance on 4x4 window - step 2.6.12.1 */
+                    final int i0 = getIndex(rectangle, x, y);
+                    double airMass0 = HelperFunctions.calculateAirMass(st.vza[i0], st.sza[i0]);
+                    gasCor.trans_o3(airMass0, st.ozone[i0], T_o3);
+
+                    /* process each pixel */
+                    for (int iy = y; iy <= yWinEnd; iy++) {
+                        for (int ix = x; ix <= xWinEnd; ix++) {
+                            final int i = getIndex(rectangle, ix, iy);
+                            if (BitSetter.isFlagSet(gasFlags[i], GaseousCorrectionOp.F_DO_CORRECT)) {
+                                /* band ratios eta, x2 */
+                                double eta;
+                                double x2;
+
+                                /* test SZA - v4.2 */
+                                if (st.sza[i] > auxData.TETAS_LIM) {
+                                    gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_SUN70);
+                                }
+
+                                /* do band ratio for land pixels with full exception handling */
+                                if (BitSetter.isFlagSet(st.l1Flags[i], L1_F_LAND)) {
+                                    if ((rhoToa[bb753][i] > 0.0) && (rhoToa[bb760][i] > 0.0)) {
+                                        eta = rhoToa[bb760][i] / rhoToa[bb753][i];    //o2
+                                    } else {
+                                        eta = 1.0;
+                                        gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_ORINP0);
+                                    }
+                                    /* DPM #2.6.12.3-1 */
+                                    if ((rhoToa[bb890][i] > 0.0) && (rhoToa[bb900][i] > 0.0)) {
+                                        x2 = rhoToa[bb900][i] / rhoToa[bb890][i];   //h2o
+                                    } else {
+                                        x2 = 1.0;
+                                        gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_ORINP0);
+                                    }
+                                } else { /* water pixels */
+                                    eta = etaAverageForWater;
+                                    x2 = x2AverageForWater;
+                                    gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_ORINP0, iOrinp0);
+                                }
+                                final boolean pcdPolF = BitSetter.isFlagSet(b.cloudFlags[i],
+                                                                            CloudClassificationOp.F_PCD_POL_P);
+                                int status = gasCor.gas_correction(i, T_o3, eta, x2, rhoToa,
+                                                                   st.detectorIndex[i],
+                                                                   b.rhoNg, null, pcdPolF);
+
+                                /* exception handling */
+                                gasFlags[i] = BitSetter.setFlag(gasFlags[i], GaseousCorrectionOp.F_OROUT0, status != 0);
+                            } else {
+                                setBadValue(b.rhoNg, i);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Land/water reclassification, see {@link LandClassificationOp}. As in the BRR graph, the land classification
+     * is not given the TOA reflectances, so no ice test is made.
+     */
+    private void classifyLand(SourceTiles st, Buffers b, Rectangle rectangle) {
+        final float[][] rhoNg = b.rhoNg;
+        final int[] landFlags = b.landFlags;
+
+        // pre-initialize constant values from auxdata
+        final int b_thresh_0 = auxData.lap_b_thresh[0];
+        final int b_thresh_1 = auxData.lap_b_thresh[1];
+        final double a_thresh_0 = auxData.alpha_thresh[0];
+        final double a_thresh_1 = auxData.alpha_thresh[1];
+
+        // geometry at the window corners of one row of 4x4 windows, interpolation coordinates are computed per row
+        final int numWindows = (rectangle.width + Constants.SUBWIN_WIDTH - 1) / Constants.SUBWIN_WIDTH;
+        final double[] szaW = new double[numWindows];
+        final double[] vzaW = new double[numWindows];
+        final double[] deltaAzimuthW = new double[numWindows];
+        final double[] windmW = new double[numWindows];
+        final double[] chiwW = new double[numWindows];
+        final LandClassificationOp.CoordinateRow szaR7 = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow vzaR7 = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow deltaAzimuthR7 = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow chiwRog = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow vzaRog = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow deltaAzimuthRog = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow windmRog = new LandClassificationOp.CoordinateRow(numWindows);
+        final LandClassificationOp.CoordinateRow szaRog = new LandClassificationOp.CoordinateRow(numWindows);
+        final FractIndex[] r7thresh_Index = FractIndex.createArray(3);  /* v4.4 */
+        final FractIndex[] rogIndex = FractIndex.createArray(5);
+
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
+            for (int w = 0; w < numWindows; w++) {
+                final int i0 = getIndex(rectangle, rectangle.x + w * Constants.SUBWIN_WIDTH, y);
+                /* first wind modulus at window corner */
+                double windm = st.windu[i0] * st.windu[i0];
+                windm += st.windv[i0] * st.windv[i0];
+                windmW[w] = Math.sqrt(windm);
+                /* then wind azimuth */
+                double phiw = LandClassificationOp.azimuth(st.windu[i0], st.windv[i0]);
+                /* and "scattering" angle */
+                chiwW[w] = MathUtils.RTOD * (Math.acos(Math.cos(st.saa[i0] - phiw)));
+                deltaAzimuthW[w] = HelperFunctions.computeAzimuthDifference(st.vaa[i0], st.saa[i0], fastMath);
+                szaW[w] = st.sza[i0];
+                vzaW[w] = st.vza[i0];
+            }
+            /* set up threshold for land-water discrimination */
+            szaR7.interpCoord(szaW, auxData.r7thresh.getTab(0));
+            vzaR7.interpCoord(vzaW, auxData.r7thresh.getTab(1));
+            /* take azimuth difference into account - v4.4 */
+            deltaAzimuthR7.interpCoord(deltaAzimuthW, auxData.r7thresh.getTab(2));
+            chiwRog.interpCoord(chiwW, auxData.rog.getTab(0));
+            vzaRog.interpCoord(vzaW, auxData.rog.getTab(1));
+            deltaAzimuthRog.interpCoord(deltaAzimuthW, auxData.rog.getTab(2));
+            windmRog.interpCoord(windmW, auxData.rog.getTab(3));
+            szaRog.interpCoord(szaW, auxData.rog.getTab(4));
+
+            for (int w = 0; w < numWindows; w++) {
+                final int x = rectangle.x + w * Constants.SUBWIN_WIDTH;
+
+                /* allows to retrieve Glint reflectance for current geometry and wind */
+                chiwRog.get(w, rogIndex[0]);
+                vzaRog.get(w, rogIndex[1]);
+                deltaAzimuthRog.get(w, rogIndex[2]);
+                windmRog.get(w, rogIndex[3]);
+                szaRog.get(w, rogIndex[4]);
+                double rhoGlint = auxData.rog.interpolate(rogIndex);
+
+                szaR7.get(w, r7thresh_Index[0]);
+                vzaR7.get(w, r7thresh_Index[1]);
+                deltaAzimuthR7.get(w, r7thresh_Index[2]);
+                /* DPM #2.6.26-1a */
+                final double r7thresh_val = auxData.r7thresh.interpolate(r7thresh_Index);
+                final double r13thresh_val = auxData.r13thresh.interpolate(r7thresh_Index);
+
+                /* process each pixel */
+                final int xWinEnd = Math.min(rectangle.x + rectangle.width, x + Constants.SUBWIN_WIDTH) - 1;
+                final int yWinEnd = Math.min(rectangle.y + rectangle.height, y + Constants.SUBWIN_HEIGHT) - 1;
+                for (int iy = y; iy <= yWinEnd; iy++) {
+                    for (int ix = x; ix <= xWinEnd; ix++) {
+                        final int i = getIndex(rectangle, ix, iy);
+                        int flags = 0;
+
+                        /* test if pixel is water - DPM #2.6.26-4 */
+                        final boolean is_water = (rhoNg[b_thresh_0][i] <= a_thresh_0 * r7thresh_val) &&
+                                                 (auxData.lap_beta_l * rhoNg[bb865][i] < rhoNg[bb665][i]);
+                        flags = BitSetter.setFlag(flags, LandClassificationOp.F_LOINLD, is_water);
+
+                        /* test if pixel is land */
+                        final float thresh_medg = 0.2f;
+                        final boolean isGlint = (rhoGlint >= thresh_medg * rhoNg[bb865][i]);
+                        final int b_thresh;
+                        final double a_thresh;
+                        final double rThresh;
+                        if (isGlint) {
+                            flags = BitSetter.setFlag(flags, LandClassificationOp.F_MEGLINT);
+                            b_thresh = b_thresh_0;
+                            a_thresh = a_thresh_0;
+                            rThresh = r7thresh_val;
+                        } else {
+                            b_thresh = b_thresh_1;
+                            a_thresh = a_thresh_1;
+                            rThresh = r13thresh_val;
+                        }
+                        final boolean is_land = (rhoNg[b_thresh][i] > a_thresh * rThresh) &&
+                                                (auxData.lap_beta_w * rhoNg[bb865][i] > rhoNg[bb665][i]);
+                        flags = BitSetter.setFlag(flags, LandClassificationOp.F_ISLAND, is_land);
+
+                        // DPM step 2.6.26-7
+                        // the water test is less severe than the land test
+                        boolean is_land_consolidated = !is_water;
+                        // the land test is more severe than the water test
+                        if (isGlint && !BitSetter.isFlagSet(st.l1Flags[i], L1_F_LAND)) {
+                            is_land_consolidated = is_land;
+                        }
+                        landFlags[i] = BitSetter.setFlag(flags, LandClassificationOp.F_LANDCONS, is_land_consolidated);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Smile correction of the gas corrected reflectances, see {@link SmileCorrectionOp}.
+     */
+    private void correctSmile(SourceTiles st, Buffers b) {
+        final float[][] rho = b.rhoNg;
+        final float[][] rhoCorrected = b.rhoSmile;
+        final int size = b.size;
+        for (int i = 0; i < size; i++) {
+            if (rho[0][i] == BAD_VALUE) {
+                setBadValue(rhoCorrected, i);
+            } else {
+                L2AuxData.SmileParams params;
+                if (BitSetter.isFlagSet(b.landFlags[i], LandClassificationOp.F_LANDCONS)) {
+                    params = auxData.land_smile_params;
+                } else {
+                    params = auxData.water_smile_params;
+                }
+                final int detector = st.detectorIndex[i];
+                for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                    if (params.enabled[bandId]) {
+                        /* DPM #2.1.6-3 */
+                        final int bandMin = params.derivative_band_id[bandId][0];
+                        final int bandMax = params.derivative_band_id[bandId][1];
+                        final double delta = rho[bandMax][i] - rho[bandMin][i];
+                        /* DPM #2.1.6-4 */
+                        final double smileCorrectValue = rho[bandId][i] + delta * params.slope_factor[bandId][detector];
+                        rhoCorrected[bandId][i] = (float) smileCorrectValue;
+                    } else {
+                        /* DPM #2.1.6-5 */
+                        rhoCorrected[bandId][i] = rho[bandId][i];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rayleigh correction of the smile corrected reflectances, see {@link RayleighCorrectionOp}.
+     */
+    private void correctRayleigh(SourceTiles st, Buffers b, Rectangle rectangle) {
+        final float[][] rhoNg = b.rhoSmile;
+        final float[][] brr = b.brr;
+        final int[] rayCorrFlags = b.rayCorrFlags;
+        final boolean[] doCorrect = b.doCorrect;
+        final RayleighCoefficientCache.Coefficients computed = new RayleighCoefficientCache.Coefficients();
+        final RayleighCorrection.Workspace workspace = new RayleighCorrection.Workspace();
+
+        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x += Constants.SUBWIN_WIDTH) {
+                final int xWinEnd = Math.min(rectangle.x + rectangle.width, x + Constants.SUBWIN_WIDTH) - 1;
+                final int yWinEnd = Math.min(rectangle.y + rectangle.height, y + Constants.SUBWIN_HEIGHT) - 1;
+                boolean correctPixel = false;
+
+                for (int iy = y; iy <= yWinEnd; iy++) {
+                    for (int ix = x; ix <= xWinEnd; ix++) {
+                        final int i = getIndex(rectangle, ix, iy);
+                        rayCorrFlags[i] = 0;
+                        if (rhoNg[0][i] != BAD_VALUE &&
+                            (correctWater || BitSetter.isFlagSet(b.landFlags[i], LandClassificationOp.F_LANDCONS))) {
+                            correctPixel = true;
+                            doCorrect[i] = true;
+                        } else {
+                            doCorrect[i] = false;
+                            for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+                                brr[bandId][i] = BAD_VALUE;
+                            }
+                        }
+                    }
+                }
+
+                if (correctPixel) {
+                    /* average geometry, ozone for window DPM : just use corner pixel ! */
+                    final int i0 = getIndex(rectangle, x, y);
+                    final double deltaAzimuth = HelperFunctions.computeAzimuthDifference(st.vaa[i0], st.saa[i0],
+                                                                                         fastMath);
+                    /* DPM #2.6.15.1-3 */
+                    final double press = HelperFunctions.correctEcmwfPressure(st.ecmwfPressure[i0], st.altitude[i0],
+                                                                              auxData.press_scale_height, fastMath);
+                    final RayleighCoefficientCache.Coefficients c;
+                    if (coefficientCache != null) {
+                        c = coefficientCache.get(st.sza[i0], st.vza[i0], deltaAzimuth, press, workspace);
+                    } else {
+                        RayleighCoefficientCache.compute(rayleighCorrection, st.sza[i0], st.vza[i0], deltaAzimuth,
+                                                         press, computed, workspace);
+                        c = computed;
+                    }
+
+                    /* process each pixel */
+                    for (int iy = y; iy <= yWinEnd; iy++) {
+                        for (int ix = x; ix <= xWinEnd; ix++) {
+                            final int i = getIndex(rectangle, ix, iy);
+                            if (doCorrect[i]) {
+                                /* Rayleigh correction for each pixel (2.6.15.4) */
+                                rayleighCorrection.corr_rayleigh(c.rhoR, c.sphAlbR, c.transRs, c.transRv,
+                                                                 rhoNg, brr, i);
+
+                                /* flag negative Rayleigh-corrected reflectance */
+                                for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+                                    if (brr[bandId][i] <= 0.0) {
+                                        /* set annotation flag for reflectance product - v4.2 */
+                                        rayCorrFlags[i] = BitSetter.setFlag(rayCorrFlags[i],
+                                                                            (bandId <= bb760 ? bandId : bandId - 1));
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static int getIndex(Rectangle rectangle, int x, int y) {
+        return (y - rectangle.y) * rectangle.width + (x - rectangle.x);
+    }
+
+    private static void setBadValue(float[][] rho, int i) {
+        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+            rho[bandId][i] = BAD_VALUE;
+        }
+    }
+
+    private static class SourceTiles {
+        private Tile[] radianceTiles;
+        private float[][] radiance;
+        private int[] detectorIndex;
+        private Tile l1FlagsTile;
+        private int[] l1Flags;
+        private float[] sza;
+        private float[] vza;
+        private float[] saa;
+        private float[] vaa;
+        private float[] altitude;
+        private float[] ecmwfPressure;
+        private float[] ozone;
+        private float[] windu;
+        private float[] windv;
+    }
+
+    /**
+     * The intermediate results of one tile, indexed [band][pixel] or [pixel].
+     * An instance is kept per thread and reused for all tiles of equal size.
+     */
+    private static class Buffers {
+        private final int size;
+        private final float[][] rhoToa;
+        private final float[][] rhoNg;
+        private final float[][] rhoSmile;
+        private final float[][] brr;
+        private final int[] cloudFlags;
+        private final int[] gasFlags;
+        private final int[] landFlags;
+        private final int[] rayCorrFlags;
+        private final boolean[] doCorrect;
+
+        private Buffers(int size) {
+            this.size = size;
+            rhoToa = new float[L1_BAND_NUM][size];
+            rhoNg = new float[L1_BAND_NUM][size];
+            rhoSmile = new float[L1_BAND_NUM][size];
+            brr = new float[L1_BAND_NUM][size];
+            cloudFlags = new int[size];
+            gasFlags = new int[size];
+            landFlags = new int[size];
+            rayCorrFlags = new int[size];
+            doCorrect = new boolean[size];
+        }
+    }
+
+    public static class Spi extends OperatorSpi {
+        public Spi() {
+            super(FusedBrrOp.class);
+        }
+    }
+}
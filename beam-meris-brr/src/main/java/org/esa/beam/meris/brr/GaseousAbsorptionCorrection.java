@@ -10,8 +10,6 @@ package org.esa.beam.meris.brr;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
-import org.esa.beam.util.math.FractIndex;
-import org.esa.beam.util.math.Interp;
 
 public class GaseousAbsorptionCorrection implements Constants {
 
@@ -44,47 +42,9 @@ public class GaseousAbsorptionCorrection implements Constants {
     public int gas_correction(int x, int y, double[] T_o3, double eta, double x2, Tile[] rhoToa, int detector,
                               Tile[] rhoNg, Tile[] tg2, boolean PCD_POL_F) {
         int status = 0;
-        double T_o2;  /* o2 transmission */
-        double T_h2o; /* h2o transmission */
-        double tg;    /* total gaseous transmission */
 
         for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
-            /* start with (already computed) ozone */
-            T_o2 = T_h2o = 1.;
-            switch (bandId) {
-                case bb1:
-                case bb2:
-                case bb3:
-                case bb4:
-                case bb5:
-                case bb6:
-                case bb7:
-                case bb8:
-                case bb9:
-                case bb10:
-                case bb13:
-                case bb14:
-                    /* correct for water vapour */
-                    T_h2o = trans_h2o(bandId, x2, detector); /* DPM #2.6.12.3-2 */
-                    break;
-
-                case bb11:
-                    /* no correction */
-                    break;
-                case bb12:
-                    /* correct for oxygen - v4.4 */
-                    if (!PCD_POL_F) {
-                        T_o2 = trans_o2(bandId, eta, detector); /* DPM #2.6.12.2-2 */
-                    }
-
-                    /* correct for water vapour */
-                    T_h2o = trans_h2o(bandId, x2, detector); /* DPM #2.6.12.3-2 */
-                    break;
-                case bb15: /* no correction */
-                    break;
-            }
-
-            tg = T_o3[bandId] * T_h2o * T_o2; /* DPM #2.6.12.4-2 */
+            final double tg = trans_gas(bandId, T_o3, eta, x2, detector, PCD_POL_F);
             if (tg > 1.e-6 && tg <= 1.) {
                 rhoNg[bandId].setSample(x, y, rhoToa[bandId].getSampleFloat(x, y) / tg);  /* DPM #2.6.12.4-3 */
                 if (tg2 != null) {
@@ -103,6 +63,110 @@ public class GaseousAbsorptionCorrection implements Constants {
         return status;
     }
 
+    /**
+     * Computes the gaseous corrections for all bands of a given pixel, as
+     * {@link #gas_correction(int, int, double[], double, double, Tile[], int, Tile[], Tile[], boolean)},
+     * but on arrays indexed [band][pixel].
+     *
+     * @param index     the pixel index into the band arrays
+     * @param T_o3      ozone transmission for 15 bands
+     * @param eta       ratio TOAR(760)/TOAR(753)
+     * @param x2        ratio TOAR(900)/TOAR(885)
+     * @param rhoToa    reflectance (15 bands)
+     * @param detector  pixel detector id
+     * @param rhoNg     gas corrected reflectance (15 bands), output
+     * @param tg2       total gaseous transmission (15 bands), output, can be <code>null</code>
+     * @param PCD_POL_F
+     * @return success code (1: out or range output)
+     */
+    public int gas_correction(int index, double[] T_o3, double eta, double x2, float[][] rhoToa, int detector,
+                              float[][] rhoNg, float[][] tg2, boolean PCD_POL_F) {
+        int status = 0;
+
+        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+            final double tg = trans_gas(bandId, T_o3, eta, x2, detector, PCD_POL_F);
+            if (tg > 1.e-6 && tg <= 1.) {
+                rhoNg[bandId][index] = (float) (rhoToa[bandId][index] / tg);  /* DPM #2.6.12.4-3 */
+                if (tg2 != null) {
+                    tg2[bandId][index] = (float) tg;
+                }
+            } else {
+                /* exception handling */
+                rhoNg[bandId][index] = rhoToa[bandId][index];
+                status = 1;
+                if (tg2 != null) {
+                    tg2[bandId][index] = 1;
+                }
+            }
+        }  /* end loop on bands */
+
+        return status;
+    }
+
+    /**
+     * Computes the ozone transmittance for a given pixel. This routine should be called every 4x4 pixels.
+     * <p/>
+     * Reference: DPM equation #2.6.12.1-2<br>
+     * Uses: <br>
+     * {@link L2AuxData#tauO3_norm variables.tauO3_norm} <br>
+     *
+     * @param airMass air mass
+     * @param ozone   total ozone contents
+     * @param T_o3    ozone optical thickness in 15 bands
+     */
+    public void trans_o3(double airMass, double ozone, double[] T_o3) {
+        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+            /* DPM #2.6.12.1-2 */
+            T_o3[bandId] = Math.exp(-ozone / 1000.0 * airMass * auxData.tauO3_norm[bandId]);
+        }
+    }
+
+    /**
+     * Computes the total gaseous transmission of one band.
+     * Called by {@link #gas_correction}.
+     *
+     * @return total gaseous transmission in band bandId
+     */
+    private double trans_gas(int bandId, double[] T_o3, double eta, double x2, int detector, boolean PCD_POL_F) {
+        /* start with (already computed) ozone */
+        double T_o2 = 1.;  /* o2 transmission */
+        double T_h2o = 1.; /* h2o transmission */
+        switch (bandId) {
+            case bb1:
+            case bb2:
+            case bb3:
+            case bb4:
+            case bb5:
+            case bb6:
+            case bb7:
+            case bb8:
+            case bb9:
+            case bb10:
+            case bb13:
+            case bb14:
+                /* correct for water vapour */
+                T_h2o = trans_h2o(bandId, x2, detector); /* DPM #2.6.12.3-2 */
+                break;
+
+            case bb11:
+                /* no correction */
+                break;
+            case bb12:
+                /* correct for oxygen - v4.4 */
+                if (!PCD_POL_F) {
+                    T_o2 = trans_o2(bandId, eta, detector); /* DPM #2.6.12.2-2 */
+                }
+
+                /* correct for water vapour */
+                T_h2o = trans_h2o(bandId, x2, detector); /* DPM #2.6.12.3-2 */
+                break;
+            case bb15: /* no correction */
+                break;
+        }
+
+        return T_o3[bandId] * T_h2o * T_o2; /* DPM #2.6.12.4-2 */
+    }
+
     /**
      * Computes o2 transmission for band {@link #bb12}.
      * Called by {@link #gas_correction}.
@@ -125,15 +189,14 @@ public class GaseousAbsorptionCorrection implements Constants {
         double to2;
 
         if (ib == bb775) {
-            final FractIndex spectralShift760 = new FractIndex();
             /* DPM #2.6.12.2-3,  DPM #2.6.12.2-4, DPM #2.6.12.2-5, DPM #2.6.12.2-6 */
-            Interp.interpCoord(auxData.central_wavelength[bb760][detector],
-                               auxData.spectral_shift_wavelength,
-                               spectralShift760);
+            // the spectral shift index and fraction are precomputed per detector
+            int shiftIndex = auxData.spectral_shift_760_index[detector];
+            double shiftFraction = auxData.spectral_shift_760_fraction[detector];
 
-            if (spectralShift760.index == (PPOL_NUM_SHIFT - 1)) {
-                spectralShift760.index = PPOL_NUM_SHIFT - 2;
-                spectralShift760.fraction = 1.;
+            if (shiftIndex == (PPOL_NUM_SHIFT - 1)) {
+                shiftIndex = PPOL_NUM_SHIFT - 2;
+                shiftFraction = 1.;
             }
 
             double to2_blw = 0.;
@@ -142,12 +205,12 @@ public class GaseousAbsorptionCorrection implements Constants {
 
             for (int k = O2T_POLY_K - 1; k >= 0; k--) {
                 /* DPM #2.6.12.3-2 */
-                to2_blw = R_o2 * to2_blw + auxData.O2coef[spectralShift760.index][k];
+                to2_blw = R_o2 * to2_blw + auxData.O2coef[shiftIndex][k];
                 /* DPM #2.6.12.3-2 */
-                to2_abv = R_o2 * to2_abv + auxData.O2coef[spectralShift760.index + 1][k];
+                to2_abv = R_o2 * to2_abv + auxData.O2coef[shiftIndex + 1][k];
             }
 
-            to2 = (1. - spectralShift760.fraction) * to2_blw + (spectralShift760.fraction) * to2_abv;
+            to2 = (1. - shiftFraction) * to2_blw + (shiftFraction) * to2_abv;
 
         } else {
             to2 = 1.0;    /* DPM #2.6.12.2-3 */
@@ -176,16 +239,14 @@ public class GaseousAbsorptionCorrection implements Constants {
         double th2o;
 
         if (ib == bb705) {
-            final FractIndex spectralShift705 = new FractIndex();
-
             /* DPM #2.1.3-1,2,3,4-b900 */
-            Interp.interpCoord(auxData.central_wavelength[bb705][detector],
-                               auxData.spectral_shift_H2Owavelength,
-                               spectralShift705);
+            // the spectral shift index and fraction are precomputed per detector
+            int shiftIndex = auxData.spectral_shift_705_index[detector];
+            double shiftFraction = auxData.spectral_shift_705_fraction[detector];
 
-            if (spectralShift705.index == (PPOL_NUM_SHIFT - 1)) {
-                spectralShift705.index = PPOL_NUM_SHIFT - 2;
-                spectralShift705.fraction = 1.;
+            if (shiftIndex == (PPOL_NUM_SHIFT - 1)) {
+                shiftIndex = PPOL_NUM_SHIFT - 2;
+                shiftFraction = 1.;
             }
 
             double th2o_blw = 0.;
@@ -193,11 +254,11 @@ public class GaseousAbsorptionCorrection implements Constants {
             th2o = 0.;
 
             for (int k = H2OT_POLY_K - 1; k >= 0; k--) {
-                th2o_blw = R_h2o * th2o_blw + auxData.H2OcoefSpecShift[spectralShift705.index][k]; /* DPM #2.6.12.3-2 */
-                th2o_abv = R_h2o * th2o_abv + auxData.H2OcoefSpecShift[spectralShift705.index + 1][k]; /* DPM #2.6.12.3-2 */
+                th2o_blw = R_h2o * th2o_blw + auxData.H2OcoefSpecShift[shiftIndex][k]; /* DPM #2.6.12.3-2 */
+                th2o_abv = R_h2o * th2o_abv + auxData.H2OcoefSpecShift[shiftIndex + 1][k]; /* DPM #2.6.12.3-2 */
             }
 
-            th2o = (1. - spectralShift705.fraction) * th2o_blw + (spectralShift705.fraction) * th2o_abv;
+            th2o = (1. - shiftFraction) * th2o_blw + (shiftFraction) * th2o_abv;
         } else {
             th2o = 0.;
             for (int k = H2OT_POLY_K - 1; k >= 0; k--) {
@@ -30,13 +30,17 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
 import org.esa.beam.util.BitSetter;
 import org.esa.beam.util.ProductUtils;
 
 import java.awt.Rectangle;
+import java.util.Arrays;
 import java.util.Map;
 
 
@@ -77,6 +81,10 @@ public class GaseousCorrectionOp extends MerisBasisOp implements Constants {
     boolean correctWater = false;
     @Parameter
     boolean exportTg = false;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 
     private Band[] rhoToaBands;
 
@@ -142,32 +150,36 @@ public class GaseousCorrectionOp extends MerisBasisOp implements Constants {
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
         try {
-            Tile detectorIndex = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle);
-			Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), rectangle);
-			Tile vza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), rectangle);
-			Tile altitude = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle);
-			Tile ecmwfOzone = getSourceTile(l1bProduct.getTiePointGrid("ozone"), rectangle);
-			Tile l1Flags = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME), rectangle);
+            final int size = rectangle.width * rectangle.height;
+            int[] detectorIndex = TileAccessor.getSamplesInt(
+                    getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle));
+			MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(l1bProduct, rectangle,
+			                                                                         geometryCacheCapacity);
+			float[] sza = geometry.getSunZenith();
+			double[] airMass = geometry.getAirMass();
+			float[] altitude = TileAccessor.getSamplesFloat(
+			        getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle));
+			float[] ecmwfOzone = TileAccessor.getSamplesFloat(
+			        getSourceTile(l1bProduct.getTiePointGrid("ozone"), rectangle));
+			int[] l1Flags = TileAccessor.getSamplesInt(
+			        getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME), rectangle));
 			
-			Tile[] rhoToa = new Tile[rhoToaBands.length];
+			float[][] rhoToa = new float[rhoToaBands.length][];
 			for (int i = 0; i < rhoToa.length; i++) {
-                rhoToa[i] = getSourceTile(rhoToaBands[i], rectangle);
+                rhoToa[i] = TileAccessor.getSamplesFloat(getSourceTile(rhoToaBands[i], rectangle));
 			}
 			
-			Tile cloudFlags = getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), rectangle);
+			int[] cloudFlags = TileAccessor.getSamplesInt(
+			        getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), rectangle));
 
-            Tile gasFlags = targetTiles.get(flagBand);
-            Tile[] rhoNg = new Tile[rhoNgBands.length];
-            Tile[] tg = null;
+            int[] gasFlags = new int[size];
+            float[][] rhoNg = new float[rhoNgBands.length][size];
+            float[][] tg = null;
             if (exportTg) {
-                tg = new Tile[tgBands.length];
-            }
-            for (int i = 0; i < rhoNgBands.length; i++) {
-                rhoNg[i] = targetTiles.get(rhoNgBands[i]);
-                if (exportTg) {
-                	tg[i] = targetTiles.get(tgBands[i]);
-                }
+                tg = new float[tgBands.length][size];
             }
+            double[] dSumrho = new double[L1_BAND_NUM]; /* accumulator for rho above water */
+            double[] T_o3 = new double[L1_BAND_NUM];   /* ozone transmission */
 
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
                 checkForCancellation();
@@ -176,26 +188,27 @@ public class GaseousCorrectionOp extends MerisBasisOp implements Constants {
                     final int yWinEnd = Math.min(rectangle.y + rectangle.height, y + Constants.SUBWIN_HEIGHT) - 1;
                     boolean correctPixel = false;
 					boolean correctWaterPixel = false;
-					double[] dSumrho = new double[L1_BAND_NUM]; /* accumulator for rho above water */
+					Arrays.fill(dSumrho, 0.0);
 					
 					for (int iy = y; iy <= yWinEnd; iy++) {
-					    for (int ix = x; ix <= xWinEnd; ix++) {
-					        if (!l1Flags.getSampleBit(ix, iy, L1_F_INVALID) &&
-					                !cloudFlags.getSampleBit(ix, iy, CloudClassificationOp.F_CLOUD) &&
-					                (correctWater || altitude.getSampleFloat(ix, iy) >= -50.0 || l1Flags.getSampleBit(ix, iy, L1_F_LAND))) {
+					    int i = (iy - rectangle.y) * rectangle.width + (x - rectangle.x);
+					    for (int ix = x; ix <= xWinEnd; ix++, i++) {
+					        if (!BitSetter.isFlagSet(l1Flags[i], L1_F_INVALID) &&
+					                !BitSetter.isFlagSet(cloudFlags[i], CloudClassificationOp.F_CLOUD) &&
+					                (correctWater || altitude[i] >= -50.0 || BitSetter.isFlagSet(l1Flags[i], L1_F_LAND))) {
 					
 					            correctPixel = true;
-					            gasFlags.setSample(ix, iy, F_DO_CORRECT, true);
+					            gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_DO_CORRECT);
 					
 					            /* v4.2: average radiances for water pixels */
-					            if (!l1Flags.getSampleBit(ix, iy, L1_F_LAND)) {
+					            if (!BitSetter.isFlagSet(l1Flags[i], L1_F_LAND)) {
 					                correctWaterPixel = true;
 					                for (int bandId = bb753; bandId <= bb900; bandId++) {
-					                    dSumrho[bandId] += rhoToa[bandId].getSampleFloat(ix, iy);
+					                    dSumrho[bandId] += rhoToa[bandId][i];
 					                }
 					            }
 					        } else {
-					        	writeBadValue(rhoNg, ix, iy);
+					        	writeBadValue(rhoNg, i);
 					        }
 					    }
 					}
@@ -224,88 +237,79 @@ public class GaseousCorrectionOp extends MerisBasisOp implements Constants {
 					    /* V.2 APPLY GASEOUS ABSORPTION CORRECTION - DPM Step 2.6.12 */
 					
 					    /* ozone transmittance on 4x4 window - step 2.6.12.1 */
-					    double[] T_o3 = new double[L1_BAND_NUM];   /* ozone transmission */
-					    double airMass0 = HelperFunctions.calculateAirMass(vza.getSampleFloat(x, y), sza.getSampleFloat(x, y));
-					    trans_o3(airMass0, ecmwfOzone.getSampleFloat(x, y), T_o3);
+					    final int geometryIndex = geometry.getIndex(x, y);
+					    double airMass0 = airMass[geometryIndex];
+					    gasCor.trans_o3(airMass0, ecmwfOzone[geometryIndex], T_o3);
 					
 					    /* process each pixel */
 					    for (int iy = y; iy <= yWinEnd; iy++) {
-					        for (int ix = x; ix <= xWinEnd; ix++) {
-					            if (gasFlags.getSampleBit(ix, iy, F_DO_CORRECT)) {
+					        int i = (iy - rectangle.y) * rectangle.width + (x - rectangle.x);
+					        for (int ix = x; ix <= xWinEnd; ix++, i++) {
+					            if (BitSetter.isFlagSet(gasFlags[i], F_DO_CORRECT)) {
                                     /* band ratios eta, x2 */
 					                double eta;
                                     double x2;
 
                                     /* test SZA - v4.2 */
-					                if (sza.getSampleFloat(ix, iy) > auxData.TETAS_LIM) {
-					                    gasFlags.setSample(ix, iy, F_SUN70, true);
+					                if (sza[i] > auxData.TETAS_LIM) {
+					                    gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_SUN70);
 					                }
 					
 					                /* gaseous transmittance gasCor : writes rho-ag field - v4.2 */
 					                /* do band ratio for land pixels with full exception handling */
-					                if (l1Flags.getSampleBit(ix, iy, L1_F_LAND)) {
-					                    if ((rhoToa[bb753].getSampleFloat(ix, iy) > 0.0) && (rhoToa[bb760].getSampleFloat(ix, iy) > 0.0)) {
-					                        eta = rhoToa[bb760].getSampleFloat(ix, iy) / rhoToa[bb753].getSampleFloat(ix, iy);    //o2
+					                if (BitSetter.isFlagSet(l1Flags[i], L1_F_LAND)) {
+					                    if ((rhoToa[bb753][i] > 0.0) && (rhoToa[bb760][i] > 0.0)) {
+					                        eta = rhoToa[bb760][i] / rhoToa[bb753][i];    //o2
 					                    } else {
 					                        eta = 1.0;
-					                        gasFlags.setSample(ix, iy, F_ORINP0, true);
+					                        gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_ORINP0);
 					                    }
 					                    /* DPM #2.6.12.3-1 */
-					                    if ((rhoToa[bb890].getSampleFloat(ix, iy) > 0.0) && (rhoToa[bb900].getSampleFloat(ix, iy) > 0.0)) {
-					                        x2 = rhoToa[bb900].getSampleFloat(ix, iy) / rhoToa[bb890].getSampleFloat(ix, iy);   //h2o
+					                    if ((rhoToa[bb890][i] > 0.0) && (rhoToa[bb900][i] > 0.0)) {
+					                        x2 = rhoToa[bb900][i] / rhoToa[bb890][i];   //h2o
 					                    } else {
 					                        x2 = 1.0;
-					                        gasFlags.setSample(ix, iy, F_ORINP0, true);
+					                        gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_ORINP0);
 					                    }
 					                } else { /* water pixels */
 					                    eta = etaAverageForWater;
 					                    x2 = x2AverageForWater;
-					                    gasFlags.setSample(ix, iy, F_ORINP0, iOrinp0);
+					                    gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_ORINP0, iOrinp0);
 					                }
-                                    int status = gasCor.gas_correction(ix, iy, T_o3, eta, x2,
+                                    int status = gasCor.gas_correction(i, T_o3, eta, x2,
                                                                        rhoToa,
-                                                                       detectorIndex.getSampleInt(ix, iy),
+                                                                       detectorIndex[i],
                                                                        rhoNg,
                                                                        tg,
-                                                                       cloudFlags.getSampleBit(ix, iy,
-                                                                                               CloudClassificationOp.F_PCD_POL_P));
+                                                                       BitSetter.isFlagSet(cloudFlags[i],
+                                                                                           CloudClassificationOp.F_PCD_POL_P));
 
                                     /* exception handling */
-					                gasFlags.setSample(ix, iy, F_OROUT0, status != 0);
+					                gasFlags[i] = BitSetter.setFlag(gasFlags[i], F_OROUT0, status != 0);
 					            } else {
-					                writeBadValue(rhoNg, ix, iy);
+					                writeBadValue(rhoNg, i);
 					            }
 					        }
 					    }
 					}
                 }
             }
+
+            targetTiles.get(flagBand).setSamples(gasFlags);
+            for (int i = 0; i < rhoNgBands.length; i++) {
+                targetTiles.get(rhoNgBands[i]).setSamples(rhoNg[i]);
+                if (exportTg) {
+                    targetTiles.get(tgBands[i]).setSamples(tg[i]);
+                }
+            }
         } catch (Exception e) {
             throw new OperatorException(e);
         }
     }
 
-    /**
-     * Computes the ozone transmittance for a given pixel. This routine should be called every 4x4 pixels.
-     * <p/>
-     * Reference: DPM equation #2.6.12.1-2<br>
-     * Uses: <br>
-     * {@link L2AuxData#tauO3_norm variables.tauO3_norm} <br>
-     *
-     * @param airMass air mass
-     * @param ozone   total ozone contents
-     * @param T_o3    ozone optical thickness in 15 bands
-     */
-    private void trans_o3(double airMass, double ozone, double[] T_o3) {
-        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
-            /* DPM #2.6.12.1-2 */
-            T_o3[bandId] = Math.exp(-ozone / 1000.0 * airMass * auxData.tauO3_norm[bandId]);
-        }
-    }
-
-    private void writeBadValue(Tile[] rhoNg, int x, int y) {
+    private void writeBadValue(float[][] rhoNg, int index) {
         for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
-            rhoNg[bandId].setSample(x, y, BAD_VALUE);
+            rhoNg[bandId][index] = BAD_VALUE;
         }
     }
 
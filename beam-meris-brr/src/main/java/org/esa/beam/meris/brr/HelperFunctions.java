@@ -1,5 +1,6 @@
 package org.esa.beam.meris.brr;
 
+import org.esa.beam.util.math.FastMath;
 import org.esa.beam.util.math.MathUtils;
 
 public class HelperFunctions {
@@ -17,8 +18,18 @@ public class HelperFunctions {
     }
 
     public static float correctEcmwfPressure(float ecmwfPressure, float altitude, double pressScaleHeight) {
+        return correctEcmwfPressure(ecmwfPressure, altitude, pressScaleHeight, false);
+    }
+
+    /**
+     * @param fastMath if <code>true</code>, {@link FastMath} is used
+     * @see #correctEcmwfPressure(float, float, double)
+     */
+    public static float correctEcmwfPressure(float ecmwfPressure, float altitude, double pressScaleHeight,
+                                             boolean fastMath) {
         // ECMWF pressure is only corrected for positive altitudes and only for land pixels */
-        double factor = Math.exp(-Math.max(0.0, altitude) / pressScaleHeight);
+        final double exponent = -Math.max(0.0, altitude) / pressScaleHeight;
+        double factor = fastMath ? FastMath.exp(exponent) : Math.exp(exponent);
         return (float) (ecmwfPressure * factor);
     }
 
@@ -32,4 +43,12 @@ public class HelperFunctions {
     public static double computeAzimuthDifference(final double vaa, final double saa) {
         return MathUtils.RTOD * Math.acos(Math.cos(MathUtils.DTOR * (vaa - saa)));
     }
+
+    /**
+     * @param fastMath if <code>true</code>, {@link FastMath#azimuthDifference(double, double)} is used
+     * @see #computeAzimuthDifference(double, double)
+     */
+    public static double computeAzimuthDifference(final double vaa, final double saa, boolean fastMath) {
+        return fastMath ? FastMath.azimuthDifference(vaa, saa) : computeAzimuthDifference(vaa, saa);
+    }
 }
@@ -26,12 +26,15 @@ import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.OperatorSpi;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
+import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
 import org.esa.beam.util.BitSetter;
 import org.esa.beam.util.math.FractIndex;
 import org.esa.beam.util.math.Interp;
@@ -66,6 +69,10 @@ public class LandClassificationOp extends MerisBasisOp implements Constants {
     private Product gasCorProduct;
     @TargetProduct
     private Product targetProduct;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 
     @Override
     public void initialize() throws OperatorException {
@@ -103,10 +110,12 @@ public class LandClassificationOp extends MerisBasisOp implements Constants {
     	
     	Rectangle rectangle = targetTile.getRectangle();
         try {
-            Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), rectangle);
-			Tile vza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), rectangle);
-			Tile saa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), rectangle);
-			Tile vaa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), rectangle);
+            final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(l1bProduct, rectangle,
+                                                                                           geometryCacheCapacity);
+            final float[] sza = geometry.getSunZenith();
+            final float[] vza = geometry.getViewZenith();
+            final float[] saa = geometry.getSunAzimuth();
+            final double[] deltaAzimuth = geometry.getDeltaAzimuth();
 			Tile windu = getSourceTile(l1bProduct.getTiePointGrid("zonal_wind"), rectangle);
 			Tile windv = getSourceTile(l1bProduct.getTiePointGrid("merid_wind"), rectangle);
 			Tile l1Flags = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME), rectangle);
@@ -145,34 +154,70 @@ public class LandClassificationOp extends MerisBasisOp implements Constants {
             final double[] r7thresh_tab_0 = auxData.r7thresh.getTab(0);
             final double[] r7thresh_tab_1 = auxData.r7thresh.getTab(1);
             final double[] r7thresh_tab_2 = auxData.r7thresh.getTab(2);
-            final Object r7threshArray = auxData.r7thresh.getJavaArray();
-            final Object r13threshArray = auxData.r13thresh.getJavaArray();
 
-            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
-                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x += Constants.SUBWIN_WIDTH) {
+            // geometry at the window corners of one row of 4x4 windows, interpolation coordinates are computed per row
+            final int numWindows = (rectangle.width + Constants.SUBWIN_WIDTH - 1) / Constants.SUBWIN_WIDTH;
+            final double[] szaW = new double[numWindows];
+            final double[] vzaW = new double[numWindows];
+            final double[] deltaAzimuthW = new double[numWindows];
+            final double[] windmW = new double[numWindows];
+            final double[] chiwW = new double[numWindows];
+            final CoordinateRow szaR7 = new CoordinateRow(numWindows);
+            final CoordinateRow vzaR7 = new CoordinateRow(numWindows);
+            final CoordinateRow deltaAzimuthR7 = new CoordinateRow(numWindows);
+            final CoordinateRow chiwRog = new CoordinateRow(numWindows);
+            final CoordinateRow vzaRog = new CoordinateRow(numWindows);
+            final CoordinateRow deltaAzimuthRog = new CoordinateRow(numWindows);
+            final CoordinateRow windmRog = new CoordinateRow(numWindows);
+            final CoordinateRow szaRog = new CoordinateRow(numWindows);
+            final FractIndex[] r7thresh_Index = FractIndex.createArray(3);  /* v4.4 */
+            final FractIndex[] rogIndex = FractIndex.createArray(5);
 
+            for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
+                for (int w = 0; w < numWindows; w++) {
+                    final int x = rectangle.x + w * Constants.SUBWIN_WIDTH;
+                    final int geometryIndex = geometry.getIndex(x, y);
 					/* v7: compute Glint reflectance here (only if there are water/land pixels) */
 					/* first wind modulus at window corner */
                     double windm = windu.getSampleFloat(x, y) * windu.getSampleFloat(x, y);
 					windm += windv.getSampleFloat(x, y) * windv.getSampleFloat(x, y);
-					windm = Math.sqrt(windm);
+					windmW[w] = Math.sqrt(windm);
 					/* then wind azimuth */
 					double phiw = azimuth(windu.getSampleFloat(x, y), windv.getSampleFloat(x, y));
 					/* and "scattering" angle */
-					double chiw = MathUtils.RTOD * (Math.acos(Math.cos(saa.getSampleFloat(x, y) - phiw)));
-					double deltaAzimuth = HelperFunctions.computeAzimuthDifference(vaa.getSampleFloat(x, y), saa.getSampleFloat(x, y));
+					chiwW[w] = MathUtils.RTOD * (Math.acos(Math.cos(saa[geometryIndex] - phiw)));
+					deltaAzimuthW[w] = deltaAzimuth[geometryIndex];
+                    szaW[w] = sza[geometryIndex];
+                    vzaW[w] = vza[geometryIndex];
+                }
+                /* set up threshold for land-water discrimination */
+                szaR7.interpCoord(szaW, r7thresh_tab_0);
+                vzaR7.interpCoord(vzaW, r7thresh_tab_1);
+                /* take azimuth difference into account - v4.4 */
+                deltaAzimuthR7.interpCoord(deltaAzimuthW, r7thresh_tab_2);
+                chiwRog.interpCoord(chiwW, auxData.rog.getTab(0));
+                vzaRog.interpCoord(vzaW, auxData.rog.getTab(1));
+                deltaAzimuthRog.interpCoord(deltaAzimuthW, auxData.rog.getTab(2));
+                windmRog.interpCoord(windmW, auxData.rog.getTab(3));
+                szaRog.interpCoord(szaW, auxData.rog.getTab(4));
+
+                for (int w = 0; w < numWindows; w++) {
+                    final int x = rectangle.x + w * Constants.SUBWIN_WIDTH;
+
 					/* allows to retrieve Glint reflectance for wurrent geometry and wind */
-					double rhoGlint = glintRef(sza.getSampleFloat(x, y), vza.getSampleFloat(x, y), deltaAzimuth, windm, chiw);
-					
-					FractIndex[] r7thresh_Index = FractIndex.createArray(3);  /* v4.4 */
-					/* set up threshold for land-water discrimination */
-                    Interp.interpCoord(sza.getSampleFloat(x, y), r7thresh_tab_0, r7thresh_Index[0]);
-					Interp.interpCoord(vza.getSampleFloat(x, y), r7thresh_tab_1, r7thresh_Index[1]);
-					/* take azimuth difference into account - v4.4 */
-					Interp.interpCoord(deltaAzimuth, r7thresh_tab_2, r7thresh_Index[2]);
+                    chiwRog.get(w, rogIndex[0]);
+                    vzaRog.get(w, rogIndex[1]);
+                    deltaAzimuthRog.get(w, rogIndex[2]);
+                    windmRog.get(w, rogIndex[3]);
+                    szaRog.get(w, rogIndex[4]);
+					double rhoGlint = auxData.rog.interpolate(rogIndex);
+
+                    szaR7.get(w, r7thresh_Index[0]);
+                    vzaR7.get(w, r7thresh_Index[1]);
+                    deltaAzimuthR7.get(w, r7thresh_Index[2]);
 					/* DPM #2.6.26-1a */
-                    final double r7thresh_val = Interp.interpolate(r7threshArray, r7thresh_Index);
-					final double r13thresh_val = Interp.interpolate(r13threshArray, r7thresh_Index);
+                    final double r7thresh_val = auxData.r7thresh.interpolate(r7thresh_Index);
+					final double r13thresh_val = auxData.r13thresh.interpolate(r7thresh_Index);
 					
 					/* process each pixel */
                     final int xWinEnd = Math.min(rectangle.x + rectangle.width, x + Constants.SUBWIN_WIDTH) - 1;
@@ -245,28 +290,26 @@ public class LandClassificationOp extends MerisBasisOp implements Constants {
     }
 
     /**
-     * Function glint_ref: interpolate glint reflectance from look-up table
-     * inputs:
-     * output:
-     * return value:
-     * success code: 0 OK
-     * Reference: DPM L2 section 7.3.1 step 2.6.5.1.1
-     * called by:
-     * confidence
-     * calls:
-     * InterpCoord
-     * GenericInterp
+     * The fractional indexes of the window corner co-ordinates of one row of 4x4 windows
+     * into a tabulated LUT axis (glint_ref and threshold interpolation, DPM L2 section 7.3.1 step 2.6.5.1.1).
      */
-    private double glintRef(double thetas, double thetav, double delta, double windm, double chiw) {
-        FractIndex[] rogIndex = FractIndex.createArray(5);
-
-        Interp.interpCoord(chiw, auxData.rog.getTab(0), rogIndex[0]);
-        Interp.interpCoord(thetav, auxData.rog.getTab(1), rogIndex[1]);
-        Interp.interpCoord(delta, auxData.rog.getTab(2), rogIndex[2]);
-        Interp.interpCoord(windm, auxData.rog.getTab(3), rogIndex[3]);
-        Interp.interpCoord(thetas, auxData.rog.getTab(4), rogIndex[4]);
-        double rhoGlint = Interp.interpolate(auxData.rog.getJavaArray(), rogIndex);
-        return rhoGlint;
+    static class CoordinateRow {
+        private final int[] index;
+        private final double[] fraction;
+
+        CoordinateRow(int numWindows) {
+            index = new int[numWindows];
+            fraction = new double[numWindows];
+        }
+
+        void interpCoord(double[] x, double[] tab) {
+            Interp.interpCoord(x, 0, index.length, tab, index, fraction);
+        }
+
+        void get(int window, FractIndex fractIndex) {
+            fractIndex.index = index[window];
+            fractIndex.fraction = fraction[window];
+        }
     }
 
     /**
@@ -281,7 +324,7 @@ public class LandClassificationOp extends MerisBasisOp implements Constants {
      * mission convention document PO-IS-ESA-GS-0561, para 6.3.4
      * L2 DPM step 2.6.5.1.1
      */
-    private double azimuth(double x, double y) {
+    static double azimuth(double x, double y) {
         if (y > 0.0) {
             // DPM #2.6.5.1.1-1
             return (MathUtils.RTOD * Math.atan(x / y));
@@ -26,20 +26,26 @@ import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.OperatorSpi;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.framework.gpf.annotations.OperatorMetadata;
+import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.jai.ResolutionLevel;
 import org.esa.beam.jai.VirtualBandOpImage;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataException;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
 import org.esa.beam.util.ProductUtils;
 import org.esa.beam.util.math.MathUtils;
 
 import java.awt.Rectangle;
-import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
 
 
 @OperatorMetadata(alias = "Meris.Rad2Refl",
@@ -58,25 +64,33 @@ public class Rad2ReflOp extends MerisBasisOp implements Constants {
     private Product sourceProduct;
     @TargetProduct
     private Product targetProduct;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 
     private transient L2AuxData auxData;
     private transient RasterDataNode detectorIndexBand;
-    private transient RasterDataNode sunZenihTPG;
+    private transient Band[] radianceBands;
+    private transient Band[] rhoToaBands;
     private VirtualBandOpImage invalidImage;
+    private final ThreadLocal<int[]> detectorIndexBuffer = new ThreadLocal<int[]>();
 
     @Override
     public void initialize() throws OperatorException {
         try {
-            auxData = L2AuxDataProvider.getInstance().getAuxdata(sourceProduct);
+            auxData = L2AuxDataProvider.getInstance().getAuxdata(sourceProduct,
+                                                                EnumSet.of(L2AuxData.Section.CONFIGURATION));
         } catch (L2AuxDataException e) {
             throw new OperatorException(e.getMessage(), e);
         }
 
         detectorIndexBand = sourceProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME);
-        sunZenihTPG = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
         invalidImage = VirtualBandOpImage.createMask("l1_flags.INVALID", sourceProduct, ResolutionLevel.MAXRES);
 
         targetProduct = createCompatibleProduct(sourceProduct, "MER", "MER_L2");
+        final List<Band> radianceBandList = new ArrayList<Band>();
+        final List<Band> rhoToaBandList = new ArrayList<Band>();
         int spectralBandIndex = 0;
         for (int i = 0; i < sourceProduct.getNumBands(); i++) {
             if (sourceProduct.getBandAt(i).getName().startsWith(RADIANCE_BAND_PREFIX)) {
@@ -86,39 +100,85 @@ public class Rad2ReflOp extends MerisBasisOp implements Constants {
                 ProductUtils.copySpectralBandProperties(radianceBand, rhoToaBand);
                 rhoToaBand.setNoDataValueUsed(true);
                 rhoToaBand.setNoDataValue(BAD_VALUE);
+                radianceBandList.add(radianceBand);
+                rhoToaBandList.add(rhoToaBand);
                 spectralBandIndex++;
             }
         }
+        radianceBands = radianceBandList.toArray(new Band[radianceBandList.size()]);
+        rhoToaBands = rhoToaBandList.toArray(new Band[rhoToaBandList.size()]);
         if (sourceProduct.getPreferredTileSize() != null) {
             targetProduct.setPreferredTileSize(sourceProduct.getPreferredTileSize());
         }
     }
 
     @Override
-    public void computeTile(Band targetBand, Tile targetTile, ProgressMonitor pm) throws OperatorException {
-        final Rectangle rectangle = targetTile.getRectangle();
-        Tile detectorTile = getSourceTile(detectorIndexBand, rectangle);
-        Tile sza = getSourceTile(sunZenihTPG, rectangle);
-        Raster isInvalid = invalidImage.getData(rectangle);
-        final int spectralBandIndex = targetBand.getSpectralBandIndex();
-        final String srcBandName = RADIANCE_BAND_PREFIX + "_" + (spectralBandIndex + 1);
-        final Tile radianceTile = getSourceTile(sourceProduct.getBand(srcBandName), rectangle);
-        final double seasonal_factor = auxData.seasonal_factor;
-
-        for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-                if (isInvalid.getSample(x, y, 0) != 0) {
-                    targetTile.setSample(x, y, BAD_VALUE);
-                } else {
-                    final double constantTerm = (Math.PI / Math.cos(sza.getSampleFloat(x, y) * MathUtils.DTOR)) * seasonal_factor;
-                    final int detectorIndex = detectorTile.getSampleInt(x, y);
-                    // DPM #2.1.4-1
-                    final float aRhoToa = (float) ((radianceTile.getSampleFloat(x, y) * constantTerm) / auxData.detector_solar_irradiance[spectralBandIndex][detectorIndex]);
-                    targetTile.setSample(x, y, aRhoToa);
+    public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm)
+            throws OperatorException {
+        pm.beginTask("Converting radiances...", rhoToaBands.length);
+        try {
+            final int size = rectangle.width * rectangle.height;
+            int[] detectorIndexSamples = detectorIndexBuffer.get();
+            if (detectorIndexSamples == null || detectorIndexSamples.length != size) {
+                detectorIndexSamples = new int[size];
+                detectorIndexBuffer.set(detectorIndexSamples);
+            }
+            final int[] detectorIndex = TileAccessor.getSamplesInt(getSourceTile(detectorIndexBand, rectangle),
+                                                                   detectorIndexSamples);
+            final int[] isInvalid = invalidImage.getData(rectangle).getSamples(rectangle.x, rectangle.y,
+                                                                                rectangle.width, rectangle.height,
+                                                                                0, (int[]) null);
+            // pixels are in the same order as the geometry of the rectangle
+            final double[] mus = MerisGeometryProvider.getInstance().getGeometry(sourceProduct, rectangle,
+                                                                                 geometryCacheCapacity).getMus();
+            final double seasonal_factor = auxData.seasonal_factor;
+
+            // the band independent terms, computed once for all bands
+            final double[] constantTerm = new double[size];
+            for (int i = 0; i < size; i++) {
+                // equal to computeConstantTerm(sza, seasonal_factor), the cosine is shared with the other operators
+                constantTerm[i] = (Math.PI / mus[i]) * seasonal_factor;
+            }
+
+            for (int bandIndex = 0; bandIndex < rhoToaBands.length; bandIndex++) {
+                final float[] radiance = TileAccessor.getSamplesFloat(
+                        getSourceTile(radianceBands[bandIndex], rectangle));
+                final double[] solarIrradianceInv = auxData.detector_solar_irradiance_inv[bandIndex];
+                final float[] rhoToa = new float[size];
+                for (int i = 0; i < size; i++) {
+                    if (isInvalid[i] != 0) {
+                        rhoToa[i] = BAD_VALUE;
+                    } else {
+                        rhoToa[i] = computeRhoToa(radiance[i], constantTerm[i], solarIrradianceInv[detectorIndex[i]]);
+                    }
                 }
+                targetTiles.get(rhoToaBands[bandIndex]).setSamples(rhoToa);
+                pm.worked(1);
             }
+        } finally {
+            pm.done();
         }
+    }
+
+    /**
+     * @param sza            the sun zenith angle [degree]
+     * @param seasonalFactor the seasonal factor of the sun-earth distance
+     * @return the band independent term of the radiance to reflectance conversion
+     */
+    static double computeConstantTerm(float sza, double seasonalFactor) {
+        return (Math.PI / Math.cos(sza * MathUtils.DTOR)) * seasonalFactor;
+    }
 
+    /**
+     * @param radiance           the TOA radiance
+     * @param constantTerm       the term computed by {@link #computeConstantTerm(float, double)}
+     * @param solarIrradianceInv the reciprocal of the solar irradiance of the band and detector, see
+     *                           {@link org.esa.beam.meris.l2auxdata.L2AuxData#detector_solar_irradiance_inv}
+     * @return the TOA reflectance
+     */
+    static float computeRhoToa(float radiance, double constantTerm, double solarIrradianceInv) {
+        // DPM #2.1.4-1
+        return (float) ((radiance * constantTerm) * solarIrradianceInv);
     }
 
     public static class Spi extends OperatorSpi {
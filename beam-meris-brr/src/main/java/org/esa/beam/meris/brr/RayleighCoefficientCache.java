@@ -0,0 +1,238 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.util.math.FastMath;
+import org.esa.beam.util.math.MathUtils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * A bounded cache of the Rayleigh coefficients of a 4x4 window, keyed by the quantized
+ * geometry (sun zenith, view zenith, azimuth difference) and the surface pressure.
+ * <p/>
+ * The coefficients are always computed for the centre of the quantization bin, so the result
+ * for a given geometry does not depend on the order in which tiles are processed.
+ * When the capacity is exceeded, the least recently used entry is evicted. Each entry is computed
+ * once, by the first caller; concurrent callers of the same entry wait for its result.
+ * <p/>
+ * Instances are thread safe and meant to be shared by all tiles of one product.
+ */
+public class RayleighCoefficientCache implements Constants {
+
+    private final RayleighCorrection rayleighCorrection;
+    private final double angleBinWidth;
+    private final double pressureBinWidth;
+    private final Map<Key, FutureTask<Coefficients>> map;
+
+    /**
+     * Creates a new cache.
+     *
+     * @param rayleighCorrection the module used to compute the coefficients on a cache miss
+     * @param angleBinWidth      the bin width used to quantize the angles [degree]
+     * @param pressureBinWidth   the bin width used to quantize the pressure [hPa]
+     * @param capacity           the maximum number of entries
+     */
+    public RayleighCoefficientCache(RayleighCorrection rayleighCorrection,
+                                    double angleBinWidth, double pressureBinWidth, final int capacity) {
+        if (angleBinWidth <= 0.0 || pressureBinWidth <= 0.0) {
+            throw new IllegalArgumentException("bin widths must be > 0");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0");
+        }
+        this.rayleighCorrection = rayleighCorrection;
+        this.angleBinWidth = angleBinWidth;
+        this.pressureBinWidth = pressureBinWidth;
+        this.map = new LinkedHashMap<Key, FutureTask<Coefficients>>(Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, FutureTask<Coefficients>> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Gets the Rayleigh coefficients for the given geometry and pressure. The returned arrays
+     * are shared and must not be modified by the caller.
+     *
+     * @param sunZenith    sun zenith angle [degree]
+     * @param viewZenith   view zenith angle [degree]
+     * @param deltaAzimuth azimuth difference [degree]
+     * @param press        surface pressure [hPa]
+     * @param workspace    the workspace of the calling thread, used on a cache miss
+     * @return the coefficients computed for the centre of the matching bin
+     */
+    public Coefficients get(double sunZenith, double viewZenith, double deltaAzimuth, double press,
+                            final RayleighCorrection.Workspace workspace) {
+        final Key key = new Key((int) Math.round(sunZenith / angleBinWidth),
+                                (int) Math.round(viewZenith / angleBinWidth),
+                                (int) Math.round(deltaAzimuth / angleBinWidth),
+                                (int) Math.round(press / pressureBinWidth));
+        FutureTask<Coefficients> task;
+        boolean owner = false;
+        synchronized (map) {
+            task = map.get(key);
+            if (task == null) {
+                task = new FutureTask<Coefficients>(new Callable<Coefficients>() {
+                    @Override
+                    public Coefficients call() {
+                        return compute(key, workspace);
+                    }
+                });
+                map.put(key, task);
+                owner = true;
+            }
+        }
+        if (owner) {
+            // computed once by the first caller, concurrent callers of the same key wait for the result
+            task.run();
+        }
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    // the computation is short and must not be abandoned half way
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            // a later request shall try again
+            synchronized (map) {
+                if (map.get(key) == task) {
+                    map.remove(key);
+                }
+            }
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * @return the current number of cached entries
+     */
+    public int size() {
+        synchronized (map) {
+            return map.size();
+        }
+    }
+
+    private Coefficients compute(Key key, RayleighCorrection.Workspace workspace) {
+        final Coefficients c = new Coefficients();
+        compute(rayleighCorrection,
+                key.sza * angleBinWidth,
+                key.vza * angleBinWidth,
+                key.deltaAzimuth * angleBinWidth,
+                key.press * pressureBinWidth, c, workspace);
+        return c;
+    }
+
+    /**
+     * Computes the Rayleigh coefficients for the given geometry and pressure, without caching.
+     *
+     * @param rayleighCorrection the module used to compute the coefficients
+     * @param sunZenith          sun zenith angle [degree]
+     * @param viewZenith         view zenith angle [degree]
+     * @param deltaAzimuth       azimuth difference [degree]
+     * @param press              surface pressure [hPa]
+     * @param c                  the coefficients, output
+     * @param workspace          the workspace of the calling thread
+     */
+    static void compute(RayleighCorrection rayleighCorrection,
+                        double sunZenith, double viewZenith, double deltaAzimuth, double press,
+                        Coefficients c, RayleighCorrection.Workspace workspace) {
+        final double szaRad = sunZenith * MathUtils.DTOR;
+        final double vzaRad = viewZenith * MathUtils.DTOR;
+        final double sins;
+        final double sinv;
+        final double mus;
+        final double muv;
+        if (rayleighCorrection.isFastMath()) {
+            sins = FastMath.sin(szaRad);
+            sinv = FastMath.sin(vzaRad);
+            mus = FastMath.cos(szaRad);
+            muv = FastMath.cos(vzaRad);
+        } else {
+            sins = Math.sin(szaRad);
+            sinv = Math.sin(vzaRad);
+            mus = Math.cos(szaRad);
+            muv = Math.cos(vzaRad);
+        }
+        final double airMass = HelperFunctions.calculateAirMassMusMuv(muv, mus);
+
+        final double[] phaseR = workspace.getPhaseRayl();
+        rayleighCorrection.phase_rayleigh(mus, muv, sins, sinv, phaseR);
+        rayleighCorrection.tau_rayleigh(press, c.tauR);
+        rayleighCorrection.ref_rayleigh(deltaAzimuth, sunZenith, viewZenith, mus, muv, airMass, phaseR, c.tauR, c.rhoR,
+                                        workspace);
+        rayleighCorrection.trans_rayleigh(mus, c.tauR, c.transRs);
+        rayleighCorrection.trans_rayleigh(muv, c.tauR, c.transRv);
+        rayleighCorrection.sphAlb_rayleigh(c.tauR, c.sphAlbR, workspace);
+    }
+
+    /**
+     * The Rayleigh coefficients of one cache entry, one value per band.
+     */
+    public static class Coefficients {
+        // rayleigh optical thickness, tauR0 in DPM
+        public final double[] tauR = new double[L1_BAND_NUM];
+        // rayleigh reflectance, rhoR4x4 in DPM
+        public final double[] rhoR = new double[L1_BAND_NUM];
+        // rayleigh down transmittance, T_R_thetas_4x4
+        public final double[] transRs = new double[L1_BAND_NUM];
+        // rayleigh up transmittance, T_R_thetav_4x4
+        public final double[] transRv = new double[L1_BAND_NUM];
+        // rayleigh spherical albedo, SR_4x4
+        public final double[] sphAlbR = new double[L1_BAND_NUM];
+    }
+
+    private static final class Key {
+
+        private final int sza;
+        private final int vza;
+        private final int deltaAzimuth;
+        private final int press;
+
+        private Key(int sza, int vza, int deltaAzimuth, int press) {
+            this.sza = sza;
+            this.vza = vza;
+            this.deltaAzimuth = deltaAzimuth;
+            this.press = press;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return sza == key.sza && vza == key.vza && deltaAzimuth == key.deltaAzimuth && press == key.press;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sza;
+            result = 31 * result + vza;
+            result = 31 * result + deltaAzimuth;
+            result = 31 * result + press;
+            return result;
+        }
+    }
+}
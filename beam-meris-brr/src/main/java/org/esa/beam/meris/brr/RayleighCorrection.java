@@ -9,8 +9,10 @@ package org.esa.beam.meris.brr;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.util.math.FastMath;
 import org.esa.beam.util.math.FractIndex;
 import org.esa.beam.util.math.Interp;
+import org.esa.beam.util.math.LUT;
 
 public class RayleighCorrection implements Constants {
 
@@ -18,6 +20,7 @@ public class RayleighCorrection implements Constants {
     static final int[] BANDS_TO_NOT_CORRECT = new int[]{bb11, bb15};
 
     private L2AuxData auxdata;
+    private boolean fastMath;
 
     /**
      * Constructs the module
@@ -27,6 +30,18 @@ public class RayleighCorrection implements Constants {
         auxdata = auxData;
     }
 
+    public boolean isFastMath() {
+        return fastMath;
+    }
+
+    /**
+     * @param fastMath if <code>true</code>, the trigonometric and exponential functions of {@link FastMath}
+     *                 are used
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
     /**
      * Computes Rayleigh reflectance for all bands for a given geometry and pressure.
      * <p/>
@@ -47,43 +62,63 @@ public class RayleighCorrection implements Constants {
     public void ref_rayleigh(double delta_azimuth, double sun_zenith, double view_zenith,
                              double mus, double muv, double airMass,
                              double[] phaseRayl, double[] tauRayl, double[] refRayl) {
+        ref_rayleigh(delta_azimuth, sun_zenith, view_zenith, mus, muv, airMass, phaseRayl, tauRayl, refRayl,
+                     new Workspace());
+    }
 
-        /**
-         * Rayleigh reflectance Fourier components.
-         */
-        final double[] rhoRayl = new double[RAYSCATT_NUM_SER];
-        /**
-         * Polynomial coeff for computation, a(s) in DPM.
-         */
-        final double[][] abcd = new double[RAYSCATT_NUM_SER][RAYSCATT_NUM_ORD];
-        /**
-         * Interp. coordinates into table {@link L2AuxData#Rayscatt_coeff_s}.
-         */
-        final FractIndex[] ref_rayleigh_i = FractIndex.createArray(2);
+    /**
+     * Computes Rayleigh reflectance for all bands for a given geometry and pressure, using the
+     * scratch buffers of the given workspace instead of allocating new ones.
+     *
+     * @param delta_azimuth Azimuth difference (deltaphi)
+     * @param sun_zenith    Sun zenith angle (thetas)
+     * @param view_zenith   View zenith angle (thetav)
+     * @param mus           Cosine of Sun zenith angle
+     * @param muv           Cosine of view zenith angle
+     * @param airMass       Air mass (M)
+     * @param phaseRayl     Rayleigh phase function Fourier components (PR(s))
+     * @param tauRayl       Rayleigh optical thickness (tauR0)
+     * @param refRayl       Rayleigh reflectance for all bands (rhoR_4x4)
+     * @param workspace     the workspace of the calling thread
+     * @see #ref_rayleigh(double, double, double, double, double, double, double[], double[], double[])
+     */
+    public void ref_rayleigh(double delta_azimuth, double sun_zenith, double view_zenith,
+                             double mus, double muv, double airMass,
+                             double[] phaseRayl, double[] tauRayl, double[] refRayl,
+                             Workspace workspace) {
+
+        final double[] rhoRayl = workspace.rhoRayl;
+        final double[][] abcd = workspace.abcd;
+        final FractIndex[] ref_rayleigh_i = workspace.ref_rayleigh_i;
 
         FractIndex tsi = ref_rayleigh_i[0];         /* interp coordinates for thetas in LUT scale */
         FractIndex tvi = ref_rayleigh_i[1];          /* interp coordinates for thetav in LUT scale */
 
-        double mud = Math.cos(RAD * delta_azimuth); /* used for all bands, compute once */
+        /* used for all bands, compute once */
+        double mud = fastMath ? FastMath.cos(RAD * delta_azimuth) : Math.cos(RAD * delta_azimuth);
         double mu2d = 2.0 * mud * mud - 1.0;
 
         /* angle interpolation coordinates */
         Interp.interpCoord(sun_zenith, auxdata.Rayscatt_coeff_s.getTab(2), tsi); /* fm 15/5/97 */
         Interp.interpCoord(view_zenith, auxdata.Rayscatt_coeff_s.getTab(3), tvi);
 
-        float[][][][] Rayscatt_coeff_s = (float[][][][]) auxdata.Rayscatt_coeff_s.getJavaArray();
+        final LUT Rayscatt_coeff_s = auxdata.Rayscatt_coeff_s;
+        final int ordStride = Rayscatt_coeff_s.getStride(0);
+        final int serStride = Rayscatt_coeff_s.getStride(1);
         /* pre-computation of multiple scatt coefficients, wavelength independent */
         for (int is = 0; is < RAYSCATT_NUM_SER; is++) {
             /* DPM #2.1.17-4 to 2.1.17-7 */
             final double[] lhLocal_abcd_is = abcd[is];
             for (int ik = 0; ik < RAYSCATT_NUM_ORD; ik++) {
-                lhLocal_abcd_is[ik] = Interp.interpolate(Rayscatt_coeff_s[ik][is], ref_rayleigh_i);
+                lhLocal_abcd_is[ik] = Rayscatt_coeff_s.interpolate2D(ik * ordStride + is * serStride, tsi, tvi);
             }
         }
 
         for(int bandId : BANDS_TO_CORRECT) {
             final double tauRayl_bandId = tauRayl[bandId];
-            double constTerm = (1.0 - Math.exp(-tauRayl_bandId * airMass)) / (4.0 * (mus + muv));
+            final double exponent = -tauRayl_bandId * airMass;
+            final double transmittance = fastMath ? FastMath.exp(exponent) : Math.exp(exponent);
+            double constTerm = (1.0 - transmittance) / (4.0 * (mus + muv));
             for (int is = 0; is < RAYSCATT_NUM_SER; is++) {
                 /* primary scattering reflectance */
                 rhoRayl[is] = phaseRayl[is] * constTerm; /* DPM #2.1.17-8 CORRECTED */
@@ -173,8 +208,10 @@ public class RayleighCorrection implements Constants {
         final double twoThird = 2.0 / 3.0;
         final double fourThird = 4.0 / 3.0;
         for(int bandId : BANDS_TO_CORRECT) {
+            final double exponent = -tauRayl[bandId] / mu;
+            final double transmittance = fastMath ? FastMath.exp(exponent) : Math.exp(exponent);
             double tr = (twoThird + mu + (twoThird - mu) *
-                                         Math.exp(-tauRayl[bandId] / mu)) / (fourThird + tauRayl[bandId]); /* DPM #2.6.15.2-1, -3 */
+                                         transmittance) / (fourThird + tauRayl[bandId]); /* DPM #2.6.15.2-1, -3 */
             transRayl[bandId] = auxdata.Raytrans[0] + auxdata.Raytrans[1] * tr + auxdata.Raytrans[2] * tr * tr; /* DPM #2.6.15.2-2, -4 */
         }
         for(int bandId : BANDS_TO_NOT_CORRECT) {
@@ -197,10 +234,22 @@ public class RayleighCorrection implements Constants {
 \*-----------------------------------------------------------------------------*/
 
     public void sphAlb_rayleigh(double[] tauRayl, double[] sphalbRayl) {
-        FractIndex[] indexes = FractIndex.createArray(1);
+        sphAlb_rayleigh(tauRayl, sphalbRayl, new Workspace());
+    }
+
+    /**
+     * Computes the Rayleigh spherical albedo for all bands, using the scratch buffers of
+     * the given workspace instead of allocating new ones.
+     *
+     * @param tauRayl    Rayleigh optical thickness
+     * @param sphalbRayl Rayleigh spherical albedo for all bands
+     * @param workspace  the workspace of the calling thread
+     */
+    public void sphAlb_rayleigh(double[] tauRayl, double[] sphalbRayl, Workspace workspace) {
+        final FractIndex[] indexes = workspace.ray_index;
         for (int bandId : BANDS_TO_CORRECT) {
             Interp.interpCoord(tauRayl[bandId], auxdata.Rayalb.getTab(0), indexes[0]);
-            sphalbRayl[bandId] = Interp.interpolate(auxdata.Rayalb.getJavaArray(), indexes); /* DPM #2.6.15.3-1 */
+            sphalbRayl[bandId] = auxdata.Rayalb.interpolate1D(0, indexes[0]); /* DPM #2.6.15.3-1 */
         }
         for(int bandId : BANDS_TO_NOT_CORRECT) {
             sphalbRayl[bandId] = 0.0;
@@ -231,4 +280,52 @@ public class RayleighCorrection implements Constants {
         }
     }
 
+    /**
+     * Computes the Rayleigh correction for a pixel as
+     * {@link #corr_rayleigh(double[], double[], double[], double[], Tile[], Tile[], int, int)},
+     * but on arrays indexed [band][pixel].
+     */
+    public void corr_rayleigh(double[] refRayl, double[] sphalbRayl, double[] transRs, double[] transRv,
+                              float[][] rhoNg, float[][] brr, int index) {
+        for (int bandId : BANDS_TO_CORRECT) {
+            double dum = (rhoNg[bandId][index] - refRayl[bandId]) /
+                    (transRs[bandId] * transRv[bandId]);      /* DPM 2.6.15.4-5 */
+            brr[bandId][index] = (float) (dum / (1.0 + sphalbRayl[bandId] * dum)); /* DPM 2.6.15.4-6 */
+        }
+    }
+
+    /**
+     * Scratch buffers used by the Rayleigh functions. A workspace is not thread safe, so
+     * callers should create one per tile or per thread and pass it to the
+     * methods taking a <code>Workspace</code> argument.
+     */
+    public static final class Workspace {
+        /**
+         * Rayleigh phase function Fourier components, PR(s) in DPM.
+         */
+        private final double[] phaseRayl = new double[RAYSCATT_NUM_SER];
+        /**
+         * Rayleigh reflectance Fourier components.
+         */
+        private final double[] rhoRayl = new double[RAYSCATT_NUM_SER];
+        /**
+         * Polynomial coeff for computation, a(s) in DPM.
+         */
+        private final double[][] abcd = new double[RAYSCATT_NUM_SER][RAYSCATT_NUM_ORD];
+        /**
+         * Interp. coordinates into table {@link L2AuxData#Rayscatt_coeff_s}.
+         */
+        private final FractIndex[] ref_rayleigh_i = FractIndex.createArray(2);
+        /**
+         * Interp. coordinates into table {@link L2AuxData#Rayalb}.
+         */
+        private final FractIndex[] ray_index = FractIndex.createArray(1);
+
+        /**
+         * @return the buffer for the Rayleigh phase function Fourier components, see {@link #phase_rayleigh}
+         */
+        double[] getPhaseRayl() {
+            return phaseRayl;
+        }
+    }
 }
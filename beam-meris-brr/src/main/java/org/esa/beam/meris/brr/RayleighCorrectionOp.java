@@ -31,12 +31,14 @@ import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
 import org.esa.beam.util.BitSetter;
 import org.esa.beam.util.ProductUtils;
-import org.esa.beam.util.math.MathUtils;
 
 import java.awt.Rectangle;
 import java.util.Map;
@@ -84,6 +86,28 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
     boolean exportRayCoeffs = false;
     @Parameter
     boolean exportRhoR = false;
+    @Parameter(description = "If 'true' the Rayleigh coefficients are computed for quantized geometries and cached.",
+               defaultValue = "false")
+    boolean useCoefficientCache = false;
+    @Parameter(description = "The bin width used to quantize the angles for the Rayleigh coefficient cache.",
+               defaultValue = "0.05", unit = "deg", interval = "(0, 10]")
+    double cacheAngleBinWidth = 0.05;
+    @Parameter(description = "The bin width used to quantize the pressure for the Rayleigh coefficient cache.",
+               defaultValue = "0.5", unit = "hPa", interval = "(0, 100]")
+    double cachePressureBinWidth = 0.5;
+    @Parameter(description = "The maximum number of entries of the Rayleigh coefficient cache.",
+               defaultValue = "16384", interval = "[1, 1048576]")
+    int cacheCapacity = 16384;
+    @Parameter(description = "If 'true' table based approximations of the trigonometric and exponential " +
+                             "functions are used.", defaultValue = "false")
+    boolean fastMath = false;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
+
+    private RayleighCoefficientCache coefficientCache;
+    private final ThreadLocal<boolean[]> isLandBuffer = new ThreadLocal<boolean[]>();
 
 
     @Override
@@ -94,6 +118,11 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
         } catch (Exception e) {
             throw new OperatorException("could not load L2Auxdata", e);
         }
+        rayleighCorrection.setFastMath(fastMath);
+        if (useCoefficientCache) {
+            coefficientCache = new RayleighCoefficientCache(rayleighCorrection, cacheAngleBinWidth,
+                                                            cachePressureBinWidth, cacheCapacity);
+        }
         createTargetProduct();
     }
 
@@ -151,36 +180,53 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
     @Override
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
         try {
-            Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), rectangle);
-            Tile vza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), rectangle);
-            Tile saa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), rectangle);
-            Tile vaa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), rectangle);
-            Tile altitude = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle);
-            Tile ecmwfPressure = getSourceTile(l1bProduct.getTiePointGrid("atm_press"), rectangle);
-
-            Tile[] rhoNg = new Tile[EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS];
+            final int size = rectangle.width * rectangle.height;
+            final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(l1bProduct, rectangle,
+                                                                                           geometryCacheCapacity);
+            final float[] sza = geometry.getSunZenith();
+            final float[] vza = geometry.getViewZenith();
+            final double[] deltaAzimuthValues = geometry.getDeltaAzimuth();
+            final float[] altitude = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle));
+            final float[] ecmwfPressure = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid("atm_press"), rectangle));
+
+            final float[][] rhoNg = new float[EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS][];
             for(int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
                 Band band = gascorProduct.getBand(GaseousCorrectionOp.RHO_NG_BAND_PREFIX + "_" + (bandId + 1));
-                rhoNg[bandId] = getSourceTile(band, rectangle);
+                rhoNg[bandId] = TileAccessor.getSamplesFloat(getSourceTile(band, rectangle));
             }
-			Tile isLandCons = getSourceTile(isLandBand, rectangle);
-
-			Tile[] transRvData = null;
-			Tile[] transRsData = null;
-			Tile[] tauRData = null;
-			Tile[] sphAlbRData = null;
+            final boolean[] isLandCons = TileAccessor.getSamplesBoolean(getSourceTile(isLandBand, rectangle),
+                                                                        isLandBuffer.get());
+            isLandBuffer.set(isLandCons);
+
+			Tile[] transRvTiles = null;
+			Tile[] transRsTiles = null;
+			Tile[] tauRTiles = null;
+			Tile[] sphAlbRTiles = null;
+			float[][] transRvData = null;
+			float[][] transRsData = null;
+			float[][] tauRData = null;
+			float[][] sphAlbRData = null;
             if (exportRayCoeffs) {
-				transRvData = getTargetTileGroup(transRvBands, targetTiles);
-				transRsData = getTargetTileGroup(transRsBands, targetTiles);
-				tauRData = getTargetTileGroup(tauRBands, targetTiles);
-				sphAlbRData = getTargetTileGroup(sphAlbRBands, targetTiles);
+				transRvTiles = getTargetTileGroup(transRvBands, targetTiles);
+				transRsTiles = getTargetTileGroup(transRsBands, targetTiles);
+				tauRTiles = getTargetTileGroup(tauRBands, targetTiles);
+				sphAlbRTiles = getTargetTileGroup(sphAlbRBands, targetTiles);
+				transRvData = createSampleGroup(transRvTiles, size);
+				transRsData = createSampleGroup(transRsTiles, size);
+				tauRData = createSampleGroup(tauRTiles, size);
+				sphAlbRData = createSampleGroup(sphAlbRTiles, size);
             }
-            Tile[] rayleigh_refl = null;
+            Tile[] rayleighReflTiles = null;
+            float[][] rayleigh_refl = null;
             if (exportRhoR) {
-                rayleigh_refl = getTargetTileGroup(rayleighReflBands, targetTiles);
+                rayleighReflTiles = getTargetTileGroup(rayleighReflBands, targetTiles);
+                rayleigh_refl = createSampleGroup(rayleighReflTiles, size);
             }
-            Tile[] brr = getTargetTileGroup(brrBands, targetTiles);
-            Tile brrFlags = targetTiles.get(flagBand);
+            final Tile[] brrTiles = getTargetTileGroup(brrBands, targetTiles);
+            final float[][] brr = createSampleGroup(brrTiles, size);
+            final int[] brrFlags = new int[size];
 
             boolean[][] do_corr = new boolean[SUBWIN_HEIGHT][SUBWIN_WIDTH];
             // rayleigh phase function coefficients, PR in DPM
@@ -195,14 +241,19 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
 		    double[] transRv = new double[L1_BAND_NUM];
 		    // rayleigh spherical albedo, SR_4x4
 		    double[] sphAlbR = new double[L1_BAND_NUM];
+            // scratch buffers of the rayleigh functions, reused for all windows of this tile
+            final RayleighCorrection.Workspace workspace = new RayleighCorrection.Workspace();
 
-            Tile surfacePressure = null;
-            Tile cloudTopPressure = null;
-            Tile cloudFlags = null;
+            float[] surfacePressure = null;
+            float[] cloudTopPressure = null;
+            int[] cloudFlags = null;
             if (cloudProduct != null) {
-                surfacePressure = getSourceTile(cloudProduct.getBand(CloudClassificationOp.PRESSURE_SURFACE), rectangle);
-                cloudTopPressure = getSourceTile(cloudProduct.getBand(CloudClassificationOp.PRESSURE_CTP), rectangle);
-                cloudFlags = getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), rectangle);
+                surfacePressure = TileAccessor.getSamplesFloat(
+                        getSourceTile(cloudProduct.getBand(CloudClassificationOp.PRESSURE_SURFACE), rectangle));
+                cloudTopPressure = TileAccessor.getSamplesFloat(
+                        getSourceTile(cloudProduct.getBand(CloudClassificationOp.PRESSURE_CTP), rectangle));
+                cloudFlags = TileAccessor.getSamplesInt(
+                        getSourceTile(cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS), rectangle));
             }
 
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y += Constants.SUBWIN_HEIGHT) {
@@ -212,15 +263,16 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
                     boolean correctPixel = false;
 
 					for (int iy = y; iy <= yWinEnd; iy++) {
-					    for (int ix = x; ix <= xWinEnd; ix++) {
-					        if (rhoNg[0].getSampleFloat(ix, iy) != BAD_VALUE && (correctWater || isLandCons.getSampleBoolean(ix, iy))) {
+					    int i = (iy - rectangle.y) * rectangle.width + (x - rectangle.x);
+					    for (int ix = x; ix <= xWinEnd; ix++, i++) {
+					        if (rhoNg[0][i] != BAD_VALUE && (correctWater || isLandCons[i])) {
 					            correctPixel = true;
 					            do_corr[iy - y][ix - x] = true;
 					        } else {
 					            do_corr[iy - y][ix - x] = false;
 					            for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
                                     if (bandId != bb11 && bandId != bb15) {
-                                        brr[bandId].setSample(ix, iy, BAD_VALUE);
+                                        brr[bandId][i] = BAD_VALUE;
                                     }
                                 }
 					        }
@@ -229,80 +281,92 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
 
 					if (correctPixel) {
 					    /* average geometry, ozone for window DPM : just use corner pixel ! */
-                        final float szaSampleFloat = sza.getSampleFloat(x, y);
-                        final float vzaSampleFloat = vza.getSampleFloat(x, y);
+                        final int geometryIndex = geometry.getIndex(x, y);
+                        final float szaSampleFloat = sza[geometryIndex];
+                        final float vzaSampleFloat = vza[geometryIndex];
 
-                        final double szaRad = szaSampleFloat * MathUtils.DTOR;
-                        final double vzaRad = vzaSampleFloat * MathUtils.DTOR;
-						final double sins = Math.sin(szaRad);
-						final double sinv = Math.sin(vzaRad);
-					    final double mus = Math.cos(szaRad);
-					    final double muv = Math.cos(vzaRad);
-					    final double deltaAzimuth = HelperFunctions.computeAzimuthDifference(vaa.getSampleFloat(x, y), saa.getSampleFloat(x, y));
+                        final double deltaAzimuth = deltaAzimuthValues[geometryIndex];
 
 					    /*
 					    * 2. Rayleigh corrections (DPM section 7.3.3.3.2, step 2.6.15)
 					    */
-                        double press = HelperFunctions.correctEcmwfPressure(ecmwfPressure.getSampleFloat(x, y),
-                                                                            altitude.getSampleFloat(x, y),
-                                                                            auxData.press_scale_height); /* DPM #2.6.15.1-3 */
-                        final double airMass = HelperFunctions.calculateAirMassMusMuv(muv, mus);
+                        double press = HelperFunctions.correctEcmwfPressure(ecmwfPressure[geometryIndex],
+                                                                            altitude[geometryIndex],
+                                                                            auxData.press_scale_height,
+                                                                            fastMath); /* DPM #2.6.15.1-3 */
 
                         /* correct pressure in presence of clouds */
                         if (cloudProduct != null) {
-                            final boolean isCloud = cloudFlags.getSampleBit(x, y, CloudClassificationOp.F_CLOUD);
+                            final boolean isCloud = BitSetter.isFlagSet(cloudFlags[geometryIndex], CloudClassificationOp.F_CLOUD);
                             if (isCloud) {
-                                final double pressureCorrectionCloud = cloudTopPressure.getSampleDouble(x, y) / surfacePressure.getSampleDouble(x, y);
+                                final double pressureCorrectionCloud = (double) cloudTopPressure[geometryIndex] / surfacePressure[geometryIndex];
                                 press *= pressureCorrectionCloud;
                             }
                         }
-
-					    /* Rayleigh phase function Fourier decomposition */
-					    rayleighCorrection.phase_rayleigh(mus, muv, sins, sinv, phaseR);
-
-					    /* Rayleigh optical thickness */
-					    rayleighCorrection.tau_rayleigh(press, tauR);
-
-					    /* Rayleigh reflectance*/
-					    rayleighCorrection.ref_rayleigh(deltaAzimuth, szaSampleFloat, vzaSampleFloat, mus, muv,
-					                                    airMass, phaseR, tauR, rhoR);
-
-					    /* Rayleigh transmittance */
-					    rayleighCorrection.trans_rayleigh(mus, tauR, transRs);
-					    rayleighCorrection.trans_rayleigh(muv, tauR, transRv);
-
-					    /* Rayleigh spherical albedo */
-					    rayleighCorrection.sphAlb_rayleigh(tauR, sphAlbR);
+                        if (coefficientCache != null) {
+                            /* coefficients of the quantized geometry, shared with all windows of the same bin */
+                            final RayleighCoefficientCache.Coefficients coefficients =
+                                    coefficientCache.get(szaSampleFloat, vzaSampleFloat, deltaAzimuth, press, workspace);
+                            tauR = coefficients.tauR;
+                            rhoR = coefficients.rhoR;
+                            transRs = coefficients.transRs;
+                            transRv = coefficients.transRv;
+                            sphAlbR = coefficients.sphAlbR;
+                        } else {
+                            final double sins = geometry.getSins()[geometryIndex];
+                            final double sinv = geometry.getSinv()[geometryIndex];
+                            final double mus = geometry.getMus()[geometryIndex];
+                            final double muv = geometry.getMuv()[geometryIndex];
+                            final double airMass = geometry.getAirMass()[geometryIndex];
+
+                            /* Rayleigh phase function Fourier decomposition */
+                            rayleighCorrection.phase_rayleigh(mus, muv, sins, sinv, phaseR);
+
+                            /* Rayleigh optical thickness */
+                            rayleighCorrection.tau_rayleigh(press, tauR);
+
+                            /* Rayleigh reflectance*/
+                            rayleighCorrection.ref_rayleigh(deltaAzimuth, szaSampleFloat, vzaSampleFloat, mus, muv,
+                                                            airMass, phaseR, tauR, rhoR, workspace);
+
+                            /* Rayleigh transmittance */
+                            rayleighCorrection.trans_rayleigh(mus, tauR, transRs);
+                            rayleighCorrection.trans_rayleigh(muv, tauR, transRv);
+
+                            /* Rayleigh spherical albedo */
+                            rayleighCorrection.sphAlb_rayleigh(tauR, sphAlbR, workspace);
+                        }
 
 					    /* process each pixel */
 					    for (int iy = y; iy <= yWinEnd; iy++) {
-					        for (int ix = x; ix <= xWinEnd; ix++) {
+					        int i = (iy - rectangle.y) * rectangle.width + (x - rectangle.x);
+					        for (int ix = x; ix <= xWinEnd; ix++, i++) {
 					            if (do_corr[iy - y][ix - x]) {
 					                /* Rayleigh correction for each pixel */
 					                rayleighCorrection.corr_rayleigh(rhoR, sphAlbR, transRs, transRv,
-					                                                 rhoNg, brr, ix, iy); /*  (2.6.15.4) */
+					                                                 rhoNg, brr, i); /*  (2.6.15.4) */
 
 					                /* flag negative Rayleigh-corrected reflectance */
                                     for(int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
-                                        if (brr[bandId].getSampleFloat(ix, iy) <= 0.0) {
+                                        if (brr[bandId][i] <= 0.0) {
                                             /* set annotation flag for reflectance product - v4.2 */
-                                            brrFlags.setSample(ix, iy, (bandId <= bb760 ? bandId : bandId - 1), true);
+                                            brrFlags[i] = BitSetter.setFlag(brrFlags[i], (bandId <= bb760 ? bandId : bandId - 1));
                                         }
                                     }
                                     if (exportRhoR) {
                                         for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
                                             if (bandId != bb11 && bandId != bb15) {
-                                                rayleigh_refl[bandId].setSample(ix, iy, rhoR[bandId]);
+                                                rayleigh_refl[bandId][i] = (float) rhoR[bandId];
                                             }
                                         }
                                     }
 					                if (exportRayCoeffs) {
 					                	for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
                                             if (bandId != bb11 && bandId != bb15) {
-                                                transRvData[bandId].setSample(ix, iy, transRv[bandId]);
-                                                transRsData[bandId].setSample(ix, iy, transRs[bandId]);
-                                                tauRData[bandId].setSample(ix, iy, tauR[bandId]);
-                                                sphAlbRData[bandId].setSample(ix, iy, sphAlbR[bandId]);
+                                                transRvData[bandId][i] = (float) transRv[bandId];
+                                                transRsData[bandId][i] = (float) transRs[bandId];
+                                                tauRData[bandId][i] = (float) tauR[bandId];
+                                                sphAlbRData[bandId][i] = (float) sphAlbR[bandId];
                                             }
 					                	}
 					                }
@@ -312,6 +376,18 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
 					}
                 }
             }
+
+            setSampleGroup(brrTiles, brr);
+            targetTiles.get(flagBand).setSamples(brrFlags);
+            if (exportRhoR) {
+                setSampleGroup(rayleighReflTiles, rayleigh_refl);
+            }
+            if (exportRayCoeffs) {
+                setSampleGroup(transRvTiles, transRvData);
+                setSampleGroup(transRsTiles, transRsData);
+                setSampleGroup(tauRTiles, tauRData);
+                setSampleGroup(sphAlbRTiles, sphAlbRData);
+            }
         } catch (Exception e) {
             throw new OperatorException(e);
         }
@@ -328,6 +404,24 @@ public class RayleighCorrectionOp extends MerisBasisOp implements Constants {
         return bandRaster;
     }
 
+    private static float[][] createSampleGroup(Tile[] tiles, int size) {
+        final float[][] samples = new float[tiles.length][];
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                samples[i] = new float[size];
+            }
+        }
+        return samples;
+    }
+
+    private static void setSampleGroup(Tile[] tiles, float[][] samples) {
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                tiles[i].setSamples(samples[i]);
+            }
+        }
+    }
+
     public static class Spi extends OperatorSpi {
         public Spi() {
             super(RayleighCorrectionOp.class);
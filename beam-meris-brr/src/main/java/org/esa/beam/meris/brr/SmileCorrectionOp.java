@@ -29,12 +29,14 @@ import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
 import org.esa.beam.util.ProductUtils;
 
 import java.awt.Rectangle;
+import java.util.EnumSet;
 import java.util.Map;
 
 @OperatorMetadata(alias = "Meris.SmileCorrection", internal = true)
@@ -44,6 +46,7 @@ public class SmileCorrectionOp extends MerisBasisOp implements Constants {
 
     private Band isLandBand;
     private Band[] rhoCorectedBands;
+    private final ThreadLocal<boolean[]> isLandBuffer = new ThreadLocal<boolean[]>();
 
     @SourceProduct(alias="l1b")
     private Product l1bProduct;
@@ -57,7 +60,8 @@ public class SmileCorrectionOp extends MerisBasisOp implements Constants {
     @Override
     public void initialize() throws OperatorException {
         try {
-            auxData = L2AuxDataProvider.getInstance().getAuxdata(l1bProduct);
+            auxData = L2AuxDataProvider.getInstance().getAuxdata(l1bProduct,
+                                                                EnumSet.of(L2AuxData.Section.CONFIGURATION));
         } catch (Exception e) {
             throw new OperatorException("could not load L2Auxdata", e);
         }
@@ -86,27 +90,30 @@ public class SmileCorrectionOp extends MerisBasisOp implements Constants {
     public void computeTileStack(Map<Band, Tile> targetTiles, Rectangle rectangle, ProgressMonitor pm) throws OperatorException {
         pm.beginTask("Processing frame...", rectangle.height);
         try {
-        	Tile detectorIndex = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle);
-        	Tile[] rho = new Tile[rhoCorectedBands.length];
+            final int size = rectangle.width * rectangle.height;
+        	int[] detectorIndex = TileAccessor.getSamplesInt(
+        	        getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle));
+        	float[][] rho = new float[rhoCorectedBands.length][];
             for (int i = 0; i < rhoCorectedBands.length; i++) {
-                rho[i] = getSourceTile(gascorProduct.getBand(rhoCorectedBands[i].getName()), rectangle);
+                rho[i] = TileAccessor.getSamplesFloat(
+                        getSourceTile(gascorProduct.getBand(rhoCorectedBands[i].getName()), rectangle));
             }
-            Tile isLandCons = getSourceTile(isLandBand, rectangle);
+            boolean[] isLandCons = TileAccessor.getSamplesBoolean(getSourceTile(isLandBand, rectangle),
+                                                                  isLandBuffer.get());
+            isLandBuffer.set(isLandCons);
             
-            Tile[] rhoCorrected = new Tile[rhoCorectedBands.length];
-            for (int i = 0; i < rhoCorectedBands.length; i++) {
-                rhoCorrected[i] = targetTiles.get(rhoCorectedBands[i]);
-            }
+            float[][] rhoCorrected = new float[rhoCorectedBands.length][size];
 
+            int i = 0;
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-				for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-					if (rho[0].getSampleFloat(x, y) == BAD_VALUE) {
+				for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++, i++) {
+					if (rho[0][i] == BAD_VALUE) {
 						for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
-							rhoCorrected[bandId].setSample(x, y, BAD_VALUE);
+							rhoCorrected[bandId][i] = BAD_VALUE;
 						}
 					} else {
 						L2AuxData.SmileParams params; 
-						if (isLandCons.getSampleBoolean(x, y)) {
+						if (isLandCons[i]) {
 							params = auxData.land_smile_params;
 						} else {
 							params = auxData.water_smile_params;
@@ -116,22 +123,23 @@ public class SmileCorrectionOp extends MerisBasisOp implements Constants {
 				                /* DPM #2.1.6-3 */
 				                final int bandMin = params.derivative_band_id[bandId][0];
 				                final int bandMax = params.derivative_band_id[bandId][1];
-				                final int detector = detectorIndex.getSampleInt(x, y);
-				                final double derive = (rho[bandMax].getSampleFloat(x, y) - rho[bandMin].getSampleFloat(x, y))
-				                        / (auxData.central_wavelength[bandMax][detector] - auxData.central_wavelength[bandMin][detector]);
+				                final int detector = detectorIndex[i];
+				                final double delta = rho[bandMax][i] - rho[bandMin][i];
 				                /* DPM #2.1.6-4 */
-				                final double simleCorrectValue = rho[bandId].getSampleFloat(x, y)
-				                        + derive
-				                        * (auxData.theoretical_wavelength[bandId] - auxData.central_wavelength[bandId][detector]);
-				                rhoCorrected[bandId].setSample(x, y, (float)simleCorrectValue);
+				                final double simleCorrectValue = rho[bandId][i]
+				                        + delta * params.slope_factor[bandId][detector];
+				                rhoCorrected[bandId][i] = (float)simleCorrectValue;
 				            } else {
 				                /* DPM #2.1.6-5 */
-				            	rhoCorrected[bandId].setSample(x, y, rho[bandId].getSampleFloat(x, y));
+				            	rhoCorrected[bandId][i] = rho[bandId][i];
 				            }
 				        }
 					}
 				}
 				pm.worked(1);
+            }
+            for (int bandId = 0; bandId < rhoCorectedBands.length; bandId++) {
+                targetTiles.get(rhoCorectedBands[bandId]).setSamples(rhoCorrected[bandId]);
             }
 		} finally {
             pm.done();
@@ -0,0 +1,133 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.dpm.PixelId;
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class CloudClassificationOpTest {
+
+    private static final long SEED = 5432L;
+    private static final int NUM_THREADS = 8;
+    private static final int NUM_RUNS = 4;
+
+    @Test
+    public void testConcurrentTilesEqualSequentialTiles() throws Exception {
+        final Raster expected = createCloudFlagImage().getData();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            for (int run = 0; run < NUM_RUNS; run++) {
+                // a new operator for each run, so no tile is taken from the tile cache
+                final RenderedImage image = createCloudFlagImage();
+                final List<Future<Raster>> tiles = new ArrayList<Future<Raster>>();
+                for (int tileY = 0; tileY < image.getNumYTiles(); tileY++) {
+                    for (int tileX = 0; tileX < image.getNumXTiles(); tileX++) {
+                        tiles.add(executor.submit(new TileComputation(image, tileX, tileY)));
+                    }
+                }
+                for (Future<Raster> tile : tiles) {
+                    assertTileEquals(expected, tile.get());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPressureBandsAreComputedWithCloudFlags() throws Exception {
+        final Product l1bProduct = MerisTestProducts.createL1b(SEED);
+        final Product rhoToaProduct = MerisTestProducts.createRhoToa(SEED + 1);
+        final Product ctpProduct = MerisTestProducts.createCloudTopPressure(SEED + 2);
+        final CloudClassificationOp op = new CloudClassificationOp();
+        op.setSourceProduct("l1b", l1bProduct);
+        op.setSourceProduct("rhotoa", rhoToaProduct);
+        op.setSourceProduct("ctp", ctpProduct);
+        final Product targetProduct = op.getTargetProduct();
+
+        final Raster surfacePressure = targetProduct.getBand(CloudClassificationOp.PRESSURE_SURFACE).getSourceImage().getData();
+        final Raster cloudTopPressure = targetProduct.getBand(CloudClassificationOp.PRESSURE_CTP).getSourceImage().getData();
+        final Raster cloudFlags = targetProduct.getBand(CloudClassificationOp.CLOUD_FLAGS).getSourceImage().getData();
+
+        final PixelId pixelId = new PixelId(L2AuxDataProvider.getInstance().getAuxdata(l1bProduct));
+        final Band ctpBand = ctpProduct.getBand("cloud_top_press");
+        final Band rhoToa753 = rhoToaProduct.getBand(Rad2ReflOp.RHO_TOA_BAND_PREFIX + "_" + (Constants.bb753 + 1));
+        final Band rhoToa760 = rhoToaProduct.getBand(Rad2ReflOp.RHO_TOA_BAND_PREFIX + "_" + (Constants.bb760 + 1));
+        final Band detectorIndex = l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME);
+        final Band l1Flags = l1bProduct.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME);
+        final TiePointGrid sza = l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
+        final TiePointGrid vza = l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME);
+        boolean anyCloudFlagSet = false;
+        for (int y = 0; y < MerisTestProducts.HEIGHT; y++) {
+            for (int x = 0; x < MerisTestProducts.WIDTH; x++) {
+                if ((l1Flags.getSampleInt(x, y) & (1 << Constants.L1_F_INVALID)) != 0) {
+                    assertEquals(0.0f, surfacePressure.getSampleFloat(x, y, 0), 0.0f);
+                    assertEquals(0.0f, cloudTopPressure.getSampleFloat(x, y, 0), 0.0f);
+                    continue;
+                }
+                final double airMass = HelperFunctions.calculateAirMass(vza.getPixelFloat(x, y), sza.getPixelFloat(x, y));
+                final PixelId.Pressure press = pixelId.computePressure(rhoToa753.getSampleFloat(x, y),
+                                                                       rhoToa760.getSampleFloat(x, y),
+                                                                       airMass, detectorIndex.getSampleInt(x, y));
+                assertEquals((float) Math.max(0.0, press.value), surfacePressure.getSampleFloat(x, y, 0), 0.0f);
+                assertEquals(ctpBand.getSampleFloat(x, y), cloudTopPressure.getSampleFloat(x, y, 0), 0.0f);
+                anyCloudFlagSet |= cloudFlags.getSample(x, y, 0) != 0;
+            }
+        }
+        assertTrue(anyCloudFlagSet);
+    }
+
+    private static RenderedImage createCloudFlagImage() {
+        final CloudClassificationOp op = new CloudClassificationOp();
+        op.setSourceProduct("l1b", MerisTestProducts.createL1b(SEED));
+        op.setSourceProduct("rhotoa", MerisTestProducts.createRhoToa(SEED + 1));
+        final Product targetProduct = op.getTargetProduct();
+        final Band cloudFlagBand = targetProduct.getBand(CloudClassificationOp.CLOUD_FLAGS);
+        assertNotNull(cloudFlagBand);
+        return cloudFlagBand.getSourceImage();
+    }
+
+    private static void assertTileEquals(Raster expected, Raster tile) {
+        final int xEnd = tile.getMinX() + tile.getWidth();
+        final int yEnd = tile.getMinY() + tile.getHeight();
+        for (int y = tile.getMinY(); y < yEnd; y++) {
+            for (int x = tile.getMinX(); x < xEnd; x++) {
+                assertEquals("pixel (" + x + "," + y + ")", expected.getSample(x, y, 0), tile.getSample(x, y, 0));
+            }
+        }
+    }
+
+    private static class TileComputation implements Callable<Raster> {
+
+        private final RenderedImage image;
+        private final int tileX;
+        private final int tileY;
+
+        private TileComputation(RenderedImage image, int tileX, int tileY) {
+            this.image = image;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public Raster call() {
+            return image.getTile(tileX, tileY);
+        }
+    }
+}
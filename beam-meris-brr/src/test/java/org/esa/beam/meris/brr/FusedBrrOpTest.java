@@ -0,0 +1,159 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.awt.Dimension;
+import java.awt.image.Raster;
+
+import static org.junit.Assert.*;
+
+public class FusedBrrOpTest {
+
+    private static final long SEED = 2709L;
+
+    // not divisible by the 4x4 windows, with several tiles per row and column of the test product
+    private static final Dimension ODD_TILE_SIZE = new Dimension(13, 11);
+
+    private static Product l1bProduct;
+    private static Chain chain;
+
+    @BeforeClass
+    public static void createChainProducts() {
+        l1bProduct = MerisTestProducts.createL1b(SEED);
+        chain = new Chain(l1bProduct);
+    }
+
+    @Test
+    public void testFusedOutputEqualsChainOutput() {
+        assertFusedOutputEqualsChainOutput(chain, createFusedProduct(l1bProduct));
+    }
+
+    @Test
+    public void testFusedOutputEqualsChainOutputForOddTileSize() {
+        final Product oddTiledProduct = MerisTestProducts.createL1b(SEED);
+        oddTiledProduct.setPreferredTileSize(ODD_TILE_SIZE);
+        assertTrue(MerisTestProducts.WIDTH > 2 * ODD_TILE_SIZE.width);
+        assertTrue(MerisTestProducts.HEIGHT > 2 * ODD_TILE_SIZE.height);
+
+        final Product fusedProduct = createFusedProduct(oddTiledProduct);
+        assertEquals(ODD_TILE_SIZE, fusedProduct.getPreferredTileSize());
+        assertFusedOutputEqualsChainOutput(new Chain(oddTiledProduct), fusedProduct);
+    }
+
+    @Test
+    public void testOnlyRequestedBandsAreWritten() {
+        final FusedBrrOp op = new FusedBrrOp();
+        op.setSourceProduct("l1b", l1bProduct);
+        op.setParameter("outputFlags", false);
+        op.setParameter("copyL1Flags", false);
+        final Product fusedProduct = op.getTargetProduct();
+
+        assertEquals(RayleighCorrection.BANDS_TO_CORRECT.length + 1, fusedProduct.getNumBands());
+        assertNotNull(fusedProduct.getBand(RayleighCorrectionOp.RAY_CORR_FLAGS));
+        assertNull(fusedProduct.getBand(CloudClassificationOp.CLOUD_FLAGS));
+        assertNull(fusedProduct.getBand(Rad2ReflOp.RHO_TOA_BAND_PREFIX + "_1"));
+        assertBandEquals(chain.brrProduct.getBand(RayleighCorrectionOp.BRR_BAND_PREFIX + "_1"),
+                         fusedProduct.getBand(RayleighCorrectionOp.BRR_BAND_PREFIX + "_1"));
+    }
+
+    @Test
+    public void testFastMathOutputDeviation() {
+        final FusedBrrOp op = new FusedBrrOp();
+        op.setSourceProduct("l1b", l1bProduct);
+        op.setParameter("fastMath", true);
+        final Product fusedProduct = op.getTargetProduct();
+
+        for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+            final String bandName = RayleighCorrectionOp.BRR_BAND_PREFIX + "_" + (bandId + 1);
+            assertBandEquals(chain.brrProduct.getBand(bandName), fusedProduct.getBand(bandName), 1.0e-6f);
+        }
+    }
+
+    private static Product createFusedProduct(Product l1b) {
+        final FusedBrrOp op = new FusedBrrOp();
+        op.setSourceProduct("l1b", l1b);
+        return op.getTargetProduct();
+    }
+
+    private static void assertFusedOutputEqualsChainOutput(Chain chain, Product fusedProduct) {
+        for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+            final String bandName = RayleighCorrectionOp.BRR_BAND_PREFIX + "_" + (bandId + 1);
+            assertBandEquals(chain.brrProduct.getBand(bandName), fusedProduct.getBand(bandName));
+        }
+        assertBandEquals(chain.brrProduct.getBand(RayleighCorrectionOp.RAY_CORR_FLAGS),
+                         fusedProduct.getBand(RayleighCorrectionOp.RAY_CORR_FLAGS));
+        assertBandEquals(chain.cloudProduct.getBand(CloudClassificationOp.CLOUD_FLAGS),
+                         fusedProduct.getBand(CloudClassificationOp.CLOUD_FLAGS));
+        assertBandEquals(chain.gasCorProduct.getBand(GaseousCorrectionOp.GAS_FLAGS),
+                         fusedProduct.getBand(GaseousCorrectionOp.GAS_FLAGS));
+        assertBandEquals(chain.landProduct.getBand(LandClassificationOp.LAND_FLAGS),
+                         fusedProduct.getBand(LandClassificationOp.LAND_FLAGS));
+    }
+
+    private static void assertBandEquals(Band expectedBand, Band actualBand) {
+        assertBandEquals(expectedBand, actualBand, 0.0f);
+    }
+
+    private static void assertBandEquals(Band expectedBand, Band actualBand, float delta) {
+        assertNotNull(expectedBand);
+        assertNotNull(actualBand);
+        final Raster expected = expectedBand.getSourceImage().getData();
+        final Raster actual = actualBand.getSourceImage().getData();
+        for (int y = 0; y < MerisTestProducts.HEIGHT; y++) {
+            for (int x = 0; x < MerisTestProducts.WIDTH; x++) {
+                assertEquals(expectedBand.getName() + " at pixel (" + x + "," + y + ")",
+                             expected.getSampleFloat(x, y, 0), actual.getSampleFloat(x, y, 0), delta);
+            }
+        }
+    }
+
+    /**
+     * The operators and parameters of chains/Brr.xml.
+     */
+    private static class Chain {
+
+        private final Product cloudProduct;
+        private final Product gasCorProduct;
+        private final Product landProduct;
+        private final Product brrProduct;
+
+        private Chain(Product l1bProduct) {
+            final Rad2ReflOp rad2ReflOp = new Rad2ReflOp();
+            rad2ReflOp.setSourceProduct("input", l1bProduct);
+            final Product rhoToaProduct = rad2ReflOp.getTargetProduct();
+
+            final CloudClassificationOp cloudClassificationOp = new CloudClassificationOp();
+            cloudClassificationOp.setSourceProduct("l1b", l1bProduct);
+            cloudClassificationOp.setSourceProduct("rhotoa", rhoToaProduct);
+            cloudProduct = cloudClassificationOp.getTargetProduct();
+
+            final GaseousCorrectionOp gaseousCorrectionOp = new GaseousCorrectionOp();
+            gaseousCorrectionOp.setSourceProduct("l1b", l1bProduct);
+            gaseousCorrectionOp.setSourceProduct("rhotoa", rhoToaProduct);
+            gaseousCorrectionOp.setSourceProduct("cloud", cloudProduct);
+            gaseousCorrectionOp.setParameter("correctWater", true);
+            gasCorProduct = gaseousCorrectionOp.getTargetProduct();
+
+            final LandClassificationOp landClassificationOp = new LandClassificationOp();
+            landClassificationOp.setSourceProduct("l1b", l1bProduct);
+            landClassificationOp.setSourceProduct("gascor", gasCorProduct);
+            landProduct = landClassificationOp.getTargetProduct();
+
+            final SmileCorrectionOp smileCorrectionOp = new SmileCorrectionOp();
+            smileCorrectionOp.setSourceProduct("l1b", l1bProduct);
+            smileCorrectionOp.setSourceProduct("land", landProduct);
+            smileCorrectionOp.setSourceProduct("gascor", gasCorProduct);
+            final Product smileProduct = smileCorrectionOp.getTargetProduct();
+
+            final RayleighCorrectionOp rayleighCorrectionOp = new RayleighCorrectionOp();
+            rayleighCorrectionOp.setSourceProduct("l1b", l1bProduct);
+            rayleighCorrectionOp.setSourceProduct("land", landProduct);
+            rayleighCorrectionOp.setSourceProduct("input", smileProduct);
+            rayleighCorrectionOp.setParameter("correctWater", true);
+            brrProduct = rayleighCorrectionOp.getTargetProduct();
+        }
+    }
+}
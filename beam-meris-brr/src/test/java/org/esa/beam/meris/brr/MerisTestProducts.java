@@ -0,0 +1,120 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.FlagCoding;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.l2auxdata.Constants;
+
+import java.awt.Dimension;
+import java.util.Random;
+
+/**
+ * Creates small synthetic MERIS FR products with plausible, pseudo-random content.
+ * The content only depends on the seed, so equal seeds give equal products.
+ */
+class MerisTestProducts {
+
+    static final int WIDTH = 64;
+    static final int HEIGHT = 48;
+    static final Dimension TILE_SIZE = new Dimension(16, 16);
+
+    static Product createL1b(long seed) {
+        final Random random = new Random(seed);
+        final Product product = new Product("MER_FR__1P_TEST", "MER_FR__1P", WIDTH, HEIGHT);
+        product.setPreferredTileSize(TILE_SIZE);
+
+        for (int i = 0; i < EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS; i++) {
+            addFloatBand(product, EnvisatConstants.MERIS_L1B_SPECTRAL_BAND_NAMES[i], random, 15.0f, 140.0f);
+        }
+
+        final Band detectorBand = product.addBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME, ProductData.TYPE_INT16);
+        final ProductData detectorData = detectorBand.createCompatibleRasterData();
+        for (int i = 0; i < detectorData.getNumElems(); i++) {
+            detectorData.setElemIntAt(i, random.nextInt(Constants.FR_DETECTOR_COUNT));
+        }
+        detectorBand.setData(detectorData);
+
+        final Band flagBand = product.addBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME, ProductData.TYPE_UINT8);
+        final ProductData flagData = flagBand.createCompatibleRasterData();
+        for (int i = 0; i < flagData.getNumElems(); i++) {
+            int flags = 0;
+            if (random.nextBoolean()) {
+                flags |= 1 << Constants.L1_F_LAND;
+            }
+            if (random.nextInt(8) == 0) {
+                flags |= 1 << Constants.L1_F_BRIGHT;
+            }
+            if (random.nextInt(50) == 0) {
+                flags |= 1 << Constants.L1_F_INVALID;
+            }
+            flagData.setElemIntAt(i, flags);
+        }
+        flagBand.setData(flagData);
+        final FlagCoding flagCoding = createL1FlagCoding();
+        flagBand.setSampleCoding(flagCoding);
+        product.getFlagCodingGroup().add(flagCoding);
+
+        addTiePointGrid(product, EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME, random, 20.0f, 60.0f);
+        addTiePointGrid(product, EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME, random, 0.0f, 40.0f);
+        addTiePointGrid(product, EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME, random, 100.0f, 160.0f);
+        addTiePointGrid(product, EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME, random, -80.0f, 100.0f);
+        addTiePointGrid(product, EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME, random, 0.0f, 600.0f);
+        addTiePointGrid(product, "atm_press", random, 980.0f, 1030.0f);
+        addTiePointGrid(product, "ozone", random, 250.0f, 400.0f);
+        addTiePointGrid(product, "zonal_wind", random, -10.0f, 10.0f);
+        addTiePointGrid(product, "merid_wind", random, -10.0f, 10.0f);
+        return product;
+    }
+
+    static Product createRhoToa(long seed) {
+        final Random random = new Random(seed);
+        final Product product = new Product("MER_FR__1P_TEST_RHOTOA", "MER_FR__1P", WIDTH, HEIGHT);
+        product.setPreferredTileSize(TILE_SIZE);
+        for (int i = 0; i < EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS; i++) {
+            addFloatBand(product, Rad2ReflOp.RHO_TOA_BAND_PREFIX + "_" + (i + 1), random, 0.02f, 0.6f);
+        }
+        return product;
+    }
+
+    static Product createCloudTopPressure(long seed) {
+        final Random random = new Random(seed);
+        final Product product = new Product("MER_FR__1P_TEST_CTP", "MER_FR__1P", WIDTH, HEIGHT);
+        product.setPreferredTileSize(TILE_SIZE);
+        addFloatBand(product, "cloud_top_press", random, 200.0f, 1000.0f);
+        return product;
+    }
+
+    private static FlagCoding createL1FlagCoding() {
+        final FlagCoding flagCoding = new FlagCoding(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME);
+        flagCoding.addFlag("COSMETIC", 1 << Constants.L1_F_COSMETIC, null);
+        flagCoding.addFlag("DUPLICATED", 1 << Constants.L1_F_DUPLICATED, null);
+        flagCoding.addFlag("GLINT_RISK", 1 << Constants.L1_F_GLINTRISK, null);
+        flagCoding.addFlag("SUSPECT", 1 << Constants.L1_F_SUSPECT, null);
+        flagCoding.addFlag("LAND_OCEAN", 1 << Constants.L1_F_LAND, null);
+        flagCoding.addFlag("BRIGHT", 1 << Constants.L1_F_BRIGHT, null);
+        flagCoding.addFlag("COASTLINE", 1 << Constants.L1_F_COAST, null);
+        flagCoding.addFlag("INVALID", 1 << Constants.L1_F_INVALID, null);
+        return flagCoding;
+    }
+
+    private static void addFloatBand(Product product, String bandName, Random random, float min, float max) {
+        final Band band = product.addBand(bandName, ProductData.TYPE_FLOAT32);
+        band.setData(ProductData.createInstance(createData(random, min, max)));
+    }
+
+    private static void addTiePointGrid(Product product, String name, Random random, float min, float max) {
+        product.addTiePointGrid(new TiePointGrid(name, WIDTH, HEIGHT, 0.5f, 0.5f, 1, 1,
+                                                 createData(random, min, max)));
+    }
+
+    private static float[] createData(Random random, float min, float max) {
+        final float[] data = new float[WIDTH * HEIGHT];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = min + (max - min) * random.nextFloat();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,52 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+
+import static org.junit.Assert.*;
+
+public class Rad2ReflOpTest {
+
+    private static final long SEED = 1807L;
+
+    @Test
+    public void testDetectorIndexOfAnyIntegerType() {
+        final Product int16Product = MerisTestProducts.createL1b(SEED);
+        final Product int32Product = MerisTestProducts.createL1b(SEED);
+        final String detectorBandName = EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME;
+        final Band int16Band = int32Product.getBand(detectorBandName);
+        assertEquals(ProductData.TYPE_INT16, int16Band.getDataType());
+        final ProductData int32Data = ProductData.createInstance(ProductData.TYPE_INT32,
+                                                                 int16Band.getData().getNumElems());
+        for (int i = 0; i < int32Data.getNumElems(); i++) {
+            int32Data.setElemIntAt(i, int16Band.getData().getElemIntAt(i));
+        }
+        int32Product.removeBand(int16Band);
+        int32Product.addBand(detectorBandName, ProductData.TYPE_INT32).setData(int32Data);
+
+        final Product expectedProduct = createRhoToaProduct(int16Product);
+        final Product actualProduct = createRhoToaProduct(int32Product);
+        for (int i = 0; i < EnvisatConstants.MERIS_L1B_NUM_SPECTRAL_BANDS; i++) {
+            final String bandName = Rad2ReflOp.RHO_TOA_BAND_PREFIX + "_" + (i + 1);
+            final Raster expected = expectedProduct.getBand(bandName).getSourceImage().getData();
+            final Raster actual = actualProduct.getBand(bandName).getSourceImage().getData();
+            for (int y = 0; y < MerisTestProducts.HEIGHT; y++) {
+                for (int x = 0; x < MerisTestProducts.WIDTH; x++) {
+                    assertEquals(bandName + " at pixel (" + x + "," + y + ")",
+                                 expected.getSampleFloat(x, y, 0), actual.getSampleFloat(x, y, 0), 0.0f);
+                }
+            }
+        }
+    }
+
+    private static Product createRhoToaProduct(Product l1bProduct) {
+        final Rad2ReflOp op = new Rad2ReflOp();
+        op.setSourceProduct("input", l1bProduct);
+        return op.getTargetProduct();
+    }
+}
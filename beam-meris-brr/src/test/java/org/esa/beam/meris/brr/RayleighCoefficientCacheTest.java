@@ -0,0 +1,146 @@
+package org.esa.beam.meris.brr;
+
+import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class RayleighCoefficientCacheTest {
+
+    private static final long SEED = 4711L;
+    // the defaults of the operator parameters
+    private static final double ANGLE_BIN_WIDTH = 0.05;
+    private static final double PRESSURE_BIN_WIDTH = 0.5;
+    private static final int CAPACITY = 16384;
+    // relative deviation caused by moving the geometry by up to 0.025 deg and the pressure by up to 0.25 hPa
+    // to the bin centre, dominated by the air mass term of rhoR at high sun zenith angles
+    private static final double MAX_RELATIVE_DEVIATION = 3.0e-3;
+    private static final int NUM_THREADS = 8;
+
+    private RayleighCorrection rayleighCorrection;
+
+    @Before
+    public void setUp() throws Exception {
+        rayleighCorrection = new RayleighCorrection(
+                L2AuxDataProvider.getInstance().getAuxdata(MerisTestProducts.createL1b(SEED)));
+    }
+
+    @Test
+    public void testGeometryIsQuantized() {
+        final RayleighCoefficientCache cache = createCache(CAPACITY);
+        final RayleighCorrection.Workspace workspace = new RayleighCorrection.Workspace();
+
+        final RayleighCoefficientCache.Coefficients c = cache.get(30.0, 20.0, 100.0, 1000.0, workspace);
+        assertSame(c, cache.get(30.02, 19.98, 100.02, 1000.2, workspace));
+        assertEquals(1, cache.size());
+
+        assertNotSame(c, cache.get(30.05, 20.0, 100.0, 1000.0, workspace));
+        assertNotSame(c, cache.get(30.0, 20.05, 100.0, 1000.0, workspace));
+        assertNotSame(c, cache.get(30.0, 20.0, 100.05, 1000.0, workspace));
+        assertNotSame(c, cache.get(30.0, 20.0, 100.0, 1000.5, workspace));
+        assertEquals(5, cache.size());
+
+        // computed for the bin centre, not for the geometry of the first request
+        final RayleighCoefficientCache.Coefficients centre = new RayleighCoefficientCache.Coefficients();
+        RayleighCoefficientCache.compute(rayleighCorrection, 30.0, 20.0, 100.0, 1000.0, centre, workspace);
+        assertCoefficientsEqual(centre, cache.get(29.99, 20.01, 99.99, 999.9, workspace), 0.0);
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        final RayleighCoefficientCache cache = createCache(2);
+        final RayleighCorrection.Workspace workspace = new RayleighCorrection.Workspace();
+
+        final RayleighCoefficientCache.Coefficients c1 = cache.get(30.0, 20.0, 100.0, 1000.0, workspace);
+        final RayleighCoefficientCache.Coefficients c2 = cache.get(40.0, 20.0, 100.0, 1000.0, workspace);
+        assertSame(c1, cache.get(30.0, 20.0, 100.0, 1000.0, workspace));
+        assertEquals(2, cache.size());
+
+        // the second entry is the least recently used one
+        final RayleighCoefficientCache.Coefficients c3 = cache.get(50.0, 20.0, 100.0, 1000.0, workspace);
+        assertEquals(2, cache.size());
+        assertSame(c1, cache.get(30.0, 20.0, 100.0, 1000.0, workspace));
+        assertSame(c3, cache.get(50.0, 20.0, 100.0, 1000.0, workspace));
+
+        final RayleighCoefficientCache.Coefficients c2Again = cache.get(40.0, 20.0, 100.0, 1000.0, workspace);
+        assertNotSame(c2, c2Again);
+        assertCoefficientsEqual(c2, c2Again, 0.0);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testCachedCoefficientsAreCloseToExactOnes() {
+        final RayleighCoefficientCache cache = createCache(CAPACITY);
+        final RayleighCorrection.Workspace workspace = new RayleighCorrection.Workspace();
+        final RayleighCoefficientCache.Coefficients exact = new RayleighCoefficientCache.Coefficients();
+        final Random random = new Random(SEED);
+        for (int i = 0; i < 1000; i++) {
+            final double sza = 10.0 + 60.0 * random.nextDouble();
+            final double vza = 40.0 * random.nextDouble();
+            final double deltaAzimuth = 180.0 * random.nextDouble();
+            final double press = 950.0 + 80.0 * random.nextDouble();
+            RayleighCoefficientCache.compute(rayleighCorrection, sza, vza, deltaAzimuth, press, exact, workspace);
+            assertCoefficientsEqual(exact, cache.get(sza, vza, deltaAzimuth, press, workspace),
+                                    MAX_RELATIVE_DEVIATION);
+        }
+    }
+
+    @Test
+    public void testConcurrentCallersShareOneEntry() throws Exception {
+        final RayleighCoefficientCache cache = createCache(CAPACITY);
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
+        try {
+            final List<Future<RayleighCoefficientCache.Coefficients>> results =
+                    new ArrayList<Future<RayleighCoefficientCache.Coefficients>>();
+            for (int i = 0; i < NUM_THREADS; i++) {
+                results.add(executor.submit(new Callable<RayleighCoefficientCache.Coefficients>() {
+                    @Override
+                    public RayleighCoefficientCache.Coefficients call() throws Exception {
+                        start.await();
+                        return cache.get(30.0, 20.0, 100.0, 1000.0, new RayleighCorrection.Workspace());
+                    }
+                }));
+            }
+            start.countDown();
+            final RayleighCoefficientCache.Coefficients first = results.get(0).get();
+            for (Future<RayleighCoefficientCache.Coefficients> result : results) {
+                assertSame(first, result.get());
+            }
+            assertEquals(1, cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private RayleighCoefficientCache createCache(int capacity) {
+        return new RayleighCoefficientCache(rayleighCorrection, ANGLE_BIN_WIDTH, PRESSURE_BIN_WIDTH, capacity);
+    }
+
+    private static void assertCoefficientsEqual(RayleighCoefficientCache.Coefficients expected,
+                                                RayleighCoefficientCache.Coefficients actual,
+                                                double maxRelativeDeviation) {
+        for (int bandId : RayleighCorrection.BANDS_TO_CORRECT) {
+            assertRelativeEquals("tauR", expected.tauR[bandId], actual.tauR[bandId], maxRelativeDeviation);
+            assertRelativeEquals("rhoR", expected.rhoR[bandId], actual.rhoR[bandId], maxRelativeDeviation);
+            assertRelativeEquals("transRs", expected.transRs[bandId], actual.transRs[bandId], maxRelativeDeviation);
+            assertRelativeEquals("transRv", expected.transRv[bandId], actual.transRv[bandId], maxRelativeDeviation);
+            assertRelativeEquals("sphAlbR", expected.sphAlbR[bandId], actual.sphAlbR[bandId], maxRelativeDeviation);
+        }
+    }
+
+    private static void assertRelativeEquals(String name, double expected, double actual,
+                                             double maxRelativeDeviation) {
+        assertEquals(name, expected, actual, maxRelativeDeviation * Math.abs(expected));
+    }
+}
@@ -0,0 +1,153 @@
+package org.esa.beam.meris.gpf;
+
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.RasterDataNode;
+import org.esa.beam.framework.gpf.Tile;
+
+/**
+ * Gives the pixel loops of the operators direct access to the samples of a {@link Tile} as primitive arrays,
+ * replacing the per sample <code>getSample*</code> and <code>setSample</code> calls.
+ * <p/>
+ * The arrays hold the geophysical samples of the tile rectangle line by line, the sample of pixel
+ * <code>(x, y)</code> is at {@link #getIndex(Tile, int, int)}, i.e. the offset is zero and the stride is the tile
+ * width. If the data buffer of a tile already has this layout, its type and the raster is not scaled, the data buffer
+ * is returned without copying, otherwise the samples are converted once per tile. The arrays of source tiles must
+ * therefore not be modified.
+ * <p/>
+ * Target tiles are written by filling an array of the tile size and passing it to {@link Tile#setSamples(float[])}
+ * or {@link Tile#setSamples(int[])}.
+ */
+public final class TileAccessor {
+
+    private TileAccessor() {
+    }
+
+    /**
+     * @param tile the tile
+     * @param x    the pixel x coordinate within the tile rectangle
+     * @param y    the pixel y coordinate within the tile rectangle
+     * @return the index of the pixel in the arrays returned by this class
+     */
+    public static int getIndex(Tile tile, int x, int y) {
+        return (y - tile.getMinY()) * tile.getWidth() + (x - tile.getMinX());
+    }
+
+    /**
+     * @param tile the tile
+     * @return the geophysical samples of the tile as float values
+     */
+    public static float[] getSamplesFloat(Tile tile) {
+        if (isDirectlyAccessible(tile, ProductData.TYPE_FLOAT32)) {
+            return tile.getDataBufferFloat();
+        }
+        return tile.getSamplesFloat();
+    }
+
+    /**
+     * @param tile the tile
+     * @return the geophysical samples of the tile as double values, e.g. scaled radiances which shall not be
+     *         rounded to float
+     */
+    public static double[] getSamplesDouble(Tile tile) {
+        if (isDirectlyAccessible(tile, ProductData.TYPE_FLOAT64)) {
+            return tile.getDataBufferDouble();
+        }
+        return tile.getSamplesDouble();
+    }
+
+    /**
+     * @param tile the tile
+     * @return the geophysical samples of the tile as int values, e.g. detector indexes or flags
+     */
+    public static int[] getSamplesInt(Tile tile) {
+        if (isDirectlyAccessible(tile, ProductData.TYPE_INT32)) {
+            return tile.getDataBufferInt();
+        }
+        return tile.getSamplesInt();
+    }
+
+    /**
+     * Like {@link #getSamplesInt(Tile)}, but the samples of an unscaled raster which cannot be returned without
+     * copying are read into the given array instead of a new one. The returned array may be the data buffer of
+     * the tile, so it must not be kept for reuse; keep <code>samples</code> instead.
+     *
+     * @param tile    the tile
+     * @param samples an array receiving the samples if it has the size of the tile, can be <code>null</code>
+     * @return the geophysical samples of the tile as int values
+     */
+    public static int[] getSamplesInt(Tile tile, int[] samples) {
+        if (isDirectlyAccessible(tile, ProductData.TYPE_INT32)) {
+            return tile.getDataBufferInt();
+        }
+        if (tile.getRasterDataNode().isScalingApplied()) {
+            return tile.getSamplesInt();
+        }
+        final int width = tile.getWidth();
+        final int height = tile.getHeight();
+        final int[] ints;
+        if (samples != null && samples.length == width * height) {
+            ints = samples;
+        } else {
+            ints = new int[width * height];
+        }
+        // read the raw samples in place, whatever their type
+        final ProductData data = tile.getDataBuffer();
+        final int offset = tile.getScanlineOffset();
+        final int stride = tile.getScanlineStride();
+        int i = 0;
+        for (int y = 0; y < height; y++) {
+            int index = offset + y * stride;
+            for (int x = 0; x < width; x++) {
+                ints[i++] = data.getElemIntAt(index++);
+            }
+        }
+        return ints;
+    }
+
+    /**
+     * @param tile    the tile
+     * @param samples an array receiving the samples if it has the size of the tile, e.g. the one returned by the
+     *                previous call for a tile of the same size, can be <code>null</code>
+     * @return the samples of the tile as boolean values, <code>true</code> for all non-zero samples as
+     *         {@link Tile#getSampleBoolean(int, int)} does; <code>samples</code> if it has the size of the tile,
+     *         otherwise a new array
+     */
+    public static boolean[] getSamplesBoolean(Tile tile, boolean[] samples) {
+        final int width = tile.getWidth();
+        final int height = tile.getHeight();
+        final boolean[] booleans;
+        if (samples != null && samples.length == width * height) {
+            booleans = samples;
+        } else {
+            booleans = new boolean[width * height];
+        }
+        if (tile.getRasterDataNode().isScalingApplied()) {
+            final int[] intSamples = tile.getSamplesInt();
+            for (int i = 0; i < intSamples.length; i++) {
+                booleans[i] = intSamples[i] != 0;
+            }
+        } else {
+            // read the raw samples in place, whatever their type
+            final ProductData data = tile.getDataBuffer();
+            final int offset = tile.getScanlineOffset();
+            final int stride = tile.getScanlineStride();
+            int i = 0;
+            for (int y = 0; y < height; y++) {
+                int index = offset + y * stride;
+                for (int x = 0; x < width; x++) {
+                    booleans[i++] = data.getElemIntAt(index++) != 0;
+                }
+            }
+        }
+        return booleans;
+    }
+
+    private static boolean isDirectlyAccessible(Tile tile, int dataType) {
+        final RasterDataNode raster = tile.getRasterDataNode();
+        return raster.getDataType() == dataType
+               && !raster.isScalingApplied()
+               && tile.getScanlineOffset() == 0
+               && tile.getScanlineStride() == tile.getWidth()
+               && tile.getDataBuffer().getNumElems() == tile.getWidth() * tile.getHeight();
+    }
+}
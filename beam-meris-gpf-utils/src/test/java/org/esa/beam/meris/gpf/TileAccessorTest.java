@@ -0,0 +1,157 @@
+package org.esa.beam.meris.gpf;
+
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.gpf.Tile;
+import org.esa.beam.framework.gpf.internal.TileImpl;
+import org.junit.Test;
+
+import java.awt.Point;
+import java.awt.image.BandedSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class TileAccessorTest {
+
+    private static final int WIDTH = 8;
+    private static final int HEIGHT = 6;
+
+    @Test
+    public void testSamplesIntOfWholeRaster() {
+        final Band band = new Band("b", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        final Tile tile = new TileImpl(band, createRaster(DataBuffer.TYPE_INT));
+        assertEquals(0, tile.getScanlineOffset());
+        assertEquals(WIDTH, tile.getScanlineStride());
+
+        // read in place
+        final int[] samples = TileAccessor.getSamplesInt(tile);
+        assertSame(tile.getDataBufferInt(), samples);
+        assertRawSamples(tile, samples);
+    }
+
+    @Test
+    public void testSamplesIntOfSubRectangle() {
+        final Band band = new Band("b", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        final Tile tile = new TileImpl(band, createChild(createRaster(DataBuffer.TYPE_INT)));
+        assertTrue(tile.getScanlineOffset() > 0);
+        assertEquals(WIDTH, tile.getScanlineStride());
+
+        // copied, the data buffer holds the whole parent raster
+        final int[] samples = TileAccessor.getSamplesInt(tile);
+        assertNotSame(tile.getDataBufferInt(), samples);
+        assertRawSamples(tile, samples);
+    }
+
+    @Test
+    public void testSamplesIntIntoArray() {
+        final Band band = new Band("b", ProductData.TYPE_INT16, WIDTH, HEIGHT);
+        final Tile tile = new TileImpl(band, createChild(createRaster(DataBuffer.TYPE_SHORT)));
+        assertTrue(tile.getScanlineOffset() > 0);
+
+        final int[] samples = new int[tile.getWidth() * tile.getHeight()];
+        assertSame(samples, TileAccessor.getSamplesInt(tile, samples));
+        assertRawSamples(tile, samples);
+        assertRawSamples(tile, TileAccessor.getSamplesInt(tile, null));
+
+        // the data buffer is returned if it can be read in place
+        final Band intBand = new Band("b", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        final Tile intTile = new TileImpl(intBand, createRaster(DataBuffer.TYPE_INT));
+        assertSame(intTile.getDataBufferInt(), TileAccessor.getSamplesInt(intTile, new int[WIDTH * HEIGHT]));
+    }
+
+    @Test
+    public void testSamplesIntOfScaledBand() {
+        final Band band = new Band("b", ProductData.TYPE_INT32, WIDTH, HEIGHT);
+        band.setScalingFactor(2.0);
+        band.setScalingOffset(-4.0);
+        final Tile tile = new TileImpl(band, createRaster(DataBuffer.TYPE_INT));
+
+        final int[] samples = TileAccessor.getSamplesInt(tile);
+        assertNotSame(tile.getDataBufferInt(), samples);
+        for (int y = tile.getMinY(); y <= tile.getMaxY(); y++) {
+            for (int x = tile.getMinX(); x <= tile.getMaxX(); x++) {
+                assertEquals(2 * getRawSample(x, y) - 4, samples[TileAccessor.getIndex(tile, x, y)]);
+            }
+        }
+    }
+
+    @Test
+    public void testSamplesBooleanOfSubRectangle() {
+        final Band band = new Band("b", ProductData.TYPE_UINT8, WIDTH, HEIGHT);
+        final Tile tile = new TileImpl(band, createChild(createRaster(DataBuffer.TYPE_BYTE)));
+        assertTrue(tile.getScanlineOffset() > 0);
+
+        final boolean[] samples = TileAccessor.getSamplesBoolean(tile, null);
+        assertEquals(tile.getWidth() * tile.getHeight(), samples.length);
+        for (int y = tile.getMinY(); y <= tile.getMaxY(); y++) {
+            for (int x = tile.getMinX(); x <= tile.getMaxX(); x++) {
+                assertEquals(getRawSample(x, y) != 0, samples[TileAccessor.getIndex(tile, x, y)]);
+                assertEquals(tile.getSampleBoolean(x, y), samples[TileAccessor.getIndex(tile, x, y)]);
+            }
+        }
+
+        // an array of the tile size is reused and overwritten
+        final boolean[] reused = new boolean[samples.length];
+        Arrays.fill(reused, true);
+        assertSame(reused, TileAccessor.getSamplesBoolean(tile, reused));
+        assertTrue(Arrays.equals(samples, reused));
+        assertNotSame(samples, TileAccessor.getSamplesBoolean(tile, new boolean[samples.length + 1]));
+    }
+
+    @Test
+    public void testSamplesBooleanOfScaledBand() {
+        final Band band = new Band("b", ProductData.TYPE_UINT8, WIDTH, HEIGHT);
+        band.setScalingFactor(2.0);
+        band.setScalingOffset(-4.0);
+        final Tile tile = new TileImpl(band, createChild(createRaster(DataBuffer.TYPE_BYTE)));
+
+        // the geophysical value is tested, a raw sample of 2 is false and a raw sample of 0 is true
+        final boolean[] samples = TileAccessor.getSamplesBoolean(tile, null);
+        int falseCount = 0;
+        for (int y = tile.getMinY(); y <= tile.getMaxY(); y++) {
+            for (int x = tile.getMinX(); x <= tile.getMaxX(); x++) {
+                final boolean expected = getRawSample(x, y) != 2;
+                assertEquals(expected, samples[TileAccessor.getIndex(tile, x, y)]);
+                if (!expected) {
+                    falseCount++;
+                }
+            }
+        }
+        assertTrue(falseCount > 0);
+    }
+
+    private static WritableRaster createRaster(int dataType) {
+        final WritableRaster raster = Raster.createWritableRaster(new BandedSampleModel(dataType, WIDTH, HEIGHT, 1),
+                                                                  new Point(0, 0));
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                raster.setSample(x, y, 0, getRawSample(x, y));
+            }
+        }
+        return raster;
+    }
+
+    /**
+     * @return a raster of the rectangle (2, 1, 5, 3) sharing the data buffer of the given raster
+     */
+    private static WritableRaster createChild(WritableRaster raster) {
+        return raster.createWritableChild(2, 1, 5, 3, 2, 1, null);
+    }
+
+    private static int getRawSample(int x, int y) {
+        return (x + 3 * y) % 4;
+    }
+
+    private static void assertRawSamples(Tile tile, int[] samples) {
+        assertEquals(tile.getWidth() * tile.getHeight(), samples.length);
+        for (int y = tile.getMinY(); y <= tile.getMaxY(); y++) {
+            for (int x = tile.getMinX(); x <= tile.getMaxX(); x++) {
+                assertEquals(getRawSample(x, y), samples[TileAccessor.getIndex(tile, x, y)]);
+            }
+        }
+    }
+}
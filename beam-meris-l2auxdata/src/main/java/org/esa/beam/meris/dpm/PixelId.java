@@ -39,9 +39,8 @@ public class PixelId {
 
         /* DPM #2.1.3-1 */
         /* get spectral_shift from detector id in order to use pressure polynomials */
-        Interp.interpCoord(auxData.central_wavelength[bb760][detectorIndex],
-                           auxData.spectral_shift_wavelength,
-                           spectralShiftIndex);
+        spectralShiftIndex.index = auxData.spectral_shift_760_index[detectorIndex];
+        spectralShiftIndex.fraction = auxData.spectral_shift_760_fraction[detectorIndex];
 
         // DPM #2.1.3-2, DPM #2.1.3-3, DPM #2.1.3-4
         // when out of bands, spectral_shift is set to 0 or PPOL_NUM_SHIFT with a null weight,
@@ -59,9 +58,8 @@ public class PixelId {
         Interp.interpCoord(airMass, auxData.C.getTab(1), cIndex[0]);
         Interp.interpCoord(rhoToa753, auxData.C.getTab(2), cIndex[1]);
 
-        float[][][] c_lut = (float[][][]) auxData.C.getJavaArray();
         // coefficient used in the pressure estimation
-        double C_res = Interp.interpolate(c_lut[VOLC_NONE], cIndex);
+        double C_res = auxData.C.interpolate2D(VOLC_NONE * auxData.C.getStride(0), cIndex[0], cIndex[1]);
 
         // DPM #2.1.12-5, etha * C
         double ethaC = eta * C_res;
@@ -107,14 +105,15 @@ public class PixelId {
         if (polcoeffShiftIndex.fraction > 0.5) {
             polcoeffShiftIndex.index++;
         }
-        float[][] polcoeff = (float[][]) auxData.polcoeff.getArray().getJavaArray();
+        final double[] polcoeff = auxData.polcoeff.getFlatArray();
+        final int polcoeffOffset = polcoeffShiftIndex.index * auxData.polcoeff.getStride(0);
 
         /* DPM #2.1.16-2 */
-        P = polcoeff[polcoeffShiftIndex.index][0];
+        P = polcoeff[polcoeffOffset];
         koeff = 1.0;
         for (int i = 1; i < PPOL_NUM_ORDER; i++) {
             koeff *= eta_C;
-            P += polcoeff[polcoeffShiftIndex.index][i] * koeff;
+            P += polcoeff[polcoeffOffset + i] * koeff;
         }
         /* CHANGED v7.0: polynomial now gives log10(m*P^2) (LB 15/12/2003) */
         if ((P <= 308.0) && (P >= -308.0)) {  /* MP2 would be out of double precision range  */
@@ -141,11 +140,11 @@ public class PixelId {
         if (isLand) {
             Interp.interpCoord(sza, auxData.DPthresh_land.getTab(0), DP_Index[0]);
             Interp.interpCoord(vza, auxData.DPthresh_land.getTab(1), DP_Index[1]);
-            delta_press_thresh = Interp.interpolate(auxData.DPthresh_land.getJavaArray(), DP_Index);
+            delta_press_thresh = auxData.DPthresh_land.interpolate(DP_Index);
         } else {
             Interp.interpCoord(sza, auxData.DPthresh_ocean.getTab(0), DP_Index[0]);
             Interp.interpCoord(vza, auxData.DPthresh_ocean.getTab(1), DP_Index[1]);
-            delta_press_thresh = Interp.interpolate(auxData.DPthresh_ocean.getJavaArray(), DP_Index);
+            delta_press_thresh = auxData.DPthresh_ocean.interpolate(DP_Index);
         }
         return  delta_press_thresh;
     }
@@ -188,12 +187,12 @@ public class PixelId {
             Interp.interpCoord(sza, auxData.Rhorc_442_land_LUT.getTab(0), rhoRC442index[0]);
             Interp.interpCoord(vza, auxData.Rhorc_442_land_LUT.getTab(1), rhoRC442index[1]);
             Interp.interpCoord(delta_azimuth, auxData.Rhorc_442_land_LUT.getTab(2), rhoRC442index[2]);
-            rhorc_442_thr = Interp.interpolate(auxData.Rhorc_442_land_LUT.getJavaArray(), rhoRC442index);
+            rhorc_442_thr = auxData.Rhorc_442_land_LUT.interpolate(rhoRC442index);
         } else {    /* water  pixel */
             Interp.interpCoord(sza, auxData.Rhorc_442_ocean_LUT.getTab(0), rhoRC442index[0]);
             Interp.interpCoord(vza, auxData.Rhorc_442_ocean_LUT.getTab(1), rhoRC442index[1]);
             Interp.interpCoord(delta_azimuth, auxData.Rhorc_442_ocean_LUT.getTab(2), rhoRC442index[2]);
-            rhorc_442_thr = Interp.interpolate(auxData.Rhorc_442_ocean_LUT.getJavaArray(), rhoRC442index);
+            rhorc_442_thr = auxData.Rhorc_442_ocean_LUT.interpolate(rhoRC442index);
         }
         return rhorc_442_thr;
     }
@@ -12,6 +12,7 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringTokenizer;
 import java.util.logging.Logger;
 
@@ -20,13 +21,16 @@ import java.util.logging.Logger;
  * and variables.
  * <p/>
  * It is implemented as a singleton, since all information provided by this class is globally accessible.
+ * <p/>
+ * The descriptions are read from the binary {@link AuxDatabaseIndex index} generated at build time. The textual
+ * description resources are only parsed if the index is not available.
  */
 public class AuxDatabase {
 
 
-    private static AuxDatabase _instance = new AuxDatabase();
     private AuxFileInfo[] _fileInfos;
-    private HashMap _varIdToVarInfoMap;
+    private AuxVariableInfo[] _variableInfos;
+    private Map<String, AuxVariableInfo> _varIdToVarInfoMap;
 
     /////////////////////////////////////////////////////////////////////////
     // Public methods
@@ -37,7 +41,7 @@ public class AuxDatabase {
      * @return the instance
      */
     public static AuxDatabase getInstance() {
-        return _instance;
+        return InstanceHolder.INSTANCE;
     }
 
     /**
@@ -82,7 +86,30 @@ public class AuxDatabase {
      * @return
      */
     public AuxVariableInfo getVariableInfo(String varId) {
-        return (AuxVariableInfo) _varIdToVarInfoMap.get(varId);
+        return _varIdToVarInfoMap.get(varId);
+    }
+
+    /**
+     * Gets the handle of the variable with the given ID. Handles can be used to access variable information and
+     * to read variables without looking them up by their ID.
+     *
+     * @param varId the variable ID, e.g. "P10U"
+     * @return the handle, or <code>-1</code> if no such variable exists
+     */
+    public int getVariableHandle(String varId) {
+        final AuxVariableInfo variableInfo = _varIdToVarInfoMap.get(varId);
+        return variableInfo != null ? variableInfo.getHandle() : -1;
+    }
+
+    /**
+     * Gets the variable information for the given variable handle.
+     *
+     * @param varHandle the variable handle
+     * @return the variable information
+     * @see #getVariableHandle(String)
+     */
+    public AuxVariableInfo getVariableInfo(int varHandle) {
+        return _variableInfos[varHandle];
     }
 
     /**
@@ -100,16 +127,57 @@ public class AuxDatabase {
     private AuxDatabase() {
         getLogger().info("loading auxiliary resources...");
         try {
-            initFileInfos();
-            initVariableInfos();
+            final InputStream indexStream = getResourceAsStream(AuxDatabaseIndex.RESOURCE_NAME);
+            if (indexStream != null) {
+                _fileInfos = AuxDatabaseIndex.read(indexStream);
+            } else {
+                getLogger().warning("missing resource (might be OK): " + AuxDatabaseIndex.RESOURCE_NAME);
+                _fileInfos = loadResources();
+            }
         } catch (IOException e) {
             throw new IllegalStateException("auxiliary resource I/O error: " + e.getMessage());
         }
+        initVariableHandles();
         getLogger().info("auxiliary resources loaded");
     }
 
+    /**
+     * Constructs a database from the given file information instead of the resources.
+     *
+     * @param fileInfos the file information including their dataset and variable information
+     */
+    AuxDatabase(AuxFileInfo[] fileInfos) {
+        _fileInfos = fileInfos;
+        initVariableHandles();
+    }
+
+    private void initVariableHandles() {
+        final List<AuxVariableInfo> variableInfoList = new ArrayList<AuxVariableInfo>();
+        _varIdToVarInfoMap = new HashMap<String, AuxVariableInfo>();
+        for (AuxFileInfo fileInfo : _fileInfos) {
+            for (int j = 0; j < fileInfo.getVariableCount(); j++) {
+                final AuxVariableInfo variableInfo = fileInfo.getVariableInfo(j);
+                variableInfo.setHandle(variableInfoList.size());
+                variableInfoList.add(variableInfo);
+                _varIdToVarInfoMap.put(variableInfo.getId(), variableInfo);
+            }
+        }
+        _variableInfos = variableInfoList.toArray(new AuxVariableInfo[variableInfoList.size()]);
+    }
+
+    /**
+     * Parses the textual description resources of the database files and variables.
+     *
+     * @return the file information
+     * @throws IOException if an I/O error occurs
+     */
+    static AuxFileInfo[] loadResources() throws IOException {
+        final AuxFileInfo[] fileInfos = loadFileInfos();
+        loadVariableInfos(fileInfos);
+        return fileInfos;
+    }
 
-    private void initFileInfos() throws IOException {
+    private static AuxFileInfo[] loadFileInfos() throws IOException {
         final String resourceName = "database.db";
         final InputStream istream = getResourceAsStream(resourceName);
         if (istream == null) {
@@ -117,7 +185,7 @@ public class AuxDatabase {
         }
         final BufferedReader r = new BufferedReader(new InputStreamReader(istream));
         try {
-            _fileInfos = loadFileInfos(r);
+            return loadFileInfos(r);
         } catch (IOException e) {
             throw e;
         } finally {
@@ -125,12 +193,11 @@ public class AuxDatabase {
         }
     }
 
-    private void initVariableInfos() throws IOException {
+    private static void loadVariableInfos(AuxFileInfo[] fileInfos) throws IOException {
 //        Dumper dumper = new Dumper("l2_variables.txt");
 //        dumper.dumpVariableInfoHeader();
-        _varIdToVarInfoMap = new HashMap();
-        for (int i = 0; i < _fileInfos.length; i++) {
-            final AuxFileInfo fileInfo = _fileInfos[i];
+        for (int i = 0; i < fileInfos.length; i++) {
+            final AuxFileInfo fileInfo = fileInfos[i];
             final String resourceName = "index_" + (fileInfo.getTypeId() + ".txa").toLowerCase();
             final InputStream istream = getResourceAsStream(resourceName);
             if (istream != null) {
@@ -138,10 +205,6 @@ public class AuxDatabase {
                 try {
                     final AuxVariableInfo[] variableInfos = loadVariableInfos(fileInfo, r);
                     fileInfo.setVariableInfos(variableInfos);
-                    for (int j = 0; j < variableInfos.length; j++) {
-                        final AuxVariableInfo variableInfo = fileInfo.getVariableInfo(j);
-                        _varIdToVarInfoMap.put(variableInfo.getId(), variableInfo);
-                    }
 //                    dumper.dumpVariableInfos(fileInfo, variableInfos);
                 } catch (IOException e) {
                     throw e;
@@ -150,6 +213,7 @@ public class AuxDatabase {
                 }
             } else {
                 getLogger().warning("missing resource (might be OK): " + resourceName);
+                fileInfo.setVariableInfos(new AuxVariableInfo[0]);
             }
         }
 //        dumper.close();
@@ -322,6 +386,15 @@ public class AuxDatabase {
     }
 
 
+    /**
+     * Creates the instance on first use only, so that {@link #loadResources()} can be called while generating the
+     * index without reading a stale or missing index first.
+     */
+    private static class InstanceHolder {
+
+        private static final AuxDatabase INSTANCE = new AuxDatabase();
+    }
+
     private static class Dumper {
 
         private PrintWriter _w;
@@ -0,0 +1,195 @@
+package org.esa.beam.meris.l2auxdata;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A compact binary index of the database file and variable descriptions of the {@link AuxDatabase}. Reading the
+ * index replaces parsing the textual description resources, which are only available as a resource bundle at
+ * build time anyway.
+ * <p/>
+ * The index is generated during the build by calling {@link #main(String[])} with the class output directory,
+ * which is why this class is public. Only the Maven build does this, in the <code>process-classes</code> phase.
+ * Builds that skip it, e.g. in an IDE, have no index and {@link AuxDatabase} parses the textual resources instead.
+ */
+public final class AuxDatabaseIndex {
+
+    static final String RESOURCE_NAME = "auxdb.idx";
+
+    private static final int MAGIC = 0x41584442; // "AXDB"
+    /**
+     * Must be incremented whenever the written fields or their order change.
+     */
+    private static final int VERSION = 1;
+
+    private AuxDatabaseIndex() {
+    }
+
+    /**
+     * Generates the index from the textual description resources.
+     *
+     * @param args the directory of the <code>org.esa.beam.meris.l2auxdata</code> package in the class output
+     *             directory
+     * @throws IOException if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            throw new IllegalArgumentException("Usage: AuxDatabaseIndex <output-dir>");
+        }
+        final File dir = new File(args[0]);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dir);
+        }
+        final AuxFileInfo[] fileInfos = AuxDatabase.loadResources();
+        final OutputStream outputStream = new FileOutputStream(new File(dir, RESOURCE_NAME));
+        try {
+            write(fileInfos, outputStream);
+        } finally {
+            outputStream.close();
+        }
+    }
+
+    /**
+     * Writes the index of the given file information including their dataset and variable information.
+     *
+     * @param fileInfos    the file information
+     * @param outputStream the stream to write to, not closed by this method
+     * @throws IOException if an I/O error occurs
+     */
+    static void write(AuxFileInfo[] fileInfos, OutputStream outputStream) throws IOException {
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(fileInfos.length);
+        for (AuxFileInfo fileInfo : fileInfos) {
+            out.writeChar(fileInfo.getTypeId());
+            out.writeBoolean(fileInfo.isEditable());
+            out.writeBoolean(fileInfo.isImport());
+            writeString(out, fileInfo.getDirName());
+            writeString(out, fileInfo.getDescription());
+            out.writeInt(fileInfo.getDatasetCount());
+            for (int i = 0; i < fileInfo.getDatasetCount(); i++) {
+                final AuxDatasetInfo datasetInfo = fileInfo.getDatasetInfo(i);
+                out.writeChar(datasetInfo.getId());
+                out.writeInt(datasetInfo.getType());
+                out.writeInt(datasetInfo.getRecordSize());
+                writeString(out, datasetInfo.getVarIdForNumRecords());
+                writeString(out, datasetInfo.getName());
+            }
+            out.writeInt(fileInfo.getVariableCount());
+            for (int i = 0; i < fileInfo.getVariableCount(); i++) {
+                final AuxVariableInfo variableInfo = fileInfo.getVariableInfo(i);
+                out.writeInt(variableInfo.getDatasetInfo().getIndex());
+                writeString(out, variableInfo.getId());
+                out.writeInt(variableInfo.getOffset());
+                out.writeDouble(variableInfo.getScale());
+                out.writeInt(variableInfo.getDataType());
+                out.writeInt(variableInfo.getDim1());
+                out.writeInt(variableInfo.getDim2());
+                out.writeInt(variableInfo.getDim3());
+                out.writeInt(variableInfo.getNumBytes());
+                out.writeInt(variableInfo.getEditFlag());
+                out.writeInt(variableInfo.getEditType());
+                out.writeInt(variableInfo.getDisplayType());
+                writeString(out, variableInfo.getRange());
+                writeString(out, variableInfo.getComment());
+                writeString(out, variableInfo.getUnit());
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads an index. The stream is read at once and closed.
+     *
+     * @param inputStream the stream to read from
+     * @return the file information including their dataset and variable information
+     * @throws IOException if an I/O error occurs or the stream does not contain a valid index
+     */
+    static AuxFileInfo[] read(InputStream inputStream) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(readFully(inputStream)));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not an auxiliary database index");
+        }
+        final int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported auxiliary database index version " + version);
+        }
+        final AuxFileInfo[] fileInfos = new AuxFileInfo[in.readInt()];
+        for (int i = 0; i < fileInfos.length; i++) {
+            final AuxFileInfo fileInfo = new AuxFileInfo();
+            fileInfo.setTypeId(in.readChar());
+            fileInfo.setEditable(in.readBoolean());
+            fileInfo.setImport(in.readBoolean());
+            fileInfo.setDirName(readString(in));
+            fileInfo.setDescription(readString(in));
+            fileInfo.setDatasetCount(in.readInt());
+            for (int j = 0; j < fileInfo.getDatasetCount(); j++) {
+                final AuxDatasetInfo datasetInfo = fileInfo.getDatasetInfo(j);
+                datasetInfo.setId(in.readChar());
+                datasetInfo.setType(in.readInt());
+                datasetInfo.setRecordSize(in.readInt());
+                datasetInfo.setVarIdForNumRecords(readString(in));
+                datasetInfo.setName(readString(in));
+            }
+            final AuxVariableInfo[] variableInfos = new AuxVariableInfo[in.readInt()];
+            for (int j = 0; j < variableInfos.length; j++) {
+                final AuxVariableInfo variableInfo = new AuxVariableInfo(fileInfo.getDatasetInfo(in.readInt()));
+                variableInfo.setId(readString(in));
+                variableInfo.setOffset(in.readInt());
+                variableInfo.setScale(in.readDouble());
+                variableInfo.setDataType(in.readInt());
+                variableInfo.setDim1(in.readInt());
+                variableInfo.setDim2(in.readInt());
+                variableInfo.setDim3(in.readInt());
+                variableInfo.setElementSize(in.readInt());
+                variableInfo.setEditFlag(in.readInt());
+                variableInfo.setEditType(in.readInt());
+                variableInfo.setDisplayType(in.readInt());
+                variableInfo.setRange(readString(in));
+                variableInfo.setComment(readString(in));
+                variableInfo.setUnit(readString(in));
+                variableInfos[j] = variableInfo;
+            }
+            fileInfo.setVariableInfos(variableInfos);
+            fileInfos[i] = fileInfo;
+        }
+        if (in.available() > 0) {
+            throw new IOException("Corrupt auxiliary database index");
+        }
+        return fileInfos;
+    }
+
+    private static byte[] readFully(InputStream inputStream) throws IOException {
+        try {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+            final byte[] buffer = new byte[16 * 1024];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -11,19 +11,39 @@ import org.esa.beam.util.Guardian;
 
 import javax.imageio.stream.FileImageInputStream;
 import javax.imageio.stream.ImageInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.logging.Level;
 
 /**
  * Represents a physical auxiliary database file.
+ * <p/>
+ * The file content is memory-mapped when the file is opened. Numeric records are copied directly from the
+ * mapped buffer or can be accessed without any copying by {@link #getRecordView(String, int)}. Only records
+ * stored as ASCII, and all records of files too large to be mapped, are read through the
+ * {@link #getInputStream() input stream}.
  */
 public class AuxFile {
 
+    /**
+     * The maximum size of a file that can be mapped.
+     */
+    static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    private final AuxDatabase _database;
     private final AuxFileInfo _fileInfo;
     private final File _file;
 
     private ImageInputStream _inputStream;
+    private MappedByteBuffer _buffer;
     private int[] _recordCounts; // _recordCounts.length = #numTables
     private long[] _datasetOffsets; // _datasetOffsets.length = #numTables
     private long _computedFileSize;
@@ -50,6 +70,18 @@ public class AuxFile {
      * @param file     the file, must not be <code>null</code>
      */
     public AuxFile(AuxFileInfo fileInfo, File file) {
+        this(AuxDatabase.getInstance(), fileInfo, file);
+    }
+
+    /**
+     * Constructs a new instance for the given file, whose variables are looked up in the given database.
+     *
+     * @param database the database the file information belongs to
+     * @param fileInfo the file information, must not be <code>null</code>
+     * @param file     the file, must not be <code>null</code>
+     */
+    AuxFile(AuxDatabase database, AuxFileInfo fileInfo, File file) {
+        _database = database;
         _fileInfo = fileInfo;
         _file = file;
     }
@@ -83,6 +115,16 @@ public class AuxFile {
         return _inputStream;
     }
 
+    /**
+     * Gets the read-only, memory-mapped content of the database file. The method returns <code>null</code>, if this
+     * file has not been opened so far or if it is too large to be mapped.
+     *
+     * @return the mapped buffer or <code>null</code>
+     */
+    public MappedByteBuffer getBuffer() {
+        return _buffer;
+    }
+
     /**
      * Returns the computed file size.
      *
@@ -106,6 +148,17 @@ public class AuxFile {
      * @throws IllegalStateException if the file is already open
      */
     public void open() throws IOException {
+        open(MAX_MAPPED_SIZE);
+    }
+
+    /**
+     * Opens a database file, the file is only mapped if its size does not exceed the given maximum size.
+     *
+     * @param maxMappedSize the maximum size of the file to be mapped
+     * @throws IOException           if the file does not exist or an I/O error occurs
+     * @throws IllegalStateException if the file is already open
+     */
+    void open(long maxMappedSize) throws IOException {
         if (_inputStream != null) {
             throw new IllegalStateException("already open");
         }
@@ -113,8 +166,12 @@ public class AuxFile {
         AuxDatabase.getLogger().info("opening auxiliary database file '" + _file.getPath() + "'");
 
         _inputStream = new FileImageInputStream(_file);
-        if (_inputStream == null) {
-            _inputStream = new FileImageInputStream(_file);
+        try {
+            _buffer = map(_file, maxMappedSize);
+        } catch (IOException e) {
+            _inputStream.close();
+            _inputStream = null;
+            throw e;
         }
 
         final int datasetCount = _fileInfo.getDatasetCount();
@@ -151,6 +208,7 @@ public class AuxFile {
             AuxDatabase.getLogger().warning("failed to close auxiliary database file '" + _file.getPath() + "'");
         }
         _inputStream = null;
+        _buffer = null;
         _recordCounts = null;
         _datasetOffsets = null;
         _computedFileSize = 0;
@@ -314,14 +372,39 @@ public class AuxFile {
                                   ProductData memoryData) throws IOException {
 
         Guardian.assertNotNullOrEmpty("varId", varId);
+        return readRecord(getVariableHandle(varId), recordIndex, elementCount, memoryDataType, memoryData);
+    }
+
+    /**
+     * Reads a data record for the given variable from this database file. Other than
+     * {@link #readRecord(String, int, int, int, ProductData)} this method does not look up the variable by its ID,
+     * it should be preferred if the same variable is read repeatedly.
+     *
+     * @param varHandle      the variable handle, see {@link AuxDatabase#getVariableHandle(String)}
+     * @param recordIndex    the record index
+     * @param elementCount   the expected element count, <code>-1</code> if not used
+     * @param memoryDataType the type of the variable
+     * @param memoryData     an instance of data to be reused, if <code>null</code> the method creates a new data
+     *                       instance
+     * @return the data, never <code>null</code>
+     * @throws IOException              if an I/O error occurs
+     * @throws IllegalArgumentException if one of the arguments is invalid
+     * @throws IllegalStateException    if this object is in an illegal state, e.g. the file is not open
+     */
+    public ProductData readRecord(int varHandle,
+                                  int recordIndex,
+                                  int elementCount,
+                                  int memoryDataType,
+                                  ProductData memoryData) throws IOException {
+
         if (_inputStream == null) {
             throw new IllegalStateException("no input stream");
         }
 
-        final AuxVariableInfo variableInfo = AuxDatabase.getInstance().getVariableInfo(varId);
+        final AuxVariableInfo variableInfo = _database.getVariableInfo(varHandle);
         final AuxDatasetInfo datasetInfo = variableInfo.getDatasetInfo();
         if (getFileInfo() != datasetInfo.getFileInfo()) {
-            throw new IllegalArgumentException("illegal varId: " + varId);
+            throw new IllegalArgumentException("illegal varId: " + variableInfo.getId());
         }
 
         // memory data is the one returned by this method,
@@ -357,12 +440,182 @@ public class AuxFile {
 
         checkRecordSize(variableInfo, storageData);
         long offset = getOffset(datasetInfo, variableInfo, recordIndex);
-        _inputStream.seek(offset);
-        storageData.readFrom(_inputStream);
+        if (_buffer != null && !(storageData instanceof ProductData.ASCII)) {
+            readFromBuffer(variableInfo, offset, storageData);
+        } else {
+            _inputStream.seek(offset);
+            storageData.readFrom(_inputStream);
+        }
         convertData(variableInfo, storageData, memoryData);
         return memoryData;
     }
 
+    /**
+     * Gets a view of a data record for the given variable. The view is backed by the memory-mapped file,
+     * no data is copied. Depending on the storage data type of the variable, the view is a
+     * {@link ByteBuffer}, {@link java.nio.ShortBuffer}, {@link java.nio.IntBuffer},
+     * {@link java.nio.FloatBuffer} or {@link java.nio.DoubleBuffer}, with one element per variable element.
+     * <p/>
+     * Unsigned values are not widened, so for unsigned types the caller has to mask the elements of the view.
+     * Variables stored as ASCII or with a scaling factor other than one cannot be viewed, they have to be
+     * read by {@link #readRecord(String, int, int, int, ProductData) readRecord}.
+     *
+     * @param varId       the variable ID, must not be <code>null</code>
+     * @param recordIndex the record index
+     * @return a read-only view of the record, positioned at its first element
+     * @throws IOException              if the record lies beyond the end of the file
+     * @throws IllegalArgumentException if one of the arguments is invalid or the variable cannot be viewed
+     * @throws IllegalStateException    if the file is not open or could not be mapped
+     */
+    public Buffer getRecordView(String varId, int recordIndex) throws IOException {
+        Guardian.assertNotNullOrEmpty("varId", varId);
+        return getRecordView(getVariableHandle(varId), recordIndex);
+    }
+
+    /**
+     * Gets a view of a data record for the given variable, see {@link #getRecordView(String, int)}.
+     *
+     * @param varHandle   the variable handle, see {@link AuxDatabase#getVariableHandle(String)}
+     * @param recordIndex the record index
+     * @return a read-only view of the record, positioned at its first element
+     * @throws IOException              if the record lies beyond the end of the file
+     * @throws IllegalArgumentException if one of the arguments is invalid or the variable cannot be viewed
+     * @throws IllegalStateException    if the file is not open or could not be mapped
+     */
+    public Buffer getRecordView(int varHandle, int recordIndex) throws IOException {
+        if (_buffer == null) {
+            throw new IllegalStateException("no mapped buffer");
+        }
+
+        final AuxVariableInfo variableInfo = _database.getVariableInfo(varHandle);
+        final AuxDatasetInfo datasetInfo = variableInfo.getDatasetInfo();
+        if (getFileInfo() != datasetInfo.getFileInfo()) {
+            throw new IllegalArgumentException("illegal varId: " + variableInfo.getId());
+        }
+        final int storageDataType = variableInfo.getDataType();
+        if (storageDataType == ProductData.TYPE_ASCII || storageDataType == ProductData.TYPE_UTC) {
+            throw new IllegalArgumentException(createMessagePrefix(variableInfo) +
+                    "no view for storage data type " + ProductData.getTypeString(storageDataType));
+        }
+        if (variableInfo.getScale() != 1.0) {
+            throw new IllegalArgumentException(createMessagePrefix(variableInfo) + "no view for scaled variable");
+        }
+
+        final ByteBuffer record = slice(variableInfo, getOffset(datasetInfo, variableInfo, recordIndex),
+                                        ProductData.getElemSize(storageDataType) * variableInfo.getNumElements());
+        switch (storageDataType) {
+            case ProductData.TYPE_INT8:
+            case ProductData.TYPE_UINT8:
+                return record;
+            case ProductData.TYPE_INT16:
+            case ProductData.TYPE_UINT16:
+                return record.asShortBuffer();
+            case ProductData.TYPE_INT32:
+            case ProductData.TYPE_UINT32:
+                return record.asIntBuffer();
+            case ProductData.TYPE_FLOAT32:
+                return record.asFloatBuffer();
+            case ProductData.TYPE_FLOAT64:
+                return record.asDoubleBuffer();
+            default:
+                throw new IllegalArgumentException(createMessagePrefix(variableInfo) +
+                        "no view for storage data type " + ProductData.getTypeString(storageDataType));
+        }
+    }
+
+    /**
+     * Reads the <code>float</code> elements of a data record for the given variable from this database file.
+     * Records of variables stored as unscaled <code>float</code> values are not copied, the returned buffer is a
+     * {@link #getRecordView(int, int) view} of the mapped file then. All other records are read by
+     * {@link #readRecord(int, int, int, int, ProductData) readRecord}.
+     *
+     * @param varId       the variable ID, must not be <code>null</code>
+     * @param recordIndex the record index
+     * @return the elements, positioned at the first element
+     * @throws IOException if an I/O error occurs
+     */
+    public FloatBuffer readFloatRecord(String varId, int recordIndex) throws IOException {
+        Guardian.assertNotNullOrEmpty("varId", varId);
+        return readFloatRecord(getVariableHandle(varId), recordIndex);
+    }
+
+    /**
+     * Reads the <code>float</code> elements of a data record for the given variable from this database file, see
+     * {@link #readFloatRecord(String, int)}.
+     *
+     * @param varHandle   the variable handle, see {@link AuxDatabase#getVariableHandle(String)}
+     * @param recordIndex the record index
+     * @return the elements, positioned at the first element
+     * @throws IOException if an I/O error occurs
+     */
+    public FloatBuffer readFloatRecord(int varHandle, int recordIndex) throws IOException {
+        final AuxVariableInfo variableInfo = _database.getVariableInfo(varHandle);
+        if (_buffer != null && variableInfo.getDataType() == ProductData.TYPE_FLOAT32 && variableInfo.getScale() == 1.0) {
+            return (FloatBuffer) getRecordView(varHandle, recordIndex);
+        }
+        final ProductData data = readRecord(varHandle, recordIndex, -1, ProductData.TYPE_FLOAT32, null);
+        return FloatBuffer.wrap((float[]) data.getElems());
+    }
+
+    private int getVariableHandle(String varId) {
+        final int varHandle = _database.getVariableHandle(varId);
+        if (varHandle == -1) {
+            throw new IllegalArgumentException("illegal varId: " + varId);
+        }
+        return varHandle;
+    }
+
+    private void readFromBuffer(final AuxVariableInfo variableInfo, final long offset, ProductData storageData) throws IOException {
+        final int numElems = storageData.getNumElems();
+        final ByteBuffer record = slice(variableInfo, offset, storageData.getElemSize() * numElems);
+        final Object elems = storageData.getElems();
+        if (elems instanceof byte[]) {
+            record.get((byte[]) elems, 0, numElems);
+        } else if (elems instanceof short[]) {
+            record.asShortBuffer().get((short[]) elems, 0, numElems);
+        } else if (elems instanceof int[]) {
+            record.asIntBuffer().get((int[]) elems, 0, numElems);
+        } else if (elems instanceof float[]) {
+            record.asFloatBuffer().get((float[]) elems, 0, numElems);
+        } else if (elems instanceof double[]) {
+            record.asDoubleBuffer().get((double[]) elems, 0, numElems);
+        } else {
+            _inputStream.seek(offset);
+            storageData.readFrom(_inputStream);
+        }
+    }
+
+    /**
+     * Returns a big-endian slice of the mapped buffer, the buffer itself is left untouched so that
+     * concurrent reads do not interfere.
+     */
+    private ByteBuffer slice(final AuxVariableInfo variableInfo, final long offset, final int byteCount) throws IOException {
+        if (offset < 0 || offset + byteCount > _buffer.capacity()) {
+            throw new EOFException(createMessagePrefix(variableInfo) +
+                    "record at offset " + offset + " exceeds file size (" + _buffer.capacity() + ")");
+        }
+        final ByteBuffer record = _buffer.duplicate();
+        record.position((int) offset);
+        record.limit((int) offset + byteCount);
+        return record.slice().order(ByteOrder.BIG_ENDIAN);
+    }
+
+    private static MappedByteBuffer map(File file, long maxSize) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            if (channel.size() > maxSize) {
+                AuxDatabase.getLogger().warning("file '" + file.getName() + "': too large to be mapped, " +
+                        "reading through input stream");
+                return null;
+            }
+            // the mapping stays valid after the channel has been closed
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close();
+        }
+    }
+
     private void checkMemoryData(ProductData memoryData, final int memoryDataType, int memoryElemsCount) {
         if (memoryDataType == ProductData.TYPE_ASCII && !(memoryData instanceof ProductData.ASCII) ||
                 memoryDataType == ProductData.TYPE_UTC && !(memoryData instanceof ProductData.UTC) ||
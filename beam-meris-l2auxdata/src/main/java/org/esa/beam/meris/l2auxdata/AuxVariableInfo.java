@@ -10,6 +10,7 @@ package org.esa.beam.meris.l2auxdata;
 public class AuxVariableInfo {
 
     private final AuxDatasetInfo _datasetInfo;
+    private int _handle = -1;
 
     private String _id;
     private int _offset;
@@ -38,6 +39,17 @@ public class AuxVariableInfo {
         return _datasetInfo;
     }
 
+    /**
+     * @return the handle of this variable in the {@link AuxDatabase}, <code>-1</code> if not registered
+     */
+    public int getHandle() {
+        return _handle;
+    }
+
+    void setHandle(int handle) {
+        _handle = handle;
+    }
+
     public String getComment() {
         return _comment;
     }
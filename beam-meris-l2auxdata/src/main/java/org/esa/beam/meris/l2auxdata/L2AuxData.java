@@ -17,12 +17,28 @@ import org.esa.beam.util.math.Interp;
 import org.esa.beam.util.math.LUT;
 import org.esa.beam.util.math.MDArray;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * The <code>L2AuxData</code> class is a collection of all relevant MERIS Level 2 DPM parameters.
  * <p/>
  * For convinience reasons, this class models a C-language-like structure which has only public fields and no methods.
+ * <p/>
+ * The arrays and LUTs referenced by an instance are shared by all products of the same resolution, see
+ * {@link L2AuxDataProvider}. They must not be modified.
  */
 public final class L2AuxData implements Constants {
     /**
@@ -99,6 +115,10 @@ public final class L2AuxData implements Constants {
      * Constants#FR_DETECTOR_COUNT}]</code> for FR products
      */
     public double[][] detector_solar_irradiance;
+    /**
+     * Reciprocals of the {@link #detector_solar_irradiance}, same dimension sizes
+     */
+    public double[][] detector_solar_irradiance_inv;
     /**
      * Detector central wavelengths, dimension sizes are <code>[{@link Constants#L1_BAND_NUM}][{@link
      * Constants#RR_DETECTOR_COUNT}]</code> for RR products and <code>[{@link Constants#L1_BAND_NUM}][{@link
@@ -142,6 +162,26 @@ public final class L2AuxData implements Constants {
      * Spectral shift tabulated values, size is {@link Constants#PPOL_NUM_SHIFT}
      */
     public double[] spectral_shift_wavelength;
+    /**
+     * Index of the {@link #central_wavelength} of band 11 of each detector in the {@link #spectral_shift_wavelength},
+     * size is the detector count. Indexes are not clamped, the last index may be
+     * <code>{@link Constants#PPOL_NUM_SHIFT} - 1</code>.
+     */
+    public int[] spectral_shift_760_index;
+    /**
+     * Interpolation weights belonging to {@link #spectral_shift_760_index}, size is the detector count
+     */
+    public double[] spectral_shift_760_fraction;
+    /**
+     * Index of the {@link #central_wavelength} of band 9 of each detector in the
+     * {@link #spectral_shift_H2Owavelength}, size is the detector count. Indexes are not clamped, the last index may
+     * be <code>{@link Constants#PPOL_NUM_SHIFT} - 1</code>.
+     */
+    public int[] spectral_shift_705_index;
+    /**
+     * Interpolation weights belonging to {@link #spectral_shift_705_index}, size is the detector count
+     */
+    public double[] spectral_shift_705_fraction;
     /**
      * Ozone Optical Thickness for 1 cm.atm
      */
@@ -175,7 +215,7 @@ public final class L2AuxData implements Constants {
      */
     public double lap_beta_w;
     /**
-     * [7][19][25][5][27] Glint reflectances
+     * [7][19][25][5][27] Glint reflectances for the sun zenith angle range of the source product
      */
     public LUT rog;
     /**
@@ -239,9 +279,67 @@ public final class L2AuxData implements Constants {
          * Contains the indexes of the two bands used for interpolation.
          */
         public final int[][] derivative_band_id = new int[L1_BAND_NUM][2];
+        /**
+         * The factors applied to the reflectance derivative per band and detector,
+         * <code>(theoretical_wavelength[b] - central_wavelength[b][d]) /
+         * (central_wavelength[b1][d] - central_wavelength[b0][d])</code> with <code>b0</code> and <code>b1</code>
+         * being the {@link #derivative_band_id}s. The rows of bands without smile correction are <code>null</code>.
+         */
+        public double[][] slope_factor;
+    }
+
+    /**
+     * The sections of the auxiliary data which can be loaded independently. The fields of sections which have not
+     * been loaded are <code>null</code> or zero.
+     */
+    public enum Section {
+        /**
+         * The level 2 configuration parameters, e.g. the {@link #detector_solar_irradiance}, the
+         * {@link #seasonal_factor}, the smile correction parameters and the classification thresholds.
+         */
+        CONFIGURATION,
+        /**
+         * The atmosphere parameters, e.g. the gaseous absorption coefficients and the Rayleigh optical thickness.
+         */
+        ATMOSPHERE,
+        /**
+         * The land and aerosol parameters, e.g. the reflectance thresholds and the glint reflectance {@link #rog}.
+         */
+        LAND_AEROSOL,
+        /**
+         * The Rayleigh multiple scattering function {@link #Rayscatt_coeff_s}.
+         */
+        RAYLEIGH_SCATTERING
+    }
+
+    /**
+     * Loads a single section into this instance.
+     */
+    interface SectionLoader {
+
+        void loadSection(Section section) throws L2AuxDataException, IOException;
     }
 
-    private Product sourceProduct;
+    /**
+     * Thetas tabulated values of all glint reflectance tables, the table {@link #rog} holds a subset of them.
+     */
+    float[] rog_all_sza_tab;
+    /**
+     * [7][19][25][5][27] Glint reflectances for all thetas tabulated values {@link #rog_all_sza_tab}, independent of
+     * the source product.
+     */
+    LUT rog_all;
+    /**
+     * Index of the first table of {@link #rog} in {@link #rog_all_sza_tab}.
+     */
+    int rog_sza_offset;
+
+    /**
+     * Name of the threads which load sections concurrently.
+     */
+    static final String LOADER_THREAD_NAME = "L2AuxData-loader";
+
+    private final Set<Section> loadedSections = EnumSet.noneOf(Section.class);
 
     /**
      * @param config
@@ -250,29 +348,360 @@ public final class L2AuxData implements Constants {
      * @throws IOException
      */
     public L2AuxData(DpmConfig config, Product product) throws L2AuxDataException, IOException {
-        sourceProduct = product;
-        loadAuxData(config);
+        this(config, product, EnumSet.allOf(Section.class));
     }
 
-    private void loadAuxData(DpmConfig config) throws L2AuxDataException, IOException {
-        final AuxFile auxFileO = AuxFile.open('O', config.getAuxDatabaseFile("lv2conf", null));
-        final AuxFile auxFileP = AuxFile.open('P', config.getAuxDatabaseFile("atmosphere", null));
-        final AuxFile auxFileS = AuxFile.open('S', config.getAuxDatabaseFile("landaero", null));
-        final AuxFile auxFileT = AuxFile.open('T', config.getAuxDatabaseFile("case1", null));
+    /**
+     * @param config
+     * @param product  Source product, must have start/stop time set and have a tie-point grid "sun_zenith"
+     * @param sections the sections to be loaded
+     * @throws L2AuxDataException
+     * @throws IOException
+     */
+    L2AuxData(DpmConfig config, Product product, Set<Section> sections) throws L2AuxDataException, IOException {
+        load(config, product, sections);
+    }
+
+    /**
+     * Creates an instance for another product sharing all tables of the given auxiliary data. The glint reflectances
+     * {@link #rog} are cut out of the shared tables for the sun zenith angle range of the product. Only the product
+     * dependent {@link #seasonal_factor} is not copied, callers have to {@link #initSeasonalFactor(Product) compute} it.
+     * The product is not referenced by the instance.
+     *
+     * @param auxData the auxiliary data providing the tables
+     * @param product Source product, must have start/stop time set and have a tie-point grid "sun_zenith",
+     *                can be <code>null</code> if the instance is not used for processing
+     * @throws L2AuxDataException if the glint reflectance tables do not cover the sun zenith angle range of the
+     *                            product
+     */
+    L2AuxData(L2AuxData auxData, Product product) throws L2AuxDataException {
+        synchronized (auxData) {
+            copyTables(auxData);
+        }
+        if (product != null && rog_all != null) {
+            initRog(product);
+        }
+    }
+
+    private void copyTables(L2AuxData auxData) {
+        loadedSections.addAll(auxData.loadedSections);
+        sun_earth_distance_square = auxData.sun_earth_distance_square;
+        detector_count = auxData.detector_count;
+        maxPress = auxData.maxPress;
+        press_scale_height = auxData.press_scale_height;
+        press_confidence = auxData.press_confidence;
+        land_decision_table = auxData.land_decision_table;
+        water_decision_table = auxData.water_decision_table;
+        band_slope_n_1 = auxData.band_slope_n_1;
+        band_slope_d_1 = auxData.band_slope_d_1;
+        band_slope_n_2 = auxData.band_slope_n_2;
+        band_slope_d_2 = auxData.band_slope_d_2;
+        band_bright_n = auxData.band_bright_n;
+        slope_1_low_thr = auxData.slope_1_low_thr;
+        slope_1_high_thr = auxData.slope_1_high_thr;
+        slope_2_low_thr = auxData.slope_2_low_thr;
+        slope_2_high_thr = auxData.slope_2_high_thr;
+        detector_solar_irradiance = auxData.detector_solar_irradiance;
+        detector_solar_irradiance_inv = auxData.detector_solar_irradiance_inv;
+        central_wavelength = auxData.central_wavelength;
+        theoretical_wavelength = auxData.theoretical_wavelength;
+        Saturation_L = auxData.Saturation_L;
+        land_smile_params = auxData.land_smile_params;
+        water_smile_params = auxData.water_smile_params;
+        spectral_shift_H2Owavelength = auxData.spectral_shift_H2Owavelength;
+        H2Ocoef = auxData.H2Ocoef;
+        H2OcoefSpecShift = auxData.H2OcoefSpecShift;
+        O2coef = auxData.O2coef;
+        spectral_shift_wavelength = auxData.spectral_shift_wavelength;
+        spectral_shift_760_index = auxData.spectral_shift_760_index;
+        spectral_shift_760_fraction = auxData.spectral_shift_760_fraction;
+        spectral_shift_705_index = auxData.spectral_shift_705_index;
+        spectral_shift_705_fraction = auxData.spectral_shift_705_fraction;
+        tauO3_norm = auxData.tauO3_norm;
+        TETAS_LIM = auxData.TETAS_LIM;
+        r7thresh = auxData.r7thresh;
+        r13thresh = auxData.r13thresh;
+        alpha_thresh = auxData.alpha_thresh;
+        lap_b_thresh = auxData.lap_b_thresh;
+        lap_beta_l = auxData.lap_beta_l;
+        lap_beta_w = auxData.lap_beta_w;
+        rog = auxData.rog;
+        rog_all_sza_tab = auxData.rog_all_sza_tab;
+        rog_all = auxData.rog_all;
+        rog_sza_offset = auxData.rog_sza_offset;
+        Pstd = auxData.Pstd;
+        tau_R = auxData.tau_R;
+        AB = auxData.AB;
+        Raytrans = auxData.Raytrans;
+        Rhorc_442_land_LUT = auxData.Rhorc_442_land_LUT;
+        Rhorc_442_ocean_LUT = auxData.Rhorc_442_ocean_LUT;
+        Rayscatt_coeff_s = auxData.Rayscatt_coeff_s;
+        polcoeff = auxData.polcoeff;
+        C = auxData.C;
+        DPthresh_land = auxData.DPthresh_land;
+        DPthresh_ocean = auxData.DPthresh_ocean;
+        Rayalb = auxData.Rayalb;
+    }
+
+    /**
+     * Creates an instance whose fields are filled by other means, e.g. by an {@link L2AuxDataSnapshot}.
+     */
+    L2AuxData() {
+    }
+
+    /**
+     * @param sections the sections
+     * @return <code>true</code> if all given sections have been loaded
+     */
+    public synchronized boolean isLoaded(Set<Section> sections) {
+        return loadedSections.containsAll(sections);
+    }
+
+    /**
+     * @return the sections which have been loaded
+     */
+    public synchronized Set<Section> getLoadedSections() {
+        return EnumSet.copyOf(loadedSections);
+    }
+
+    /**
+     * Marks the given sections as loaded, used if the fields have been filled by other means.
+     *
+     * @param sections the sections
+     */
+    synchronized void setLoaded(Set<Section> sections) {
+        loadedSections.addAll(sections);
+        initDetectorTables();
+    }
+
+    /**
+     * Loads the given sections unless they have already been loaded. Only the database files needed by the
+     * sections are opened. If more than one section is missing, the sections are loaded concurrently, each one
+     * reading its own database files.
+     *
+     * @param config   the configuration providing the auxiliary database files
+     * @param product  the product used to determine the resolution and the range of sun zenith angles, must
+     *                 have a tie-point grid "sun_zenith"
+     * @param sections the sections to be loaded
+     * @throws L2AuxDataException if a section could not be loaded
+     * @throws IOException        if a section could not be read
+     * @see #loadSections(Set, SectionLoader)
+     */
+    synchronized void load(DpmConfig config, final Product product, Set<Section> sections)
+            throws L2AuxDataException, IOException {
+        final Set<Section> missingSections = EnumSet.noneOf(Section.class);
+        missingSections.addAll(sections);
+        missingSections.removeAll(loadedSections);
+        if (missingSections.isEmpty()) {
+            return;
+        }
+
+        // the configuration is not accessed concurrently
+        final Map<Character, File> files = new HashMap<Character, File>();
+        files.put('O', config.getAuxDatabaseFile("lv2conf", null));
+        files.put('P', config.getAuxDatabaseFile("atmosphere", null));
+        files.put('S', config.getAuxDatabaseFile("landaero", null));
+        files.put('T', config.getAuxDatabaseFile("case1", null));
+
+        loadSections(missingSections, new SectionLoader() {
+            @Override
+            public void loadSection(Section section) throws L2AuxDataException, IOException {
+                L2AuxData.this.loadSection(section, files, product);
+            }
+        });
+    }
+
+    /**
+     * Loads the given sections with the given loader, concurrently if there is more than one. The sections which
+     * have been loaded successfully are marked as loaded, even if other sections fail. The loader threads are
+     * shut down before this method returns.
+     *
+     * @param sections the sections to be loaded
+     * @param loader   loads a single section, called concurrently for different sections
+     * @throws L2AuxDataException if a section could not be loaded, the first failure in section order is thrown
+     *                            and the failures of further sections are attached as suppressed exceptions
+     * @throws IOException        if a section could not be read, the first failure in section order is thrown
+     *                            and the failures of further sections are attached as suppressed exceptions
+     */
+    synchronized void loadSections(Set<Section> sections, final SectionLoader loader)
+            throws L2AuxDataException, IOException {
+        if (sections.size() == 1) {
+            final Section section = sections.iterator().next();
+            loader.loadSection(section);
+            loadedSections.add(section);
+            initDetectorTables();
+            return;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(sections.size(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, LOADER_THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         try {
-            loadConfigurationAuxData(auxFileO);
-            loadAtmosphereAuxData(auxFileP);
-            loadLandAerosolAuxData(auxFileS, auxFileT);
-            loadRayscattCoeffAuxData(auxFileP, auxFileS);
+            final Map<Section, Future<Void>> futures = new EnumMap<Section, Future<Void>>(Section.class);
+            for (final Section section : sections) {
+                futures.put(section, executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        loader.loadSection(section);
+                        return null;
+                    }
+                }));
+            }
+            Throwable failure = null;
+            for (Map.Entry<Section, Future<Void>> entry : futures.entrySet()) {
+                try {
+                    entry.getValue().get();
+                    loadedSections.add(entry.getKey());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    } else {
+                        failure.addSuppressed(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new L2AuxDataException("Interrupted while loading auxiliary data", e);
+                }
+            }
+            initDetectorTables();
+            if (failure instanceof L2AuxDataException) {
+                throw (L2AuxDataException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            } else if (failure instanceof Error) {
+                throw (Error) failure;
+            } else if (failure != null) {
+                throw new L2AuxDataException(failure.getMessage(), failure);
+            }
         } finally {
-            auxFileO.close();
-            auxFileP.close();
-            auxFileS.close();
-            auxFileT.close();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Computes the per detector tables derived from the loaded fields, so that they are not recomputed per pixel.
+     * Tables which have already been computed or whose source fields have not been loaded are left untouched.
+     */
+    private void initDetectorTables() {
+        if (detector_solar_irradiance_inv == null && detector_solar_irradiance != null) {
+            final double[][] inverse = new double[detector_solar_irradiance.length][];
+            for (int b = 0; b < inverse.length; b++) {
+                inverse[b] = new double[detector_solar_irradiance[b].length];
+                for (int d = 0; d < inverse[b].length; d++) {
+                    inverse[b][d] = 1.0 / detector_solar_irradiance[b][d];
+                }
+            }
+            detector_solar_irradiance_inv = inverse;
+        }
+        if (central_wavelength != null && theoretical_wavelength != null) {
+            initSmileSlopeFactors(land_smile_params);
+            initSmileSlopeFactors(water_smile_params);
+        }
+        if (spectral_shift_760_index == null && central_wavelength != null
+            && spectral_shift_wavelength != null && spectral_shift_H2Owavelength != null) {
+            final int detectorCount = central_wavelength[bb760].length;
+            final int[] index705 = new int[detectorCount];
+            final double[] fraction705 = new double[detectorCount];
+            final int[] index760 = new int[detectorCount];
+            final double[] fraction760 = new double[detectorCount];
+            final FractIndex fractIndex = new FractIndex();
+            for (int d = 0; d < detectorCount; d++) {
+                Interp.interpCoord(central_wavelength[bb705][d], spectral_shift_H2Owavelength, fractIndex);
+                index705[d] = fractIndex.index;
+                fraction705[d] = fractIndex.fraction;
+                Interp.interpCoord(central_wavelength[bb760][d], spectral_shift_wavelength, fractIndex);
+                index760[d] = fractIndex.index;
+                fraction760[d] = fractIndex.fraction;
+            }
+            spectral_shift_705_index = index705;
+            spectral_shift_705_fraction = fraction705;
+            spectral_shift_760_index = index760;
+            spectral_shift_760_fraction = fraction760;
+        }
+    }
+
+    private void initSmileSlopeFactors(SmileParams smileParams) {
+        if (smileParams == null || smileParams.slope_factor != null) {
+            return;
+        }
+        final double[][] slopeFactor = new double[L1_BAND_NUM][];
+        for (int b = 0; b < L1_BAND_NUM; b++) {
+            if (smileParams.enabled[b]) {
+                final double[] cw = central_wavelength[b];
+                final double[] cw0 = central_wavelength[smileParams.derivative_band_id[b][0]];
+                final double[] cw1 = central_wavelength[smileParams.derivative_band_id[b][1]];
+                slopeFactor[b] = new double[cw.length];
+                for (int d = 0; d < cw.length; d++) {
+                    slopeFactor[b][d] = (theoretical_wavelength[b] - cw[d]) / (cw1[d] - cw0[d]);
+                }
+            }
+        }
+        smileParams.slope_factor = slopeFactor;
+    }
+
+    private void loadSection(Section section, Map<Character, File> files, Product product)
+            throws L2AuxDataException, IOException {
+        switch (section) {
+            case CONFIGURATION: {
+                final AuxFile auxFileO = AuxFile.open('O', files.get('O'));
+                try {
+                    loadConfigurationAuxData(auxFileO, product);
+                } finally {
+                    auxFileO.close();
+                }
+                break;
+            }
+            case ATMOSPHERE: {
+                final AuxFile auxFileP = AuxFile.open('P', files.get('P'));
+                try {
+                    loadAtmosphereAuxData(auxFileP);
+                } finally {
+                    auxFileP.close();
+                }
+                break;
+            }
+            case LAND_AEROSOL: {
+                final AuxFile auxFileS = AuxFile.open('S', files.get('S'));
+                try {
+                    final AuxFile auxFileT = AuxFile.open('T', files.get('T'));
+                    try {
+                        loadLandAerosolAuxData(auxFileS, auxFileT, product);
+                    } finally {
+                        auxFileT.close();
+                    }
+                } finally {
+                    auxFileS.close();
+                }
+                break;
+            }
+            case RAYLEIGH_SCATTERING: {
+                final AuxFile auxFileP = AuxFile.open('P', files.get('P'));
+                try {
+                    final AuxFile auxFileS = AuxFile.open('S', files.get('S'));
+                    try {
+                        loadRayscattCoeffAuxData(auxFileP, auxFileS);
+                    } finally {
+                        auxFileS.close();
+                    }
+                } finally {
+                    auxFileP.close();
+                }
+                break;
+            }
+            default:
+                throw new IllegalArgumentException("section: " + section);
         }
     }
 
-    private void loadConfigurationAuxData(final AuxFile auxFileO) throws IOException, L2AuxDataException {
+    private void loadConfigurationAuxData(final AuxFile auxFileO, Product product)
+            throws IOException, L2AuxDataException {
 
         // Default radiance for saturated pixels.
         Saturation_L = auxFileO.readDoubleArray("O202", L1_BAND_NUM);
@@ -280,17 +709,7 @@ public final class L2AuxData implements Constants {
         // Square of the sun-earth distance.
         sun_earth_distance_square = auxFileO.readDouble("O300");
 
-        // todo move to another place
-        // Ratio actual sun-earth distance to mean sun-earth distance.
-        seasonal_factor = 1.0;
-        final ProductData.UTC startTime = sourceProduct.getStartTime();
-        final ProductData.UTC stopTime = sourceProduct.getEndTime();
-        if (startTime != null && stopTime != null) {
-            // DPM 2.1.4-3
-            final double daysSince2000 = 0.5 * (startTime.getMJD() + stopTime.getMJD());
-            seasonal_factor = Utils.computeSeasonalFactor(daysSince2000,
-                                                          sun_earth_distance_square);
-        }
+        initSeasonalFactor(product);
 
         final byte[] sw_land_smile = auxFileO.readRecord("O301", ProductData.TYPE_ASCII).getElemString().getBytes();
         final byte[] sw_water_smile = auxFileO.readRecord("O302", ProductData.TYPE_ASCII).getElemString().getBytes();
@@ -311,11 +730,11 @@ public final class L2AuxData implements Constants {
 
         final String central_wavelength_key;
         final String detector_solar_irradiance_key;
-        if (Utils.isProductRR(sourceProduct)) {
+        if (Utils.isProductRR(product)) {
             detector_count = RR_DETECTOR_COUNT;
             central_wavelength_key = "O307";
             detector_solar_irradiance_key = "O308";
-        } else if (Utils.isProductFR(sourceProduct)) {
+        } else if (Utils.isProductFR(product)) {
             detector_count = FR_DETECTOR_COUNT;
             central_wavelength_key = "O309";
             detector_solar_irradiance_key = "O30A";
@@ -374,24 +793,22 @@ public final class L2AuxData implements Constants {
         // Df tabulated values for GADS reflectance threshold
         final double[] Df_tabulated_values = auxFileO.readDoubleArray("O50E", DDV_NUM_ADA);
 
-        ProductData pdata = null;
         assert DDV_NUM_SZA == DDV_NUM_VZA;
 
         // element count of the symetric matrix
         final int elementCount = ((DDV_NUM_SZA * DDV_NUM_SZA + DDV_NUM_SZA) / 2) * DDV_NUM_ADA;
 
-        float[] fBuf;
+        FloatBuffer fBuf;
         int z;
-        pdata = auxFileO.readRecord("O600", 0, elementCount, ProductData.TYPE_FLOAT32, null);
-        fBuf = (float[]) pdata.getElems();
+        fBuf = auxFileO.readFloatRecord("O600", 0);
         z = 0;
         float[][][] Rhorc_442_land_LUT_data = new float[DDV_NUM_SZA][DDV_NUM_VZA][DDV_NUM_ADA];
         for (int its = 0; its < DDV_NUM_SZA; its++) {
             for (int itv = its; itv < DDV_NUM_VZA; itv++) {
                 for (int idf = 0; idf < DDV_NUM_ADA; idf++) {
-                    Rhorc_442_land_LUT_data[its][itv][idf] = fBuf[z];
+                    Rhorc_442_land_LUT_data[its][itv][idf] = fBuf.get(z);
                     if (its != itv) {
-                        Rhorc_442_land_LUT_data[itv][its][idf] = fBuf[z];
+                        Rhorc_442_land_LUT_data[itv][its][idf] = fBuf.get(z);
                     }
                     z++;
                 }
@@ -404,16 +821,15 @@ public final class L2AuxData implements Constants {
         Rhorc_442_land_LUT.setTab(1, q_tabulated_values);
         Rhorc_442_land_LUT.setTab(2, Df_tabulated_values);
 
-        pdata = auxFileO.readRecord("O600", 1, elementCount, ProductData.TYPE_FLOAT32, pdata);
-        fBuf = (float[]) pdata.getElems();
+        fBuf = auxFileO.readFloatRecord("O600", 1);
         z = 0;
         float[][][] Rhorc_442_ocean_LUT_data = new float[DDV_NUM_SZA][DDV_NUM_VZA][DDV_NUM_ADA];
         for (int its = 0; its < DDV_NUM_SZA; its++) {
             for (int itv = its; itv < DDV_NUM_VZA; itv++) {
                 for (int idf = 0; idf < DDV_NUM_ADA; idf++) {
-                    Rhorc_442_ocean_LUT_data[its][itv][idf] = fBuf[z];
+                    Rhorc_442_ocean_LUT_data[its][itv][idf] = fBuf.get(z);
                     if (its != itv) {
-                        Rhorc_442_ocean_LUT_data[itv][its][idf] = fBuf[z];
+                        Rhorc_442_ocean_LUT_data[itv][its][idf] = fBuf.get(z);
                     }
                     z++;
                 }
@@ -427,6 +843,25 @@ public final class L2AuxData implements Constants {
         Rhorc_442_ocean_LUT.setTab(2, Df_tabulated_values);
     }
 
+    /**
+     * Computes the product dependent {@link #seasonal_factor} from {@link #sun_earth_distance_square}.
+     *
+     * @param product the source product
+     */
+    void initSeasonalFactor(Product product) {
+        // todo move to another place
+        // Ratio actual sun-earth distance to mean sun-earth distance.
+        seasonal_factor = 1.0;
+        final ProductData.UTC startTime = product.getStartTime();
+        final ProductData.UTC stopTime = product.getEndTime();
+        if (startTime != null && stopTime != null) {
+            // DPM 2.1.4-3
+            final double daysSince2000 = 0.5 * (startTime.getMJD() + stopTime.getMJD());
+            seasonal_factor = Utils.computeSeasonalFactor(daysSince2000,
+                                                          sun_earth_distance_square);
+        }
+    }
+
     private void loadAtmosphereAuxData(final AuxFile auxFileP) throws IOException {
         // Rayleigh transmittance polynomial coeff
         Raytrans = auxFileP.readDoubleArray("P200", 3);
@@ -473,14 +908,14 @@ public final class L2AuxData implements Constants {
         Rayalb.setTab(0, rayalbTab);
 
         // Pressure difference threshold values for land pixels
-        final float[] DPthresh_land_array = auxFileP.readFloatArray("P700", -1);
+        final FloatBuffer DPthresh_land_array = auxFileP.readFloatRecord("P700", 0);
         int DPthresh_land_array_index = 0;
         float[][] DPthresh_land_data = new float[PVART_NUM_SZA][PVART_NUM_VZA];
         for (int its = 0; its < PVART_NUM_SZA; its++) {
             for (int itv = its; itv < PVART_NUM_VZA; itv++) {
-                DPthresh_land_data[its][itv] = DPthresh_land_array[DPthresh_land_array_index];
+                DPthresh_land_data[its][itv] = DPthresh_land_array.get(DPthresh_land_array_index);
                 if (itv != its) {
-                    DPthresh_land_data[itv][its] = DPthresh_land_array[DPthresh_land_array_index];
+                    DPthresh_land_data[itv][its] = DPthresh_land_array.get(DPthresh_land_array_index);
                 }
                 DPthresh_land_array_index++;
             }
@@ -490,14 +925,14 @@ public final class L2AuxData implements Constants {
         DPthresh_land.setTab(1, theta_scale);
 
         // Pressure difference threshold values for water pixels
-        final float[] DPthresh_ocean_array = auxFileP.readFloatArray("P701", -1);
+        final FloatBuffer DPthresh_ocean_array = auxFileP.readFloatRecord("P701", 0);
         int DPthresh_ocean_array_index = 0;
         float[][] DPthresh_ocean_data = new float[PVART_NUM_SZA][PVART_NUM_VZA];
         for (int its = 0; its < PVART_NUM_SZA; its++) {
             for (int itv = its; itv < PVART_NUM_VZA; itv++) {
-                DPthresh_ocean_data[its][itv] = DPthresh_ocean_array[DPthresh_ocean_array_index];
+                DPthresh_ocean_data[its][itv] = DPthresh_ocean_array.get(DPthresh_ocean_array_index);
                 if (itv != its) {
-                    DPthresh_ocean_data[itv][its] = DPthresh_ocean_array[DPthresh_ocean_array_index];
+                    DPthresh_ocean_data[itv][its] = DPthresh_ocean_array.get(DPthresh_ocean_array_index);
                 }
                 DPthresh_ocean_array_index++;
             }
@@ -533,43 +968,43 @@ public final class L2AuxData implements Constants {
         final float[][][][] Rayscatt_coeff_s_data = new float[RAYSCATT_NUM_ORD][RAYSCATT_NUM_SER][RAYSCATT_NUM_SZA][RAYSCATT_NUM_VZA];
         /* index nesting follows IODD convention...*/
         /* Fourier series order 0 */
-        float[] Rayscatt_coeff_s_array = auxFileP.readFloatArray("P500", -1);
+        FloatBuffer Rayscatt_coeff_s_array = auxFileP.readFloatRecord("P500", 0);
         int Rayscatt_coeff_s_array_index = 0;
         for (int its = 0; its < RAYSCATT_NUM_SZA; its++) {
             for (int itv = its; itv < RAYSCATT_NUM_SZA; itv++) {
                 for (int k = 0; k < RAYSCATT_NUM_ORD; k++) {
-                    Rayscatt_coeff_s_data[k][0][its][itv] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                    Rayscatt_coeff_s_data[k][0][its][itv] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     if (its != itv) {
-                        Rayscatt_coeff_s_data[k][0][itv][its] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                        Rayscatt_coeff_s_data[k][0][itv][its] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     }
                     Rayscatt_coeff_s_array_index++;
                 }
             }
         }
         /* Fourier series order 1 */
-        Rayscatt_coeff_s_array = auxFileP.readFloatArray("P501", -1);
+        Rayscatt_coeff_s_array = auxFileP.readFloatRecord("P501", 0);
         Rayscatt_coeff_s_array_index = 0;
         for (int its = 0; its < RAYSCATT_NUM_SZA; its++) {
             for (int itv = its; itv < RAYSCATT_NUM_SZA; itv++) {
                 for (int k = 0; k < RAYSCATT_NUM_ORD; k++) {
-                    Rayscatt_coeff_s_data[k][1][its][itv] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                    Rayscatt_coeff_s_data[k][1][its][itv] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     if (its != itv) {
-                        Rayscatt_coeff_s_data[k][1][itv][its] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                        Rayscatt_coeff_s_data[k][1][itv][its] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     }
                     Rayscatt_coeff_s_array_index++;
                 }
             }
         }
         /* Fourier series order 2 */
-        Rayscatt_coeff_s_array = auxFileP.readFloatArray("P502", -1);
+        Rayscatt_coeff_s_array = auxFileP.readFloatRecord("P502", 0);
         Rayscatt_coeff_s_array_index = 0;
         for (int its = 0; its < RAYSCATT_NUM_SZA; its++) {
             for (int itv = its; itv < RAYSCATT_NUM_SZA; itv++) {
                 for (int k = 0; k < RAYSCATT_NUM_ORD; k++) {
                     /* Fourier series order 2 */
-                    Rayscatt_coeff_s_data[k][2][its][itv] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                    Rayscatt_coeff_s_data[k][2][its][itv] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     if (its != itv) {
-                        Rayscatt_coeff_s_data[k][2][itv][its] = Rayscatt_coeff_s_array[Rayscatt_coeff_s_array_index];
+                        Rayscatt_coeff_s_data[k][2][itv][its] = Rayscatt_coeff_s_array.get(Rayscatt_coeff_s_array_index);
                     }
                     Rayscatt_coeff_s_array_index++;
                 }
@@ -593,7 +1028,8 @@ public final class L2AuxData implements Constants {
         Rayscatt_coeff_s.setTab(3, ang_scale);
     }
 
-    private void loadLandAerosolAuxData(final AuxFile auxFileS, final AuxFile auxFileT) throws IOException, L2AuxDataException {
+    private void loadLandAerosolAuxData(final AuxFile auxFileS, final AuxFile auxFileT, Product product)
+            throws IOException, L2AuxDataException {
         assert R7T_NUM_SZA == R7T_NUM_VZA;
         final double[] r7thresh_tab1 = auxFileS.readDoubleArray("S200", R7T_NUM_SZA);
         final double[] r7thresh_tab2 = r7thresh_tab1;
@@ -604,15 +1040,15 @@ public final class L2AuxData implements Constants {
         alpha_thresh[1] = auxFileS.readDouble("S302");
 
         /* read rT(665) Thresholds */
-        float[] fbuf = auxFileS.readFloatArray("S301", -1);
+        FloatBuffer fbuf = auxFileS.readFloatRecord("S301", 0);
         float[][][] r7thresh_LUT = new float[R7T_NUM_SZA][R7T_NUM_SZA][R7T_NUM_ADA];
         int z = 0;
         for (int its = 0; its < R7T_NUM_SZA; its++) {
             for (int itv = its; itv < R7T_NUM_SZA; itv++) {
                 for (int idf = 0; idf < R7T_NUM_ADA; idf++) {
-                    r7thresh_LUT[its][itv][idf] = fbuf[z];
+                    r7thresh_LUT[its][itv][idf] = fbuf.get(z);
                     if (itv != its) {
-                        r7thresh_LUT[itv][its][idf] = fbuf[z];
+                        r7thresh_LUT[itv][its][idf] = fbuf.get(z);
                     }
                     z++;
                 }
@@ -625,15 +1061,15 @@ public final class L2AuxData implements Constants {
         r7thresh.setTab(2, r7thresh_tab3);
 
         /* read rT(865) Thresholds */
-        fbuf = auxFileS.readFloatArray("S303", -1);
+        fbuf = auxFileS.readFloatRecord("S303", 0);
         float[][][] r13thresh_LUT = new float[R7T_NUM_SZA][R7T_NUM_SZA][R7T_NUM_ADA];
         z = 0;
         for (int its = 0; its < R7T_NUM_SZA; its++) {
             for (int itv = its; itv < R7T_NUM_SZA; itv++) {
                 for (int idf = 0; idf < R7T_NUM_ADA; idf++) {
-                    r13thresh_LUT[its][itv][idf] = fbuf[z];
+                    r13thresh_LUT[its][itv][idf] = fbuf.get(z);
                     if (itv != its) {
-                        r13thresh_LUT[itv][its][idf] = fbuf[z];
+                        r13thresh_LUT[itv][its][idf] = fbuf.get(z);
                     }
                     z++;
                 }
@@ -654,7 +1090,109 @@ public final class L2AuxData implements Constants {
         lap_beta_l = auxFileS.readDouble("S205");
         lap_beta_w = auxFileS.readDouble("S206");
 
-        TiePointGrid szaGrid = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
+        /* Read thetas tabulated values for LUTs turbid and Glint */
+        rog_all_sza_tab = auxFileT.readFloatArray("T203", ROG_ALL_SZA);
+
+        /* Read thetav tabulated values for LUTs Turbid and Glint */
+        final float[] rog_tab2 = auxFileT.readFloatArray("T206", ROG_NUM_VZA);
+
+        /* Read deltaphi tabulated values for LUTs Turbid and Glint */
+        final float[] rog_tab3 = auxFileT.readFloatArray("T208", ROG_NUM_ADA);
+
+        /* Read Wind speed tabulated values for LUT Glint */
+        final float[] rog_tab4 = auxFileT.readFloatArray("T20G", ROG_NUM_WIND);
+
+        /* Read Wind azimuth tabulated values for LUT Glint */
+        final float[] rog_tab1 = auxFileT.readFloatArray("T20H", ROG_NUM_WA);
+
+        /* all Sun zenith angles are read, the window of a product is cut out by initRog */
+        float[][][][][] rog_LUT = new float[ROG_NUM_WA][ROG_NUM_VZA][ROG_NUM_ADA][ROG_NUM_WIND][ROG_ALL_SZA];
+        /* variables T700 ... T704 hold the tables of the wind speeds */
+        final int[] rog_var_handles = new int[ROG_NUM_WIND];
+        for (int ws = 0; ws < ROG_NUM_WIND; ws++) {
+            rog_var_handles[ws] = AuxDatabase.getInstance().getVariableHandle("T70" + ws);
+        }
+        for (int its = 0; its < ROG_ALL_SZA; its++) {
+            /* read five successive tables */
+            for (int ws = 0; ws < ROG_NUM_WIND; ws++) {
+                final FloatBuffer rog_buf = auxFileT.readFloatRecord(rog_var_handles[ws], its);
+                z = 0;
+                for (int wa = 0; wa < ROG_NUM_WA; wa++) {
+                    for (int itv = 0; itv < ROG_NUM_VZA; itv++) {
+                        for (int idf = 0; idf < ROG_NUM_ADA; idf++) {
+                            rog_LUT[wa][itv][idf][ws][its] = rog_buf.get(z);
+                            z++;
+                        }
+                    }
+                }
+            }
+        }
+        rog_all = new LUT(rog_LUT);
+        rog_all.setTab(0, makeDoubleArrayCopy(rog_tab1));
+        rog_all.setTab(1, makeDoubleArrayCopy(rog_tab2));
+        rog_all.setTab(2, makeDoubleArrayCopy(rog_tab3));
+        rog_all.setTab(3, makeDoubleArrayCopy(rog_tab4));
+        rog_all.setTab(4, makeDoubleArrayCopy(rog_all_sza_tab));
+        initRog(product);
+    }
+
+    /**
+     * Cuts the glint reflectances {@link #rog} for the sun zenith angle range of the given product out of
+     * {@link #rog_all}.
+     *
+     * @param product the product, must have a tie-point grid "sun_zenith"
+     * @throws L2AuxDataException if the tables do not cover the sun zenith angle range of the product
+     */
+    void initRog(Product product) throws L2AuxDataException {
+        rog_sza_offset = computeRogSzaOffset(product, rog_all_sza_tab);
+        rog = createRogWindow(rog_all, rog_sza_offset, ROG_NUM_SZA);
+    }
+
+    /**
+     * Creates a glint reflectance table holding the given range of sun zenith angles (the last dimension) of the
+     * given table. The table itself is returned if the range covers all of its sun zenith angles.
+     *
+     * @param rog_all the [7][19][25][5][n] glint reflectances
+     * @param offset  the index of the first sun zenith angle
+     * @param count   the number of sun zenith angles
+     * @return the [7][19][25][5][count] glint reflectances
+     */
+    static LUT createRogWindow(LUT rog_all, int offset, int count) {
+        if (offset == 0 && count == rog_all.getDimSize(4)) {
+            return rog_all;
+        }
+        final float[][][][][] all = (float[][][][][]) rog_all.getJavaArray();
+        final float[][][][][] window = new float[rog_all.getDimSize(0)][rog_all.getDimSize(1)][rog_all.getDimSize(2)][rog_all.getDimSize(3)][count];
+        for (int wa = 0; wa < window.length; wa++) {
+            for (int itv = 0; itv < window[wa].length; itv++) {
+                for (int idf = 0; idf < window[wa][itv].length; idf++) {
+                    for (int ws = 0; ws < window[wa][itv][idf].length; ws++) {
+                        System.arraycopy(all[wa][itv][idf][ws], offset, window[wa][itv][idf][ws], 0, count);
+                    }
+                }
+            }
+        }
+        final LUT rog = new LUT(window);
+        for (int dim = 0; dim < 4; dim++) {
+            rog.setTab(dim, rog_all.getTab(dim));
+        }
+        final double[] sza_tab = new double[count];
+        System.arraycopy(rog_all.getTab(4), offset, sza_tab, 0, count);
+        rog.setTab(4, sza_tab);
+        return rog;
+    }
+
+    /**
+     * Computes the index of the first of the {@link Constants#ROG_NUM_SZA} glint reflectance tables needed for the
+     * sun zenith angle range of the given product.
+     *
+     * @param product         the product, must have a tie-point grid "sun_zenith"
+     * @param rog_all_sza_tab the thetas tabulated values of all glint reflectance tables
+     * @return the index of the first table
+     * @throws L2AuxDataException if the tables do not cover the sun zenith angle range of the product
+     */
+    static int computeRogSzaOffset(Product product, float[] rog_all_sza_tab) throws L2AuxDataException {
+        TiePointGrid szaGrid = product.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
         if (szaGrid == null) {
             String msg = String.format("Source product does not contain tie-point grid '%s'",
                                        EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
@@ -663,12 +1201,9 @@ public final class L2AuxData implements Constants {
 
         Stx stx = szaGrid.getStx(true, ProgressMonitor.NULL);
 
-        /* Read thetas tabulated values for LUTs turbid and Glint */
-        fbuf = auxFileT.readFloatArray("T203", -1);
-
         double[] fbufCopy = new double[27];
-        for (int i = 0; i < fbuf.length; i++) {
-            fbufCopy[i] = fbuf[i];
+        for (int i = 0; i < rog_all_sza_tab.length; i++) {
+            fbufCopy[i] = rog_all_sza_tab[i];
         }
 
         int min;
@@ -686,58 +1221,7 @@ public final class L2AuxData implements Constants {
             throw new L2AuxDataException("Wrong thetas(ROG) range: " + min + " to " + max);
         }
 
-        min = Math.min(min, ROG_ALL_SZA - ROG_NUM_SZA);
-        max = Math.min(max, ROG_ALL_SZA - 1);
-        final float[] rog_tab5 = new float[ROG_NUM_SZA];
-        System.arraycopy(fbuf, min, rog_tab5, 0, ROG_NUM_SZA);
-
-        /* Read thetav tabulated values for LUTs Turbid and Glint */
-        final float[] rog_tab2 = auxFileT.readFloatArray("T206", ROG_NUM_VZA);
-
-        /* Read deltaphi tabulated values for LUTs Turbid and Glint */
-        final float[] rog_tab3 = auxFileT.readFloatArray("T208", ROG_NUM_ADA);
-
-        /* Read Wind speed tabulated values for LUT Glint */
-        final float[] rog_tab4 = auxFileT.readFloatArray("T20G", ROG_NUM_WIND);
-
-        /* Read Wind azimuth tabulated values for LUT Glint */
-        final float[] rog_tab1 = auxFileT.readFloatArray("T20H", ROG_NUM_WA);
-
-        float[][][][][] rog_LUT = new float[ROG_NUM_WA][ROG_NUM_VZA][ROG_NUM_ADA][ROG_NUM_WIND][ROG_NUM_SZA];
-        /* loop on selected Sun zenith angles */
-        for (int its = 0; its < ROG_NUM_SZA; its++) {
-            /* read five successive tables */
-            int ws = 0;
-            fbuf = (float[]) auxFileT.readRecord("T700", min + its, -1, ProductData.TYPE_FLOAT32, null).getElems();
-
-            z = 0;
-            for (int wa = 0; wa < ROG_NUM_WA; wa++) {
-                for (int itv = 0; itv < ROG_NUM_VZA; itv++) {
-                    for (int idf = 0; idf < ROG_NUM_ADA; idf++) {
-                        rog_LUT[wa][itv][idf][ws][its] = fbuf[z];
-                        z++;
-                    }
-                }
-            }
-            for (ws = 1; ws < ROG_NUM_WIND; ws++) {
-                fbuf = (float[]) auxFileT.readRecord("T70" + ws, min + its, -1, ProductData.TYPE_FLOAT32, null).getElems();
-                z = 0;
-                for (int wa = 0; wa < ROG_NUM_WA; wa++) {
-                    for (int itv = 0; itv < ROG_NUM_VZA; itv++) {
-                        for (int idf = 0; idf < ROG_NUM_ADA; idf++) {
-                            rog_LUT[wa][itv][idf][ws][its] = fbuf[z];
-                            z++;
-                        }
-                    }
-                }
-            }
-        }
-        rog = new LUT(rog_LUT);
-        rog.setTab(0, makeDoubleArrayCopy(rog_tab1));
-        rog.setTab(1, makeDoubleArrayCopy(rog_tab2));
-        rog.setTab(2, makeDoubleArrayCopy(rog_tab3));
-        rog.setTab(3, makeDoubleArrayCopy(rog_tab4));
-        rog.setTab(4, makeDoubleArrayCopy(rog_tab5));
+        return Math.min(min, ROG_ALL_SZA - ROG_NUM_SZA);
     }
 
     static private double[] makeDoubleArrayCopy(float[] floatArray) {
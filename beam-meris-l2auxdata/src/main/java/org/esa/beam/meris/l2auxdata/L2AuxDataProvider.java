@@ -16,22 +16,47 @@
  */
 package org.esa.beam.meris.l2auxdata;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
 
 import org.esa.beam.framework.datamodel.Product;
 
 /**
  * Created by marcoz.
+ * <p/>
+ * The provider is thread-safe. Auxiliary data for different resolutions or database files is loaded in parallel,
+ * concurrent requests for the same auxiliary data wait for a single load.
+ * <p/>
+ * Operators which only need some {@link L2AuxData.Section sections} of the auxiliary data should request only these,
+ * the other sections are then not loaded unless requested later on.
  *
  * @author marcoz
  * @version $Revision: $ $Date: $
  */
 public class L2AuxDataProvider {
     private static L2AuxDataProvider instance;
-    private DpmConfig dpmConfig;
+    private volatile DpmConfig dpmConfig;
     private final Map<Product, L2AuxData> map;
+    /**
+     * Product independent auxiliary data keyed by the identity of the database files and the resolution.
+     */
+    private final ConcurrentMap<String, FutureTask<L2AuxData>> sharedMap;
+    private final ExecutorService prefetchExecutor;
     
     public static synchronized L2AuxDataProvider getInstance() {
         if (instance == null) {
@@ -40,39 +65,206 @@ public class L2AuxDataProvider {
         return instance;
     }
     
-    private L2AuxDataProvider() {
-        map = new WeakHashMap<Product, L2AuxData>();
+    L2AuxDataProvider() {
+        map = Collections.synchronizedMap(new WeakHashMap<Product, L2AuxData>());
+        sharedMap = new ConcurrentHashMap<String, FutureTask<L2AuxData>>();
+        prefetchExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "L2AuxDataProvider-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
     }
     
-    public synchronized L2AuxData getAuxdata(Product product) throws L2AuxDataException {
+    public L2AuxData getAuxdata(Product product) throws L2AuxDataException {
+        return getAuxdata(product, EnumSet.allOf(L2AuxData.Section.class));
+    }
+
+    /**
+     * Gets the auxiliary data for the given product with at least the given sections loaded.
+     *
+     * @param product  the source product
+     * @param sections the sections needed by the caller
+     * @return the auxiliary data
+     * @throws L2AuxDataException if the auxiliary data could not be loaded
+     */
+    public L2AuxData getAuxdata(Product product, Set<L2AuxData.Section> sections) throws L2AuxDataException {
         getDpmConfig();
         L2AuxData auxData = map.get(product);
-        if (auxData == null) {
-            auxData = loadAuxdata(product);
+        if (auxData != null && auxData.isLoaded(sections)) {
+            return auxData;
+        }
+        // instances handed out are never modified, a new one is created for additional sections
+        final Set<L2AuxData.Section> requiredSections = EnumSet.noneOf(L2AuxData.Section.class);
+        requiredSections.addAll(sections);
+        if (auxData != null) {
+            requiredSections.addAll(auxData.getLoadedSections());
+        }
+        auxData = createAuxdata(product, requiredSections);
+        synchronized (map) {
+            final L2AuxData otherAuxData = map.get(product);
+            if (otherAuxData != null && otherAuxData.isLoaded(requiredSections)) {
+                return otherAuxData;
+            }
             map.put(product, auxData);
         }
         return auxData;
     }
+
+    /**
+     * Starts loading the auxiliary data for the given product in the background, so that a later call to
+     * {@link #getAuxdata(Product)}, e.g. during the initialisation of an operator, does not have to wait for it.
+     *
+     * @param product the source product
+     * @return the future auxiliary data, {@link Future#get()} throws an {@link ExecutionException} caused by an
+     *         {@link L2AuxDataException} if the auxiliary data could not be loaded
+     */
+    public Future<L2AuxData> prefetchAuxdata(final Product product) {
+        return prefetchExecutor.submit(new Callable<L2AuxData>() {
+            @Override
+            public L2AuxData call() throws L2AuxDataException {
+                return getAuxdata(product);
+            }
+        });
+    }
     
-    public synchronized DpmConfig getDpmConfig() throws L2AuxDataException {
-        if (dpmConfig == null ) {
-            loadDpmConfig();
+    public DpmConfig getDpmConfig() throws L2AuxDataException {
+        DpmConfig config = dpmConfig;
+        if (config == null) {
+            synchronized (this) {
+                if (dpmConfig == null) {
+                    loadDpmConfig();
+                }
+                config = dpmConfig;
+            }
+        }
+        return config;
+    }
+
+    private L2AuxData createAuxdata(Product product, Set<L2AuxData.Section> sections) throws L2AuxDataException {
+        final String key = createKey(product);
+        if (key == null) {
+            return loadAuxdata(product, null, sections);
+        }
+        final L2AuxData sharedAuxData = getSharedAuxdata(key, product, sections);
+        try {
+            load(sharedAuxData, product, sections);
+        } catch (IOException e) {
+            throw new L2AuxDataException(e.getMessage(), e);
+        }
+        // the glint reflectances of the product are cut out of the shared tables
+        final L2AuxData auxData = new L2AuxData(sharedAuxData, product);
+        if (auxData.isLoaded(EnumSet.of(L2AuxData.Section.CONFIGURATION))) {
+            auxData.initSeasonalFactor(product);
         }
-        return dpmConfig;
+        return auxData;
     }
 
-    private L2AuxData loadAuxdata(Product product) throws L2AuxDataException {
-        L2AuxData auxData;
+    private L2AuxData getSharedAuxdata(final String key, final Product product,
+                                       final Set<L2AuxData.Section> sections) throws L2AuxDataException {
+        FutureTask<L2AuxData> task = sharedMap.get(key);
+        if (task == null) {
+            final FutureTask<L2AuxData> newTask = new FutureTask<L2AuxData>(new Callable<L2AuxData>() {
+                @Override
+                public L2AuxData call() throws L2AuxDataException {
+                    // the shared instance must not keep the product alive
+                    return new L2AuxData(loadAuxdata(product, key, sections), null);
+                }
+            });
+            task = sharedMap.putIfAbsent(key, newTask);
+            if (task == null) {
+                task = newTask;
+                task.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new L2AuxDataException("Interrupted while loading auxiliary data", e);
+        } catch (ExecutionException e) {
+            // a later request shall try again
+            sharedMap.remove(key, task);
+            final Throwable cause = e.getCause();
+            if (cause instanceof L2AuxDataException) {
+                throw (L2AuxDataException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new L2AuxDataException(cause.getMessage(), cause);
+        }
+    }
+
+    private L2AuxData loadAuxdata(Product product, String key, Set<L2AuxData.Section> sections)
+            throws L2AuxDataException {
+        // snapshots hold all sections, they are only used if all sections are requested anyway
+        final boolean allSections = sections.containsAll(EnumSet.allOf(L2AuxData.Section.class));
+        final String snapshotKey = L2AuxDataSnapshot.isEnabled() && allSections ? key : null;
+        final File snapshotFile = snapshotKey != null ?
+                L2AuxDataSnapshot.getFile(L2AuxDataSnapshot.getDefaultDir(), snapshotKey) : null;
+        if (snapshotFile != null && snapshotFile.isFile()) {
+            try {
+                final L2AuxData auxData = L2AuxDataSnapshot.read(snapshotFile, snapshotKey, product);
+                if (auxData != null) {
+                    return auxData;
+                }
+            } catch (IOException e) {
+                AuxDatabase.getLogger().log(Level.WARNING, "failed to read auxiliary data snapshot '" +
+                        snapshotFile.getPath() + "'", e);
+            }
+        }
+
+        final L2AuxData auxData = new L2AuxData();
         try {
-            auxData = new L2AuxData(dpmConfig, product);
+            load(auxData, product, sections);
         } catch (L2AuxDataException e) {
             throw e;
         } catch (IOException e) {
             throw new L2AuxDataException(e.getMessage(), e);
         }
+
+        if (snapshotFile != null) {
+            try {
+                L2AuxDataSnapshot.write(snapshotFile, snapshotKey, auxData);
+                AuxDatabase.getLogger().info("wrote auxiliary data snapshot '" + snapshotFile.getPath() + "'");
+            } catch (IOException e) {
+                AuxDatabase.getLogger().log(Level.WARNING, "failed to write auxiliary data snapshot '" +
+                        snapshotFile.getPath() + "'", e);
+            }
+        }
         return auxData;
     }
     
+    /**
+     * Creates the key under which the auxiliary data for the given product are shared, see
+     * {@link L2AuxDataSnapshot#createKey}.
+     *
+     * @param product the source product
+     * @return the key or <code>null</code> if the auxiliary data cannot be shared
+     * @throws L2AuxDataException if the database files could not be retrieved from the configuration
+     */
+    String createKey(Product product) throws L2AuxDataException {
+        return L2AuxDataSnapshot.createKey(dpmConfig, product);
+    }
+
+    /**
+     * Loads the given sections of the auxiliary data for the given product from the auxiliary database files.
+     *
+     * @param auxData  the auxiliary data to be filled
+     * @param product  the source product
+     * @param sections the sections to be loaded
+     * @throws L2AuxDataException if a section could not be loaded
+     * @throws IOException        if a section could not be read
+     */
+    void load(L2AuxData auxData, Product product, Set<L2AuxData.Section> sections)
+            throws L2AuxDataException, IOException {
+        auxData.load(dpmConfig, product, sections);
+    }
+
     private void loadDpmConfig() throws L2AuxDataException {
         dpmConfig = new DpmConfig();
     }
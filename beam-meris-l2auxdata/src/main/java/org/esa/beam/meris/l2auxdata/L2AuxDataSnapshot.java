@@ -0,0 +1,478 @@
+package org.esa.beam.meris.l2auxdata;
+
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.util.SystemUtils;
+import org.esa.beam.util.math.LUT;
+import org.esa.beam.util.math.MDArray;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.EnumSet;
+
+/**
+ * A binary snapshot of the product independent content of {@link L2AuxData}. Loading a snapshot replaces parsing
+ * the auxiliary database files and reshaping their records. The snapshot holds the glint reflectances of all sun
+ * zenith angles, the window of the product is cut out when the snapshot is read.
+ * <p/>
+ * A snapshot file starts with a magic number, the format version and a key identifying the auxiliary database files
+ * and the detector count it was created from, see {@link #createKey}. It is followed by the
+ * {@link L2AuxData} fields in the order given by {@link #write}. All values are stored big-endian. Snapshots are read
+ * through a memory-mapped buffer.
+ */
+final class L2AuxDataSnapshot {
+
+    /**
+     * Set this system property to <code>false</code> to neither read nor write snapshots.
+     */
+    static final String ENABLED_PROPERTY = "beam.meris.l2auxdata.snapshot";
+
+    private static final int MAGIC = 0x4c324144; // "L2AD"
+    /**
+     * Must be incremented whenever the written fields or their order change.
+     */
+    private static final int VERSION = 2;
+    private static final String[] DATABASE_NAMES = {"lv2conf", "atmosphere", "landaero", "case1"};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private L2AuxDataSnapshot() {
+    }
+
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    /**
+     * @return the directory snapshot files are stored in
+     */
+    static File getDefaultDir() {
+        return new File(SystemUtils.getUserHomeDir(), ".beam/beam-meris-l2auxdata/snapshots");
+    }
+
+    /**
+     * Creates the key of the snapshot for the given product. The key changes whenever one of the auxiliary database
+     * files is replaced or modified. It is also used by the {@link L2AuxDataProvider} to share the auxiliary data
+     * between products of the same resolution.
+     *
+     * @param config  the configuration providing the auxiliary database files
+     * @param product the source product
+     * @return the key or <code>null</code> if the product is neither MERIS RR nor FR
+     * @throws L2AuxDataException if the database files could not be retrieved from the configuration
+     */
+    static String createKey(DpmConfig config, Product product) throws L2AuxDataException {
+        final int detectorCount;
+        if (Utils.isProductRR(product)) {
+            detectorCount = Constants.RR_DETECTOR_COUNT;
+        } else if (Utils.isProductFR(product)) {
+            detectorCount = Constants.FR_DETECTOR_COUNT;
+        } else {
+            return null;
+        }
+        final StringBuilder key = new StringBuilder();
+        key.append("detectors=").append(detectorCount);
+        for (String name : DATABASE_NAMES) {
+            final File file = config.getAuxDatabaseFile(name, null);
+            key.append(';').append(name).append('=').append(file.getAbsolutePath());
+            key.append(',').append(file.length()).append(',').append(file.lastModified());
+        }
+        return key.toString();
+    }
+
+    /**
+     * @param dir the snapshot directory
+     * @param key the snapshot key
+     * @return the snapshot file for the given key
+     */
+    static File getFile(File dir, String key) {
+        return new File(dir, String.format("l2auxdata_%08x.snap", key.hashCode()));
+    }
+
+    /**
+     * Writes a snapshot of the given auxiliary data. The snapshot is first written to a temporary file which is then
+     * renamed, so that concurrent readers never see an incomplete snapshot.
+     *
+     * @param file    the snapshot file
+     * @param key     the snapshot key
+     * @param auxData the auxiliary data, all sections must have been loaded
+     * @throws IOException if an I/O error occurs
+     */
+    static void write(File file, String key, L2AuxData auxData) throws IOException {
+        final File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory " + dir);
+        }
+        final File tmpFile = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            try {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                final byte[] keyBytes = key.getBytes(UTF_8);
+                out.writeInt(keyBytes.length);
+                out.write(keyBytes);
+                writeFields(out, auxData);
+            } finally {
+                out.close();
+            }
+            if (!tmpFile.renameTo(file)) {
+                // another process may have written the same snapshot in the meantime
+                if (!file.delete() || !tmpFile.renameTo(file)) {
+                    throw new IOException("Failed to rename " + tmpFile + " to " + file);
+                }
+            }
+        } finally {
+            if (tmpFile.exists() && !tmpFile.delete()) {
+                tmpFile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file    the snapshot file
+     * @param key     the expected snapshot key
+     * @param product the source product
+     * @return the auxiliary data or <code>null</code> if the snapshot has another format version or key
+     * @throws IOException        if an I/O error occurs or the file is not a valid snapshot
+     * @throws L2AuxDataException if the glint reflectance tables do not cover the given product
+     */
+    static L2AuxData read(File file, String key, Product product) throws IOException, L2AuxDataException {
+        final ByteBuffer buffer = map(file);
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not an auxiliary data snapshot: " + file);
+            }
+            if (buffer.getInt() != VERSION) {
+                return null;
+            }
+            final byte[] keyBytes = new byte[buffer.getInt()];
+            buffer.get(keyBytes);
+            if (!key.equals(new String(keyBytes, UTF_8))) {
+                return null;
+            }
+            final L2AuxData auxData = new L2AuxData();
+            readFields(buffer, auxData);
+            if (buffer.hasRemaining()) {
+                throw new IOException("Corrupt auxiliary data snapshot: " + file);
+            }
+            auxData.initSeasonalFactor(product);
+            auxData.initRog(product);
+            auxData.setLoaded(EnumSet.allOf(L2AuxData.Section.class));
+            return auxData;
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Corrupt auxiliary data snapshot: " + file);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt auxiliary data snapshot: " + file);
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static void writeFields(DataOutputStream out, L2AuxData auxData) throws IOException {
+        out.writeDouble(auxData.sun_earth_distance_square);
+        out.writeInt(auxData.detector_count);
+        out.writeDouble(auxData.maxPress);
+        out.writeDouble(auxData.press_scale_height);
+        out.writeDouble(auxData.press_confidence);
+        writeBooleanArray(out, auxData.land_decision_table);
+        writeBooleanArray(out, auxData.water_decision_table);
+        out.writeInt(auxData.band_slope_n_1);
+        out.writeInt(auxData.band_slope_d_1);
+        out.writeInt(auxData.band_slope_n_2);
+        out.writeInt(auxData.band_slope_d_2);
+        out.writeInt(auxData.band_bright_n);
+        out.writeDouble(auxData.slope_1_low_thr);
+        out.writeDouble(auxData.slope_1_high_thr);
+        out.writeDouble(auxData.slope_2_low_thr);
+        out.writeDouble(auxData.slope_2_high_thr);
+        writeDoubleArray2D(out, auxData.detector_solar_irradiance);
+        writeDoubleArray2D(out, auxData.central_wavelength);
+        writeDoubleArray(out, auxData.theoretical_wavelength);
+        writeDoubleArray(out, auxData.Saturation_L);
+        writeSmileParams(out, auxData.land_smile_params);
+        writeSmileParams(out, auxData.water_smile_params);
+        writeDoubleArray(out, auxData.spectral_shift_H2Owavelength);
+        writeDoubleArray2D(out, auxData.H2Ocoef);
+        writeDoubleArray2D(out, auxData.H2OcoefSpecShift);
+        writeDoubleArray2D(out, auxData.O2coef);
+        writeDoubleArray(out, auxData.spectral_shift_wavelength);
+        writeDoubleArray(out, auxData.tauO3_norm);
+        out.writeDouble(auxData.TETAS_LIM);
+        writeLut(out, auxData.r7thresh);
+        writeLut(out, auxData.r13thresh);
+        writeDoubleArray(out, auxData.alpha_thresh);
+        writeIntArray(out, auxData.lap_b_thresh);
+        out.writeDouble(auxData.lap_beta_l);
+        out.writeDouble(auxData.lap_beta_w);
+        writeLut(out, auxData.rog_all);
+        writeFloatArray(out, auxData.rog_all_sza_tab);
+        out.writeDouble(auxData.Pstd);
+        writeDoubleArray(out, auxData.tau_R);
+        writeDoubleArray(out, auxData.AB);
+        writeDoubleArray(out, auxData.Raytrans);
+        writeLut(out, auxData.Rhorc_442_land_LUT);
+        writeLut(out, auxData.Rhorc_442_ocean_LUT);
+        writeLut(out, auxData.Rayscatt_coeff_s);
+        writeLut(out, auxData.polcoeff);
+        writeLut(out, auxData.C);
+        writeLut(out, auxData.DPthresh_land);
+        writeLut(out, auxData.DPthresh_ocean);
+        writeLut(out, auxData.Rayalb);
+    }
+
+    private static void readFields(ByteBuffer in, L2AuxData auxData) {
+        auxData.sun_earth_distance_square = in.getDouble();
+        auxData.detector_count = in.getInt();
+        auxData.maxPress = in.getDouble();
+        auxData.press_scale_height = in.getDouble();
+        auxData.press_confidence = in.getDouble();
+        auxData.land_decision_table = readBooleanArray(in);
+        auxData.water_decision_table = readBooleanArray(in);
+        auxData.band_slope_n_1 = in.getInt();
+        auxData.band_slope_d_1 = in.getInt();
+        auxData.band_slope_n_2 = in.getInt();
+        auxData.band_slope_d_2 = in.getInt();
+        auxData.band_bright_n = in.getInt();
+        auxData.slope_1_low_thr = in.getDouble();
+        auxData.slope_1_high_thr = in.getDouble();
+        auxData.slope_2_low_thr = in.getDouble();
+        auxData.slope_2_high_thr = in.getDouble();
+        auxData.detector_solar_irradiance = readDoubleArray2D(in);
+        auxData.central_wavelength = readDoubleArray2D(in);
+        auxData.theoretical_wavelength = readDoubleArray(in);
+        auxData.Saturation_L = readDoubleArray(in);
+        auxData.land_smile_params = readSmileParams(in);
+        auxData.water_smile_params = readSmileParams(in);
+        auxData.spectral_shift_H2Owavelength = readDoubleArray(in);
+        auxData.H2Ocoef = readDoubleArray2D(in);
+        auxData.H2OcoefSpecShift = readDoubleArray2D(in);
+        auxData.O2coef = readDoubleArray2D(in);
+        auxData.spectral_shift_wavelength = readDoubleArray(in);
+        auxData.tauO3_norm = readDoubleArray(in);
+        auxData.TETAS_LIM = in.getDouble();
+        auxData.r7thresh = readLut(in);
+        auxData.r13thresh = readLut(in);
+        auxData.alpha_thresh = readDoubleArray(in);
+        auxData.lap_b_thresh = readIntArray(in);
+        auxData.lap_beta_l = in.getDouble();
+        auxData.lap_beta_w = in.getDouble();
+        auxData.rog_all = readLut(in);
+        auxData.rog_all_sza_tab = readFloatArray(in);
+        auxData.Pstd = in.getDouble();
+        auxData.tau_R = readDoubleArray(in);
+        auxData.AB = readDoubleArray(in);
+        auxData.Raytrans = readDoubleArray(in);
+        auxData.Rhorc_442_land_LUT = readLut(in);
+        auxData.Rhorc_442_ocean_LUT = readLut(in);
+        auxData.Rayscatt_coeff_s = readLut(in);
+        auxData.polcoeff = readLut(in);
+        auxData.C = readLut(in);
+        auxData.DPthresh_land = readLut(in);
+        auxData.DPthresh_ocean = readLut(in);
+        auxData.Rayalb = readLut(in);
+    }
+
+    ///////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Arrays are written as their length followed by their elements, a length of -1 denotes null
+
+    private static void writeBooleanArray(DataOutputStream out, boolean[] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (boolean value : array) {
+            out.writeBoolean(value);
+        }
+    }
+
+    private static boolean[] readBooleanArray(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final boolean[] array = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            array[i] = in.get() != 0;
+        }
+        return array;
+    }
+
+    private static void writeIntArray(DataOutputStream out, int[] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (int value : array) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readIntArray(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final int[] array = new int[length];
+        in.asIntBuffer().get(array);
+        in.position(in.position() + length * 4);
+        return array;
+    }
+
+    private static void writeFloatArray(DataOutputStream out, float[] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (float value : array) {
+            out.writeFloat(value);
+        }
+    }
+
+    private static float[] readFloatArray(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final float[] array = new float[length];
+        in.asFloatBuffer().get(array);
+        in.position(in.position() + length * 4);
+        return array;
+    }
+
+    private static void writeDoubleArray(DataOutputStream out, double[] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (double value : array) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static double[] readDoubleArray(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final double[] array = new double[length];
+        in.asDoubleBuffer().get(array);
+        in.position(in.position() + length * 8);
+        return array;
+    }
+
+    private static void writeDoubleArray2D(DataOutputStream out, double[][] array) throws IOException {
+        if (array == null) {
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(array.length);
+        for (double[] row : array) {
+            writeDoubleArray(out, row);
+        }
+    }
+
+    private static double[][] readDoubleArray2D(ByteBuffer in) {
+        final int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final double[][] array = new double[length][];
+        for (int i = 0; i < length; i++) {
+            array[i] = readDoubleArray(in);
+        }
+        return array;
+    }
+
+    private static void writeSmileParams(DataOutputStream out, L2AuxData.SmileParams smileParams) throws IOException {
+        writeBooleanArray(out, smileParams.enabled);
+        for (int[] bandIds : smileParams.derivative_band_id) {
+            writeIntArray(out, bandIds);
+        }
+    }
+
+    private static L2AuxData.SmileParams readSmileParams(ByteBuffer in) {
+        final L2AuxData.SmileParams smileParams = new L2AuxData.SmileParams();
+        final boolean[] enabled = readBooleanArray(in);
+        System.arraycopy(enabled, 0, smileParams.enabled, 0, smileParams.enabled.length);
+        for (int[] bandIds : smileParams.derivative_band_id) {
+            final int[] values = readIntArray(in);
+            System.arraycopy(values, 0, bandIds, 0, bandIds.length);
+        }
+        return smileParams;
+    }
+
+    /**
+     * LUTs are written as their element type, dimension sizes, flat elements and tabulated values. Float LUTs keep
+     * their float elements, so that the LUT read is identical to the one written.
+     */
+    private static void writeLut(DataOutputStream out, LUT lut) throws IOException {
+        if (lut == null) {
+            out.writeInt(-1);
+            return;
+        }
+        final MDArray array = lut.getArray();
+        final int rank = array.getRank();
+        out.writeInt(rank);
+        out.writeBoolean(array.getElementType() == float.class);
+        for (int dim = 0; dim < rank; dim++) {
+            out.writeInt(array.getDimSize(dim));
+        }
+        final double[] elements = lut.getFlatArray();
+        out.writeInt(elements.length);
+        if (array.getElementType() == float.class) {
+            for (double element : elements) {
+                out.writeFloat((float) element);
+            }
+        } else {
+            for (double element : elements) {
+                out.writeDouble(element);
+            }
+        }
+        for (int dim = 0; dim < rank; dim++) {
+            writeDoubleArray(out, lut.getTab(dim));
+        }
+    }
+
+    private static LUT readLut(ByteBuffer in) {
+        final int rank = in.getInt();
+        if (rank < 0) {
+            return null;
+        }
+        final boolean isFloat = in.get() != 0;
+        final int[] sizes = new int[rank];
+        for (int dim = 0; dim < rank; dim++) {
+            sizes[dim] = in.getInt();
+        }
+        final LUT lut;
+        if (isFloat) {
+            lut = new LUT(sizes, readFloatArray(in));
+        } else {
+            lut = new LUT(sizes, readDoubleArray(in));
+        }
+        for (int dim = 0; dim < rank; dim++) {
+            lut.setTab(dim, readDoubleArray(in));
+        }
+        return lut;
+    }
+}
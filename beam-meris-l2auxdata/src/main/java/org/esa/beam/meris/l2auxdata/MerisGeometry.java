@@ -0,0 +1,185 @@
+package org.esa.beam.meris.l2auxdata;
+
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.util.math.MathUtils;
+
+import java.awt.Rectangle;
+
+/**
+ * The sun and viewing geometry of a rectangular region of a MERIS L1b product, usually a tile.
+ * <p/>
+ * The angles are the interpolated tie-point grid values of the region, i.e. the samples of the source images of
+ * the tie-point grids. The quantities derived from the angles are computed on first request. All arrays are stored
+ * row by row, see {@link #getIndex(int, int)}. They are shared by all operators using the same instance and must
+ * not be modified.
+ * <p/>
+ * Instances are thread-safe and obtained from the {@link MerisGeometryProvider}.
+ */
+public final class MerisGeometry {
+
+    private final Rectangle rectangle;
+    private final float[] sunZenith;
+    private final float[] viewZenith;
+    private final float[] sunAzimuth;
+    private final float[] viewAzimuth;
+
+    private double[] mus;
+    private double[] muv;
+    private double[] sins;
+    private double[] sinv;
+    private double[] deltaAzimuth;
+    private double[] airMass;
+
+    MerisGeometry(Product product, Rectangle rectangle) {
+        this.rectangle = new Rectangle(rectangle);
+        sunZenith = readTiePoints(product, EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME, rectangle);
+        viewZenith = readTiePoints(product, EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME, rectangle);
+        sunAzimuth = readTiePoints(product, EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME, rectangle);
+        viewAzimuth = readTiePoints(product, EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME, rectangle);
+    }
+
+    /**
+     * @return the region
+     */
+    public Rectangle getRectangle() {
+        return new Rectangle(rectangle);
+    }
+
+    /**
+     * @param x the pixel X coordinate within the region
+     * @param y the pixel Y coordinate within the region
+     * @return the index of the pixel in the arrays of this geometry
+     */
+    public int getIndex(int x, int y) {
+        return (y - rectangle.y) * rectangle.width + (x - rectangle.x);
+    }
+
+    /**
+     * @return the sun zenith angle [degree]
+     */
+    public float[] getSunZenith() {
+        return sunZenith;
+    }
+
+    /**
+     * @return the view zenith angle [degree]
+     */
+    public float[] getViewZenith() {
+        return viewZenith;
+    }
+
+    /**
+     * @return the sun azimuth angle [degree]
+     */
+    public float[] getSunAzimuth() {
+        return sunAzimuth;
+    }
+
+    /**
+     * @return the view azimuth angle [degree]
+     */
+    public float[] getViewAzimuth() {
+        return viewAzimuth;
+    }
+
+    /**
+     * @return the cosine of the sun zenith angle
+     */
+    public synchronized double[] getMus() {
+        if (mus == null) {
+            mus = cos(sunZenith);
+        }
+        return mus;
+    }
+
+    /**
+     * @return the cosine of the view zenith angle
+     */
+    public synchronized double[] getMuv() {
+        if (muv == null) {
+            muv = cos(viewZenith);
+        }
+        return muv;
+    }
+
+    /**
+     * @return the sine of the sun zenith angle
+     */
+    public synchronized double[] getSins() {
+        if (sins == null) {
+            sins = sin(sunZenith);
+        }
+        return sins;
+    }
+
+    /**
+     * @return the sine of the view zenith angle
+     */
+    public synchronized double[] getSinv() {
+        if (sinv == null) {
+            sinv = sin(viewZenith);
+        }
+        return sinv;
+    }
+
+    /**
+     * @return the azimuth difference in the range [0, 180] [degree]
+     */
+    public synchronized double[] getDeltaAzimuth() {
+        if (deltaAzimuth == null) {
+            final double[] values = new double[viewAzimuth.length];
+            for (int i = 0; i < values.length; i++) {
+                final double vaa = viewAzimuth[i];
+                final double saa = sunAzimuth[i];
+                values[i] = MathUtils.RTOD * Math.acos(Math.cos(MathUtils.DTOR * (vaa - saa)));
+            }
+            deltaAzimuth = values;
+        }
+        return deltaAzimuth;
+    }
+
+    /**
+     * @return the air mass (DPM #2.1.12-1)
+     */
+    public synchronized double[] getAirMass() {
+        if (airMass == null) {
+            final double[] mus = getMus();
+            final double[] muv = getMuv();
+            final double[] values = new double[mus.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = 1.0 / mus[i] + 1.0 / muv[i];
+            }
+            airMass = values;
+        }
+        return airMass;
+    }
+
+    private static double[] cos(float[] angles) {
+        final double[] values = new double[angles.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.cos(angles[i] * MathUtils.DTOR);
+        }
+        return values;
+    }
+
+    private static double[] sin(float[] angles) {
+        final double[] values = new double[angles.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.sin(angles[i] * MathUtils.DTOR);
+        }
+        return values;
+    }
+
+    private static float[] readTiePoints(Product product, String name, Rectangle rectangle) {
+        final TiePointGrid grid = product.getTiePointGrid(name);
+        if (grid == null) {
+            throw new IllegalArgumentException("product has no tie-point grid '" + name + "'");
+        }
+        final float[] samples = new float[rectangle.width * rectangle.height];
+        grid.getSourceImage().getData(rectangle).getSamples(rectangle.x, rectangle.y,
+                                                            rectangle.width, rectangle.height, 0, samples);
+        return samples;
+    }
+}
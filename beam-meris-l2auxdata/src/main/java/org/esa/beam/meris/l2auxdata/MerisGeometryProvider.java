@@ -0,0 +1,120 @@
+package org.esa.beam.meris.l2auxdata;
+
+import org.esa.beam.framework.datamodel.Product;
+
+import java.awt.Rectangle;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Provides the {@link MerisGeometry} of the tiles of MERIS L1b products, so that the operators of a processing
+ * graph, which usually request the same tiles of the same L1b product shortly after each other, compute the
+ * geometry only once.
+ * <p/>
+ * The geometries are cached per product and rectangle. The least recently used geometries of a product are evicted
+ * when their total number of pixels exceeds the capacity given with each request, so that only the few tiles
+ * currently processed by the graph are kept. A geometry takes up to 64 bytes per pixel. Products are weakly
+ * referenced.
+ * <p/>
+ * The provider is thread-safe.
+ */
+public class MerisGeometryProvider {
+
+    /**
+     * The default maximum number of pixels of the geometries cached per product, up to 16 MB.
+     */
+    public static final int DEFAULT_CAPACITY = 1 << 18;
+
+    private static MerisGeometryProvider instance;
+    private final Map<Product, GeometryCache> map;
+
+    public static synchronized MerisGeometryProvider getInstance() {
+        if (instance == null) {
+            instance = new MerisGeometryProvider();
+        }
+        return instance;
+    }
+
+    MerisGeometryProvider() {
+        map = Collections.synchronizedMap(new WeakHashMap<Product, GeometryCache>());
+    }
+
+    /**
+     * Gets the geometry of a region of a MERIS L1b product.
+     *
+     * @param product   the product
+     * @param rectangle the region, usually a tile
+     * @param capacity  the maximum number of pixels of the geometries cached for the product, if 0 the geometry
+     *                  is not cached
+     * @return the geometry, computed once for each product and rectangle as long as it is cached
+     * @throws IllegalArgumentException if the product has no MERIS geometry tie-point grids
+     */
+    public MerisGeometry getGeometry(Product product, Rectangle rectangle, long capacity) {
+        GeometryCache cache;
+        synchronized (map) {
+            cache = map.get(product);
+            if (cache == null) {
+                cache = new GeometryCache();
+                map.put(product, cache);
+            }
+        }
+        MerisGeometry geometry = cache.get(rectangle, capacity);
+        if (geometry == null) {
+            // computed outside of the lock, concurrent requests for the same rectangle compute equal geometries
+            geometry = new MerisGeometry(product, rectangle);
+            cache.put(geometry, capacity);
+        }
+        return geometry;
+    }
+
+    /**
+     * @return the number of pixels of the geometries cached for the product
+     */
+    long getPixelCount(Product product) {
+        final GeometryCache cache = map.get(product);
+        return cache != null ? cache.getPixelCount() : 0;
+    }
+
+    private static class GeometryCache {
+
+        private final LinkedHashMap<Rectangle, MerisGeometry> geometries;
+        private long pixelCount;
+
+        private GeometryCache() {
+            geometries = new LinkedHashMap<Rectangle, MerisGeometry>(16, 0.75f, true);
+        }
+
+        synchronized MerisGeometry get(Rectangle rectangle, long capacity) {
+            final MerisGeometry geometry = geometries.get(rectangle);
+            trim(capacity);
+            return geometry;
+        }
+
+        synchronized long getPixelCount() {
+            return pixelCount;
+        }
+
+        synchronized void put(MerisGeometry geometry, long capacity) {
+            final Rectangle rectangle = geometry.getRectangle();
+            final long size = (long) rectangle.width * rectangle.height;
+            // a geometry exceeding the capacity is not cached
+            if (size <= capacity && !geometries.containsKey(rectangle)) {
+                geometries.put(rectangle, geometry);
+                pixelCount += size;
+            }
+            trim(capacity);
+        }
+
+        private void trim(long capacity) {
+            final Iterator<Rectangle> iterator = geometries.keySet().iterator();
+            while (pixelCount > capacity) {
+                final Rectangle eldest = iterator.next();
+                pixelCount -= (long) eldest.width * eldest.height;
+                iterator.remove();
+            }
+        }
+    }
+}
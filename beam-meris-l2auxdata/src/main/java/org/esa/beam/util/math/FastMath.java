@@ -0,0 +1,131 @@
+package org.esa.beam.util.math;
+
+/**
+ * Table based replacements for the {@link Math} functions used in the per pixel computations of the MERIS
+ * operators. The functions are faster than the ones of {@link Math}, but not correctly rounded.
+ * <p/>
+ * The error bounds are:
+ * <ul>
+ * <li>{@link #cos(double)}, {@link #sin(double)}: absolute error less than {@link #MAX_TRIG_ERROR} for
+ * arguments in the range [-{@link #MAX_TRIG_ARGUMENT}, {@link #MAX_TRIG_ARGUMENT}], outside of it the
+ * functions of {@link Math} are used</li>
+ * <li>{@link #exp(double)}: relative error less than {@link #MAX_EXP_ERROR}</li>
+ * <li>{@link #azimuthDifference(double, double)}: absolute error less than 1.0E-12 degree for azimuth
+ * angles in the range [-360, 360] degree</li>
+ * </ul>
+ */
+public final class FastMath {
+
+    /**
+     * The maximum absolute error of {@link #cos(double)} and {@link #sin(double)}.
+     */
+    public static final double MAX_TRIG_ERROR = 1.0e-14;
+    /**
+     * The maximum absolute argument of {@link #cos(double)} and {@link #sin(double)} for which
+     * the table is used [radian].
+     */
+    public static final double MAX_TRIG_ARGUMENT = 8.0 * Math.PI;
+    /**
+     * The maximum relative error of {@link #exp(double)}.
+     */
+    public static final double MAX_EXP_ERROR = 1.0e-14;
+
+    private static final int TRIG_TABLE_SIZE = 512;
+    private static final double TRIG_STEP = 2.0 * Math.PI / TRIG_TABLE_SIZE;
+    private static final double INV_TRIG_STEP = TRIG_TABLE_SIZE / (2.0 * Math.PI);
+    private static final double[] COS_TABLE = new double[TRIG_TABLE_SIZE];
+    private static final double[] SIN_TABLE = new double[TRIG_TABLE_SIZE];
+
+    private static final int EXP_TABLE_BITS = 8;
+    private static final int EXP_TABLE_SIZE = 1 << EXP_TABLE_BITS;
+    private static final double EXP_STEP_INV = EXP_TABLE_SIZE / Math.log(2.0);
+    // ln(2) / EXP_TABLE_SIZE split into a high part with trailing zero bits and a low part (Cody-Waite, fdlibm)
+    private static final double EXP_STEP_HI = 6.93147180369123816490e-01 / EXP_TABLE_SIZE;
+    private static final double EXP_STEP_LO = 1.90821492927058770002e-10 / EXP_TABLE_SIZE;
+    private static final double[] EXP_TABLE = new double[EXP_TABLE_SIZE];
+    // beyond these limits the scaling by 2^k would over- or underflow
+    private static final double EXP_MIN_ARGUMENT = -708.0;
+    private static final double EXP_MAX_ARGUMENT = 709.0;
+
+    static {
+        for (int i = 0; i < TRIG_TABLE_SIZE; i++) {
+            COS_TABLE[i] = Math.cos(i * TRIG_STEP);
+            SIN_TABLE[i] = Math.sin(i * TRIG_STEP);
+        }
+        for (int i = 0; i < EXP_TABLE_SIZE; i++) {
+            EXP_TABLE[i] = Math.pow(2.0, (double) i / EXP_TABLE_SIZE);
+        }
+    }
+
+    private FastMath() {
+    }
+
+    /**
+     * @param x the angle [radian]
+     * @return the cosine of the angle
+     */
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) {
+            return Math.cos(x);
+        }
+        final long k = Math.round(x * INV_TRIG_STEP);
+        final double d = x - k * TRIG_STEP;
+        final int i = (int) (k & (TRIG_TABLE_SIZE - 1));
+        final double d2 = d * d;
+        // cos(a + d) = cos(a) * cos(d) - sin(a) * sin(d), |d| <= TRIG_STEP / 2
+        return COS_TABLE[i] * cosPolynomial(d2) - SIN_TABLE[i] * sinPolynomial(d, d2);
+    }
+
+    /**
+     * @param x the angle [radian]
+     * @return the sine of the angle
+     */
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) {
+            return Math.sin(x);
+        }
+        final long k = Math.round(x * INV_TRIG_STEP);
+        final double d = x - k * TRIG_STEP;
+        final int i = (int) (k & (TRIG_TABLE_SIZE - 1));
+        final double d2 = d * d;
+        // sin(a + d) = sin(a) * cos(d) + cos(a) * sin(d), |d| <= TRIG_STEP / 2
+        return SIN_TABLE[i] * cosPolynomial(d2) + COS_TABLE[i] * sinPolynomial(d, d2);
+    }
+
+    /**
+     * @param x the exponent
+     * @return Euler's number raised to the power of the exponent
+     */
+    public static double exp(double x) {
+        if (!(x >= EXP_MIN_ARGUMENT && x <= EXP_MAX_ARGUMENT)) {
+            return Math.exp(x);
+        }
+        // x = (k / EXP_TABLE_SIZE) * ln(2) + r, |r| <= ln(2) / (2 * EXP_TABLE_SIZE)
+        final int k = (int) Math.round(x * EXP_STEP_INV);
+        final double r = (x - k * EXP_STEP_HI) - k * EXP_STEP_LO;
+        final double p = 1.0 + r * (1.0 + r * (1.0 / 2.0 + r * (1.0 / 6.0 + r * (1.0 / 24.0 + r * (1.0 / 120.0)))));
+        final double scale = Double.longBitsToDouble((long) ((k >> EXP_TABLE_BITS) + 1023) << 52);
+        return scale * EXP_TABLE[k & (EXP_TABLE_SIZE - 1)] * p;
+    }
+
+    /**
+     * Computes the azimuth difference without trigonometric functions. The result is equal to
+     * <code>RTOD * acos(cos(DTOR * (vaa - saa)))</code>, but more accurate for differences near 0 and 180 degree.
+     *
+     * @param vaa viewing azimuth angle [degree]
+     * @param saa sun azimuth angle [degree]
+     * @return the azimuth difference in the range [0, 180] [degree]
+     */
+    public static double azimuthDifference(double vaa, double saa) {
+        final double d = Math.abs(vaa - saa) % 360.0;
+        return d > 180.0 ? 360.0 - d : d;
+    }
+
+    private static double cosPolynomial(double d2) {
+        return 1.0 - d2 * (1.0 / 2.0 - d2 * (1.0 / 24.0 - d2 * (1.0 / 720.0)));
+    }
+
+    private static double sinPolynomial(double d, double d2) {
+        return d * (1.0 - d2 * (1.0 / 6.0 - d2 * (1.0 / 120.0)));
+    }
+}
@@ -101,6 +101,70 @@ public class Interp {
         return status;
     }
 
+    /**
+     * Batch version of {@link #interpCoord(double, double[], FractIndex)}: computes the fractional indexes of
+     * <code>count</code> co-ordinates starting at <code>x[offset]</code> and stores them in the parallel arrays
+     * <code>index</code> and <code>fraction</code>, starting at position zero.
+     * <p/>
+     * Instead of a binary search per co-ordinate, the search starts at the position found for the previous
+     * co-ordinate and moves along the tabulated values. Thus, for co-ordinates which vary monotonically (e.g. the
+     * angles along a scan line), the cost is O(count + xi.length) instead of O(count * log(xi.length)).
+     * The results are identical to those of the single co-ordinate version, provided that <code>xi</code>
+     * is strictly ascending or descending.
+     *
+     * @param x        co-ordinates of the points to interpolate
+     * @param offset   the position of the first co-ordinate in <code>x</code>
+     * @param count    the number of co-ordinates
+     * @param xi       tabulated values to search in
+     * @param index    receives the integer part of the fractional indexes, length must be at least <code>count</code>
+     * @param fraction receives the fraction part of the fractional indexes, length must be at least <code>count</code>
+     * @return the number of co-ordinates for which the status code is not zero (out of range)
+     */
+    public static int interpCoord(final double[] x, final int offset, final int count, final double[] xi,
+                                  final int[] index, final double[] fraction) {
+        final int n = xi.length;
+        final boolean ascending = xi[n - 1] >= xi[0];
+        final double lower = ascending ? xi[0] : xi[n - 1];
+        final double upper = ascending ? xi[n - 1] : xi[0];
+        int outOfRange = 0;
+        int il = 0;
+        for (int k = 0; k < count; k++) {
+            final double xk = x[offset + k];
+            fraction[k] = 0.0;
+            if (Double.isNaN(xk)) {
+                index[k] = 0;
+                outOfRange++;
+            } else if (xk >= upper) {
+                index[k] = ascending ? n - 1 : 0;
+                if (xk > upper) {
+                    outOfRange++;
+                }
+            } else if (xk <= lower) {
+                index[k] = ascending ? 0 : n - 1;
+                if (xk < lower) {
+                    outOfRange++;
+                }
+            } else {
+                // move the cursor to the last position for which (x >= xi[il]) == ascending holds
+                while (il < n - 2 && (xk >= xi[il + 1]) == ascending) {
+                    il++;
+                }
+                while (il > 0 && (xk >= xi[il]) != ascending) {
+                    il--;
+                }
+                if (ascending && xk == xi[il]) {
+                    index[k] = il;
+                } else if (!ascending && xk == xi[il + 1]) {
+                    index[k] = il + 1;
+                } else {
+                    index[k] = il;
+                    fraction[k] = (xk - xi[il]) / (xi[il + 1] - xi[il]);
+                }
+            }
+        }
+        return outOfRange;
+    }
+
     /**
      * Multi-linear interpolation in arrays of any dimension.
      *
@@ -29,6 +29,14 @@ public class LUT {
      * Tabulated values for each dimension.
      */
     private final double[][] _tabs;
+    /**
+     * The dimension sizes of the array.
+     */
+    private final int[] _sizes;
+    /**
+     * The strides of the flat array elements, see {@link MDArray.Layout#getStrides()}.
+     */
+    private final int[] _strides;
 
     /**
      * Constructs a new LUT from the given array object.
@@ -48,6 +56,8 @@ public class LUT {
     public LUT(final MDArray array) {
         _array = array;
         _tabs = new double[_array.getRank()][];
+        _sizes = _array.getLayout().getDimSizes();
+        _strides = _array.getLayout().getStrides();
     }
 
     /**
@@ -141,5 +151,171 @@ public class LUT {
         }
         _tabs[dim] = tab;
     }
-}
 
+    /**
+     * Gets the elements of this LUT as a flat array in row-major order, see {@link MDArray#getFlatArray()}.
+     *
+     * @return the flat elements, never <code>null</code>
+     */
+    public double[] getFlatArray() {
+        return _array.getFlatArray();
+    }
+
+    /**
+     * Gets the distance between two consecutive elements of the given dimension in the flat array.
+     *
+     * @param dim the index of the dimension, must be within <code>0</code> and <code>{@link #getRank()} - 1</code>
+     * @return the stride of the given dimension
+     */
+    public int getStride(final int dim) {
+        return _strides[dim];
+    }
+
+    /**
+     * Multi-linear interpolation in this LUT. Gives the same result as
+     * <code>{@link Interp#interpolate(Object, FractIndex[]) Interp.interpolate}(getJavaArray(), indexes)</code>,
+     * but operates on the flat array elements.
+     *
+     * @param indexes the fractional indexes for each dimension, the length of this array must be equal to the rank
+     * @return the interpolated value
+     * @throws IllegalArgumentException if the length of <code>indexes</code> is not equal to the rank
+     */
+    public double interpolate(final FractIndex[] indexes) {
+        if (indexes.length != _sizes.length) {
+            throw new IllegalArgumentException("indexes.length != rank, indexes.length=" + indexes.length);
+        }
+        switch (indexes.length) {
+            case 1:
+                return interpolate1D(0, indexes[0]);
+            case 2:
+                return interpolate2D(0, indexes[0], indexes[1]);
+            case 3:
+                return interpolate3D(0, indexes[0], indexes[1], indexes[2]);
+            case 4:
+                return interpolate4D(0, indexes[0], indexes[1], indexes[2], indexes[3]);
+            default:
+                return interpolateND(getFlatArray(), 0, indexes, 0);
+        }
+    }
+
+    /**
+     * Linear interpolation along the last dimension of this LUT.
+     *
+     * @param offset the flat offset of the sub-table to interpolate in, e.g. <code>i * getStride(0)</code> to
+     *               interpolate in the sub-table <code>[i]</code> of a two-dimensional LUT
+     * @param i0     the fractional index for the last dimension
+     * @return the interpolated value
+     */
+    public double interpolate1D(final int offset, final FractIndex i0) {
+        final double[] a = getFlatArray();
+        final int d0 = _sizes.length - 1;
+        final int o0 = offset + i0.index;
+        final int n0 = next(i0, d0);
+        return lerp(a[o0], a[o0 + n0], fraction(i0));
+    }
+
+    /**
+     * Bi-linear interpolation along the last two dimensions of this LUT.
+     *
+     * @param offset the flat offset of the sub-table to interpolate in
+     * @param i0     the fractional index for the last but one dimension
+     * @param i1     the fractional index for the last dimension
+     * @return the interpolated value
+     * @see #interpolate1D(int, FractIndex)
+     */
+    public double interpolate2D(final int offset, final FractIndex i0, final FractIndex i1) {
+        final double[] a = getFlatArray();
+        final int d0 = _sizes.length - 2;
+        final int d1 = d0 + 1;
+        final double f0 = fraction(i0);
+        final double f1 = fraction(i1);
+        final int o0 = offset + i0.index * _strides[d0];
+        final int n0 = next(i0, d0);
+        final int o1 = i1.index;
+        final int n1 = next(i1, d1);
+
+        final int o00 = o0 + o1;
+        final int o10 = o0 + n0 + o1;
+        final double y1 = lerp(a[o00], a[o00 + n1], f1);
+        final double y2 = lerp(a[o10], a[o10 + n1], f1);
+        return lerp(y1, y2, f0);
+    }
+
+    /**
+     * Tri-linear interpolation along the last three dimensions of this LUT.
+     *
+     * @param offset the flat offset of the sub-table to interpolate in
+     * @param i0     the fractional index for the last but two dimension
+     * @param i1     the fractional index for the last but one dimension
+     * @param i2     the fractional index for the last dimension
+     * @return the interpolated value
+     * @see #interpolate1D(int, FractIndex)
+     */
+    public double interpolate3D(final int offset, final FractIndex i0, final FractIndex i1, final FractIndex i2) {
+        final int d0 = _sizes.length - 3;
+        final double f0 = fraction(i0);
+        final int o0 = offset + i0.index * _strides[d0];
+        final int n0 = next(i0, d0);
+        final double y1 = interpolate2D(o0, i1, i2);
+        final double y2 = interpolate2D(o0 + n0, i1, i2);
+        return lerp(y1, y2, f0);
+    }
+
+    /**
+     * Quadri-linear interpolation along the last four dimensions of this LUT.
+     *
+     * @param offset the flat offset of the sub-table to interpolate in
+     * @param i0     the fractional index for the last but three dimension
+     * @param i1     the fractional index for the last but two dimension
+     * @param i2     the fractional index for the last but one dimension
+     * @param i3     the fractional index for the last dimension
+     * @return the interpolated value
+     * @see #interpolate1D(int, FractIndex)
+     */
+    public double interpolate4D(final int offset, final FractIndex i0, final FractIndex i1, final FractIndex i2,
+                                final FractIndex i3) {
+        final int d0 = _sizes.length - 4;
+        final double f0 = fraction(i0);
+        final int o0 = offset + i0.index * _strides[d0];
+        final int n0 = next(i0, d0);
+        final double y1 = interpolate3D(o0, i1, i2, i3);
+        final double y2 = interpolate3D(o0 + n0, i1, i2, i3);
+        return lerp(y1, y2, f0);
+    }
+
+    private double interpolateND(final double[] a, final int offset, final FractIndex[] indexes, final int dim) {
+        final FractIndex i0 = indexes[dim];
+        final double f0 = fraction(i0);
+        final int o0 = offset + i0.index * _strides[dim];
+        final int n0 = next(i0, dim);
+        final double y1;
+        final double y2;
+        if (dim == _sizes.length - 1) {
+            y1 = a[o0];
+            y2 = a[o0 + n0];
+        } else {
+            y1 = interpolateND(a, o0, indexes, dim + 1);
+            y2 = n0 != 0 ? interpolateND(a, o0 + n0, indexes, dim + 1) : y1;
+        }
+        return lerp(y1, y2, f0);
+    }
+
+    /**
+     * @return the offset to the next element in the given dimension, or zero if the index is at the upper bound
+     */
+    private int next(final FractIndex i, final int dim) {
+        return i.index < _sizes[dim] - 1 ? _strides[dim] : 0;
+    }
+
+    private static double fraction(final FractIndex i) {
+        final double fraction = i.fraction;
+        if (fraction < 0.0 || fraction >= 1.0) {
+            throw new IllegalArgumentException("fraction < 0.0 || fraction >= 1.0, fraction=" + fraction);
+        }
+        return fraction;
+    }
+
+    private static double lerp(final double y1, final double y2, final double fraction) {
+        return y1 + fraction * (y2 - y1);
+    }
+}
@@ -22,9 +22,13 @@ public final class MDArray {
      */
     private final Layout _layout;
     /**
-     * The Java array which holds the array elements.
+     * The Java array which holds the array elements, <code>null</code> once the elements have been flattened.
      */
-    private final Object _javaArray;
+    private volatile Object _javaArray;
+    /**
+     * The array elements in row-major order, created on demand. Only one of both arrays is kept.
+     */
+    private volatile double[] _flatArray;
 
     /**
      * Constructs a new MDArray using the layout and multi-dimensional Java array provided by the given MDArray.
@@ -124,8 +128,69 @@ public final class MDArray {
         return _layout.getElementType();
     }
 
+    /**
+     * Gets the array elements as a multi-dimensional Java array. Once the elements have been flattened by
+     * {@link #getFlatArray()}, a new Java array holding a copy of the elements is returned on each call, so changes
+     * made to it are not reflected.
+     *
+     * @return the Java array, never <code>null</code>
+     */
     public Object getJavaArray() {
-        return _javaArray;
+        final Object javaArray = _javaArray;
+        if (javaArray != null) {
+            return javaArray;
+        }
+        synchronized (this) {
+            return _javaArray != null ? _javaArray : createJavaArray(_flatArray);
+        }
+    }
+
+    /**
+     * Gets the array elements in row-major order, converted to <code>double</code>. The element at the position
+     * <code>(i0, i1, ..., in)</code> is found at the offset <code>i0 * strides[0] + i1 * strides[1] + ... + in</code>,
+     * see {@link Layout#getStrides()}.
+     * <p/>
+     * The flat array is created on the first call and replaces the Java array, which is released, so that the
+     * elements are not held twice.
+     *
+     * @return the flat array elements, never <code>null</code>
+     */
+    public double[] getFlatArray() {
+        double[] flatArray = _flatArray;
+        if (flatArray == null) {
+            synchronized (this) {
+                flatArray = _flatArray;
+                if (flatArray == null) {
+                    flatArray = createFlatArray(_javaArray);
+                    _flatArray = flatArray;
+                    _javaArray = null;
+                }
+            }
+        }
+        return flatArray;
+    }
+
+    private Object createJavaArray(double[] flatArray) {
+        final Object javaArray = Array.newInstance(getElementType(), _layout.getDimSizes());
+        copyFlatIntoDeep(flatArray, javaArray, _layout, null);
+        return javaArray;
+    }
+
+    private double[] createFlatArray(Object javaArray) {
+        final double[] flatArray = new double[getElementCount()];
+        visitLeafArrays(javaArray, _layout, new LeafArrayVisitor() {
+            public void visit(Object deepArray, Layout deepArrayLayout,
+                              Object leafArray, int[] leafArrayPos, int leafArrayLength, int flatOffset) {
+                if (leafArray instanceof float[]) {
+                    FLOAT_TO_DOUBLE_FAC.copyArray(leafArray, 0, flatArray, flatOffset, leafArrayLength);
+                } else if (leafArray instanceof double[]) {
+                    SYSTEM_FAC.copyArray(leafArray, 0, flatArray, flatOffset, leafArrayLength);
+                } else {
+                    throw new IllegalStateException("illegal array type, float[] or double[] expected");
+                }
+            }
+        });
+        return flatArray;
     }
 
     public static long getElementCount(final int[] dimSizes) {
@@ -155,11 +220,16 @@ public final class MDArray {
      * @param flatArray the Java array with a flat memory layout, must not be null
      */
     public void fillFromFlatArray(Object flatArray) {
-        copyFlatIntoDeep(flatArray, getJavaArray(), getLayout(), null);
+        fillFromFlatArray(flatArray, null);
     }
 
-    public void fillFromFlatArray(Object flatArray, ArrayCopy arrayCopy) {
-        copyFlatIntoDeep(flatArray, getJavaArray(), getLayout(), arrayCopy);
+    public synchronized void fillFromFlatArray(Object flatArray, ArrayCopy arrayCopy) {
+        if (_javaArray == null) {
+            // flattened before, go back to the Java array and flatten again on demand
+            _javaArray = createJavaArray(_flatArray);
+            _flatArray = null;
+        }
+        copyFlatIntoDeep(flatArray, _javaArray, getLayout(), arrayCopy);
     }
 
     public static void copyFlatIntoDeep(Object flatArray, Object deepArray) {
@@ -300,6 +370,7 @@ public final class MDArray {
         private final Class _elementType;
         private final int _elementCount;
         private final int[] _dimSizes;
+        private final int[] _strides;
 
         /**
          * Constructs a new descriptor.
@@ -318,6 +389,12 @@ public final class MDArray {
             _elementType = elementType;
             _elementCount = (int) elementCount;
             _dimSizes = dimSizes;
+            _strides = new int[dimSizes.length];
+            int stride = 1;
+            for (int i = dimSizes.length - 1; i >= 0; i--) {
+                _strides[i] = stride;
+                stride *= dimSizes[i];
+            }
         }
 
         public Class getElementType() {
@@ -339,6 +416,20 @@ public final class MDArray {
         public int getDimSize(int dimIndex) {
             return _dimSizes[dimIndex];
         }
+
+        /**
+         * Gets the strides of a flat, row-major array with this layout, i.e. the distance between two consecutive
+         * elements in each dimension. The stride of the last dimension is always one.
+         *
+         * @return the strides for each array dimension
+         */
+        public int[] getStrides() {
+            return _strides;
+        }
+
+        public int getStride(int dimIndex) {
+            return _strides[dimIndex];
+        }
     }
 
     public static interface LeafArrayVisitor {
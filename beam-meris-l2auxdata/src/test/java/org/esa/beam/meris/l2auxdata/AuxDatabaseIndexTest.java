@@ -0,0 +1,133 @@
+package org.esa.beam.meris.l2auxdata;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.ProductData;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+public class AuxDatabaseIndexTest extends TestCase {
+
+    public void testWriteAndRead() throws IOException {
+        final AuxFileInfo fileInfo = new AuxFileInfo();
+        fileInfo.setTypeId('T');
+        fileInfo.setEditable(true);
+        fileInfo.setDirName("case1");
+        fileInfo.setDescription("Case 1");
+        fileInfo.setDatasetCount(2);
+        fileInfo.getDatasetInfo(0).setId('0');
+        fileInfo.getDatasetInfo(0).setType(AuxDatasetInfo.MPH);
+        fileInfo.getDatasetInfo(0).setRecordSize(1247);
+        fileInfo.getDatasetInfo(1).setId('7');
+        fileInfo.getDatasetInfo(1).setType(AuxDatasetInfo.GADS);
+        fileInfo.getDatasetInfo(1).setRecordSize(4080);
+        fileInfo.getDatasetInfo(1).setVarIdForNumRecords("T10E");
+        fileInfo.getDatasetInfo(1).setName("Glint reflectance");
+
+        final AuxVariableInfo variableInfo = new AuxVariableInfo(fileInfo.getDatasetInfo(1));
+        variableInfo.setId("T700");
+        variableInfo.setOffset(16);
+        variableInfo.setScale(0.5);
+        variableInfo.setDataType(ProductData.TYPE_FLOAT32);
+        variableInfo.setDim1(12);
+        variableInfo.setDim2(17);
+        variableInfo.setDim3(5);
+        variableInfo.setElementSize(4);
+        variableInfo.setDisplayType(2);
+        variableInfo.setComment("glint reflectance, wind speed 1");
+        fileInfo.setVariableInfos(new AuxVariableInfo[]{variableInfo});
+
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        AuxDatabaseIndex.write(new AuxFileInfo[]{fileInfo}, outputStream);
+        final AuxFileInfo[] fileInfos = AuxDatabaseIndex.read(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        assertEquals(1, fileInfos.length);
+        final AuxFileInfo actualFileInfo = fileInfos[0];
+        assertEquals('T', actualFileInfo.getTypeId());
+        assertTrue(actualFileInfo.isEditable());
+        assertFalse(actualFileInfo.isImport());
+        assertEquals("case1", actualFileInfo.getDirName());
+        assertEquals(2, actualFileInfo.getDatasetCount());
+        assertEquals(1247, actualFileInfo.getDatasetInfo(0).getRecordSize());
+        assertNull(actualFileInfo.getDatasetInfo(0).getVarIdForNumRecords());
+        assertEquals("T10E", actualFileInfo.getDatasetInfo('7').getVarIdForNumRecords());
+        assertEquals("Glint reflectance", actualFileInfo.getDatasetInfo('7').getName());
+
+        assertEquals(1, actualFileInfo.getVariableCount());
+        final AuxVariableInfo actualVariableInfo = actualFileInfo.getVariableInfo("T700");
+        assertSame(actualFileInfo.getDatasetInfo(1), actualVariableInfo.getDatasetInfo());
+        assertEquals(16, actualVariableInfo.getOffset());
+        assertEquals(0.5, actualVariableInfo.getScale(), 0.0);
+        assertEquals(ProductData.TYPE_FLOAT32, actualVariableInfo.getDataType());
+        assertEquals(12 * 17 * 5, actualVariableInfo.getNumElements());
+        assertEquals(4, actualVariableInfo.getNumBytes());
+        assertEquals(2, actualVariableInfo.getDisplayType());
+        assertNull(actualVariableInfo.getRange());
+        assertEquals("glint reflectance, wind speed 1", actualVariableInfo.getComment());
+        assertNull(actualVariableInfo.getUnit());
+    }
+
+    public void testPackagedIndexMatchesDescriptions() throws IOException {
+        // the index is generated in the process-classes phase, so it must be packaged before the tests run
+        final InputStream indexStream = AuxDatabase.class.getResourceAsStream(AuxDatabaseIndex.RESOURCE_NAME);
+        assertNotNull("missing resource " + AuxDatabaseIndex.RESOURCE_NAME, indexStream);
+        final AuxFileInfo[] actualFileInfos = AuxDatabaseIndex.read(indexStream);
+        final AuxFileInfo[] expectedFileInfos = AuxDatabase.loadResources();
+
+        assertEquals(expectedFileInfos.length, actualFileInfos.length);
+        for (int i = 0; i < expectedFileInfos.length; i++) {
+            assertFileInfoEquals(expectedFileInfos[i], actualFileInfos[i]);
+        }
+    }
+
+    public void testReadInvalidIndex() {
+        try {
+            AuxDatabaseIndex.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5, 6, 7, 8}));
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertFileInfoEquals(AuxFileInfo expected, AuxFileInfo actual) {
+        final String fileId = "file '" + expected.getTypeId() + "'";
+        assertEquals(fileId, expected.getTypeId(), actual.getTypeId());
+        assertEquals(fileId, expected.isEditable(), actual.isEditable());
+        assertEquals(fileId, expected.isImport(), actual.isImport());
+        assertEquals(fileId, expected.getDirName(), actual.getDirName());
+        assertEquals(fileId, expected.getDescription(), actual.getDescription());
+        assertEquals(fileId, expected.getDatasetCount(), actual.getDatasetCount());
+        for (int i = 0; i < expected.getDatasetCount(); i++) {
+            final AuxDatasetInfo expectedDataset = expected.getDatasetInfo(i);
+            final AuxDatasetInfo actualDataset = actual.getDatasetInfo(i);
+            final String datasetId = fileId + ", dataset '" + expectedDataset.getId() + "'";
+            assertEquals(datasetId, expectedDataset.getId(), actualDataset.getId());
+            assertEquals(datasetId, expectedDataset.getType(), actualDataset.getType());
+            assertEquals(datasetId, expectedDataset.getRecordSize(), actualDataset.getRecordSize());
+            assertEquals(datasetId, expectedDataset.getVarIdForNumRecords(), actualDataset.getVarIdForNumRecords());
+            assertEquals(datasetId, expectedDataset.getName(), actualDataset.getName());
+        }
+        assertEquals(fileId, expected.getVariableCount(), actual.getVariableCount());
+        for (int i = 0; i < expected.getVariableCount(); i++) {
+            final AuxVariableInfo expectedVariable = expected.getVariableInfo(i);
+            final AuxVariableInfo actualVariable = actual.getVariableInfo(i);
+            final String varId = "variable " + expectedVariable.getId();
+            assertEquals(varId, expectedVariable.getId(), actualVariable.getId());
+            assertEquals(varId, expectedVariable.getDatasetInfo().getIndex(), actualVariable.getDatasetInfo().getIndex());
+            assertEquals(varId, expectedVariable.getOffset(), actualVariable.getOffset());
+            assertEquals(varId, expectedVariable.getScale(), actualVariable.getScale(), 0.0);
+            assertEquals(varId, expectedVariable.getDataType(), actualVariable.getDataType());
+            assertEquals(varId, expectedVariable.getDim1(), actualVariable.getDim1());
+            assertEquals(varId, expectedVariable.getDim2(), actualVariable.getDim2());
+            assertEquals(varId, expectedVariable.getDim3(), actualVariable.getDim3());
+            assertEquals(varId, expectedVariable.getNumBytes(), actualVariable.getNumBytes());
+            assertEquals(varId, expectedVariable.getEditFlag(), actualVariable.getEditFlag());
+            assertEquals(varId, expectedVariable.getEditType(), actualVariable.getEditType());
+            assertEquals(varId, expectedVariable.getDisplayType(), actualVariable.getDisplayType());
+            assertEquals(varId, expectedVariable.getRange(), actualVariable.getRange());
+            assertEquals(varId, expectedVariable.getComment(), actualVariable.getComment());
+            assertEquals(varId, expectedVariable.getUnit(), actualVariable.getUnit());
+        }
+    }
+}
@@ -9,15 +9,21 @@ package org.esa.beam.meris.l2auxdata;
 import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
+import org.esa.beam.framework.datamodel.ProductData;
 
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.FloatBuffer;
 
 public class AuxFileTest extends TestCase {
 
     public static final String CASE1_TEST_FILE = "case1/case1.60.04.prd";
     public static final String CASE2_TEST_FILE = "case2/case2.42.00.prd";
 
+    private static final int RECORD_COUNT = 3;
+
 //    private File _auxDataDir;
 
     public AuxFileTest(String s) {
@@ -40,6 +46,7 @@ public class AuxFileTest extends TestCase {
         assertEquals(new File("./unknown.prd"), auxFile.getFile());
         assertEquals(false, auxFile.isOpen());
         assertEquals(null, auxFile.getInputStream());
+        assertEquals(null, auxFile.getBuffer());
     }
 
     public void testOpenWithInvalidFile() {
@@ -53,12 +60,158 @@ public class AuxFileTest extends TestCase {
         }
     }
 
+    public void testGetRecordViewWithoutOpen() throws IOException {
+        final AuxFileInfo fileInfo = AuxDatabase.getInstance().getFileInfo('Z');
+        final AuxFile auxFile = new AuxFile(fileInfo, new File("./unknown.prd"));
+        try {
+            auxFile.getRecordView("Z000", 0);
+            fail("IllegalStateException expected");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
     public void testCloseWithoutOpen() {
         final AuxFileInfo fileInfo = AuxDatabase.getInstance().getFileInfo('Z');
         final AuxFile auxFile = new AuxFile(fileInfo, new File("./unknown.prd"));
         auxFile.close();
     }
 
+    public void testMappedAndStreamedRecordsAreEqual() throws IOException {
+        final AuxFileInfo fileInfo = createFileInfo();
+        final AuxDatabase database = new AuxDatabase(new AuxFileInfo[]{fileInfo});
+        final File file = createFile();
+        final AuxFile mappedFile = new AuxFile(database, fileInfo, file);
+        final AuxFile streamedFile = new AuxFile(database, fileInfo, file);
+        try {
+            mappedFile.open();
+            // same as for files too large to be mapped
+            streamedFile.open(0);
+            assertNotNull(mappedFile.getBuffer());
+            assertNull(streamedFile.getBuffer());
+            assertEquals(4 + RECORD_COUNT * 40, mappedFile.getComputedFileSize());
+            assertEquals(4 + RECORD_COUNT * 40, streamedFile.getComputedFileSize());
+
+            for (int r = 0; r < RECORD_COUNT; r++) {
+                for (String varId : new String[]{"X100", "X101", "X102", "X103"}) {
+                    final ProductData expected = mappedFile.readRecord(varId, r, -1, ProductData.TYPE_FLOAT64, null);
+                    final ProductData actual = streamedFile.readRecord(varId, r, -1, ProductData.TYPE_FLOAT64, null);
+                    assertEquals(varId, expected.getNumElems(), actual.getNumElems());
+                    for (int i = 0; i < expected.getNumElems(); i++) {
+                        assertEquals(varId, expected.getElemDoubleAt(i), actual.getElemDoubleAt(i), 0.0);
+                    }
+                }
+                for (int i = 0; i < 3; i++) {
+                    final float expected = 10.0f * r + i + 0.25f;
+                    assertEquals(expected, mappedFile.readRecord("X100", r, 3, ProductData.TYPE_FLOAT32, null).getElemFloatAt(i), 0.0f);
+                    assertEquals(expected, streamedFile.readRecord("X100", r, 3, ProductData.TYPE_FLOAT32, null).getElemFloatAt(i), 0.0f);
+                }
+                for (int i = 0; i < 4; i++) {
+                    final double expected = 0.5 * (100 * r + i - 7);
+                    assertEquals(expected, streamedFile.readRecord("X101", r, 4, ProductData.TYPE_FLOAT64, null).getElemDoubleAt(i), 0.0);
+                }
+                assertEquals(Math.PI * (r + 1), streamedFile.readRecord("X102", r, 1, ProductData.TYPE_FLOAT64, null).getElemDouble(), 0.0);
+                assertEquals(Integer.MAX_VALUE - r, streamedFile.readRecord("X103", r, 2, ProductData.TYPE_INT32, null).getElemIntAt(1));
+            }
+        } finally {
+            mappedFile.close();
+            streamedFile.close();
+            file.delete();
+        }
+    }
+
+    public void testReadFloatRecord() throws IOException {
+        final AuxFileInfo fileInfo = createFileInfo();
+        final AuxDatabase database = new AuxDatabase(new AuxFileInfo[]{fileInfo});
+        final File file = createFile();
+        final AuxFile mappedFile = new AuxFile(database, fileInfo, file);
+        final AuxFile streamedFile = new AuxFile(database, fileInfo, file);
+        try {
+            mappedFile.open();
+            streamedFile.open(0);
+            for (int r = 0; r < RECORD_COUNT; r++) {
+                final FloatBuffer view = mappedFile.readFloatRecord("X100", r);
+                final FloatBuffer copy = streamedFile.readFloatRecord("X100", r);
+                assertTrue(view.isDirect());
+                assertTrue(copy.hasArray());
+                assertEquals(3, view.remaining());
+                assertEquals(view, copy);
+                assertEquals(10.0f * r + 2.25f, view.get(2), 0.0f);
+
+                // scaled variables are converted, also if the file is mapped
+                final FloatBuffer scaled = mappedFile.readFloatRecord(database.getVariableHandle("X101"), r);
+                assertTrue(scaled.hasArray());
+                assertEquals(scaled, streamedFile.readFloatRecord("X101", r));
+                assertEquals(0.5f * (100 * r - 4), scaled.get(3), 0.0f);
+            }
+            try {
+                streamedFile.getRecordView("X100", 0);
+                fail("IllegalStateException expected");
+            } catch (IllegalStateException expected) {
+            }
+        } finally {
+            mappedFile.close();
+            streamedFile.close();
+            file.delete();
+        }
+    }
+
+    private static AuxFileInfo createFileInfo() {
+        final AuxFileInfo fileInfo = new AuxFileInfo();
+        fileInfo.setTypeId('X');
+        fileInfo.setDirName("test");
+        fileInfo.setDatasetCount(2);
+        fileInfo.getDatasetInfo(0).setId('0');
+        fileInfo.getDatasetInfo(0).setType(AuxDatasetInfo.GADS);
+        fileInfo.getDatasetInfo(0).setRecordSize(4);
+        fileInfo.getDatasetInfo(1).setId('1');
+        fileInfo.getDatasetInfo(1).setType(AuxDatasetInfo.GADS);
+        fileInfo.getDatasetInfo(1).setRecordSize(40);
+        fileInfo.getDatasetInfo(1).setVarIdForNumRecords("X000");
+        fileInfo.setVariableInfos(new AuxVariableInfo[]{
+                createVariableInfo(fileInfo.getDatasetInfo(0), "X000", 0, 1.0, ProductData.TYPE_UINT32, 1, 4),
+                createVariableInfo(fileInfo.getDatasetInfo(1), "X100", 0, 1.0, ProductData.TYPE_FLOAT32, 3, 12),
+                createVariableInfo(fileInfo.getDatasetInfo(1), "X101", 12, 0.5, ProductData.TYPE_INT16, 4, 8),
+                createVariableInfo(fileInfo.getDatasetInfo(1), "X102", 20, 1.0, ProductData.TYPE_FLOAT64, 1, 8),
+                createVariableInfo(fileInfo.getDatasetInfo(1), "X103", 28, 1.0, ProductData.TYPE_INT32, 2, 8),
+        });
+        return fileInfo;
+    }
+
+    private static AuxVariableInfo createVariableInfo(AuxDatasetInfo datasetInfo, String varId, int offset,
+                                                      double scale, int dataType, int elementCount, int byteCount) {
+        final AuxVariableInfo variableInfo = new AuxVariableInfo(datasetInfo);
+        variableInfo.setId(varId);
+        variableInfo.setOffset(offset);
+        variableInfo.setScale(scale);
+        variableInfo.setDataType(dataType);
+        variableInfo.setDim1(elementCount);
+        variableInfo.setElementSize(byteCount);
+        return variableInfo;
+    }
+
+    private static File createFile() throws IOException {
+        final File file = File.createTempFile("AuxFileTest", ".prd");
+        final DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(RECORD_COUNT);
+            for (int r = 0; r < RECORD_COUNT; r++) {
+                for (int i = 0; i < 3; i++) {
+                    out.writeFloat(10.0f * r + i + 0.25f);
+                }
+                for (int i = 0; i < 4; i++) {
+                    out.writeShort(100 * r + i - 7);
+                }
+                out.writeDouble(Math.PI * (r + 1));
+                out.writeInt(r - 5);
+                out.writeInt(Integer.MAX_VALUE - r);
+                out.writeInt(0);
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
 /*
     public void testThatNewDataInstanceIsReturnedByRead() throws L2AuxDataException, IOException {
         final File file = new File(_auxDataDir, CASE1_TEST_FILE);
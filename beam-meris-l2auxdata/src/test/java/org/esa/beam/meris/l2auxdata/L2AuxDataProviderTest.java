@@ -0,0 +1,174 @@
+package org.esa.beam.meris.l2auxdata;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Product;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class L2AuxDataProviderTest extends TestCase {
+
+    private static final Set<L2AuxData.Section> SECTIONS = EnumSet.of(L2AuxData.Section.CONFIGURATION);
+    private static final int THREAD_COUNT = 8;
+
+    private String snapshotProperty;
+
+    @Override
+    protected void setUp() throws Exception {
+        snapshotProperty = System.getProperty(L2AuxDataSnapshot.ENABLED_PROPERTY);
+        System.setProperty(L2AuxDataSnapshot.ENABLED_PROPERTY, "false");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (snapshotProperty != null) {
+            System.setProperty(L2AuxDataSnapshot.ENABLED_PROPERTY, snapshotProperty);
+        } else {
+            System.clearProperty(L2AuxDataSnapshot.ENABLED_PROPERTY);
+        }
+    }
+
+    public void testConcurrentRequestsWaitForOneLoad() throws Exception {
+        final TestProvider provider = new TestProvider();
+        final List<Future<L2AuxData>> futures = getAuxdataConcurrently(provider, createProducts());
+
+        final L2AuxData first = futures.get(0).get();
+        for (Future<L2AuxData> future : futures) {
+            final L2AuxData auxData = future.get();
+            assertTrue(auxData.isLoaded(SECTIONS));
+            assertSame(first.theoretical_wavelength, auxData.theoretical_wavelength);
+        }
+        assertEquals(1, provider.loadCount.get());
+    }
+
+    public void testFailedLoadIsReportedToAllRequests() throws Exception {
+        final TestProvider provider = new TestProvider();
+        provider.failure = new IOException("corrupt database");
+        final Product[] products = createProducts();
+        final List<Future<L2AuxData>> futures = getAuxdataConcurrently(provider, products);
+
+        for (Future<L2AuxData> future : futures) {
+            try {
+                future.get();
+                fail("ExecutionException expected");
+            } catch (ExecutionException expected) {
+                assertTrue(expected.getCause() instanceof L2AuxDataException);
+                assertSame(provider.failure, expected.getCause().getCause());
+            }
+        }
+
+        // the failed load is not kept, a later request loads again
+        provider.failure = null;
+        final int loadCount = provider.loadCount.get();
+        assertTrue(provider.getAuxdata(products[0], SECTIONS).isLoaded(SECTIONS));
+        assertEquals(loadCount + 1, provider.loadCount.get());
+        assertTrue(provider.getAuxdata(products[1], SECTIONS).isLoaded(SECTIONS));
+        assertEquals(loadCount + 1, provider.loadCount.get());
+    }
+
+    public void testPrefetchDoesNotKeepProductAlive() throws Exception {
+        final TestProvider provider = new TestProvider();
+        Product product = new Product("test", "MER_RR__1P", 4, 4);
+        final WeakReference<Product> productRef = new WeakReference<Product>(product);
+
+        Future<L2AuxData> future = provider.prefetchAuxdata(product);
+        final L2AuxData auxData = future.get();
+        assertSame(auxData, provider.getAuxdata(product));
+
+        product = null;
+        future = null;
+        for (int i = 0; i < 50 && productRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertNull(productRef.get());
+        assertTrue(auxData.isLoaded(EnumSet.allOf(L2AuxData.Section.class)));
+    }
+
+    private static Product[] createProducts() {
+        final Product[] products = new Product[THREAD_COUNT];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = new Product("test" + i, "MER_RR__1P", 4, 4);
+        }
+        return products;
+    }
+
+    private static List<Future<L2AuxData>> getAuxdataConcurrently(final L2AuxDataProvider provider,
+                                                                  Product[] products) throws InterruptedException {
+        final ExecutorService executor = Executors.newFixedThreadPool(products.length);
+        try {
+            final CountDownLatch startSignal = new CountDownLatch(1);
+            final List<Future<L2AuxData>> futures = new ArrayList<Future<L2AuxData>>();
+            for (final Product product : products) {
+                futures.add(executor.submit(new Callable<L2AuxData>() {
+                    @Override
+                    public L2AuxData call() throws Exception {
+                        startSignal.await();
+                        return provider.getAuxdata(product, SECTIONS);
+                    }
+                }));
+            }
+            startSignal.countDown();
+            for (Future<L2AuxData> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ignored) {
+                    // checked by the caller
+                }
+            }
+            return futures;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Loads no database files but counts the loads, which take long enough for the other requests to wait for them.
+     */
+    private static class TestProvider extends L2AuxDataProvider {
+
+        final AtomicInteger loadCount = new AtomicInteger();
+        volatile IOException failure;
+
+        @Override
+        public DpmConfig getDpmConfig() {
+            return null;
+        }
+
+        @Override
+        String createKey(Product product) {
+            return "detectors=925";
+        }
+
+        @Override
+        void load(L2AuxData auxData, Product product, Set<L2AuxData.Section> sections) throws IOException {
+            synchronized (auxData) {
+                if (auxData.isLoaded(sections)) {
+                    return;
+                }
+                loadCount.incrementAndGet();
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+                auxData.theoretical_wavelength = new double[Constants.L1_BAND_NUM];
+                auxData.setLoaded(sections);
+            }
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.esa.beam.meris.l2auxdata;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.util.math.LUT;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.EnumSet;
+
+public class L2AuxDataSnapshotTest extends TestCase {
+
+    private static final String KEY = "detectors=925;lv2conf=test";
+
+    private File snapshotFile;
+    private Product product;
+
+    @Override
+    protected void setUp() throws Exception {
+        snapshotFile = File.createTempFile("l2auxdata", ".snap");
+        product = new Product("test", "MER_RR__1P", 4, 4);
+        final float[] sza = new float[16];
+        Arrays.fill(sza, 30.0f);
+        sza[15] = 42.5f;
+        product.addTiePointGrid(new TiePointGrid("sun_zenith", 4, 4, 0.5f, 0.5f, 1, 1, sza));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (!snapshotFile.delete()) {
+            snapshotFile.deleteOnExit();
+        }
+    }
+
+    public void testWriteAndRead() throws IOException, L2AuxDataException {
+        final L2AuxData expected = createAuxData(product);
+        L2AuxDataSnapshot.write(snapshotFile, KEY, expected);
+
+        final L2AuxData actual = L2AuxDataSnapshot.read(snapshotFile, KEY, product);
+        assertNotNull(actual);
+        assertEquals(expected.sun_earth_distance_square, actual.sun_earth_distance_square, 0.0);
+        assertEquals(expected.detector_count, actual.detector_count);
+        assertEquals(expected.band_bright_n, actual.band_bright_n);
+        assertEquals(expected.slope_2_high_thr, actual.slope_2_high_thr, 0.0);
+        assertTrue(Arrays.equals(expected.land_decision_table, actual.land_decision_table));
+        assertTrue(Arrays.deepEquals(expected.central_wavelength, actual.central_wavelength));
+        assertTrue(Arrays.equals(expected.tauO3_norm, actual.tauO3_norm));
+        assertTrue(Arrays.equals(expected.lap_b_thresh, actual.lap_b_thresh));
+        assertTrue(Arrays.equals(expected.land_smile_params.enabled, actual.land_smile_params.enabled));
+        assertTrue(Arrays.deepEquals(expected.water_smile_params.derivative_band_id,
+                                     actual.water_smile_params.derivative_band_id));
+        assertNull(actual.AB);
+        assertNull(actual.Rayalb);
+        assertLutEquals(expected.rog_all, actual.rog_all);
+        assertLutEquals(expected.rog, actual.rog);
+        assertLutEquals(expected.C, actual.C);
+        assertTrue(Arrays.equals(expected.rog_all_sza_tab, actual.rog_all_sza_tab));
+        assertEquals(0, actual.rog_sza_offset);
+        assertTrue(actual.isLoaded(EnumSet.allOf(L2AuxData.Section.class)));
+    }
+
+    public void testReadForProductWithOtherSzaRange() throws IOException, L2AuxDataException {
+        final L2AuxData expected = createAuxData(product);
+        L2AuxDataSnapshot.write(snapshotFile, KEY, expected);
+
+        final Product otherProduct = new Product("other", "MER_RR__1P", 4, 4);
+        final float[] sza = new float[16];
+        Arrays.fill(sza, 55.0f);
+        sza[0] = 62.5f;
+        otherProduct.addTiePointGrid(new TiePointGrid("sun_zenith", 4, 4, 0.5f, 0.5f, 1, 1, sza));
+
+        final L2AuxData actual = L2AuxDataSnapshot.read(snapshotFile, KEY, otherProduct);
+        assertNotNull(actual);
+        assertLutEquals(expected.rog_all, actual.rog_all);
+        final int offset = L2AuxData.computeRogSzaOffset(otherProduct, actual.rog_all_sza_tab);
+        assertEquals(offset, actual.rog_sza_offset);
+        assertLutEquals(L2AuxData.createRogWindow(expected.rog_all, offset, Constants.ROG_NUM_SZA), actual.rog);
+
+        // the snapshot is not replaced, it is still valid for the first product
+        assertNotNull(L2AuxDataSnapshot.read(snapshotFile, KEY, product));
+    }
+
+    public void testSeasonalFactorIsComputedForProduct() throws IOException, L2AuxDataException {
+        final L2AuxData auxData = createAuxData(product);
+        auxData.seasonal_factor = 0.97;
+        L2AuxDataSnapshot.write(snapshotFile, KEY, auxData);
+
+        // the test product has no start and stop time
+        assertEquals(1.0, L2AuxDataSnapshot.read(snapshotFile, KEY, product).seasonal_factor, 0.0);
+    }
+
+    public void testReadWithOtherKey() throws IOException, L2AuxDataException {
+        L2AuxDataSnapshot.write(snapshotFile, KEY, createAuxData(product));
+
+        assertNull(L2AuxDataSnapshot.read(snapshotFile, KEY + ",modified", product));
+    }
+
+    public void testReadInvalidFile() throws L2AuxDataException {
+        try {
+            L2AuxDataSnapshot.read(snapshotFile, KEY, product);
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testCreateKeyForNonMerisProduct() throws L2AuxDataException {
+        assertNull(L2AuxDataSnapshot.createKey(null, new Product("test", "ATS_TOA_1P", 4, 4)));
+    }
+
+    public void testFileNameDependsOnKey() {
+        final File dir = new File("snapshots");
+        assertEquals(L2AuxDataSnapshot.getFile(dir, KEY), L2AuxDataSnapshot.getFile(dir, KEY));
+        assertFalse(L2AuxDataSnapshot.getFile(dir, KEY).equals(L2AuxDataSnapshot.getFile(dir, KEY + "x")));
+    }
+
+    private static void assertLutEquals(LUT expected, LUT actual) {
+        assertEquals(expected.getArray().getElementType(), actual.getArray().getElementType());
+        assertEquals(expected.getRank(), actual.getRank());
+        for (int dim = 0; dim < expected.getRank(); dim++) {
+            assertEquals(expected.getDimSize(dim), actual.getDimSize(dim));
+            assertTrue(Arrays.equals(expected.getTab(dim), actual.getTab(dim)));
+        }
+        assertTrue(Arrays.equals(expected.getFlatArray(), actual.getFlatArray()));
+    }
+
+    private static L2AuxData createAuxData(Product product) throws L2AuxDataException {
+        final L2AuxData auxData = new L2AuxData();
+        auxData.sun_earth_distance_square = 2.238e22;
+        auxData.detector_count = Constants.RR_DETECTOR_COUNT;
+        auxData.band_bright_n = 2;
+        auxData.slope_2_high_thr = 1.3;
+        auxData.land_decision_table = new boolean[256];
+        auxData.land_decision_table[17] = true;
+        auxData.central_wavelength = new double[][]{{412.5, 412.6}, {442.4, 442.5}};
+        auxData.tauO3_norm = new double[]{0.0001, 0.003, 0.02};
+        auxData.lap_b_thresh = new int[]{6, 12};
+        auxData.land_smile_params = new L2AuxData.SmileParams();
+        auxData.land_smile_params.enabled[3] = true;
+        auxData.water_smile_params = new L2AuxData.SmileParams();
+        auxData.water_smile_params.derivative_band_id[4][1] = 5;
+
+        auxData.rog_all_sza_tab = L2AuxDataTest.createRogSzaTab();
+        auxData.rog_all = L2AuxDataTest.createRogAll(auxData.rog_all_sza_tab);
+        auxData.initRog(product);
+
+        auxData.C = new LUT(new int[]{2, 3}, new float[]{0.1f, 0.2f, 0.3f, 0.4f, 0.5f, 0.6f});
+        auxData.C.setTab(1, new double[]{1.0, 2.0, 3.0});
+        return auxData;
+    }
+}
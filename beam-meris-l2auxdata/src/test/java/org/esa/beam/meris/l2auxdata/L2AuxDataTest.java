@@ -0,0 +1,338 @@
+package org.esa.beam.meris.l2auxdata;
+
+import junit.framework.TestCase;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.util.math.LUT;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class L2AuxDataTest extends TestCase {
+
+    public void testCopySharesTables() throws L2AuxDataException {
+        final L2AuxData auxData = new L2AuxData();
+        auxData.detector_count = Constants.RR_DETECTOR_COUNT;
+        auxData.sun_earth_distance_square = 2.238e22;
+        auxData.seasonal_factor = 0.97;
+        auxData.central_wavelength = new double[][]{{412.5, 412.6}, {442.4, 442.5}};
+        auxData.land_smile_params = new L2AuxData.SmileParams();
+        auxData.rog = new LUT(new int[]{2}, new float[]{0.1f, 0.2f});
+        auxData.rog_all_sza_tab = new float[Constants.ROG_ALL_SZA];
+        for (int i = 0; i < auxData.rog_all_sza_tab.length; i++) {
+            auxData.rog_all_sza_tab[i] = 2.5f * i;
+        }
+
+        final L2AuxData copy = new L2AuxData(auxData, createProduct());
+        assertEquals(auxData.detector_count, copy.detector_count);
+        assertEquals(auxData.sun_earth_distance_square, copy.sun_earth_distance_square, 0.0);
+        assertSame(auxData.central_wavelength, copy.central_wavelength);
+        assertSame(auxData.land_smile_params, copy.land_smile_params);
+        assertSame(auxData.rog, copy.rog);
+        assertSame(auxData.rog_all_sza_tab, copy.rog_all_sza_tab);
+        assertEquals(0.0, copy.seasonal_factor, 0.0);
+
+        // the test product has no start and stop time
+        copy.initSeasonalFactor(createProduct());
+        assertEquals(1.0, copy.seasonal_factor, 0.0);
+        assertEquals(0, L2AuxData.computeRogSzaOffset(createProduct(), copy.rog_all_sza_tab));
+    }
+
+    public void testCopyHasSameSections() throws L2AuxDataException {
+        final L2AuxData auxData = new L2AuxData();
+        assertFalse(auxData.isLoaded(EnumSet.of(L2AuxData.Section.CONFIGURATION)));
+        assertTrue(auxData.isLoaded(EnumSet.noneOf(L2AuxData.Section.class)));
+
+        auxData.setLoaded(EnumSet.of(L2AuxData.Section.CONFIGURATION, L2AuxData.Section.ATMOSPHERE));
+        final L2AuxData copy = new L2AuxData(auxData, null);
+        assertTrue(copy.isLoaded(EnumSet.of(L2AuxData.Section.CONFIGURATION)));
+        assertFalse(copy.isLoaded(EnumSet.of(L2AuxData.Section.ATMOSPHERE, L2AuxData.Section.LAND_AEROSOL)));
+        assertEquals(EnumSet.of(L2AuxData.Section.CONFIGURATION, L2AuxData.Section.ATMOSPHERE),
+                     copy.getLoadedSections());
+    }
+
+    public void testDetectorTables() throws L2AuxDataException {
+        final L2AuxData auxData = new L2AuxData();
+        auxData.detector_solar_irradiance = new double[Constants.L1_BAND_NUM][2];
+        auxData.central_wavelength = new double[Constants.L1_BAND_NUM][2];
+        auxData.theoretical_wavelength = new double[Constants.L1_BAND_NUM];
+        for (int b = 0; b < Constants.L1_BAND_NUM; b++) {
+            auxData.theoretical_wavelength[b] = 400.0 + 20.0 * b;
+            for (int d = 0; d < 2; d++) {
+                auxData.detector_solar_irradiance[b][d] = 1800.0 - 50.0 * b + 3.0 * d;
+                auxData.central_wavelength[b][d] = auxData.theoretical_wavelength[b] + 0.4 * d - 0.1;
+            }
+        }
+        auxData.land_smile_params = new L2AuxData.SmileParams();
+        auxData.land_smile_params.enabled[3] = true;
+        auxData.land_smile_params.derivative_band_id[3][0] = 2;
+        auxData.land_smile_params.derivative_band_id[3][1] = 4;
+        auxData.water_smile_params = new L2AuxData.SmileParams();
+        auxData.spectral_shift_wavelength = new double[]{599.5, 600.0, 600.5};
+        auxData.spectral_shift_H2Owavelength = new double[]{559.0, 560.0, 561.0};
+
+        auxData.setLoaded(EnumSet.of(L2AuxData.Section.CONFIGURATION, L2AuxData.Section.ATMOSPHERE));
+        assertEquals(1.0 / 1800.0, auxData.detector_solar_irradiance_inv[0][0], 0.0);
+        assertEquals(1.0 / 1153.0, auxData.detector_solar_irradiance_inv[13][1], 0.0);
+
+        final double[][] slopeFactor = auxData.land_smile_params.slope_factor;
+        assertNull(slopeFactor[2]);
+        assertEquals(0.1 / 40.0, slopeFactor[3][0], 1.0e-12);
+        assertEquals(-0.3 / 40.0, slopeFactor[3][1], 1.0e-12);
+        assertNotNull(auxData.water_smile_params.slope_factor);
+
+        // central wavelengths of band 11 are 599.9 and 600.3 nm
+        assertEquals(0, auxData.spectral_shift_760_index[0]);
+        assertEquals(0.8, auxData.spectral_shift_760_fraction[0], 1.0e-9);
+        assertEquals(1, auxData.spectral_shift_760_index[1]);
+        assertEquals(0.6, auxData.spectral_shift_760_fraction[1], 1.0e-9);
+        // central wavelengths of band 9 are 559.9 and 560.3 nm
+        assertEquals(0, auxData.spectral_shift_705_index[0]);
+        assertEquals(0.9, auxData.spectral_shift_705_fraction[0], 1.0e-9);
+        assertEquals(1, auxData.spectral_shift_705_index[1]);
+        assertEquals(0.3, auxData.spectral_shift_705_fraction[1], 1.0e-9);
+
+        final L2AuxData copy = new L2AuxData(auxData, null);
+        assertSame(auxData.detector_solar_irradiance_inv, copy.detector_solar_irradiance_inv);
+        assertSame(auxData.spectral_shift_760_index, copy.spectral_shift_760_index);
+        assertSame(auxData.spectral_shift_705_fraction, copy.spectral_shift_705_fraction);
+    }
+
+    public void testCopiesForDifferentSzaRangesShareGlintTables() throws L2AuxDataException {
+        final L2AuxData loadedAuxData = new L2AuxData();
+        loadedAuxData.rog_all_sza_tab = createRogSzaTab();
+        loadedAuxData.rog_all = createRogAll(loadedAuxData.rog_all_sza_tab);
+        loadedAuxData.initRog(createProduct(20.0f));
+        loadedAuxData.setLoaded(EnumSet.of(L2AuxData.Section.LAND_AEROSOL));
+        final L2AuxData sharedAuxData = new L2AuxData(loadedAuxData, null);
+
+        final Product product1 = createProduct(30.0f);
+        final Product product2 = createProduct(62.5f);
+        final L2AuxData auxData1 = new L2AuxData(sharedAuxData, product1);
+        final L2AuxData auxData2 = new L2AuxData(sharedAuxData, product2);
+        assertSame(sharedAuxData.rog_all, auxData1.rog_all);
+        assertSame(sharedAuxData.rog_all, auxData2.rog_all);
+        assertSame(sharedAuxData.rog_all_sza_tab, auxData2.rog_all_sza_tab);
+        assertEquals(L2AuxData.computeRogSzaOffset(product1, auxData1.rog_all_sza_tab), auxData1.rog_sza_offset);
+        assertEquals(L2AuxData.computeRogSzaOffset(product2, auxData2.rog_all_sza_tab), auxData2.rog_sza_offset);
+        assertEquals(Constants.ROG_NUM_SZA, auxData2.rog.getDimSize(4));
+        assertEquals(auxData2.rog_all_sza_tab[auxData2.rog_sza_offset], auxData2.rog.getTab(4)[0], 0.0);
+        // all tables are needed for each product as long as ROG_NUM_SZA == ROG_ALL_SZA
+        assertSame(sharedAuxData.rog_all, auxData1.rog);
+        assertSame(sharedAuxData.rog_all, auxData2.rog);
+    }
+
+    public void testCreateRogWindow() {
+        final LUT rogAll = createRogAll(createRogSzaTab());
+
+        assertSame(rogAll, L2AuxData.createRogWindow(rogAll, 0, Constants.ROG_ALL_SZA));
+
+        final LUT rog = L2AuxData.createRogWindow(rogAll, 3, 5);
+        assertEquals(5, rog.getRank());
+        assertEquals(Constants.ROG_NUM_WA, rog.getDimSize(0));
+        assertEquals(Constants.ROG_NUM_WIND, rog.getDimSize(3));
+        assertEquals(5, rog.getDimSize(4));
+        for (int dim = 0; dim < 4; dim++) {
+            assertSame(rogAll.getTab(dim), rog.getTab(dim));
+        }
+        assertEquals(7.5, rog.getTab(4)[0], 0.0);
+        assertEquals(17.5, rog.getTab(4)[4], 0.0);
+        final float[][][][][] all = (float[][][][][]) rogAll.getJavaArray();
+        final float[][][][][] window = (float[][][][][]) rog.getJavaArray();
+        assertEquals(all[6][18][24][4][3], window[6][18][24][4][0], 0.0f);
+        assertEquals(all[2][5][11][1][7], window[2][5][11][1][4], 0.0f);
+    }
+
+    public void testConcurrentLoadEqualsSequentialLoad() throws Exception {
+        final L2AuxData concurrentAuxData = new L2AuxData();
+        final TestSectionLoader concurrentLoader = new TestSectionLoader(concurrentAuxData);
+        concurrentAuxData.loadSections(EnumSet.allOf(L2AuxData.Section.class), concurrentLoader);
+
+        final L2AuxData sequentialAuxData = new L2AuxData();
+        final TestSectionLoader sequentialLoader = new TestSectionLoader(sequentialAuxData);
+        for (L2AuxData.Section section : L2AuxData.Section.values()) {
+            sequentialAuxData.loadSections(EnumSet.of(section), sequentialLoader);
+        }
+        assertTrue(sequentialLoader.loaderThreads.isEmpty());
+
+        assertEquals(L2AuxData.Section.values().length, concurrentLoader.loaderThreads.size());
+        assertEquals(EnumSet.allOf(L2AuxData.Section.class), concurrentAuxData.getLoadedSections());
+        assertEquals(sequentialAuxData.getLoadedSections(), concurrentAuxData.getLoadedSections());
+        assertTrue(Arrays.deepEquals(sequentialAuxData.detector_solar_irradiance_inv,
+                                     concurrentAuxData.detector_solar_irradiance_inv));
+        assertTrue(Arrays.deepEquals(sequentialAuxData.land_smile_params.slope_factor,
+                                     concurrentAuxData.land_smile_params.slope_factor));
+        // derived from the configuration and the atmosphere sections
+        assertTrue(Arrays.equals(sequentialAuxData.spectral_shift_760_index,
+                                 concurrentAuxData.spectral_shift_760_index));
+        assertTrue(Arrays.equals(sequentialAuxData.spectral_shift_760_fraction,
+                                 concurrentAuxData.spectral_shift_760_fraction));
+        assertTrue(Arrays.equals(sequentialAuxData.spectral_shift_705_fraction,
+                                 concurrentAuxData.spectral_shift_705_fraction));
+        assertTrue(Arrays.equals(sequentialAuxData.rog_all_sza_tab, concurrentAuxData.rog_all_sza_tab));
+        assertTrue(Arrays.equals(sequentialAuxData.tauO3_norm, concurrentAuxData.tauO3_norm));
+        assertLoaderThreadsTerminated(concurrentLoader);
+    }
+
+    public void testFirstFailureIsThrownWithOthersSuppressed() throws Exception {
+        final L2AuxData auxData = new L2AuxData();
+        final TestSectionLoader loader = new TestSectionLoader(auxData);
+        final IOException atmosphereFailure = new IOException("atmosphere");
+        final L2AuxDataException rayleighFailure = new L2AuxDataException("rayleigh");
+        loader.failures.put(L2AuxData.Section.ATMOSPHERE, atmosphereFailure);
+        loader.failures.put(L2AuxData.Section.RAYLEIGH_SCATTERING, rayleighFailure);
+
+        try {
+            auxData.loadSections(EnumSet.allOf(L2AuxData.Section.class), loader);
+            fail("IOException expected");
+        } catch (IOException expected) {
+            // the first failure in section order, although it completes last
+            assertSame(atmosphereFailure, expected);
+            assertEquals(1, expected.getSuppressed().length);
+            assertSame(rayleighFailure, expected.getSuppressed()[0]);
+        }
+        assertEquals(EnumSet.of(L2AuxData.Section.CONFIGURATION, L2AuxData.Section.LAND_AEROSOL),
+                     auxData.getLoadedSections());
+        assertNotNull(auxData.detector_solar_irradiance_inv);
+        assertLoaderThreadsTerminated(loader);
+    }
+
+    public void testLoaderThreadsAreTerminatedAfterSuccess() throws Exception {
+        final L2AuxData auxData = new L2AuxData();
+        final TestSectionLoader loader = new TestSectionLoader(auxData);
+        auxData.loadSections(EnumSet.of(L2AuxData.Section.ATMOSPHERE, L2AuxData.Section.LAND_AEROSOL), loader);
+        assertEquals(2, loader.loaderThreads.size());
+        assertLoaderThreadsTerminated(loader);
+    }
+
+    private static void assertLoaderThreadsTerminated(TestSectionLoader loader) throws InterruptedException {
+        for (Thread thread : loader.loaderThreads) {
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    static float[] createRogSzaTab() {
+        final float[] rogSzaTab = new float[Constants.ROG_ALL_SZA];
+        for (int i = 0; i < rogSzaTab.length; i++) {
+            rogSzaTab[i] = 2.5f * i;
+        }
+        return rogSzaTab;
+    }
+
+    static LUT createRogAll(float[] rogSzaTab) {
+        final float[][][][][] rogAll = new float[Constants.ROG_NUM_WA][Constants.ROG_NUM_VZA][Constants.ROG_NUM_ADA]
+                [Constants.ROG_NUM_WIND][rogSzaTab.length];
+        for (int wa = 0; wa < rogAll.length; wa++) {
+            for (int itv = 0; itv < rogAll[wa].length; itv++) {
+                for (int idf = 0; idf < rogAll[wa][itv].length; idf++) {
+                    for (int ws = 0; ws < rogAll[wa][itv][idf].length; ws++) {
+                        for (int its = 0; its < rogSzaTab.length; its++) {
+                            rogAll[wa][itv][idf][ws][its] = 1.0e-4f * (((wa * 19 + itv) * 25 + idf) * 5 + ws) + its;
+                        }
+                    }
+                }
+            }
+        }
+        final LUT lut = new LUT(rogAll);
+        lut.setTab(0, createTab(Constants.ROG_NUM_WA, 30.0));
+        lut.setTab(1, createTab(Constants.ROG_NUM_VZA, 3.5));
+        lut.setTab(2, createTab(Constants.ROG_NUM_ADA, 7.5));
+        lut.setTab(3, createTab(Constants.ROG_NUM_WIND, 4.0));
+        final double[] szaTab = new double[rogSzaTab.length];
+        for (int i = 0; i < szaTab.length; i++) {
+            szaTab[i] = rogSzaTab[i];
+        }
+        lut.setTab(4, szaTab);
+        return lut;
+    }
+
+    private static double[] createTab(int length, double step) {
+        final double[] tab = new double[length];
+        for (int i = 0; i < length; i++) {
+            tab[i] = step * i;
+        }
+        return tab;
+    }
+
+    private static Product createProduct() {
+        return createProduct(30.0f);
+    }
+
+    private static Product createProduct(float sunZenith) {
+        final Product product = new Product("test", "MER_RR__1P", 4, 4);
+        final float[] sza = new float[16];
+        Arrays.fill(sza, sunZenith);
+        product.addTiePointGrid(new TiePointGrid("sun_zenith", 4, 4, 0.5f, 0.5f, 1, 1, sza));
+        return product;
+    }
+
+    /**
+     * Fills a few fields of each section, in the order opposite to the section order if run concurrently.
+     */
+    private static class TestSectionLoader implements L2AuxData.SectionLoader {
+
+        final L2AuxData auxData;
+        final Map<L2AuxData.Section, Exception> failures =
+                new EnumMap<L2AuxData.Section, Exception>(L2AuxData.Section.class);
+        final Set<Thread> loaderThreads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        TestSectionLoader(L2AuxData auxData) {
+            this.auxData = auxData;
+        }
+
+        @Override
+        public void loadSection(L2AuxData.Section section) throws L2AuxDataException, IOException {
+            if (Thread.currentThread().getName().equals(L2AuxData.LOADER_THREAD_NAME)) {
+                loaderThreads.add(Thread.currentThread());
+            }
+            try {
+                Thread.sleep(30 * (L2AuxData.Section.values().length - section.ordinal()));
+            } catch (InterruptedException e) {
+                throw new L2AuxDataException("interrupted", e);
+            }
+            final Exception failure = failures.get(section);
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof L2AuxDataException) {
+                throw (L2AuxDataException) failure;
+            }
+            switch (section) {
+                case CONFIGURATION:
+                    auxData.detector_solar_irradiance = new double[Constants.L1_BAND_NUM][2];
+                    auxData.central_wavelength = new double[Constants.L1_BAND_NUM][2];
+                    auxData.theoretical_wavelength = new double[Constants.L1_BAND_NUM];
+                    for (int b = 0; b < Constants.L1_BAND_NUM; b++) {
+                        auxData.theoretical_wavelength[b] = 400.0 + 20.0 * b;
+                        for (int d = 0; d < 2; d++) {
+                            auxData.detector_solar_irradiance[b][d] = 1800.0 - 50.0 * b + 3.0 * d;
+                            auxData.central_wavelength[b][d] = auxData.theoretical_wavelength[b] + 0.4 * d - 0.1;
+                        }
+                    }
+                    auxData.land_smile_params = new L2AuxData.SmileParams();
+                    auxData.land_smile_params.enabled[3] = true;
+                    auxData.land_smile_params.derivative_band_id[3][0] = 2;
+                    auxData.land_smile_params.derivative_band_id[3][1] = 4;
+                    auxData.water_smile_params = new L2AuxData.SmileParams();
+                    break;
+                case ATMOSPHERE:
+                    auxData.spectral_shift_wavelength = new double[]{599.5, 600.0, 600.5};
+                    auxData.spectral_shift_H2Owavelength = new double[]{559.0, 560.0, 561.0};
+                    auxData.tauO3_norm = new double[]{0.1, 0.2, 0.3};
+                    break;
+                case LAND_AEROSOL:
+                    auxData.rog_all_sza_tab = createRogSzaTab();
+                    break;
+                case RAYLEIGH_SCATTERING:
+                    auxData.Rayscatt_coeff_s = new LUT(new int[]{2}, new float[]{0.1f, 0.2f});
+                    break;
+            }
+        }
+    }
+}
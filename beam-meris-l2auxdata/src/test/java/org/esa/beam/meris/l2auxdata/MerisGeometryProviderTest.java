@@ -0,0 +1,136 @@
+package org.esa.beam.meris.l2auxdata;
+
+import junit.framework.TestCase;
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.util.math.MathUtils;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Random;
+
+public class MerisGeometryProviderTest extends TestCase {
+
+    private static final long CAPACITY = 1000;
+
+    private Product product;
+
+    @Override
+    protected void setUp() throws Exception {
+        product = new Product("test", "MER_RR__1P", 4, 4);
+        addTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME, 30.0f);
+        addTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME, 10.0f);
+        addTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME, 140.0f);
+        addTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME, -80.0f);
+    }
+
+    public void testGeometry() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final MerisGeometry geometry = provider.getGeometry(product, new Rectangle(1, 2, 3, 2), CAPACITY);
+        assertEquals(6, geometry.getSunZenith().length);
+
+        final int index = geometry.getIndex(2, 3);
+        assertEquals(4, index);
+        final float sza = geometry.getSunZenith()[index];
+        final float vza = geometry.getViewZenith()[index];
+        assertEquals(30.0f + 2 + 3 * 4, sza);
+        assertEquals(10.0f + 2 + 3 * 4, vza);
+        assertEquals(Math.cos(sza * MathUtils.DTOR), geometry.getMus()[index]);
+        assertEquals(Math.cos(vza * MathUtils.DTOR), geometry.getMuv()[index]);
+        assertEquals(Math.sin(sza * MathUtils.DTOR), geometry.getSins()[index]);
+        assertEquals(Math.sin(vza * MathUtils.DTOR), geometry.getSinv()[index]);
+        assertEquals(1.0 / geometry.getMus()[index] + 1.0 / geometry.getMuv()[index], geometry.getAirMass()[index]);
+        // vaa - saa = -220 degree
+        assertEquals(140.0, geometry.getDeltaAzimuth()[index], 1.0e-10);
+    }
+
+    public void testGeometryIsShared() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final MerisGeometry geometry = provider.getGeometry(product, new Rectangle(0, 0, 4, 2), CAPACITY);
+        assertSame(geometry, provider.getGeometry(product, new Rectangle(0, 0, 4, 2), CAPACITY));
+        assertSame(geometry.getMus(), geometry.getMus());
+        assertNotSame(geometry, provider.getGeometry(product, new Rectangle(0, 2, 4, 2), CAPACITY));
+    }
+
+    public void testLeastRecentlyUsedGeometryIsEvicted() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final MerisGeometry upper = provider.getGeometry(product, new Rectangle(0, 0, 4, 2), 16);
+        final MerisGeometry lower = provider.getGeometry(product, new Rectangle(0, 2, 4, 2), 16);
+        assertSame(upper, provider.getGeometry(product, new Rectangle(0, 0, 4, 2), 16));
+
+        provider.getGeometry(product, new Rectangle(0, 0, 2, 2), 16);
+        assertSame(upper, provider.getGeometry(product, new Rectangle(0, 0, 4, 2), 16));
+        assertNotSame(lower, provider.getGeometry(product, new Rectangle(0, 2, 4, 2), 16));
+    }
+
+    public void testEvictionKeepsPixelCountWithinCapacity() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final Random random = new Random(4711);
+        for (int i = 0; i < 200; i++) {
+            final int x = random.nextInt(4);
+            final int y = random.nextInt(4);
+            final Rectangle rectangle = new Rectangle(x, y, 1 + random.nextInt(4 - x), 1 + random.nextInt(4 - y));
+            provider.getGeometry(product, rectangle, 10);
+            assertTrue(provider.getPixelCount(product) <= 10);
+        }
+        // a request with a smaller capacity trims the cache
+        provider.getGeometry(product, new Rectangle(0, 0, 1, 1), 1);
+        assertEquals(1, provider.getPixelCount(product));
+    }
+
+    public void testGeometryExceedingCapacityIsNotCached() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final MerisGeometry small = provider.getGeometry(product, new Rectangle(0, 0, 2, 2), 8);
+        final MerisGeometry large = provider.getGeometry(product, new Rectangle(0, 0, 4, 4), 8);
+        assertNotSame(large, provider.getGeometry(product, new Rectangle(0, 0, 4, 4), 8));
+        assertSame(small, provider.getGeometry(product, new Rectangle(0, 0, 2, 2), 8));
+        assertEquals(4, provider.getPixelCount(product));
+
+        // nothing is kept with a capacity of 0
+        assertSame(small, provider.getGeometry(product, new Rectangle(0, 0, 2, 2), 0));
+        assertEquals(0, provider.getPixelCount(product));
+        assertNotSame(small, provider.getGeometry(product, new Rectangle(0, 0, 2, 2), 0));
+        assertEquals(0, provider.getPixelCount(product));
+    }
+
+    public void testCachedGeometryEqualsComputedOne() {
+        final MerisGeometryProvider provider = new MerisGeometryProvider();
+        final Rectangle rectangle = new Rectangle(1, 0, 3, 4);
+        final MerisGeometry cached = provider.getGeometry(product, rectangle, CAPACITY);
+        // the derived quantities of the cached instance are computed before the second request
+        cached.getAirMass();
+        cached.getDeltaAzimuth();
+        assertSame(cached, provider.getGeometry(product, rectangle, CAPACITY));
+
+        final MerisGeometry computed = new MerisGeometry(product, rectangle);
+        assertEquals(computed.getRectangle(), cached.getRectangle());
+        assertTrue(Arrays.equals(computed.getSunZenith(), cached.getSunZenith()));
+        assertTrue(Arrays.equals(computed.getViewZenith(), cached.getViewZenith()));
+        assertTrue(Arrays.equals(computed.getSunAzimuth(), cached.getSunAzimuth()));
+        assertTrue(Arrays.equals(computed.getViewAzimuth(), cached.getViewAzimuth()));
+        assertTrue(Arrays.equals(computed.getMus(), cached.getMus()));
+        assertTrue(Arrays.equals(computed.getMuv(), cached.getMuv()));
+        assertTrue(Arrays.equals(computed.getSins(), cached.getSins()));
+        assertTrue(Arrays.equals(computed.getSinv(), cached.getSinv()));
+        assertTrue(Arrays.equals(computed.getDeltaAzimuth(), cached.getDeltaAzimuth()));
+        assertTrue(Arrays.equals(computed.getAirMass(), cached.getAirMass()));
+    }
+
+    public void testMissingTiePointGrid() {
+        final Product other = new Product("other", "MER_RR__1P", 4, 4);
+        try {
+            new MerisGeometryProvider().getGeometry(other, new Rectangle(0, 0, 4, 4), CAPACITY);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void addTiePointGrid(String name, float offset) {
+        final float[] tiePoints = new float[16];
+        for (int i = 0; i < tiePoints.length; i++) {
+            tiePoints[i] = offset + (i % 4) + (i / 4) * 4;
+        }
+        product.addTiePointGrid(new TiePointGrid(name, 4, 4, 0.5f, 0.5f, 1, 1, tiePoints));
+    }
+}
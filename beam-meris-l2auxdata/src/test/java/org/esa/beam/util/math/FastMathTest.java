@@ -0,0 +1,107 @@
+package org.esa.beam.util.math;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class FastMathTest extends TestCase {
+
+    private static final int N = 200000;
+
+    public void testCosAndSin() {
+        final Random random = new Random(17);
+        for (int n = 0; n < N; n++) {
+            final double x = (2.0 * random.nextDouble() - 1.0) * FastMath.MAX_TRIG_ARGUMENT;
+            assertEquals(Math.cos(x), FastMath.cos(x), FastMath.MAX_TRIG_ERROR);
+            assertEquals(Math.sin(x), FastMath.sin(x), FastMath.MAX_TRIG_ERROR);
+        }
+        for (int i = 0; i <= 3600; i++) {
+            final double x = i * 0.05 * MathUtils.DTOR;
+            assertEquals(Math.cos(x), FastMath.cos(x), FastMath.MAX_TRIG_ERROR);
+            assertEquals(Math.sin(x), FastMath.sin(x), FastMath.MAX_TRIG_ERROR);
+        }
+    }
+
+    public void testCosAndSinOverTableRange() {
+        // equidistant samples including both ends of the range
+        final int sampleCount = 1000000;
+        for (int i = 0; i <= sampleCount; i++) {
+            final double x = FastMath.MAX_TRIG_ARGUMENT * (2.0 * i / sampleCount - 1.0);
+            assertEquals(Math.cos(x), FastMath.cos(x), FastMath.MAX_TRIG_ERROR);
+            assertEquals(Math.sin(x), FastMath.sin(x), FastMath.MAX_TRIG_ERROR);
+        }
+    }
+
+    public void testCosAndSinOutsideOfTableRange() {
+        final double x = 3.0 * FastMath.MAX_TRIG_ARGUMENT + 0.3;
+        assertEquals(Math.cos(x), FastMath.cos(x));
+        assertEquals(Math.sin(-x), FastMath.sin(-x));
+        assertTrue(Double.isNaN(FastMath.cos(Double.NaN)));
+        assertTrue(Double.isNaN(FastMath.sin(Double.POSITIVE_INFINITY)));
+    }
+
+    public void testExp() {
+        final Random random = new Random(23);
+        for (int n = 0; n < N; n++) {
+            final double x = (2.0 * random.nextDouble() - 1.0) * 100.0;
+            final double expected = Math.exp(x);
+            assertEquals(expected, FastMath.exp(x), expected * FastMath.MAX_EXP_ERROR);
+        }
+        for (int n = 0; n < N; n++) {
+            // the range of the pressure and transmittance terms
+            final double x = -2.0 * random.nextDouble();
+            final double expected = Math.exp(x);
+            assertEquals(expected, FastMath.exp(x), expected * FastMath.MAX_EXP_ERROR);
+        }
+    }
+
+    public void testExpOverTableRange() {
+        // equidistant samples over the whole range of finite, normal results
+        final int sampleCount = 1000000;
+        for (int i = 0; i <= sampleCount; i++) {
+            final double x = -708.0 + 1417.0 * i / sampleCount;
+            final double expected = Math.exp(x);
+            assertEquals(expected, FastMath.exp(x), expected * FastMath.MAX_EXP_ERROR);
+        }
+    }
+
+    public void testExpLimits() {
+        assertEquals(1.0, FastMath.exp(0.0));
+        assertEquals(Math.exp(-80.0), FastMath.exp(-80.0), Math.exp(-80.0) * FastMath.MAX_EXP_ERROR);
+        assertEquals(Math.exp(700.0), FastMath.exp(700.0), Math.exp(700.0) * FastMath.MAX_EXP_ERROR);
+        assertEquals(Math.exp(-710.0), FastMath.exp(-710.0));
+        assertEquals(Double.POSITIVE_INFINITY, FastMath.exp(800.0));
+        assertEquals(0.0, FastMath.exp(Double.NEGATIVE_INFINITY));
+        assertTrue(Double.isNaN(FastMath.exp(Double.NaN)));
+    }
+
+    public void testAzimuthDifference() {
+        final Random random = new Random(31);
+        for (int n = 0; n < N; n++) {
+            final double vaa = -360.0 + 720.0 * random.nextDouble();
+            final double saa = -360.0 + 720.0 * random.nextDouble();
+            final double expected = MathUtils.RTOD * Math.acos(Math.cos(MathUtils.DTOR * (vaa - saa)));
+            // the strict formula itself loses precision near 0 and 180 degree
+            assertEquals(expected, FastMath.azimuthDifference(vaa, saa), 1.0e-5);
+        }
+        assertEquals(0.0, FastMath.azimuthDifference(10.0, 370.0), 1.0e-12);
+        assertEquals(140.0, FastMath.azimuthDifference(-66.0, 154.0), 1.0e-12);
+        assertEquals(180.0, FastMath.azimuthDifference(90.0, -90.0), 1.0e-12);
+    }
+
+    public void testAzimuthDifferenceOverFullRange() {
+        // all pairs of azimuth angles in [-360, 360] degree in steps of 0.5 degree
+        for (int i = -720; i <= 720; i++) {
+            final double vaa = 0.5 * i;
+            for (int j = -720; j <= 720; j++) {
+                final double saa = 0.5 * j;
+                final double actual = FastMath.azimuthDifference(vaa, saa);
+                final double expected = MathUtils.RTOD * Math.acos(Math.cos(MathUtils.DTOR * (vaa - saa)));
+                assertEquals(expected, actual, 1.0e-5);
+                // the difference of the steps is exact
+                final int d = Math.abs(i - j) % 720;
+                assertEquals(0.5 * Math.min(d, 720 - d), actual, 1.0e-12);
+            }
+        }
+    }
+}
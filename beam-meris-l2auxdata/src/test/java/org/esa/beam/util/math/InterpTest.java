@@ -0,0 +1,82 @@
+package org.esa.beam.util.math;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class InterpTest extends TestCase {
+
+    public void testBatchInterpCoordAscending() {
+        final double[] xi = {0.0, 10.0, 20.0, 40.0, 80.0};
+        final double[] x = {-1.0, 0.0, 5.0, 10.0, 35.0, 80.0, 90.0, 15.0, Double.NaN};
+        final int[] index = new int[x.length];
+        final double[] fraction = new double[x.length];
+
+        final int outOfRange = Interp.interpCoord(x, 0, x.length, xi, index, fraction);
+        assertEquals(3, outOfRange);
+        assertBatchEqualsSingle(x, 0, xi, index, fraction);
+        assertEquals(2, index[4]);
+        assertEquals(0.75, fraction[4], 1e-12);
+    }
+
+    public void testBatchInterpCoordDescending() {
+        final double[] xi = {80.0, 40.0, 20.0, 10.0, 0.0};
+        final double[] x = {90.0, 80.0, 50.0, 20.0, 1.0, 0.0, -5.0, 60.0};
+        final int[] index = new int[x.length];
+        final double[] fraction = new double[x.length];
+
+        final int outOfRange = Interp.interpCoord(x, 0, x.length, xi, index, fraction);
+        assertEquals(2, outOfRange);
+        assertBatchEqualsSingle(x, 0, xi, index, fraction);
+    }
+
+    public void testBatchInterpCoordWithOffset() {
+        final double[] xi = {0.0, 1.0, 2.0};
+        final double[] x = {100.0, 0.5, 1.5};
+        final int[] index = new int[2];
+        final double[] fraction = new double[2];
+
+        assertEquals(0, Interp.interpCoord(x, 1, 2, xi, index, fraction));
+        assertEquals(0, index[0]);
+        assertEquals(0.5, fraction[0], 1e-12);
+        assertEquals(1, index[1]);
+        assertEquals(0.5, fraction[1], 1e-12);
+    }
+
+    public void testBatchInterpCoordEqualsSingleRandom() {
+        final Random random = new Random(42);
+        for (int n = 2; n < 12; n++) {
+            final double[] xi = new double[n];
+            double v = random.nextDouble();
+            for (int i = 0; i < n; i++) {
+                xi[i] = v;
+                v += 0.1 + random.nextDouble();
+            }
+            if (random.nextBoolean()) {
+                for (int i = 0; i < n / 2; i++) {
+                    final double t = xi[i];
+                    xi[i] = xi[n - 1 - i];
+                    xi[n - 1 - i] = t;
+                }
+            }
+            final double[] x = new double[200];
+            for (int k = 0; k < x.length; k++) {
+                // mix of random and tabulated values, partly outside the range
+                x[k] = random.nextInt(4) == 0 ? xi[random.nextInt(n)] : -2.0 + (n + 4.0) * random.nextDouble();
+            }
+            final int[] index = new int[x.length];
+            final double[] fraction = new double[x.length];
+            Interp.interpCoord(x, 0, x.length, xi, index, fraction);
+            assertBatchEqualsSingle(x, 0, xi, index, fraction);
+        }
+    }
+
+    private static void assertBatchEqualsSingle(double[] x, int offset, double[] xi, int[] index, double[] fraction) {
+        final FractIndex expected = new FractIndex();
+        for (int k = 0; k < index.length; k++) {
+            Interp.interpCoord(x[offset + k], xi, expected);
+            assertEquals("index[" + k + "]", expected.index, index[k]);
+            assertEquals("fraction[" + k + "]", expected.fraction, fraction[k], 0.0);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package org.esa.beam.util.math;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Random;
+
+public class LUTTest extends TestCase {
+
+    public void testStrides() {
+        final LUT lut = new LUT(new float[4][3][2][5]);
+        assertEquals(30, lut.getStride(0));
+        assertEquals(10, lut.getStride(1));
+        assertEquals(5, lut.getStride(2));
+        assertEquals(1, lut.getStride(3));
+    }
+
+    public void testFlatArray() {
+        final LUT lut = new LUT(new float[][]{{1, 2, 3}, {4, 5, 6}});
+        final double[] flat = lut.getFlatArray();
+        assertEquals(6, flat.length);
+        for (int i = 0; i < flat.length; i++) {
+            assertEquals(i + 1.0, flat[i], 0.0);
+        }
+        assertSame(flat, lut.getFlatArray());
+    }
+
+    public void testJavaArrayIsReleasedOnceFlattened() {
+        final float[][] javaArray = {{1, 2, 3}, {4, 5, 6}};
+        final LUT lut = new LUT(javaArray);
+        assertSame(javaArray, lut.getJavaArray());
+
+        lut.getFlatArray();
+        final float[][] copy = (float[][]) lut.getJavaArray();
+        assertNotSame(javaArray, copy);
+        assertTrue(Arrays.deepEquals(javaArray, copy));
+    }
+
+    public void testFillFromFlatArrayAfterFlattening() {
+        final MDArray array = new MDArray(new float[2][3]);
+        final LUT lut = new LUT(array);
+        assertEquals(0.0, lut.getFlatArray()[4], 0.0);
+
+        array.fillFromFlatArray(new double[]{1, 2, 3, 4, 5, 6.1});
+        assertEquals(5.0, ((float[][]) lut.getJavaArray())[1][1], 0.0f);
+        assertEquals(5.0, lut.getFlatArray()[4], 0.0);
+        assertEquals((float) 6.1, lut.getFlatArray()[5], 0.0);
+    }
+
+    public void testInterpolateRequiresIndexesOfRank() {
+        final LUT lut = new LUT(new double[2][3][4]);
+        try {
+            lut.interpolate(FractIndex.createArray(2));
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    public void testInterpolate2D() {
+        final LUT lut = new LUT(new double[][]{{0, 10}, {20, 30}});
+        final FractIndex[] indexes = FractIndex.createArray(2);
+        indexes[0].index = 0;
+        indexes[0].fraction = 0.5;
+        indexes[1].index = 0;
+        indexes[1].fraction = 0.25;
+        assertEquals(12.5, lut.interpolate(indexes), 1e-12);
+
+        // upper bound of a dimension
+        indexes[0].index = 1;
+        indexes[0].fraction = 0.0;
+        indexes[1].index = 1;
+        indexes[1].fraction = 0.0;
+        assertEquals(30.0, lut.interpolate(indexes), 1e-12);
+    }
+
+    public void testIllegalFraction() {
+        final LUT lut = new LUT(new double[]{1, 2, 3});
+        final FractIndex index = new FractIndex();
+        index.fraction = 1.0;
+        try {
+            lut.interpolate1D(0, index);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+            // ok
+        }
+    }
+
+    public void testSameResultAsGenericInterpolation() {
+        final Random random = new Random(5);
+        for (int rank = 1; rank <= 5; rank++) {
+            final int[] sizes = new int[rank];
+            for (int i = 0; i < rank; i++) {
+                sizes[i] = 1 + random.nextInt(4);
+            }
+            final Object javaArray = Array.newInstance(rank % 2 == 0 ? float.class : double.class, sizes);
+            fillRandom(javaArray, random);
+            final LUT lut = new LUT(javaArray);
+
+            final FractIndex[] indexes = FractIndex.createArray(rank);
+            for (int n = 0; n < 100; n++) {
+                for (int i = 0; i < rank; i++) {
+                    indexes[i].index = random.nextInt(sizes[i]);
+                    indexes[i].fraction = indexes[i].index < sizes[i] - 1 ? random.nextDouble() : 0.0;
+                }
+                final double expected = Interp.interpolate(javaArray, indexes);
+                assertEquals(expected, lut.interpolate(indexes), 0.0);
+            }
+        }
+    }
+
+    public void testSubTableInterpolation() {
+        final Random random = new Random(7);
+        final float[][][][] javaArray = new float[4][3][5][6];
+        fillRandom(javaArray, random);
+        final LUT lut = new LUT(javaArray);
+
+        final FractIndex[] indexes = FractIndex.createArray(2);
+        indexes[0].index = 2;
+        indexes[0].fraction = 0.3;
+        indexes[1].index = 5;
+        indexes[1].fraction = 0.0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                final double expected = Interp.interpolate(javaArray[i][j], indexes);
+                final int offset = i * lut.getStride(0) + j * lut.getStride(1);
+                assertEquals(expected, lut.interpolate2D(offset, indexes[0], indexes[1]), 0.0);
+            }
+        }
+    }
+
+    private static void fillRandom(Object array, Random random) {
+        if (array instanceof float[]) {
+            final float[] floats = (float[]) array;
+            for (int i = 0; i < floats.length; i++) {
+                floats[i] = random.nextFloat();
+            }
+        } else if (array instanceof double[]) {
+            final double[] doubles = (double[]) array;
+            for (int i = 0; i < doubles.length; i++) {
+                doubles[i] = random.nextDouble();
+            }
+        } else {
+            for (Object subArray : (Object[]) array) {
+                fillRandom(subArray, random);
+            }
+        }
+    }
+}
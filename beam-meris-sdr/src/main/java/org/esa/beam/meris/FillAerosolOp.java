@@ -30,6 +30,7 @@ import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.util.RectangleExtender;
 import org.esa.beam.util.StringUtils;
 import org.esa.beam.util.math.MathUtils;
@@ -60,6 +61,8 @@ public class FillAerosolOp extends MerisBasisOp {
     private Product targetProduct;
     
     private Configuration config;
+    private final ThreadLocal<boolean[]> maskBuffer = new ThreadLocal<boolean[]>();
+    private final ThreadLocal<boolean[]> validBuffer = new ThreadLocal<boolean[]>();
 
     /**
      * Configuration Elements (can be set from XML)
@@ -244,12 +247,12 @@ public class FillAerosolOp extends MerisBasisOp {
 		return values;
     }
     
-    private boolean isMaskSetInRegion(int x, int y, int maxX, int maxY, Tile mask) {
+    private boolean isMaskSetInRegion(int x, int y, int maxX, int maxY, boolean[] mask, Rectangle maskRect) {
     	final int ixEnd = Math.min(x+4, maxX);
     	final int iyEnd = Math.min(y+4, maxY);
     	for (int iy = y; iy < iyEnd; iy++) {
     		for (int ix = x; ix < ixEnd; ix++) {
-    			if (mask.getSampleBoolean(ix, iy)) {
+    			if (mask[convertToIndex(ix, iy, maskRect)]) {
     				return true;
     			}
     		}
@@ -274,37 +277,44 @@ public class FillAerosolOp extends MerisBasisOp {
         Rectangle sourceRect = rectCalculator.extend(targetRect);
         pm.beginTask("Processing frame...", sourceRect.height + 1);
         try {
-        	Tile maskTile = null;
+        	boolean[] mask = null;
             boolean useMask = false;
             if (maskProduct != null && StringUtils.isNotNullAndNotEmpty(config.maskBand)) {
-            	maskTile = getSourceTile(maskProduct.getBand(config.maskBand), sourceRect);
+            	Tile maskTile = getSourceTile(maskProduct.getBand(config.maskBand), sourceRect);
+            	mask = TileAccessor.getSamplesBoolean(maskTile, maskBuffer.get());
+            	maskBuffer.set(mask);
             	useMask = true;
             }
             Tile defaultTile = getSourceTile(defaultBands.get(band), sourceRect);
             Tile validDataTile = getSourceTile(validProduct.getBand(band.getName()), sourceRect);
             Tile dataTile = getSourceTile(sourceBands.get(band), sourceRect);
+            float[] defaults = TileAccessor.getSamplesFloat(defaultTile);
+            boolean[] valid = TileAccessor.getSamplesBoolean(validDataTile, validBuffer.get());
+            validBuffer.set(valid);
+            float[] data = TileAccessor.getSamplesFloat(dataTile);
+            float[] target = new float[targetRect.width * targetRect.height];
             
             if (!config.frs) {
             	float[] scaledData = getScaledArrayFromTile(dataTile);
                 boolean[] validData = (boolean[]) validDataTile.getRawSamples().getElems();
                 
+				int targetIndex = 0;
 				for (int y = targetRect.y; y < targetRect.y + targetRect.height; y++) {
+					int sourceIndex = convertToIndex(targetRect.x, y, sourceRect);
 					for (int x = targetRect.x; x < targetRect.x
-							+ targetRect.width; x++) {
-						if (!useMask || maskTile.getSampleBoolean(x, y)) {
-							if (validDataTile.getSampleBoolean(x, y)) {
-								targetTile.setSample(x, y, dataTile
-										.getSampleFloat(x, y));
+							+ targetRect.width; x++, sourceIndex++, targetIndex++) {
+						if (!useMask || mask[sourceIndex]) {
+							if (valid[sourceIndex]) {
+								target[targetIndex] = data[sourceIndex];
 							} else {
-								final float defaultValue = defaultTile
-										.getSampleFloat(x, y);
+								final float defaultValue = defaults[sourceIndex];
 								float v = computeInterpolatedValue(x, y,
 										sourceRect, scaledData, validData,
 										defaultValue);
-								targetTile.setSample(x, y, v);
+								target[targetIndex] = v;
 							}
 						} else {
-							targetTile.setSample(x, y, -1);
+							target[targetIndex] = -1;
 						}
 					}
 					pm.worked(1);
@@ -325,13 +335,12 @@ public class FillAerosolOp extends MerisBasisOp {
 	            
 				for (int y = intermediateRectangle.y; y < maxY; y += 4) {
 					for (int x = intermediateRectangle.x; x < maxX; x += 4) {
-						if (!useMask || isMaskSetInRegion(x, y, maxX, maxY, maskTile)) {
-							if (validDataTile.getSampleBoolean(x, y)) {
-								setValueInRegion(x, y, maxX, maxY, dataTile
-										.getSampleFloat(x, y), intermediateRaster);
+						final int sourceIndex = convertToIndex(x, y, sourceRect);
+						if (!useMask || isMaskSetInRegion(x, y, maxX, maxY, mask, sourceRect)) {
+							if (valid[sourceIndex]) {
+								setValueInRegion(x, y, maxX, maxY, data[sourceIndex], intermediateRaster);
 							} else {
-								final float defaultValue = defaultTile
-										.getSampleFloat(x, y);
+								final float defaultValue = defaults[sourceIndex];
 								final int x4 = (x+1)/4;
 								final int y4 = (y+1)/4;
 								float v = computeInterpolatedValue(x4, y4,
@@ -349,10 +358,11 @@ public class FillAerosolOp extends MerisBasisOp {
 				//now smooth this
                 final int maxtX = targetRect.x + targetRect.width;
                 final int maxtY = targetRect.y + targetRect.height;
+                int targetIndex = 0;
                 for (int y = targetRect.y; y < maxtY; y++) {
-                    for (int x = targetRect.x; x < maxtX; x ++) {
+                    for (int x = targetRect.x; x < maxtX; x ++, targetIndex++) {
                         if (intermediateRaster.getSample(x, y) == -1) {
-                            targetTile.setSample(x, y, -1);
+                            target[targetIndex] = -1;
                         } else {
                             float avg = 0;
                             int count = 0;
@@ -374,12 +384,13 @@ public class FillAerosolOp extends MerisBasisOp {
                             }
                             if (count > 0) {
                                 float value = avg / count;
-                                targetTile.setSample(x, y, value);
+                                target[targetIndex] = value;
                             }
                         }
                     }
                 }
 			}
+            targetTile.setSamples(target);
         } finally {
             pm.done();
         }
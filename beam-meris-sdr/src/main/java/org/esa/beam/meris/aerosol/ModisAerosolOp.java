@@ -135,20 +135,35 @@ public class ModisAerosolOp extends MerisBasisOp {
 
         final double time = getSceneRasterMeanTime(sourceProduct).getMJD();
         final double logWavelengthDiff = Math.log(AOT_660_WAVELENGTH) - Math.log(AOT_470_WAVELENGTH);
+        Interp.interpCoord(time, _aot470LUT.getTab(0), indexes[0]);
+
+        final int width = rectangle.width;
+        final double[] lats = new double[width];
+        final double[] lons = new double[width];
+        final int[] latIndex = new int[width];
+        final double[] latFraction = new double[width];
+        final int[] lonIndex = new int[width];
+        final double[] lonFraction = new double[width];
         for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
-                pixelPos.setLocation(x, y);
+            for (int i = 0; i < width; i++) {
+                pixelPos.setLocation(rectangle.x + i, y);
                 geoCoding.getGeoPos(pixelPos, geoPos);
-                float lon = geoPos.getLon();
-                float lat = geoPos.getLat();
-
-                Interp.interpCoord(time, _aot470LUT.getTab(0), indexes[0]);
-                Interp.interpCoord(lat, _aot470LUT.getTab(1), indexes[1]);
-                Interp.interpCoord(lon, _aot470LUT.getTab(2), indexes[2]);
+                lats[i] = geoPos.getLat();
+                lons[i] = geoPos.getLon();
+            }
+            // lat/lon vary smoothly along a row, so the batch search is much cheaper than a binary search per pixel
+            Interp.interpCoord(lats, 0, width, _aot470LUT.getTab(1), latIndex, latFraction);
+            Interp.interpCoord(lons, 0, width, _aot470LUT.getTab(2), lonIndex, lonFraction);
+            for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                final int i = x - rectangle.x;
+                indexes[1].index = latIndex[i];
+                indexes[1].fraction = latFraction[i];
+                indexes[2].index = lonIndex[i];
+                indexes[2].fraction = lonFraction[i];
 
-                double aot470 = Interp.interpolate(_aot470LUT.getJavaArray(), indexes);
+                double aot470 = _aot470LUT.interpolate(indexes);
 				aot470Tile.setSample(x, y, (float) aot470);
-                double aot660 = Interp.interpolate(_aot660LUT.getJavaArray(), indexes);
+                double aot660 = _aot660LUT.interpolate(indexes);
 				aot660Tile.setSample(x, y, (float) aot660);
                 angTile.setSample(x, y, (float) ((Math.log(aot470) - Math.log(aot660)) / logWavelengthDiff));
 
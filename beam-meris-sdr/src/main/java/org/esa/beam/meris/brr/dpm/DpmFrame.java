@@ -0,0 +1,162 @@
+package org.esa.beam.meris.brr.dpm;
+
+import org.esa.beam.meris.l2auxdata.Constants;
+
+
+/**
+ * The <code>DpmFrame</code> class holds the MERIS Level 2 DPM pixel variables of a rectangular frame of pixels
+ * as a structure of arrays: one array per scalar quantity and one array per band for each spectral quantity.
+ * The pixel at column <code>i</code> and line <code>j</code> of the frame has the index
+ * <code>j * width + i</code>.
+ * <p/>
+ * Quantities read from float tie-point grids are stored as float, which is lossless. All quantities derived by the
+ * algorithms are stored as double.
+ * <p/>
+ * For convinience reasons, this class models a C-language-like structure with public fields.
+ */
+public final class DpmFrame {
+
+    /**
+     * Column pixel coordinate of the frame's first pixel within product
+     */
+    public int x0;
+    /**
+     * Line pixel coordinate of the frame's first pixel within product
+     */
+    public int y0;
+    /**
+     * Number of columns
+     */
+    public final int width;
+    /**
+     * Number of lines
+     */
+    public final int height;
+    /**
+     * Camera detector index
+     */
+    public final int[] detector;
+    /**
+     * Viewing zenith angle
+     */
+    public final float[] view_zenith;
+    /**
+     * Sun zenith angle
+     */
+    public final float[] sun_zenith;
+    /**
+     * Delta_azimuth angle
+     */
+    public final double[] delta_azimuth;
+    /**
+     * Sun_azimuth angle
+     */
+    public final float[] sun_azimuth;
+    /**
+     * cosinus(thetas)
+     */
+    public final double[] mus;
+    /**
+     * cosinus(thetav)
+     */
+    public final double[] muv;
+    /**
+     * Air Mass (M in DPM)
+     */
+    public final double[] airMass;
+    /**
+     * Altitude
+     */
+    public final float[] altitude;
+    /**
+     * Zonal wind
+     */
+    public final float[] windu;
+    /**
+     * Meridional wind
+     */
+    public final float[] windv;
+    /**
+     * ECMWF pressure, corrected for altitude over land
+     */
+    public final double[] press_ecmwf;
+    /**
+     * Ozone
+     */
+    public final float[] ozone_ecmwf;
+    /**
+     * Variable for storing L1B flags
+     */
+    public final int[] l1flags;
+    /**
+     * Variable for storing L2 flags
+     */
+    public final long[] l2flags;
+    /**
+     * Set of flags showing for each band 0...15 if band is saturated
+     */
+    public final int[] SATURATED_F;
+    /**
+     * output flags of Water Atm Corr
+     */
+    public final int[] ANNOT_F;
+    /**
+     * Top of atmosphere radiance on # bands, indexed [band][pixel]
+     */
+    public final double[][] TOAR;
+    /**
+     * Gas corrected aerosol reflectances, indexed [band][pixel]
+     */
+    public final double[][] rho_ag;
+    /**
+     * TOA reflectance, indexed [band][pixel]
+     */
+    public final double[][] rho_toa;
+    /**
+     * Rayleigh corrected reflectances (Top Of Particles), indexed [band][pixel]
+     */
+    public final double[][] rho_top;
+
+    public DpmFrame(int width, int height) {
+        this.width = width;
+        this.height = height;
+        final int size = width * height;
+        detector = new int[size];
+        view_zenith = new float[size];
+        sun_zenith = new float[size];
+        delta_azimuth = new double[size];
+        sun_azimuth = new float[size];
+        mus = new double[size];
+        muv = new double[size];
+        airMass = new double[size];
+        altitude = new float[size];
+        windu = new float[size];
+        windv = new float[size];
+        press_ecmwf = new double[size];
+        ozone_ecmwf = new float[size];
+        l1flags = new int[size];
+        l2flags = new long[size];
+        SATURATED_F = new int[size];
+        ANNOT_F = new int[size];
+        TOAR = new double[Constants.L1_BAND_NUM][size];
+        rho_ag = new double[Constants.L1_BAND_NUM][size];
+        rho_toa = new double[Constants.L1_BAND_NUM][size];
+        rho_top = new double[Constants.L1_BAND_NUM][size];
+    }
+
+    /**
+     * @return the number of pixels in the frame
+     */
+    public int getSize() {
+        return width * height;
+    }
+
+    /**
+     * @param i column coordinate within frame
+     * @param j line coordinate within frame
+     * @return the index of the pixel in the arrays of this frame
+     */
+    public int getIndex(int i, int j) {
+        return j * width + i;
+    }
+}
@@ -13,7 +13,10 @@ import org.esa.beam.meris.l2auxdata.Constants;
  * The <code>DpmPixel</code> class is a collection of all relevant MERIS Level 2 DPM pixel variables.
  * <p/>
  * For convinience reasons, this class models a C-language-like structure which has only public fields and no methods.
+ *
+ * @deprecated the BRR modules operate on a {@link DpmFrame}
  */
+@Deprecated
 public final class DpmPixel {
 
     /**
@@ -10,7 +10,6 @@ package org.esa.beam.meris.brr.dpm;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.util.math.FractIndex;
-import org.esa.beam.util.math.Interp;
 
 public class GaseousAbsorptionCorrection implements Constants {
 
@@ -121,9 +120,8 @@ public class GaseousAbsorptionCorrection implements Constants {
         if (ib == bb775) {
 
             /* DPM #2.6.12.2-3,  DPM #2.6.12.2-4, DPM #2.6.12.2-5, DPM #2.6.12.2-6 */
-            Interp.interpCoord(auxData.central_wavelength[bb760][detector],
-                               auxData.spectral_shift_wavelength,
-                               lh.spectralShift760);
+            lh.spectralShift760.index = auxData.spectral_shift_760_index[detector];
+            lh.spectralShift760.fraction = auxData.spectral_shift_760_fraction[detector];
 
             if (lh.spectralShift760.index == (PPOL_NUM_SHIFT - 1)) {
                 lh.spectralShift760.index = PPOL_NUM_SHIFT - 2;
@@ -174,9 +172,8 @@ public class GaseousAbsorptionCorrection implements Constants {
             /* if (FALSE)  */ {
 
             /* DPM #2.1.3-1,2,3,4-b900 */
-            Interp.interpCoord(auxData.central_wavelength[bb705][detector],
-                               auxData.spectral_shift_H2Owavelength,
-                               lh.spectralShift705);
+            lh.spectralShift705.index = auxData.spectral_shift_705_index[detector];
+            lh.spectralShift705.fraction = auxData.spectral_shift_705_fraction[detector];
 
             if (lh.spectralShift705.index == (PPOL_NUM_SHIFT - 1)) {
                 lh.spectralShift705.index = PPOL_NUM_SHIFT - 2;
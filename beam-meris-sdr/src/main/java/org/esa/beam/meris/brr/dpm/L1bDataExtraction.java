@@ -9,6 +9,7 @@ package org.esa.beam.meris.brr.dpm;
 import org.esa.beam.framework.gpf.Tile;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
 import org.esa.beam.util.BitSetter;
 
 /**
@@ -26,14 +27,35 @@ public class L1bDataExtraction implements Constants {
     }
 
     /**
-     * Initializes the given pixel with data readRecord from the L1B input product. Combines the geometry/meteo.
-     * preprocessing (step 2.1.0) and pixel extraction (step 2.1.4) of the DPM. All level 2 geophysical fields are set
-     * to <code>{@link #BAD_VALUE}</code>.
+     * Initializes the sun and viewing geometry of all pixels of a frame (DPM #2.1.0-3 to #2.1.0-6, #2.1.0-14 and
+     * #2.1.12-1). The geometry is copied from the given one, which is shared with the other operators.
+     *
+     * @param frame    the current frame
+     * @param geometry the geometry of the frame's rectangle
+     */
+    public void l1_extract_geometry(final DpmFrame frame, final MerisGeometry geometry) {
+        final int size = frame.getSize();
+        System.arraycopy(geometry.getSunZenith(), 0, frame.sun_zenith, 0, size);
+        System.arraycopy(geometry.getViewZenith(), 0, frame.view_zenith, 0, size);
+        System.arraycopy(geometry.getSunAzimuth(), 0, frame.sun_azimuth, 0, size);
+        System.arraycopy(geometry.getDeltaAzimuth(), 0, frame.delta_azimuth, 0, size);
+        System.arraycopy(geometry.getMus(), 0, frame.mus, 0, size);
+        System.arraycopy(geometry.getMuv(), 0, frame.muv, 0, size);
+        System.arraycopy(geometry.getAirMass(), 0, frame.airMass, 0, size);
+    }
+
+    /**
+     * Initializes the given pixel of a frame with data readRecord from the L1B input product. Combines the
+     * meteo. preprocessing (step 2.1.0) and pixel extraction (step 2.1.4) of the DPM. All level 2
+     * geophysical fields are set to <code>{@link #BAD_VALUE}</code>. All fields of the pixel except of the geometry
+     * are written, so a frame can be reused without resetting it. The geometry is initialized by
+     * {@link #l1_extract_geometry(DpmFrame, MerisGeometry)}.
      * <p/>
      * <b>DPM ref.:</b> Step 2.1.0, 2.1.4, 2.1.11 <br> <b>MEGS ref.</b>: <code>extdatl1.c</code>, function
      * <code>l1_extract_pixbloc</code> <br>
      *
-     * @param pixel         the current pixel
+     * @param frame         the current frame
+     * @param p             the index of the current pixel within the frame
      * @param x             the current pixel's X coordinate
      * @param y             the current pixel's Y coordinate
      * @param tpdata        interpolated data buffer from tie points of L1B input product
@@ -41,7 +63,8 @@ public class L1bDataExtraction implements Constants {
      * @param detectorIndex detector index buffer from L1B input product
      * @param l1bFlags      L1B flags buffer from L1B input product
      */
-    public void l1_extract_pixbloc(final DpmPixel pixel,
+    public void l1_extract_pixbloc(final DpmFrame frame,
+                                   final int p,
                                    final int x,
                                    final int y,
                                    final Tile[] tpdata,
@@ -52,99 +75,80 @@ public class L1bDataExtraction implements Constants {
         /////////////////////////////////////////////////////////////////////
         // Initialize still unknown pixel values
 
-        pixel.ozone_ecmwf = BAD_VALUE;
-        pixel.ANNOT_F = 0;
+        frame.ANNOT_F[p] = 0;
         for (int band = 0; band < L1_BAND_NUM; band++) {
-            pixel.rho_ag[band] = BAD_VALUE;
-            pixel.rho_toa[band] = BAD_VALUE;
-            pixel.rho_top[band] = BAD_VALUE;
+            frame.rho_ag[band][p] = BAD_VALUE;
+            frame.rho_toa[band][p] = BAD_VALUE;
+            frame.rho_top[band][p] = BAD_VALUE;
         }
 
         /////////////////////////////////////////////////////////////////////
         // Set well known pixel values
 
-        pixel.x = x;
-        pixel.y = y;
-
-        pixel.SATURATED_F = 0;
+        int saturatedFlags = 0;
         for (int band = 0; band < 15; band++) {
-            pixel.TOAR[band] = toars[band].getSampleDouble(x, y);
-            if (pixel.TOAR[band] > auxData.Saturation_L[band]) {
-                pixel.SATURATED_F = BitSetter.setFlag(pixel.SATURATED_F, band);
+            final double toar = toars[band].getSampleDouble(x, y);
+            frame.TOAR[band][p] = toar;
+            if (toar > auxData.Saturation_L[band]) {
+                saturatedFlags = BitSetter.setFlag(saturatedFlags, band);
             }
         }
-        pixel.detector = detectorIndex.getSampleInt(x, y);
+        frame.SATURATED_F[p] = saturatedFlags;
+        int detector = detectorIndex.getSampleInt(x, y);
 
-        pixel.l1flags = l1bFlags.getSampleInt(x, y);
-        pixel.l2flags = 0L;
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_COSMETIC)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_COSMETIC);
+        int l1flags = l1bFlags.getSampleInt(x, y);
+        long l2flags = 0L;
+        if (BitSetter.isFlagSet(l1flags, L1_F_COSMETIC)) {
+            l2flags = BitSetter.setFlag(l2flags, F_COSMETIC);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_DUPLICATED)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_DUPLICATED);
+        if (BitSetter.isFlagSet(l1flags, L1_F_DUPLICATED)) {
+            l2flags = BitSetter.setFlag(l2flags, F_DUPLICATED);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_LAND)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_LAND);
+        if (BitSetter.isFlagSet(l1flags, L1_F_LAND)) {
+            l2flags = BitSetter.setFlag(l2flags, F_LAND);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_BRIGHT)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_BRIGHT);
+        if (BitSetter.isFlagSet(l1flags, L1_F_BRIGHT)) {
+            l2flags = BitSetter.setFlag(l2flags, F_BRIGHT);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_COAST)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_COASTLINE);
+        if (BitSetter.isFlagSet(l1flags, L1_F_COAST)) {
+            l2flags = BitSetter.setFlag(l2flags, F_COASTLINE);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_INVALID)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_INVALID);
+        if (BitSetter.isFlagSet(l1flags, L1_F_INVALID)) {
+            l2flags = BitSetter.setFlag(l2flags, F_INVALID);
         }
-        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_SUSPECT)) {
-            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_SUSPECT);
+        if (BitSetter.isFlagSet(l1flags, L1_F_SUSPECT)) {
+            l2flags = BitSetter.setFlag(l2flags, F_SUSPECT);
         }
-        if (pixel.detector < 0 || pixel.detector >= auxData.detector_count) {
-            pixel.detector = -1; // OK
+        if (detector < 0 || detector >= auxData.detector_count) {
+            detector = -1; // OK
             // Make pixel invalid
-            if (!BitSetter.isFlagSet(pixel.l1flags, L1_F_INVALID)) {
-                pixel.l1flags = BitSetter.setFlag(pixel.l1flags, F_INVALID);
-                pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_INVALID);
+            if (!BitSetter.isFlagSet(l1flags, L1_F_INVALID)) {
+                l1flags = BitSetter.setFlag(l1flags, F_INVALID);
+                l2flags = BitSetter.setFlag(l2flags, F_INVALID);
             }
         }
+        frame.detector[p] = detector;
+        frame.l1flags[p] = l1flags;
+        frame.l2flags[p] = l2flags;
 
-        // DPM #2.1.0-3
-        pixel.sun_zenith = tpdata[SUN_ZENITH_TPG_INDEX].getSampleDouble(x, y);
-        // DPM #2.1.0-4
-        pixel.view_zenith = tpdata[VIEW_ZENITH_TPG_INDEX].getSampleDouble(x, y);
-        // DPM #2.1.0-5
-        double view_azimuth = tpdata[VIEW_AZIMUTH_TPG_INDEX].getSampleDouble(x, y);
-        // DPM #2.1.0-6
-        pixel.sun_azimuth = tpdata[SUN_AZIMUTH_TPG_INDEX].getSampleDouble(x, y);
-        // mz 2007-11-22 at the moment lat and lon are not used for any computation  
-        // DPM #2.1.0-7
-        // pixel.lat = tpdata[LATITUDE_TPG_INDEX].getSampleDouble(x, y);
-        // DPM #2.1.0-8
-        // pixel.lon = tpdata[LONGITUDE_TPG_INDEX].getSampleDouble(x, y);
+        // mz 2007-11-22 at the moment lat and lon are not used for any computation
         // DPM #2.1.0-9
-        pixel.altitude = tpdata[DEM_ALT_TPG_INDEX].getSampleDouble(x, y);
+        final float altitude = tpdata[DEM_ALT_TPG_INDEX].getSampleFloat(x, y);
+        frame.altitude[p] = altitude;
         // DPM #2.1.0-10
-        pixel.press_ecmwf = tpdata[ATM_PRESS_TPG_INDEX].getSampleDouble(x, y);
+        double press_ecmwf = tpdata[ATM_PRESS_TPG_INDEX].getSampleDouble(x, y);
         // DPM #2.1.0-11
-        pixel.windu = tpdata[ZONAL_WIND_TPG_INDEX].getSampleDouble(x, y);
+        frame.windu[p] = tpdata[ZONAL_WIND_TPG_INDEX].getSampleFloat(x, y);
         // DPM #2.1.0-12
-        pixel.windv = tpdata[MERID_WIND_TPG_INDEX].getSampleDouble(x, y);
+        frame.windv[p] = tpdata[MERID_WIND_TPG_INDEX].getSampleFloat(x, y);
         // DPM #2.1.0-13
-        pixel.ozone_ecmwf = tpdata[OZONE_TPG_INDEX].getSampleDouble(x, y);
-        // DPM #2.1.0-14
-        pixel.delta_azimuth = DEG * Math.acos(Math.cos(RAD * (view_azimuth - pixel.sun_azimuth)));
+        frame.ozone_ecmwf[p] = tpdata[OZONE_TPG_INDEX].getSampleFloat(x, y);
         // DPM #2.1.0-15
-        if (BitSetter.isFlagSet(pixel.l2flags, F_LAND)) {
+        if (BitSetter.isFlagSet(l2flags, F_LAND)) {
             // ECMWF pressure is only corrected for positive altitudes and only for land pixels */
-            double f = Math.exp(-Math.max(0.0, pixel.altitude) / auxData.press_scale_height);
-            pixel.press_ecmwf *= f;
+            double f = Math.exp(-Math.max(0.0, altitude) / auxData.press_scale_height);
+            press_ecmwf *= f;
         }
-        //////////////////////////////////////////////////////////
-        // Helpers
-
-        pixel.muv = Math.cos(RAD * pixel.view_zenith);
-        pixel.mus = Math.cos(RAD * pixel.sun_zenith);
-
-        // DPM #2.1.12-1, Air Mass Computation
-        pixel.airMass = 1.0 / pixel.mus + 1.0 / pixel.muv;
+        frame.press_ecmwf[p] = press_ecmwf;
     }
 }
@@ -84,7 +84,7 @@ public class PixelIdentification implements Constants {
  * v4.5   29/05/02     work in reflectance instead of radiances L2 DPM 5.0 red mark
 \*----------------------------------------------------------------*/
 
-    public int pixel_classification(DpmPixel[][] pixelBlock,
+    public int pixel_classification(DpmFrame frame,
                                     int ic0, int ic1, int il0, int il1) {
         int status = 0;
         boolean correctPixel = false;
@@ -108,12 +108,12 @@ public class PixelIdentification implements Constants {
 
         for (int il = il0; il <= il1; il++) {
             for (int ic = ic0; ic <= ic1; ic++) {
-                DpmPixel pixel = pixelBlock[il][ic];
-                long flags = pixel.l2flags;
+                final int p = frame.getIndex(ic, il);
+                long flags = frame.l2flags[p];
 
                 if (!BitSetter.isFlagSet(flags, F_INVALID) /*&& !AlbedoUtils.isFlagSet(flags, F_CLOUD)*/) {
                     if (correctionSurface == CorrectionSurfaceEnum.LAND &&
-                            pixel.altitude < -50.0 && !BitSetter.isFlagSet(pixel.l1flags, L1_F_LAND)) {
+                            frame.altitude[p] < -50.0 && !BitSetter.isFlagSet(frame.l1flags[p], L1_F_LAND)) {
 //                    if (!correctWater && pixel.altitude < -50.0 && !BitSetter.isFlagSet(pixel.l1flags, L1_F_LAND)) {
                         do_corr[il - il0][ic - ic0] = false;
                     } else {
@@ -125,7 +125,7 @@ public class PixelIdentification implements Constants {
                         if (!is_L1bland[il - il0][ic - ic0]) {
                             correctWaterPixel = true;
                             for (int bandId = bb753; bandId <= bb900; bandId++) {
-                                dSumrho[bandId] += pixel.rho_toa[bandId];
+                                dSumrho[bandId] += frame.rho_toa[bandId][p];
                             }
                         }
                     }
@@ -154,81 +154,89 @@ public class PixelIdentification implements Constants {
 
         if (correctPixel) {
 
-            DpmPixel pixel0 = pixelBlock[il0][ic1];
+            final int p0 = frame.getIndex(ic1, il0);
+            final double windu0 = frame.windu[p0];
+            final double windv0 = frame.windv[p0];
 
             /* v7: compute Glint reflectance here (only if there are water/land pixels) */
             /* first wind modulus at window corner */
             double windm = 0.0;
-            windm += pixel0.windu * pixel0.windu;
-            windm += pixel0.windv * pixel0.windv;
+            windm += windu0 * windu0;
+            windm += windv0 * windv0;
             windm = Math.sqrt(windm);
             /* then wind azimuth */
-            double phiw = azimuth(pixel0.windu, pixel0.windv);
+            double phiw = azimuth(windu0, windv0);
             /* and "scattering" angle */
-            double chiw = MathUtils.RTOD * (Math.acos(Math.cos(pixel0.sun_azimuth - phiw)));
+            double chiw = MathUtils.RTOD * (Math.acos(Math.cos(frame.sun_azimuth[p0] - phiw)));
             /* allows to retrieve Glint reflectance for wurrent geometry and wind */
-            double rhoGlint = glintRef(pixel0.sun_zenith,
-                                       pixel0.view_zenith, pixel0.delta_azimuth, windm, chiw);
+            double rhoGlint = glintRef(frame.sun_zenith[p0],
+                                       frame.view_zenith[p0], frame.delta_azimuth[p0], windm, chiw);
 
             /* V.2 APPLY GASEOUS ABSORPTION CORRECTION - DPM Step 2.6.12 */
 
             /* ozone transmittance on 4x4 window - step 2.6.12.1 */
-            trans_o3(pixel0.airMass, pixel0.ozone_ecmwf, T_o3);
+            trans_o3(frame.airMass[p0], frame.ozone_ecmwf[p0], T_o3);
 
             /* set up threshold for land-water discrimination */
-            Interp.interpCoord(pixel0.sun_zenith, auxData.r7thresh.getTab(0), r7thresh_Index[0]);
-            Interp.interpCoord(pixel0.view_zenith, auxData.r7thresh.getTab(1), r7thresh_Index[1]);
+            Interp.interpCoord(frame.sun_zenith[p0], auxData.r7thresh.getTab(0), r7thresh_Index[0]);
+            Interp.interpCoord(frame.view_zenith[p0], auxData.r7thresh.getTab(1), r7thresh_Index[1]);
             /* take azimuth difference into account - v4.4 */
-            Interp.interpCoord(pixel0.delta_azimuth, auxData.r7thresh.getTab(2), r7thresh_Index[2]);
+            Interp.interpCoord(frame.delta_azimuth[p0], auxData.r7thresh.getTab(2), r7thresh_Index[2]);
             /* DPM #2.6.26-1a */
-            r7thresh_val = Interp.interpolate(auxData.r7thresh.getJavaArray(), r7thresh_Index);
-            r13thresh_val = Interp.interpolate(auxData.r13thresh.getJavaArray(), r7thresh_Index);
+            r7thresh_val = auxData.r7thresh.interpolate(r7thresh_Index);
+            r13thresh_val = auxData.r13thresh.interpolate(r7thresh_Index);
 
             /* process each pixel */
             for (int il = il0; il <= il1; il++) {
                 for (int ic = ic0; ic <= ic1; ic++) {
-                    DpmPixel pixel = pixelBlock[il][ic];
+                    final int p = frame.getIndex(ic, il);
                     if (do_corr[il - il0][ic - ic0]) {
                         double eta, x2;       /* band ratios eta, x2 */
+                        long l2flags = frame.l2flags[p];
+                        final double[] rho_toa = lh.rho_toa;
+                        final double[] rho_ag = lh.rho_ag;
+                        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                            rho_toa[bandId] = frame.rho_toa[bandId][p];
+                        }
 
                         /* test SZA - v4.2 */
-                        if (pixel.sun_zenith > auxData.TETAS_LIM) {
-                            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_SUN70, true);
+                        if (frame.sun_zenith[p] > auxData.TETAS_LIM) {
+                            l2flags = BitSetter.setFlag(l2flags, F_SUN70, true);
                         }
 
                         /* gaseous transmittance correction : writes rho-ag field - v4.2 */
                         /* do band ratio for land pixels with full exception handling */
                         if (is_L1bland[il - il0][ic - ic0]) {
-                            if ((pixel.rho_toa[bb753] > 0.) && (pixel.rho_toa[bb760] > 0.)) {
-                                eta = pixel.rho_toa[bb760] / pixel.rho_toa[bb753];    //o2
+                            if ((rho_toa[bb753] > 0.) && (rho_toa[bb760] > 0.)) {
+                                eta = rho_toa[bb760] / rho_toa[bb753];    //o2
                             } else {
                                 eta = 1.;
-                                pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_ORINP0, true);
+                                l2flags = BitSetter.setFlag(l2flags, F_ORINP0, true);
                             }
                             /* DPM #2.6.12.3-1 */
-                            if ((pixel.rho_toa[bb890] > 0.) && (pixel.rho_toa[bb900] > 0.)) {
-                                x2 = pixel.rho_toa[bb900] / pixel.rho_toa[bb890];   //h2o
+                            if ((rho_toa[bb890] > 0.) && (rho_toa[bb900] > 0.)) {
+                                x2 = rho_toa[bb900] / rho_toa[bb890];   //h2o
                             } else {
                                 x2 = 1.;
-                                pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_ORINP0, true);
+                                l2flags = BitSetter.setFlag(l2flags, F_ORINP0, true);
                             }
                         } else { /* water pixels */
                             eta = etaAverageForWater;
                             x2 = x2AverageForWater;
-                            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_ORINP0, iOrinp0);
+                            l2flags = BitSetter.setFlag(l2flags, F_ORINP0, iOrinp0);
                         }
 
                         status = gaseousCorr.gas_correction(T_o3, eta, x2,
-                                                            pixel.rho_toa,
-                                                            pixel.detector,
-                                                            pixel.rho_ag,
-                                                            BitSetter.isFlagSet(pixel.l2flags, F_PCD_POL_P));
+                                                            rho_toa,
+                                                            frame.detector[p],
+                                                            rho_ag,
+                                                            BitSetter.isFlagSet(l2flags, F_PCD_POL_P));
 
                         /* exception handling */
-                        pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_OROUT0, status != 0);
+                        l2flags = BitSetter.setFlag(l2flags, F_OROUT0, status != 0);
 
                         boolean is_land_consolidated = false;
-                        if (!BitSetter.isFlagSet(pixel.l2flags, F_CLOUD)) {
+                        if (!BitSetter.isFlagSet(l2flags, F_CLOUD)) {
                             /* Land /Water re-classification - v4.2, updated for v7 */
                             /* DPM step 2.6.26 */
                             /* TODO: restrict land-water reclassification to altitude > -50 */
@@ -240,14 +248,15 @@ public class PixelIdentification implements Constants {
                             /* test if pixel is water */
                             b_thresh = auxData.lap_b_thresh[0];
                             a_thresh = auxData.alpha_thresh[0];
-                            is_water = inland_waters(r7thresh_val, pixel, b_thresh, a_thresh);
+                            is_water = inland_waters(r7thresh_val, rho_ag, b_thresh, a_thresh);
+                            l2flags = BitSetter.setFlag(l2flags, F_LOINLD, is_water);
                             /* the is_water flag is available in the output product as F_LOINLD */
 
                             /* test if pixel is land */
                             final float thresh_medg = 0.2f;
-                            boolean isGlint = (rhoGlint >= thresh_medg * pixel.rho_ag[bb865]);
+                            boolean isGlint = (rhoGlint >= thresh_medg * rho_ag[bb865]);
                             if (isGlint) {
-                                pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_MEGLINT, isGlint);
+                                l2flags = BitSetter.setFlag(l2flags, F_MEGLINT, isGlint);
                                 b_thresh = auxData.lap_b_thresh[0];
                                 a_thresh = auxData.alpha_thresh[0];
                                 rThresh = r7thresh_val;
@@ -256,7 +265,8 @@ public class PixelIdentification implements Constants {
                                 a_thresh = auxData.alpha_thresh[1];
                                 rThresh = r13thresh_val;
                             }
-                            is_land = island(rThresh, pixel, b_thresh, a_thresh);
+                            is_land = island(rThresh, rho_ag, b_thresh, a_thresh);
+                            l2flags = BitSetter.setFlag(l2flags, F_ISLAND, is_land);
                             /* the is_land flag is available in the output product as F_ISLAND */
 
                             // DPM step 2.6.26-7
@@ -265,20 +275,25 @@ public class PixelIdentification implements Constants {
                             // the water test is less severe than the land test
                             is_land_consolidated = !is_water;
                             // the land test is more severe than the water test
-                            if (isGlint && !BitSetter.isFlagSet(pixel.l1flags, L1_F_LAND)) {
+                            if (isGlint && !BitSetter.isFlagSet(frame.l1flags[p], L1_F_LAND)) {
                                 is_land_consolidated = is_land;
                             }
                         }
-                        pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_LANDCONS, is_land_consolidated);
+                        l2flags = BitSetter.setFlag(l2flags, F_LANDCONS, is_land_consolidated);
 
                         if (is_land_consolidated) {
                             /* DPM #2.1.6-1 */
-                            applySmileCorrection(pixel.rho_ag, auxData.land_smile_params,
-                                                 pixel.detector);
+                            applySmileCorrection(rho_ag, auxData.land_smile_params,
+                                                 frame.detector[p]);
                         } else {
                             /* DPM #2.1.6-2 */
-                            applySmileCorrection(pixel.rho_ag, auxData.water_smile_params,
-                                                 pixel.detector);
+                            applySmileCorrection(rho_ag, auxData.water_smile_params,
+                                                 frame.detector[p]);
+                        }
+
+                        frame.l2flags[p] = l2flags;
+                        for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
+                            frame.rho_ag[bandId][p] = rho_ag[bandId];
                         }
                     } /* if do_corr */
                 } /* for ic */
@@ -292,20 +307,22 @@ public class PixelIdentification implements Constants {
     /**
      * Converts TOA radiance to reflectance.
      * <p/>
-     * <b>Input:</b> {@link DpmPixel#TOAR}, {@link DpmPixel#detector}, {@link DpmPixel#mus} {@link
-     * org.esa.beam.meris.l2auxdata.L2AuxData#detector_solar_irradiance}, {@link
-     * org.esa.beam.meris.l2auxdata.L2AuxData#seasonal_factor}<br> <b>Output:</b> {@link DpmPixel#rho_toa}, {@link
-     * DpmPixel#rho_toa}<br> <b>DPM ref.:</b> section 3.5 step 2.1.4<br> <b>MEGS ref.:</b> <code>pixel_classification.c</code>,
+     * <b>Input:</b> {@link DpmFrame#TOAR}, {@link DpmFrame#detector}, {@link DpmFrame#mus} {@link
+     * org.esa.beam.meris.l2auxdata.L2AuxData#detector_solar_irradiance_inv}, {@link
+     * org.esa.beam.meris.l2auxdata.L2AuxData#seasonal_factor}<br> <b>Output:</b> {@link DpmFrame#rho_toa}<br>
+     * <b>DPM ref.:</b> section 3.5 step 2.1.4<br> <b>MEGS ref.:</b> <code>pixel_classification.c</code>,
      * function <code>rad2reflect</code><br>
      *
-     * @param pixel the pixel structure
+     * @param frame the frame
+     * @param p     the index of the pixel within the frame
      */
-    public void rad2reflect(DpmPixel pixel) {
-        final double constantTerm = (Math.PI / pixel.mus) * auxData.seasonal_factor;
+    public void rad2reflect(DpmFrame frame, int p) {
+        final double constantTerm = (Math.PI / frame.mus[p]) * auxData.seasonal_factor;
+        final int detector = frame.detector[p];
         for (int bandId = 0; bandId < L1_BAND_NUM; bandId++) {
             // DPM #2.1.4-1
-            pixel.rho_toa[bandId] = (pixel.TOAR[bandId] * constantTerm)
-                    / auxData.detector_solar_irradiance[bandId][pixel.detector];
+            frame.rho_toa[bandId][p] = (frame.TOAR[bandId][p] * constantTerm)
+                    * auxData.detector_solar_irradiance_inv[bandId][detector];
         }
     }
 
@@ -315,9 +332,9 @@ public class PixelIdentification implements Constants {
                 /* DPM #2.1.6-3 */
                 int bandMin = params.derivative_band_id[bandId][0];
                 int bandMax = params.derivative_band_id[bandId][1];
-                double derive = (rho[bandMax] - rho[bandMin]) / (auxData.central_wavelength[bandMax][detector] - auxData.central_wavelength[bandMin][detector]);
+                double delta = rho[bandMax] - rho[bandMin];
                 /* DPM #2.1.6-4 */
-                lh.smileCorrectedRho[bandId] = rho[bandId] + derive * (auxData.theoretical_wavelength[bandId] - auxData.central_wavelength[bandId][detector]);
+                lh.smileCorrectedRho[bandId] = rho[bandId] + delta * params.slope_factor[bandId][detector];
             } else {
                 /* DPM #2.1.6-5 */
                 lh.smileCorrectedRho[bandId] = rho[bandId];
@@ -334,26 +351,20 @@ public class PixelIdentification implements Constants {
      * {@link L2AuxData#lap_beta_l}
      *
      * @param r7thresh_val threshold at 665nm
-     * @param pixel        the pixel
+     * @param rho_ag       the gas corrected reflectances of the pixel
      * @param b_thresh
      * @param a_thresh
      * @return inland water flag
      */
-    private boolean inland_waters(double r7thresh_val, DpmPixel pixel, int b_thresh, double a_thresh) {
+    private boolean inland_waters(double r7thresh_val, double[] rho_ag, int b_thresh, double a_thresh) {
         /* DPM #2.6.26-4 */
-        boolean status = (pixel.rho_ag[b_thresh] <= a_thresh * r7thresh_val) &&
-                (auxData.lap_beta_l * pixel.rho_ag[bb865] < pixel.rho_ag[bb665]);
-
-        pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_LOINLD, status);
-        return status;
+        return (rho_ag[b_thresh] <= a_thresh * r7thresh_val) &&
+                (auxData.lap_beta_l * rho_ag[bb865] < rho_ag[bb665]);
     }
 
-    private boolean island(double r7thresh_val, DpmPixel pixel, int b_thresh, double a_thresh) {
-        boolean status = (pixel.rho_ag[b_thresh] > a_thresh * r7thresh_val) &&
-                (auxData.lap_beta_w * pixel.rho_ag[bb865] > pixel.rho_ag[bb665]);
-
-        pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_ISLAND, status);
-        return status;
+    private boolean island(double r7thresh_val, double[] rho_ag, int b_thresh, double a_thresh) {
+        return (rho_ag[b_thresh] > a_thresh * r7thresh_val) &&
+                (auxData.lap_beta_w * rho_ag[bb865] > rho_ag[bb665]);
     }
 
     /*----------------------------------------------------------------*\
@@ -378,7 +389,7 @@ public class PixelIdentification implements Constants {
         Interp.interpCoord(delta, auxData.rog.getTab(2), rogIndex[2]);
         Interp.interpCoord(windm, auxData.rog.getTab(3), rogIndex[3]);
         Interp.interpCoord(thetas, auxData.rog.getTab(4), rogIndex[4]);
-        return Interp.interpolate(auxData.rog.getJavaArray(), rogIndex);
+        return auxData.rog.interpolate(rogIndex);
     }
 
     /*----------------------------------------------------------------------*\
@@ -426,5 +437,13 @@ public class PixelIdentification implements Constants {
          * Local helper variable for {@link PixelIdentification#applySmileCorrection}
          */
         double[] smileCorrectedRho = new double[L1_BAND_NUM];
+        /**
+         * TOA reflectances of the current pixel, gathered from the frame in {@link PixelIdentification#pixel_classification}
+         */
+        final double[] rho_toa = new double[L1_BAND_NUM];
+        /**
+         * Gas corrected reflectances of the current pixel, scattered to the frame in {@link PixelIdentification#pixel_classification}
+         */
+        final double[] rho_ag = new double[L1_BAND_NUM];
     }
 }
\ No newline at end of file
@@ -10,6 +10,7 @@ import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.util.math.FractIndex;
 import org.esa.beam.util.math.Interp;
+import org.esa.beam.util.math.LUT;
 
 public class RayleighCorrection implements Constants {
 
@@ -56,12 +57,14 @@ public class RayleighCorrection implements Constants {
         Interp.interpCoord(sun_zenith, auxdata.Rayscatt_coeff_s.getTab(2), tsi); /* fm 15/5/97 */
         Interp.interpCoord(view_zenith, auxdata.Rayscatt_coeff_s.getTab(3), tvi);
 
-        float[][][][] Rayscatt_coeff_s = (float[][][][]) auxdata.Rayscatt_coeff_s.getJavaArray();
+        final LUT Rayscatt_coeff_s = auxdata.Rayscatt_coeff_s;
+        final int ordStride = Rayscatt_coeff_s.getStride(0);
+        final int serStride = Rayscatt_coeff_s.getStride(1);
         /* pre-computation of multiple scatt coefficients, wavelength independent */
         for (int is = 0; is < RAYSCATT_NUM_SER; is++) {
             /* DPM #2.1.17-4 to 2.1.17-7 */
             for (int ik = 0; ik < RAYSCATT_NUM_ORD; ik++) {
-                lh.abcd[is][ik] = Interp.interpolate(Rayscatt_coeff_s[ik][is], lh.ref_rayleigh_i);
+                lh.abcd[is][ik] = Rayscatt_coeff_s.interpolate2D(ik * ordStride + is * serStride, tsi, tvi);
             }
         }
 
@@ -251,7 +254,7 @@ public class RayleighCorrection implements Constants {
                 case bb13:
                 case bb14:
                     Interp.interpCoord(tauRayl[bandId], auxdata.Rayalb.getTab(0), lh.ray_index[0]);
-                    sphalbRayl[bandId] = Interp.interpolate(auxdata.Rayalb.getJavaArray(), lh.ray_index); /* DPM #2.6.15.3-1 */
+                    sphalbRayl[bandId] = auxdata.Rayalb.interpolate1D(0, lh.ray_index[0]); /* DPM #2.6.15.3-1 */
 
                     break;
                 default:
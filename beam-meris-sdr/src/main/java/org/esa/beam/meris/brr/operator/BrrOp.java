@@ -17,9 +17,12 @@ import org.esa.beam.meris.brr.dpm.*;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
 import org.esa.beam.util.BitSetter;
 import org.esa.beam.util.ProductUtils;
 
+import javax.media.jai.JAI;
 import java.awt.*;
 import java.util.Map;
 
@@ -33,22 +36,26 @@ public class BrrOp extends BrrBasisOp {
 
     private static final float NODATA_VALUE = -1.0f;
 
+    // estimated number of bytes per pixel of a DpmFrame: 4 spectral double arrays, 5 double, 7 float,
+    // 4 int and 1 long array
+    private static final int FRAME_BYTES_PER_PIXEL = 4 * Constants.L1_BAND_NUM * 8 + 5 * 8 + 7 * 4 + 4 * 4 + 8;
+    // estimated number of bytes per pixel of the source tiles: float tie-points, 16 bit radiances and
+    // detector index, 8 bit flags
+    private static final int SOURCE_BYTES_PER_PIXEL = EnvisatConstants.MERIS_TIE_POINT_GRID_NAMES.length * 4 +
+                                                      (Constants.L1_BAND_NUM + 1) * 2 + 1;
+    private static final int MIN_TILE_WIDTH = 33;
+    private static final int MIN_TILE_HEIGHT = 32;
+
     // source product
     private RasterDataNode[] tpGrids;
     private RasterDataNode[] l1bRadiance;
     private RasterDataNode detectorIndex;
     private RasterDataNode l1bFlags;
 
-    private final ThreadLocal<DpmPixel[]> frame = new ThreadLocal<DpmPixel[]>() {
+    private final ThreadLocal<DpmFrame> frame = new ThreadLocal<DpmFrame>() {
         @Override
-        protected DpmPixel[] initialValue() {
-            return new DpmPixel[0];
-        }
-    };
-    private final ThreadLocal<DpmPixel[][]> block = new ThreadLocal<DpmPixel[][]>() {
-        @Override
-        protected DpmPixel[][] initialValue() {
-            return new DpmPixel[0][0];
+        protected DpmFrame initialValue() {
+            return new DpmFrame(0, 0);
         }
     };
 
@@ -79,6 +86,17 @@ public class BrrOp extends BrrBasisOp {
                description = "Specify the surface where the Rayleigh correction shall be performed")
     private CorrectionSurfaceEnum correctionSurface;
 
+    @Parameter(description = "Memory budget per worker thread used to size the tiles. " +
+                             "If 0, a quarter of the maximum heap is shared among the worker threads.",
+               label = "Tile memory budget per thread",
+               defaultValue = "0", unit = "MiB", interval = "[0, 65536]")
+    private int tileMemoryBudget;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               label = "Geometry cache capacity",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    private int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
+
     private L2AuxData auxData;
 
     @Override
@@ -91,7 +109,11 @@ public class BrrOp extends BrrBasisOp {
         // set tile-size smaller than the one that GPF might associate. We need to allocate A LOT of memory per tile.
         // preferred tile-size must be odd in x-direction to cope with the 4x4 window required by the algo and the odd
         // line length of a meris product. Tiles of width=1 force exceptions. tb 2014-01-24
-        targetProduct.setPreferredTileSize(129, 128);
+        final int parallelism = JAI.getDefaultInstance().getTileScheduler().getParallelism();
+        final long budget = getTileMemoryBudget(tileMemoryBudget, Runtime.getRuntime().maxMemory(), parallelism);
+        targetProduct.setPreferredTileSize(computePreferredTileSize(budget, getBytesPerPixel(),
+                                                                    sourceProduct.getSceneRasterWidth(),
+                                                                    sourceProduct.getSceneRasterHeight()));
         if (copyL1Flags) {
             ProductUtils.copyFlagBands(sourceProduct, targetProduct, true);
         }
@@ -141,11 +163,8 @@ public class BrrOp extends BrrBasisOp {
         pixelid.setCorrectionSurface(correctionSurface);
         landac.setCorrectionSurface(correctionSurface);
 
-        final FrameAndBlock frameAndBlock = getFrameAndBlock(rectangle);
-        final DpmPixel[] frameLocal = frameAndBlock.frame;
-        final DpmPixel[][] blockLocal = frameAndBlock.block;
-
-        final int frameSize = rectangle.height * rectangle.width;
+        final DpmFrame frameLocal = getFrame(rectangle);
+        final int frameSize = frameLocal.getSize();
 
         Tile[] l1bTiePoints = new Tile[tpGrids.length];
         for (int i = 0; i < tpGrids.length; i++) {
@@ -158,19 +177,22 @@ public class BrrOp extends BrrBasisOp {
         Tile l1bDetectorIndex = getSourceTile(detectorIndex, rectangle);
         Tile l1bFlagRaster = getSourceTile(l1bFlags, rectangle);
 
+        final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(sourceProduct, rectangle,
+                                                                                       geometryCacheCapacity);
+        extdatl1.l1_extract_geometry(frameLocal, geometry);
         for (int pixelIndex = 0; pixelIndex < frameSize; pixelIndex++) {
-            DpmPixel pixel = frameLocal[pixelIndex];
-            extdatl1.l1_extract_pixbloc(pixel,
-                                        rectangle.x + pixel.i,
-                                        rectangle.y + pixel.j,
+            extdatl1.l1_extract_pixbloc(frameLocal,
+                                        pixelIndex,
+                                        rectangle.x + pixelIndex % rectangle.width,
+                                        rectangle.y + pixelIndex / rectangle.width,
                                         l1bTiePoints,
                                         l1bRadiances,
                                         l1bDetectorIndex,
                                         l1bFlagRaster);
 
-            if (!BitSetter.isFlagSet(pixel.l2flags, Constants.F_INVALID)) {
-                pixelid.rad2reflect(pixel);
-                classcloud.classify_cloud(pixel);
+            if (!BitSetter.isFlagSet(frameLocal.l2flags[pixelIndex], Constants.F_INVALID)) {
+                pixelid.rad2reflect(frameLocal, pixelIndex);
+                classcloud.classify_cloud(frameLocal, pixelIndex);
             }
         }
 
@@ -178,8 +200,8 @@ public class BrrOp extends BrrBasisOp {
             for (int iPC1 = 0; iPC1 < rectangle.width; iPC1 += Constants.SUBWIN_WIDTH) {
                 final int iPC2 = Math.min(rectangle.width, iPC1 + Constants.SUBWIN_WIDTH) - 1;
                 final int iPL2 = Math.min(rectangle.height, iPL1 + Constants.SUBWIN_HEIGHT) - 1;
-                pixelid.pixel_classification(blockLocal, iPC1, iPC2, iPL1, iPL2);
-                landac.landAtmCor(blockLocal, iPC1, iPC2, iPL1, iPL2);
+                pixelid.pixel_classification(frameLocal, iPC1, iPC2, iPL1, iPL2);
+                landac.landAtmCor(frameLocal, iPC1, iPC2, iPL1, iPL2);
             }
         }
 
@@ -187,9 +209,10 @@ public class BrrOp extends BrrBasisOp {
             if (isValidRhoSpectralIndex(bandIndex)) {
                 ProductData data = targetTiles.get(brrReflecBands[bandIndex]).getRawSamples();
                 float[] dData = (float[]) data.getElems();
-                for (int iP = 0; iP < rectangle.width * rectangle.height; iP++) {
-                    dData[iP] = (float) frameLocal[iP].rho_top[bandIndex];
-                    if (BitSetter.isFlagSet((int) frameLocal[iP].l2flags, Constants.F_INVALID)) {
+                final double[] rhoTop = frameLocal.rho_top[bandIndex];
+                for (int iP = 0; iP < frameSize; iP++) {
+                    dData[iP] = (float) rhoTop[iP];
+                    if (BitSetter.isFlagSet((int) frameLocal.l2flags[iP], Constants.F_INVALID)) {
                         dData[iP] = NODATA_VALUE;
                     }
                 }
@@ -200,8 +223,9 @@ public class BrrOp extends BrrBasisOp {
             for (int bandIndex = 0; bandIndex < toaReflecBands.length; bandIndex++) {
                 ProductData data = targetTiles.get(toaReflecBands[bandIndex]).getRawSamples();
                 float[] ddata = (float[]) data.getElems();
-                for (int iP = 0; iP < rectangle.width * rectangle.height; iP++) {
-                    ddata[iP] = (float) frameLocal[iP].rho_toa[bandIndex];
+                final double[] rhoToa = frameLocal.rho_toa[bandIndex];
+                for (int iP = 0; iP < frameSize; iP++) {
+                    ddata[iP] = (float) rhoToa[iP];
                 }
                 targetTiles.get(toaReflecBands[bandIndex]).setRawSamples(data);
             }
@@ -259,38 +283,76 @@ public class BrrOp extends BrrBasisOp {
         return i >= Constants.bb1 && i < Constants.bb15 && i != Constants.bb11;
     }
 
-    private FrameAndBlock getFrameAndBlock(Rectangle rectangle) {
-        final FrameAndBlock frameAndBlock = new FrameAndBlock();
-        final int frameSize = rectangle.width * rectangle.height;
-
-        DpmPixel[] frameLocal = frame.get();
-        DpmPixel[][] blockLocal = block.get();
-        if (frameLocal.length != frameSize) {
-            // reallocate
-            frameLocal = new DpmPixel[frameSize];
-            blockLocal = new DpmPixel[rectangle.height][rectangle.width];
-            for (int pixelIndex = 0; pixelIndex < frameSize; pixelIndex++) {
-                final DpmPixel pixel = new DpmPixel(pixelIndex % rectangle.width, pixelIndex / rectangle.width);
-                frameLocal[pixelIndex] = blockLocal[pixel.j][pixel.i] = pixel;
-                frame.set(frameLocal);
-                block.set(blockLocal);
-            }
-        } else {
-            for (int pixelIndex = 0; pixelIndex < frameSize; pixelIndex++) {
-                frameLocal[pixelIndex].reset(pixelIndex % rectangle.width, pixelIndex / rectangle.width);
+    private int getBytesPerPixel() {
+        int numTargetBands = 0;
+        for (int i = 0; i < brrReflecBands.length; i++) {
+            if (isValidRhoSpectralIndex(i)) {
+                numTargetBands++;
             }
         }
+        if (outputToar) {
+            numTargetBands += toaReflecBands.length;
+        }
+        return FRAME_BYTES_PER_PIXEL + SOURCE_BYTES_PER_PIXEL + numTargetBands * 4 + (copyL1Flags ? 1 : 0);
+    }
 
-        frameAndBlock.frame = frameLocal;
-        frameAndBlock.block = blockLocal;
-
-        return frameAndBlock;
+    /**
+     * Computes the memory budget for the tiles processed by a single worker thread.
+     *
+     * @param budgetMiB   the configured budget per thread [MiB], 0 for automatic
+     * @param maxMemory   the maximum heap size [bytes]
+     * @param parallelism the number of worker threads
+     * @return the budget per thread [bytes]
+     */
+    static long getTileMemoryBudget(int budgetMiB, long maxMemory, int parallelism) {
+        if (budgetMiB > 0) {
+            return budgetMiB * 1024L * 1024L;
+        }
+        return maxMemory / 4 / Math.max(1, parallelism);
     }
 
-    private class FrameAndBlock {
-        DpmPixel[] frame;
-        DpmPixel[][] block;
+    /**
+     * Computes the largest preferred tile size whose pixels fit into the given memory budget.
+     * The tile width is odd, and chosen such that no tile of width 1 remains at the end of a line.
+     *
+     * @param budget        the memory budget per tile [bytes]
+     * @param bytesPerPixel the memory needed per pixel [bytes]
+     * @param sceneWidth    the scene raster width
+     * @param sceneHeight   the scene raster height
+     * @return the preferred tile size
+     */
+    static Dimension computePreferredTileSize(long budget, int bytesPerPixel, int sceneWidth, int sceneHeight) {
+        final long maxPixels = Math.max(budget / bytesPerPixel, (long) MIN_TILE_WIDTH * MIN_TILE_HEIGHT);
+        int tileWidth = (int) Math.max(MIN_TILE_WIDTH, Math.min(sceneWidth, (long) Math.sqrt(maxPixels)));
+        if (tileWidth < sceneWidth) {
+            if (tileWidth % 2 == 0) {
+                tileWidth--;
+            }
+            while (tileWidth >= MIN_TILE_WIDTH && sceneWidth % tileWidth == 1) {
+                tileWidth -= 2;
+            }
+            if (tileWidth < MIN_TILE_WIDTH) {
+                // grow instead, the odd minimum width itself may leave a single column
+                tileWidth = MIN_TILE_WIDTH;
+                while (tileWidth < sceneWidth && sceneWidth % tileWidth == 1) {
+                    tileWidth += 2;
+                }
+            }
+        }
+        final int tileHeight = (int) Math.max(MIN_TILE_HEIGHT, Math.min(sceneHeight, maxPixels / tileWidth));
+        return new Dimension(tileWidth, tileHeight);
+    }
 
+    private DpmFrame getFrame(Rectangle rectangle) {
+        DpmFrame frameLocal = frame.get();
+        if (frameLocal.width != rectangle.width || frameLocal.height != rectangle.height) {
+            // reallocate, the L1b data extraction initialises all pixels of a reused frame
+            frameLocal = new DpmFrame(rectangle.width, rectangle.height);
+            frame.set(frameLocal);
+        }
+        frameLocal.x0 = rectangle.x;
+        frameLocal.y0 = rectangle.y;
+        return frameLocal;
     }
 
     public static class Spi extends OperatorSpi {
@@ -16,10 +16,9 @@
  */
 package org.esa.beam.meris.cloud;
 
-import com.bc.jnn.Jnn;
-import com.bc.jnn.JnnException;
-import com.bc.jnn.JnnNet;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
 import org.esa.beam.util.logging.BeamLogManager;
+import org.esa.beam.util.math.FastMath;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -39,12 +38,13 @@ public class CloudAlgorithm implements Cloneable {
     private static final String PARAM_2_KEY = "param_2";
     private static final String VALID_KEY = "validExpression";
 
-    private JnnNet neuralNet;
+    private MultiLayerPerceptron neuralNet;
     private String validExpression;
     private double param1;
     private double param2;
     private double[] minInputValuesNN = new double[15];
     private double[] maxInputValuesNN = new double[15];
+    private boolean fastMath;
 
     public CloudAlgorithm(File auxDataDir, String configName) throws IOException {
         final File propertiesFile = new File(auxDataDir, configName);
@@ -71,15 +71,31 @@ public class CloudAlgorithm implements Cloneable {
         return validExpression;
     }
 
-    private void loadNeuralNet(File neuralNetFile) throws IOException, JnnException {
-        Jnn.setOptimizing(true);
-        neuralNet = Jnn.readNna(neuralNetFile);
+    /**
+     * @param fastMath if <code>true</code>, {@link FastMath#exp(double)} is used to convert the
+     *                 neural net output into a probability
+     */
+    public void setFastMath(boolean fastMath) {
+        this.fastMath = fastMath;
+    }
+
+    private void loadNeuralNet(File neuralNetFile) throws IOException {
+        neuralNet = MultiLayerPerceptron.read(neuralNetFile);
 
         final Logger logger = BeamLogManager.getSystemLogger();
-        logger.info("Using JNN Neural Net Library, version " + Jnn.VERSION_STRING);
         logger.info(neuralNetFile + " loaded");
     }
 
+    /**
+     * Creates a scratch buffer for {@link #computeCloudProbability(double[], double[])}.
+     * A buffer must not be used by multiple threads at the same time.
+     *
+     * @return a new scratch buffer
+     */
+    public double[] createScratch() {
+        return neuralNet.createScratch();
+    }
+
     /**
      * Computes the cloudProbability for one pixel
      * using the given array as input for the neural net.
@@ -88,6 +104,20 @@ public class CloudAlgorithm implements Cloneable {
      * @return cloudProbability
      */
     public double computeCloudProbability(double[] cloudIn) {
+        return computeCloudProbability(cloudIn, createScratch());
+    }
+
+    /**
+     * Computes the cloudProbability for one pixel
+     * using the given array as input for the neural net.
+     * This method does not modify the state of this algorithm, so it may be called by
+     * multiple threads concurrently, each one passing its own scratch buffer.
+     *
+     * @param cloudIn the neural net input, clamped in place to the valid input range
+     * @param scratch a scratch buffer created by {@link #createScratch()}
+     * @return cloudProbability
+     */
+    public double computeCloudProbability(double[] cloudIn, double[] scratch) {
         // check for input values which are out-of-bounds
         for (int j = 0; j < 15; j++) {
             final double q = cloudIn[j];
@@ -98,7 +128,7 @@ public class CloudAlgorithm implements Cloneable {
             }
         }
 
-        double nnResult = computeCloud(cloudIn);
+        double nnResult = computeCloud(cloudIn, scratch);
         return nn2Probability(nnResult);
     }
 
@@ -109,10 +139,11 @@ public class CloudAlgorithm implements Cloneable {
      * @return the cloud parameter
      */
     protected double computeCloud(final double[] cloudIn) {
-        final double[] output = new double[1];
+        return computeCloud(cloudIn, createScratch());
+    }
 
-        neuralNet.process(cloudIn, output);
-        return output[0];
+    private double computeCloud(final double[] cloudIn, final double[] scratch) {
+        return neuralNet.process(cloudIn, scratch);
     }
 
     protected double nn2Probability(double nnResult) {
@@ -122,14 +153,14 @@ public class CloudAlgorithm implements Cloneable {
         } else if (a > 80) {
             a = 80;
         }
-        return 1.0 / (1.0 + Math.exp(a));
+        return 1.0 / (1.0 + (fastMath ? FastMath.exp(a) : Math.exp(a)));
     }
 
     @Override
     protected CloudAlgorithm clone() {
         try {
             CloudAlgorithm clone = (CloudAlgorithm) super.clone();
-            clone.neuralNet = neuralNet.clone();
+            clone.neuralNet = neuralNet;
             clone.validExpression = validExpression;
             clone.param1 = param1;
             clone.param2 = param2;
@@ -37,8 +37,12 @@ import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.gpf.operators.standard.BandMathsOp;
 import org.esa.beam.meris.AlbedoUtils;
 import org.esa.beam.meris.AlbedomapConstants;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.util.ResourceInstaller;
 import org.esa.beam.util.SystemUtils;
+import org.esa.beam.util.math.FastMath;
 import org.esa.beam.util.math.MathUtils;
 
 import java.awt.Color;
@@ -92,6 +96,9 @@ public class CloudProbabilityOp extends MerisBasisOp {
     private Band validLandBand;
 	private Band validOceanBand;
 	private Band landBand;
+    private final ThreadLocal<boolean[]> validLandBuffer = new ThreadLocal<boolean[]>();
+    private final ThreadLocal<boolean[]> validOceanBuffer = new ThreadLocal<boolean[]>();
+    private final ThreadLocal<boolean[]> landBuffer = new ThreadLocal<boolean[]>();
 
     private CloudAlgorithm landAlgo;
     private CloudAlgorithm oceanAlgo;
@@ -110,6 +117,13 @@ public class CloudProbabilityOp extends MerisBasisOp {
     private String validLandExpression = DEFAULT_VALID_LAND_EXP;
     @Parameter
     private String validOceanExpression = DEFAULT_VALID_OCEAN_EXP;
+    @Parameter(description = "If 'true' table based approximations of the exponential function are used.",
+               defaultValue = "false")
+    private boolean fastMath = false;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    private int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 
     private File auxdataTargetDir;
     private Properties configProperties;
@@ -211,6 +225,8 @@ public class CloudProbabilityOp extends MerisBasisOp {
         try {
             landAlgo = new CloudAlgorithm(auxdataTargetDir, configProperties.getProperty("land"));
             oceanAlgo = new CloudAlgorithm(auxdataTargetDir, configProperties.getProperty("ocean"));
+            landAlgo.setFastMath(fastMath);
+            oceanAlgo.setFastMath(fastMath);
         } catch (IOException e) {
             throw new OperatorException("Could not load auxdata", e);
         }
@@ -279,28 +295,41 @@ public class CloudProbabilityOp extends MerisBasisOp {
 
         try {
         	//sources
-        	Tile[] radiance = new Tile[radianceBands.length];
+        	final int size = rectangle.width * rectangle.height;
+        	double[][] radiance = new double[radianceBands.length][];
             for (int i1 = 0; i1 < radianceBands.length; i1++) {
-			    radiance[i1] = getSourceTile(radianceBands[i1], rectangle);
+			    radiance[i1] = TileAccessor.getSamplesDouble(getSourceTile(radianceBands[i1], rectangle));
 			}
 			
-            Tile detector = getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle);
-            Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), rectangle);
-            Tile saa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), rectangle);
-            Tile vza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), rectangle);
-            Tile vaa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), rectangle);
-            Tile pressure = getSourceTile(l1bProduct.getTiePointGrid("atm_press"), rectangle);
-            Tile altitude = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle);
+            int[] detector = TileAccessor.getSamplesInt(
+                    getSourceTile(l1bProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle));
+            final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(l1bProduct, rectangle,
+                                                                                           geometryCacheCapacity);
+            final float[] saa = geometry.getSunAzimuth();
+            final float[] vaa = geometry.getViewAzimuth();
+            final double[] mus = geometry.getMus();
+            final double[] muv = geometry.getMuv();
+            final double[] sinv = geometry.getSinv();
+            float[] pressure = TileAccessor.getSamplesFloat(getSourceTile(l1bProduct.getTiePointGrid("atm_press"), rectangle));
+            float[] altitude = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_DEM_ALTITUDE_DS_NAME), rectangle));
 			
-            Tile isValidLand = getSourceTile(validLandBand, rectangle);
-            Tile isValidOcean = getSourceTile(validOceanBand, rectangle);
-            Tile isLand = getSourceTile(landBand, rectangle);
+            boolean[] isValidLand = TileAccessor.getSamplesBoolean(getSourceTile(validLandBand, rectangle),
+                                                                   validLandBuffer.get());
+            validLandBuffer.set(isValidLand);
+            boolean[] isValidOcean = TileAccessor.getSamplesBoolean(getSourceTile(validOceanBand, rectangle),
+                                                                    validOceanBuffer.get());
+            validOceanBuffer.set(isValidOcean);
+            boolean[] isLand = TileAccessor.getSamplesBoolean(getSourceTile(landBand, rectangle), landBuffer.get());
+            landBuffer.set(isLand);
 			
 			//targets
             Tile cloudTile = targetTiles.get(cloudBand);
             Tile flagTile = targetTiles.get(cloudFlagBand);
-            CloudAlgorithm cloneLandAlgo = landAlgo.clone();
-            CloudAlgorithm cloneOceanAlgo = oceanAlgo.clone();
+            double[] cloud = new double[size];
+            int[] flag = new int[size];
+            final double[] landScratch = landAlgo.createScratch();
+            final double[] oceanScratch = oceanAlgo.createScratch();
 
             final double[] cloudIn = new double[15];
             int i = 0;
@@ -309,67 +338,69 @@ public class CloudProbabilityOp extends MerisBasisOp {
 					if (pm.isCanceled()) {
 						break;
 					}
-					flagTile.setSample(x, y, 0);
-					if (!isValidLand.getSampleBoolean(x, y) && !isValidOcean.getSampleBoolean(x, y)) {
-						cloudTile.setSample(x, y, -1);
+					flag[i] = 0;
+					if (!isValidLand[i] && !isValidOcean[i]) {
+						cloud[i] = -1;
 					} else {
+						final int geometryIndex = geometry.getIndex(x, y);
 						final double aziDiff = AlbedoUtils
-								.computeAzimuthDifference(vaa.getSampleFloat(x, y), saa.getSampleFloat(x, y))
+								.computeAzimuthDifference(vaa[geometryIndex], saa[geometryIndex])
 								* MathUtils.DTOR;
-						final double szaCos = Math.cos(sza.getSampleFloat(x, y) * MathUtils.DTOR);
-						cloudIn[0] = calculateI(radiance[0].getSampleDouble(x, y),
+						final double szaCos = mus[geometryIndex];
+						cloudIn[0] = calculateI(radiance[0][i],
 								radianceBands[0].getSolarFlux(), szaCos);
-						cloudIn[1] = calculateI(radiance[1].getSampleDouble(x, y),
+						cloudIn[1] = calculateI(radiance[1][i],
 								radianceBands[1].getSolarFlux(), szaCos);
-						cloudIn[2] = calculateI(radiance[2].getSampleDouble(x, y),
+						cloudIn[2] = calculateI(radiance[2][i],
 								radianceBands[2].getSolarFlux(), szaCos);
-						cloudIn[3] = calculateI(radiance[3].getSampleDouble(x, y),
+						cloudIn[3] = calculateI(radiance[3][i],
 								radianceBands[3].getSolarFlux(), szaCos);
-						cloudIn[4] = calculateI(radiance[4].getSampleDouble(x, y),
+						cloudIn[4] = calculateI(radiance[4][i],
 								radianceBands[4].getSolarFlux(), szaCos);
-						cloudIn[5] = calculateI(radiance[5].getSampleDouble(x, y),
+						cloudIn[5] = calculateI(radiance[5][i],
 								radianceBands[5].getSolarFlux(), szaCos);
-						cloudIn[6] = calculateI(radiance[8].getSampleDouble(x, y),
+						cloudIn[6] = calculateI(radiance[8][i],
 								radianceBands[8].getSolarFlux(), szaCos);
-						cloudIn[7] = calculateI(radiance[9].getSampleDouble(x, y),
+						cloudIn[7] = calculateI(radiance[9][i],
 								radianceBands[9].getSolarFlux(), szaCos);
-						cloudIn[8] = calculateI(radiance[12].getSampleDouble(x, y),
+						cloudIn[8] = calculateI(radiance[12][i],
 								radianceBands[12].getSolarFlux(), szaCos);
-						cloudIn[9] = (radiance[10].getSampleDouble(x, y) * radianceBands[9]
+						cloudIn[9] = (radiance[10][i] * radianceBands[9]
 								.getSolarFlux())
-								/ (radiance[9].getSampleDouble(x, y) * radianceBands[10]
+								/ (radiance[9][i] * radianceBands[10]
 										.getSolarFlux());
-						cloudIn[10] = altitudeCorrectedPressure(pressure.getSampleFloat(x, y),
-								altitude.getSampleFloat(x, y), isLand.getSampleBoolean(x, y));
-						cloudIn[11] = centralWavelenth[detector.getSampleInt(x, y)]; // central-wavelength
+						cloudIn[10] = altitudeCorrectedPressure(pressure[i],
+								altitude[i], isLand[i]);
+						cloudIn[11] = centralWavelenth[detector[i]]; // central-wavelength
 																		// channel
 																		// 11
 						cloudIn[12] = szaCos;
-						final double vzaRad = vza.getSampleFloat(x, y) * MathUtils.DTOR;
-						cloudIn[13] = Math.cos(vzaRad);
-						cloudIn[14] = Math.cos(aziDiff) * Math.sin(vzaRad);
+						cloudIn[13] = muv[geometryIndex];
+						cloudIn[14] = Math.cos(aziDiff) * sinv[geometryIndex];
 
 						double cloudProbability = 0;
-						if (isValidLand.getSampleBoolean(x, y)) {
-							cloudProbability = cloneLandAlgo.computeCloudProbability(cloudIn);
-						} else if (isValidOcean.getSampleBoolean(x, y)) {
-							cloudProbability = cloneOceanAlgo.computeCloudProbability(cloudIn);
+						if (isValidLand[i]) {
+							cloudProbability = landAlgo.computeCloudProbability(cloudIn, landScratch);
+						} else if (isValidOcean[i]) {
+							cloudProbability = oceanAlgo.computeCloudProbability(cloudIn, oceanScratch);
 						}
 
 						if (cloudProbability > 0.8) {
-							flagTile.setSample(x, y, FLAG_CLOUDY);
+							flag[i] = FLAG_CLOUDY;
 						} else if (cloudProbability < 0.2) {
-							flagTile.setSample(x, y, FLAG_CLOUDFREE);
+							flag[i] = FLAG_CLOUDFREE;
 						} else if (cloudProbability >= 0.2
 								&& cloudProbability <= 0.8) {
-							flagTile.setSample(x, y, FLAG_UNCERTAIN);
+							flag[i] = FLAG_UNCERTAIN;
 						}
-						cloudTile.setSample(x, y, cloudProbability);
+						cloud[i] = cloudProbability;
 					}
 					i++;
 				}
 				pm.worked(1);
 			}
+            cloudTile.setSamples(cloud);
+            flagTile.setSamples(flag);
         } finally {
             pm.done();
         }
@@ -384,7 +415,8 @@ public class CloudProbabilityOp extends MerisBasisOp {
         if (isLandPixel) {
             // ECMWF pressure is only corrected for positive altitudes and only
 			// for land pixels */
-            double f = Math.exp(-Math.max(0.0, alt) / pressScaleHeight);
+            final double exponent = -Math.max(0.0, alt) / pressScaleHeight;
+            double f = fastMath ? FastMath.exp(exponent) : Math.exp(exponent);
             correctedPressure = press * f;
         } else {
             correctedPressure = press;
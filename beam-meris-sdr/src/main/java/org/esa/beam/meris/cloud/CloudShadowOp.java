@@ -32,6 +32,7 @@ import org.esa.beam.framework.gpf.annotations.Parameter;
 import org.esa.beam.framework.gpf.annotations.SourceProduct;
 import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
+import org.esa.beam.meris.gpf.TileAccessor;
 import org.esa.beam.util.ProductUtils;
 import org.esa.beam.util.RectangleExtender;
 import org.esa.beam.util.math.MathUtils;
@@ -92,31 +93,39 @@ public class CloudShadowOp extends MerisBasisOp {
         Rectangle sourceRectangle = rectCalculator.extend(targetRectangle);
         pm.beginTask("Processing frame...", sourceRectangle.height);
         try {
-            Tile szaTile = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), sourceRectangle);
-            Tile saaTile = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), sourceRectangle);
-            Tile vzaTile = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), sourceRectangle);
-            Tile vaaTile = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), sourceRectangle);
-            Tile cloudTile = getSourceTile(cloudProduct.getBand(CombinedCloudOp.FLAG_BAND_NAME), sourceRectangle);
-            Tile ctpTile = getSourceTile(ctpProduct.getBand("cloud_top_press"), sourceRectangle);
+            float[] szaTile = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), sourceRectangle));
+            float[] saaTile = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), sourceRectangle));
+            float[] vzaTile = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), sourceRectangle));
+            float[] vaaTile = TileAccessor.getSamplesFloat(
+                    getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), sourceRectangle));
+            Tile cloudSourceTile = getSourceTile(cloudProduct.getBand(CombinedCloudOp.FLAG_BAND_NAME), sourceRectangle);
+            int[] cloudTile = TileAccessor.getSamplesInt(cloudSourceTile);
+            float[] ctpTile = TileAccessor.getSamplesFloat(getSourceTile(ctpProduct.getBand("cloud_top_press"), sourceRectangle));
             Tile altTile = getSourceTile(altitudeRDN, sourceRectangle);
 
+            int[] targetFlags = new int[targetRectangle.width * targetRectangle.height];
+            int targetIndex = 0;
             for (int y = targetRectangle.y; y < targetRectangle.y + targetRectangle.height; y++) {
                 for (int x = targetRectangle.x; x < targetRectangle.x + targetRectangle.width; x++) {
-                    targetTile.setSample(x, y, cloudTile.getSampleInt(x, y));
+                    targetFlags[targetIndex++] = cloudTile[TileAccessor.getIndex(cloudSourceTile, x, y)];
                 }
             }
 
+            int i = 0;
             for (int y = sourceRectangle.y; y < sourceRectangle.y + sourceRectangle.height; y++) {
-                for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++) {
-                    if ((cloudTile.getSampleInt(x, y) & CombinedCloudOp.FLAG_CLOUD) != 0) {
-                        final float sza = szaTile.getSampleFloat(x, y) * MathUtils.DTOR_F;
-                        final float saa = saaTile.getSampleFloat(x, y) * MathUtils.DTOR_F;
-                        final float vza = vzaTile.getSampleFloat(x, y) * MathUtils.DTOR_F;
-                        final float vaa = vaaTile.getSampleFloat(x, y) * MathUtils.DTOR_F;
+                for (int x = sourceRectangle.x; x < sourceRectangle.x + sourceRectangle.width; x++, i++) {
+                    if ((cloudTile[i] & CombinedCloudOp.FLAG_CLOUD) != 0) {
+                        final float sza = szaTile[i] * MathUtils.DTOR_F;
+                        final float saa = saaTile[i] * MathUtils.DTOR_F;
+                        final float vza = vzaTile[i] * MathUtils.DTOR_F;
+                        final float vaa = vaaTile[i] * MathUtils.DTOR_F;
 
                         PixelPos pixelPos = new PixelPos(x, y);
                         final GeoPos geoPos = geoCoding.getGeoPos(pixelPos, null);
-                        float ctp = ctpTile.getSampleFloat(x, y);
+                        float ctp = ctpTile[i];
                         if (ctp > 0) {
                             float cloudAlt = computeHeightFromPressure(ctp);
                             GeoPos shadowPos = getCloudShadow2(altTile, sza, saa, vza, vaa, cloudAlt, geoPos);
@@ -126,10 +135,10 @@ public class CloudShadowOp extends MerisBasisOp {
                                 if (targetRectangle.contains(pixelPos)) {
                                     final int pixelX = MathUtils.floorInt(pixelPos.x);
                                     final int pixelY = MathUtils.floorInt(pixelPos.y);
-                                    int flagValue = cloudTile.getSampleInt(pixelX, pixelY);
+                                    int flagValue = cloudTile[TileAccessor.getIndex(cloudSourceTile, pixelX, pixelY)];
                                     if ((flagValue & CombinedCloudOp.FLAG_CLOUD_SHADOW) == 0) {
                                         flagValue += CombinedCloudOp.FLAG_CLOUD_SHADOW;
-                                        targetTile.setSample(pixelX, pixelY, flagValue);
+                                        targetFlags[TileAccessor.getIndex(targetTile, pixelX, pixelY)] = flagValue;
                                     }
                                 }
                             }
@@ -138,6 +147,7 @@ public class CloudShadowOp extends MerisBasisOp {
                 }
                 pm.worked(1);
             }
+            targetTile.setSamples(targetFlags);
         } finally {
             pm.done();
         }
@@ -18,16 +18,12 @@ package org.esa.beam.meris.cloud;
 
 import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
-import com.bc.jnn.Jnn;
-import com.bc.jnn.JnnException;
-import com.bc.jnn.JnnNet;
 import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.GeoPos;
 import org.esa.beam.framework.datamodel.PixelPos;
 import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
-import org.esa.beam.framework.datamodel.RasterDataNode;
 import org.esa.beam.framework.gpf.OperatorException;
 import org.esa.beam.framework.gpf.OperatorSpi;
 import org.esa.beam.framework.gpf.Tile;
@@ -41,6 +37,9 @@ import org.esa.beam.meris.AlbedomapConstants;
 import org.esa.beam.meris.l2auxdata.Constants;
 import org.esa.beam.meris.l2auxdata.L2AuxData;
 import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
 import org.esa.beam.util.ResourceInstaller;
 import org.esa.beam.util.SystemUtils;
 import org.esa.beam.util.math.FractIndex;
@@ -50,12 +49,12 @@ import org.esa.beam.util.math.MathUtils;
 import java.awt.Rectangle;
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.Calendar;
+import java.util.EnumSet;
 
 /**
  * Created by marcoz.
@@ -91,17 +90,17 @@ public class CloudTopPressureOp extends MerisBasisOp {
     private Product targetProduct;
     @Parameter(description = "If 'true' the algorithm will apply straylight correction.", defaultValue = "false")
     private boolean straylightCorr = false;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    private int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 
     private L2AuxData auxData;
     private L2CloudAuxData cloudAuxData;
-    private ThreadLocal<JnnNet> waterNet;
-    private ThreadLocal<JnnNet> landNet;
+    private MultiLayerPerceptron waterNet;
+    private MultiLayerPerceptron landNet;
 
     private Band invalidBand;
-    private RasterDataNode szaNode;
-    private RasterDataNode saaNode;
-    private RasterDataNode vzaNode;
-    private RasterDataNode vaaNode;
 
     @Override
     public void initialize() throws OperatorException {
@@ -120,15 +119,9 @@ public class CloudTopPressureOp extends MerisBasisOp {
             throw new OperatorException("Failed to load straylight correction auxdata:\n" + e.getMessage());
         }
         createTargetProduct();
-
-        szaNode = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME);
-        saaNode = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME);
-        vzaNode = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME);
-        vaaNode = sourceProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME);
-
     }
 
-    private void loadNeuralNet() throws IOException, JnnException {
+    private void loadNeuralNet() throws IOException {
         String auxdataSrcPath = "auxdata/ctp";
         final String auxdataDestPath = ".beam/" + AlbedomapConstants.SYMBOLIC_NAME + "/" + auxdataSrcPath;
         File auxdataTargetDir = new File(SystemUtils.getUserHomeDir(), auxdataDestPath);
@@ -138,20 +131,8 @@ public class CloudTopPressureOp extends MerisBasisOp {
         resourceInstaller.install(".*", new NullProgressMonitor());
 
 //        File nnFile = new File(auxdataTargetDir, "ctp.nna");
-        final JnnNet neuralNetLand = readNeuralNet(new File(auxdataTargetDir, "ctp_NN_1.nna"));
-        final JnnNet neuralNetWater = readNeuralNet(new File(auxdataTargetDir, "ctp_NN_2.nna"));
-        landNet = new ThreadLocal<JnnNet>() {
-            @Override
-            protected JnnNet initialValue() {
-                return neuralNetLand.clone();
-            }
-        };
-        waterNet = new ThreadLocal<JnnNet>() {
-            @Override
-            protected JnnNet initialValue() {
-                return neuralNetWater.clone();
-            }
-        };
+        landNet = MultiLayerPerceptron.read(new File(auxdataTargetDir, "ctp_NN_1.nna"));
+        waterNet = MultiLayerPerceptron.read(new File(auxdataTargetDir, "ctp_NN_2.nna"));
     }
 
 
@@ -170,7 +151,7 @@ public class CloudTopPressureOp extends MerisBasisOp {
     private void initAuxData() throws OperatorException {
         try {
             L2AuxDataProvider auxdataProvider = L2AuxDataProvider.getInstance();
-            auxData = auxdataProvider.getAuxdata(sourceProduct);
+            auxData = auxdataProvider.getAuxdata(sourceProduct, EnumSet.of(L2AuxData.Section.CONFIGURATION));
             int month = sourceProduct.getStartTime().getAsCalendar().get(Calendar.MONTH);
             cloudAuxData = new L2CloudAuxData(auxdataProvider.getDpmConfig(), month);
         } catch (Exception e) {
@@ -185,10 +166,13 @@ public class CloudTopPressureOp extends MerisBasisOp {
 
         Tile detector = getSourceTile(sourceProduct.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME), rectangle);
 
-        Tile sza = getSourceTile(szaNode, rectangle);
-        Tile saa = getSourceTile(saaNode, rectangle);
-        Tile vza = getSourceTile(vzaNode, rectangle);
-        Tile vaa = getSourceTile(vaaNode, rectangle);
+        final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(sourceProduct, rectangle,
+                                                                                       geometryCacheCapacity);
+        final float[] saa = geometry.getSunAzimuth();
+        final float[] vaa = geometry.getViewAzimuth();
+        final double[] mus = geometry.getMus();
+        final double[] muv = geometry.getMuv();
+        final double[] sinv = geometry.getSinv();
 
 
         Tile toar10 = getSourceTile(sourceProduct.getBand("radiance_10"), rectangle);
@@ -200,10 +184,8 @@ public class CloudTopPressureOp extends MerisBasisOp {
 
         final double[] nnInWater = new double[6];
         final double[] nnInLand = new double[7];
-        final double[] nnOut = new double[1];
-
-        JnnNet nnLand = landNet.get();
-        JnnNet nnWater = waterNet.get();
+        final double[] landScratch = landNet.createScratch();
+        final double[] waterScratch = waterNet.createScratch();
 
         for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
             checkForCancellation();
@@ -212,8 +194,7 @@ public class CloudTopPressureOp extends MerisBasisOp {
                     targetTile.setSample(x, y, 0);
                 } else {
 
-                    double szaRad = sza.getSampleFloat(x, y) * MathUtils.DTOR;
-                    double vzaRad = vza.getSampleFloat(x, y) * MathUtils.DTOR;
+                    final int geometryIndex = geometry.getIndex(x, y);
 
                     double stray = 0.0;
                     double lambda = auxData.central_wavelength[BB760][detector.getSampleInt(x, y)];
@@ -230,25 +211,24 @@ public class CloudTopPressureOp extends MerisBasisOp {
                         nnInLand[0] = computeSurfAlbedo(geoPos.getLat(), geoPos.getLon()); // albedo
                         nnInLand[1] = toar10.getSampleDouble(x, y);
                         nnInLand[2] = toar11XY_corrected / toar10.getSampleDouble(x, y);
-                        nnInLand[3] = Math.cos(szaRad);
-                        nnInLand[4] = Math.cos(vzaRad);
-                        nnInLand[5] = Math.sin(vzaRad) *
-                                      Math.cos(MathUtils.DTOR * (vaa.getSampleFloat(x, y) - saa.getSampleFloat(x, y)));
+                        nnInLand[3] = mus[geometryIndex];
+                        nnInLand[4] = muv[geometryIndex];
+                        nnInLand[5] = sinv[geometryIndex] *
+                                      Math.cos(MathUtils.DTOR * (vaa[geometryIndex] - saa[geometryIndex]));
                         nnInLand[6] = lambda;
 
-                        nnLand.process(nnInLand, nnOut);
+                        targetTile.setSample(x, y, landNet.process(nnInLand, landScratch));
                     } else {
                         nnInWater[0] = toar10.getSampleDouble(x, y);
                         nnInWater[1] = toar11XY_corrected / toar10.getSampleDouble(x, y);
-                        nnInWater[2] = Math.cos(szaRad);
-                        nnInWater[3] = Math.cos(vzaRad);
-                        nnInWater[4] = Math.sin(vzaRad) *
-                                       Math.cos(MathUtils.DTOR * (vaa.getSampleFloat(x, y) - saa.getSampleFloat(x, y)));
+                        nnInWater[2] = mus[geometryIndex];
+                        nnInWater[3] = muv[geometryIndex];
+                        nnInWater[4] = sinv[geometryIndex] *
+                                       Math.cos(MathUtils.DTOR * (vaa[geometryIndex] - saa[geometryIndex]));
                         nnInWater[5] = lambda;
 
-                        nnWater.process(nnInWater, nnOut);
+                        targetTile.setSample(x, y, waterNet.process(nnInWater, waterScratch));
                     }
-                    targetTile.setSample(x, y, nnOut[0]);
                 }
             }
         }
@@ -268,7 +248,7 @@ public class CloudTopPressureOp extends MerisBasisOp {
 
         /* DPM #2.1.5-1 */
         /* 	*pfSA = Surfalb.LUT[index[0]][index[1]]; v4.3- align with DPM */
-        return Interp.interpolate(cloudAuxData.surfAlb.getJavaArray(), SaIndex);
+        return cloudAuxData.surfAlb.interpolate(SaIndex);
     }
 
     /*
@@ -299,16 +279,6 @@ public class CloudTopPressureOp extends MerisBasisOp {
         }
     }
 
-    private JnnNet readNeuralNet(File nnFile) throws IOException, JnnException {
-        final InputStreamReader reader1 = new FileReader(nnFile);
-        try {
-            Jnn.setOptimizing(true);
-            return Jnn.readNna(reader1);
-        } finally {
-            reader1.close();
-        }
-    }
-
     public static class Spi extends OperatorSpi {
 
         public Spi() {
@@ -0,0 +1,314 @@
+package org.esa.beam.meris.nn;
+
+/**
+ * A fast approximation of a {@link MultiLayerPerceptron} having a single output, intended for applications which
+ * evaluate the neural net many times with only a few inputs varying while the others are shared, e.g. the SDR
+ * neural net which is evaluated for all bands of a pixel with the same geometry and aerosol inputs.
+ * <p/>
+ * The approximation relies on two techniques:
+ * <ol>
+ * <li>The leading layers up to the first sigmoid layer are affine functions of the inputs. Their combined
+ * contribution of the shared inputs to the activation of the first sigmoid layer is computed once by
+ * {@link #computeSharedPart(double[], int, double[])}, so that {@link #process(double[], int, double[])} only
+ * accounts for the varying inputs. This part is exact up to rounding.</li>
+ * <li>The sigmoid function is interpolated linearly in a table whose resolution is derived from the requested
+ * maximum error. The table error is propagated through the network using the absolute weights and the
+ * Lipschitz constant of the sigmoid, which yields a guaranteed bound of the output deviation from the exact
+ * neural net, see {@link #getErrorBound()}.</li>
+ * </ol>
+ * Instances are immutable and can be shared by multiple threads, each one using its own scratch buffer.
+ */
+public final class ApproximatePerceptron {
+
+    /**
+     * The maximum of the absolute second derivative of the sigmoid function, 1 / (6 * sqrt(3)).
+     */
+    private static final double MAX_SIGMOID_CURVATURE = 0.0962250448649376;
+    private static final int MAX_TABLE_SIZE = 1 << 22;
+
+    private final MultiLayerPerceptron perceptron;
+    private final int inputCount;
+    private final int[] varyingInputs;
+    private final int[] sharedInputs;
+    /**
+     * The index of the first sigmoid layer.
+     */
+    private final int firstSigmoidLayer;
+    /**
+     * The activation of the first sigmoid layer as an affine function of the inputs: a row-major matrix with one
+     * row per unit and the offset vector.
+     */
+    private final double[] activationMatrix;
+    private final double[] activationOffsets;
+    private final double[] sigmoidTable;
+    private final double sigmoidMin;
+    private final double sigmoidInvStep;
+    private final int sigmoidLast;
+    private final double errorBound;
+
+    private ApproximatePerceptron(MultiLayerPerceptron perceptron, int[] varyingInputs, double maxError) {
+        this.perceptron = perceptron;
+        this.inputCount = perceptron.getInputCount();
+        this.varyingInputs = varyingInputs.clone();
+        final boolean[] varying = new boolean[inputCount];
+        for (int index : varyingInputs) {
+            if (index < 0 || index >= inputCount) {
+                throw new IllegalArgumentException("invalid input index " + index);
+            }
+            varying[index] = true;
+        }
+        sharedInputs = new int[inputCount - this.varyingInputs.length];
+        for (int i = 0, j = 0; i < inputCount; i++) {
+            if (!varying[i]) {
+                sharedInputs[j++] = i;
+            }
+        }
+
+        int f = 0;
+        while (f < perceptron.unitCounts.length && !perceptron.sigmoid[f]) {
+            f++;
+        }
+        if (f == 0 || f == perceptron.unitCounts.length) {
+            throw new IllegalArgumentException("neural net must have a sigmoid layer preceded by affine layers");
+        }
+        firstSigmoidLayer = f;
+
+        // collapse the affine layers: y = A * x + b
+        double[] a = new double[inputCount * inputCount];
+        double[] b = new double[inputCount];
+        for (int u = 0; u < inputCount; u++) {
+            final double os = perceptron.outScales[0][u];
+            a[u * inputCount + u] = os * perceptron.inpScales[0][u];
+            b[u] = os * perceptron.inpBiases[0][u] + perceptron.outBiases[0][u];
+        }
+        for (int l = 1; l <= f; l++) {
+            final int unitCount = perceptron.unitCounts[l];
+            final int srcCount = perceptron.unitCounts[l - 1];
+            final double[] w = perceptron.weights[l];
+            final double[] nextA = new double[unitCount * inputCount];
+            final double[] nextB = new double[unitCount];
+            for (int u = 0; u < unitCount; u++) {
+                // scale and offset mapping the weighted sum to the output, or to the sigmoid argument
+                final double scale;
+                final double offset;
+                final double is = perceptron.inpScales[l][u];
+                final double ib = perceptron.inpBiases[l][u];
+                if (l == f) {
+                    final double slope = perceptron.actSlopes[l];
+                    scale = slope * is;
+                    offset = slope * (ib - perceptron.actThresholds[l]);
+                } else {
+                    final double os = perceptron.outScales[l][u];
+                    scale = os * is;
+                    offset = os * ib + perceptron.outBiases[l][u];
+                }
+                double sum = 0.0;
+                for (int k = 0; k < srcCount; k++) {
+                    final double wk = w[u * srcCount + k];
+                    sum += wk * b[k];
+                    for (int i = 0; i < inputCount; i++) {
+                        nextA[u * inputCount + i] += scale * wk * a[k * inputCount + i];
+                    }
+                }
+                nextB[u] = scale * sum + offset;
+            }
+            a = nextA;
+            b = nextB;
+        }
+        activationMatrix = a;
+        activationOffsets = b;
+
+        final double errorFactor = computeErrorFactor();
+        final double tableError = maxError / errorFactor;
+        // outside of [-range, range] the sigmoid is approximated by 0 and 1 with an error below exp(-range)
+        final double range = Math.max(1.0, Math.log(1.0 / tableError));
+        final double maxStep = Math.sqrt(8.0 * tableError / MAX_SIGMOID_CURVATURE);
+        final double tableSize = Math.ceil(2.0 * range / maxStep) + 1;
+        if (!(tableSize <= MAX_TABLE_SIZE)) {
+            throw new IllegalArgumentException("maxError too small: " + maxError);
+        }
+        sigmoidLast = (int) tableSize - 1;
+        sigmoidTable = new double[sigmoidLast + 1];
+        final double step = 2.0 * range / sigmoidLast;
+        for (int i = 0; i <= sigmoidLast; i++) {
+            sigmoidTable[i] = 1.0 / (1.0 + Math.exp(-(-range + i * step)));
+        }
+        sigmoidMin = -range;
+        sigmoidInvStep = 1.0 / step;
+        errorBound = tableError * errorFactor;
+    }
+
+    /**
+     * Creates an approximation of the given neural net.
+     *
+     * @param perceptron    the neural net, must have a single output and a sigmoid layer preceded by affine layers
+     * @param varyingInputs the indexes of the inputs which vary between calls of
+     *                      {@link #process(double[], int, double[])} with the same shared part
+     * @param maxError      the maximum absolute deviation of the output from the exact neural net
+     * @return the approximation
+     * @throws IllegalArgumentException if the neural net is not supported or <code>maxError</code> is too small
+     */
+    public static ApproximatePerceptron create(MultiLayerPerceptron perceptron, int[] varyingInputs,
+                                               double maxError) {
+        if (perceptron.getOutputCount() != 1) {
+            throw new IllegalArgumentException("neural net must have a single output");
+        }
+        if (!(maxError > 0.0)) {
+            throw new IllegalArgumentException("maxError must be positive");
+        }
+        return new ApproximatePerceptron(perceptron, varyingInputs, maxError);
+    }
+
+    /**
+     * @return the exact neural net
+     */
+    public MultiLayerPerceptron getPerceptron() {
+        return perceptron;
+    }
+
+    /**
+     * @return the guaranteed maximum absolute deviation of the output from the exact neural net, not accounting
+     *         for rounding errors
+     */
+    public double getErrorBound() {
+        return errorBound;
+    }
+
+    /**
+     * @return the minimum number of elements of the scratch buffer
+     */
+    public int getScratchSize() {
+        return perceptron.unitCounts[firstSigmoidLayer] + 2 * perceptron.maxUnitCount;
+    }
+
+    /**
+     * Creates a scratch buffer. A buffer must not be used by multiple threads at the same time.
+     *
+     * @return a new scratch buffer
+     */
+    public double[] createScratch() {
+        return new double[getScratchSize()];
+    }
+
+    /**
+     * Computes the contribution of the shared inputs and stores it in the scratch buffer.
+     *
+     * @param input   the input vector, the varying inputs are ignored
+     * @param offset  the offset of the input vector in <code>input</code>
+     * @param scratch the scratch buffer
+     */
+    public void computeSharedPart(double[] input, int offset, double[] scratch) {
+        final int unitCount = perceptron.unitCounts[firstSigmoidLayer];
+        for (int u = 0; u < unitCount; u++) {
+            final int row = u * inputCount;
+            double sum = activationOffsets[u];
+            for (int index : sharedInputs) {
+                sum += activationMatrix[row + index] * input[offset + index];
+            }
+            scratch[u] = sum;
+        }
+    }
+
+    /**
+     * Evaluates the neural net approximately using the shared part computed by the last call of
+     * {@link #computeSharedPart(double[], int, double[])} with the same scratch buffer.
+     *
+     * @param input   the input vector, only the varying inputs are used
+     * @param offset  the offset of the input vector in <code>input</code>
+     * @param scratch the scratch buffer
+     * @return the output of the neural net
+     */
+    public double process(double[] input, int offset, double[] scratch) {
+        final int sharedSize = perceptron.unitCounts[firstSigmoidLayer];
+        final int maxUnitCount = perceptron.maxUnitCount;
+        int srcOffset = sharedSize;
+        int dstOffset = sharedSize + maxUnitCount;
+
+        final double[] os0 = perceptron.outScales[firstSigmoidLayer];
+        final double[] ob0 = perceptron.outBiases[firstSigmoidLayer];
+        for (int u = 0; u < sharedSize; u++) {
+            final int row = u * inputCount;
+            double sum = scratch[u];
+            for (int index : varyingInputs) {
+                sum += activationMatrix[row + index] * input[offset + index];
+            }
+            scratch[srcOffset + u] = os0[u] * sigmoid(sum) + ob0[u];
+        }
+
+        final int layerCount = perceptron.unitCounts.length;
+        for (int l = firstSigmoidLayer + 1; l < layerCount; l++) {
+            final int unitCount = perceptron.unitCounts[l];
+            final int srcCount = perceptron.unitCounts[l - 1];
+            final double[] w = perceptron.weights[l];
+            final double[] inpScale = perceptron.inpScales[l];
+            final double[] inpBias = perceptron.inpBiases[l];
+            final double[] outScale = perceptron.outScales[l];
+            final double[] outBias = perceptron.outBiases[l];
+            final boolean isSigmoid = perceptron.sigmoid[l];
+            final double slope = perceptron.actSlopes[l];
+            final double threshold = perceptron.actThresholds[l];
+            for (int u = 0; u < unitCount; u++) {
+                final int row = u * srcCount;
+                double sum = 0.0;
+                for (int k = 0; k < srcCount; k++) {
+                    sum += w[row + k] * scratch[srcOffset + k];
+                }
+                double value = inpScale[u] * sum + inpBias[u];
+                if (isSigmoid) {
+                    value = sigmoid(slope * (value - threshold));
+                }
+                scratch[dstOffset + u] = outScale[u] * value + outBias[u];
+            }
+            final int swap = srcOffset;
+            srcOffset = dstOffset;
+            dstOffset = swap;
+        }
+        return scratch[srcOffset];
+    }
+
+    private double sigmoid(double x) {
+        final double position = (x - sigmoidMin) * sigmoidInvStep;
+        if (position >= 0.0 && position < sigmoidLast) {
+            final int i = (int) position;
+            final double t0 = sigmoidTable[i];
+            return t0 + (position - i) * (sigmoidTable[i + 1] - t0);
+        } else if (position < 0.0) {
+            return 0.0;
+        } else if (position >= sigmoidLast) {
+            return 1.0;
+        }
+        // NaN
+        return position;
+    }
+
+    /**
+     * Computes the bound of the output deviation caused by a sigmoid table error of 1.
+     */
+    private double computeErrorFactor() {
+        final int f = firstSigmoidLayer;
+        double[] errors = new double[perceptron.unitCounts[f]];
+        for (int u = 0; u < errors.length; u++) {
+            errors[u] = Math.abs(perceptron.outScales[f][u]);
+        }
+        for (int l = f + 1; l < perceptron.unitCounts.length; l++) {
+            final int unitCount = perceptron.unitCounts[l];
+            final int srcCount = perceptron.unitCounts[l - 1];
+            final double[] w = perceptron.weights[l];
+            final double[] nextErrors = new double[unitCount];
+            for (int u = 0; u < unitCount; u++) {
+                double sum = 0.0;
+                for (int k = 0; k < srcCount; k++) {
+                    sum += Math.abs(w[u * srcCount + k]) * errors[k];
+                }
+                double error = Math.abs(perceptron.inpScales[l][u]) * sum;
+                if (perceptron.sigmoid[l]) {
+                    // the sigmoid is Lipschitz continuous with constant 1/4
+                    error = 0.25 * Math.abs(perceptron.actSlopes[l]) * error + 1.0;
+                }
+                nextErrors[u] = Math.abs(perceptron.outScales[l][u]) * error;
+            }
+            errors = nextErrors;
+        }
+        return Math.max(errors[0], Double.MIN_NORMAL);
+    }
+}
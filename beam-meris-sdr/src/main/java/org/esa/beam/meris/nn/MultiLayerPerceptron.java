@@ -0,0 +1,428 @@
+package org.esa.beam.meris.nn;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable multi layer perceptron read from a neural net in the <code>.nna</code> format of the JNN library.
+ * <p/>
+ * In contrast to a <code>JnnNet</code>, an instance keeps no state while processing: intermediate results are
+ * written to a scratch buffer provided by the caller. Hence a single instance can be shared by all threads
+ * evaluating the same neural net, there is no need to clone it per thread or tile.
+ * <p/>
+ * Only the subset of the format used by the MERIS neural nets is supported: fully connected layers with
+ * connections from the preceding layer only, the input function <code>Sum_1</code>, the activation functions
+ * <code>Identity</code> and <code>Sigmoid_1</code> and the output function <code>Linear</code>.
+ */
+public final class MultiLayerPerceptron {
+
+    private static final Pattern SECTION_PATTERN = Pattern.compile(
+            "\\[\\s*(\\w+)\\s*(?:\\(\\s*(\\d+)\\s*(?:,\\s*(\\d+)\\s*)?\\))?\\s*\\]");
+    private static final Pattern CONNECTION_PATTERN = Pattern.compile("C\\s*\\(\\s*\\d+\\s*\\)");
+
+    // the network parameters are package-private for ApproximatePerceptron, they must not be modified
+
+    final int[] unitCounts;
+    final int maxUnitCount;
+    /**
+     * For each layer but the input layer: the weights of the connections from the preceding layer as a
+     * row-major matrix, one row per unit.
+     */
+    final double[][] weights;
+    final double[][] inpScales;
+    final double[][] inpBiases;
+    final double[][] outScales;
+    final double[][] outBiases;
+    final boolean[] sigmoid;
+    final double[] actSlopes;
+    final double[] actThresholds;
+
+    private MultiLayerPerceptron(Layer[] layers) {
+        final int layerCount = layers.length;
+        unitCounts = new int[layerCount];
+        weights = new double[layerCount][];
+        inpScales = new double[layerCount][];
+        inpBiases = new double[layerCount][];
+        outScales = new double[layerCount][];
+        outBiases = new double[layerCount][];
+        sigmoid = new boolean[layerCount];
+        actSlopes = new double[layerCount];
+        actThresholds = new double[layerCount];
+        int max = 0;
+        for (int l = 0; l < layerCount; l++) {
+            final Layer layer = layers[l];
+            unitCounts[l] = layer.unitCount;
+            weights[l] = layer.weights;
+            inpScales[l] = layer.inpScales;
+            inpBiases[l] = layer.inpBiases;
+            outScales[l] = layer.outScales;
+            outBiases[l] = layer.outBiases;
+            sigmoid[l] = layer.sigmoid;
+            actSlopes[l] = layer.actSlope;
+            actThresholds[l] = layer.actThreshold;
+            max = Math.max(max, layer.unitCount);
+        }
+        maxUnitCount = max;
+    }
+
+    /**
+     * Reads a neural net from a file in the <code>.nna</code> format.
+     *
+     * @param file the file
+     * @return the neural net
+     * @throws IOException if an I/O error occurs or the file contains an unsupported neural net
+     */
+    public static MultiLayerPerceptron read(File file) throws IOException {
+        final Reader reader = new FileReader(file);
+        try {
+            return read(reader);
+        } catch (IOException e) {
+            throw new IOException(file + ": " + e.getMessage(), e);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads a neural net in the <code>.nna</code> format. The reader is not closed by this method.
+     *
+     * @param reader the reader
+     * @return the neural net
+     * @throws IOException if an I/O error occurs or the reader provides an unsupported neural net
+     */
+    public static MultiLayerPerceptron read(Reader reader) throws IOException {
+        final Map<String, String> netProperties = new HashMap<String, String>();
+        final Map<Integer, Map<String, String>> layerProperties = new HashMap<Integer, Map<String, String>>();
+        final Map<String, Map<String, String>> unitProperties = new HashMap<String, Map<String, String>>();
+        final Map<String, List<String>> unitConnections = new HashMap<String, List<String>>();
+
+        final BufferedReader bufferedReader = new BufferedReader(reader);
+        Map<String, String> properties = null;
+        List<String> connections = null;
+        int lineNumber = 0;
+        String line;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            final int commentIndex = line.indexOf(';');
+            if (commentIndex >= 0) {
+                line = line.substring(0, commentIndex);
+            }
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            final Matcher sectionMatcher = SECTION_PATTERN.matcher(line);
+            if (sectionMatcher.matches()) {
+                final String section = sectionMatcher.group(1);
+                connections = null;
+                if ("Net".equals(section)) {
+                    properties = netProperties;
+                } else if ("Layer".equals(section) && sectionMatcher.group(2) != null) {
+                    properties = new HashMap<String, String>();
+                    layerProperties.put(Integer.valueOf(sectionMatcher.group(2)), properties);
+                } else if ("Unit".equals(section) && sectionMatcher.group(3) != null) {
+                    final String unitKey = unitKey(Integer.parseInt(sectionMatcher.group(2)),
+                                                   Integer.parseInt(sectionMatcher.group(3)));
+                    properties = new HashMap<String, String>();
+                    connections = new ArrayList<String>();
+                    unitProperties.put(unitKey, properties);
+                    unitConnections.put(unitKey, connections);
+                } else {
+                    throw new IOException("line " + lineNumber + ": unknown section " + line);
+                }
+                continue;
+            }
+            final int assignIndex = line.indexOf('=');
+            if (assignIndex < 0 || properties == null) {
+                throw new IOException("line " + lineNumber + ": syntax error");
+            }
+            final String key = line.substring(0, assignIndex).trim();
+            final String value = line.substring(assignIndex + 1).trim();
+            if (CONNECTION_PATTERN.matcher(key).matches()) {
+                if (connections == null) {
+                    throw new IOException("line " + lineNumber + ": connection outside of a unit");
+                }
+                connections.add(value);
+            } else {
+                properties.put(key, value);
+            }
+        }
+
+        final int layerCount = getInt(netProperties, "NumLayers", -1);
+        if (layerCount < 2) {
+            throw new IOException("invalid number of layers");
+        }
+        if (getInt(netProperties, "InpLayer", 1) != 1 || getInt(netProperties, "OutLayer", layerCount) != layerCount) {
+            throw new IOException("input layer must be the first and output layer the last layer");
+        }
+        final Layer[] layers = new Layer[layerCount];
+        for (int l = 0; l < layerCount; l++) {
+            final Map<String, String> layerProps = layerProperties.get(l + 1);
+            if (layerProps == null) {
+                throw new IOException("missing layer " + (l + 1));
+            }
+            final Layer layer = new Layer(getInt(layerProps, "NumUnits", 0), l > 0 ? layers[l - 1].unitCount : 0);
+            checkFunction(layerProps, "InpFunc", "Sum_1");
+            checkFunction(layerProps, "OutFunc", "Linear");
+            final String actFunc = layerProps.get("ActFunc");
+            if ("Sigmoid_1".equals(actFunc)) {
+                layer.sigmoid = true;
+            } else if (actFunc != null && !"Identity".equals(actFunc)) {
+                throw new IOException("layer " + (l + 1) + ": unsupported activation function " + actFunc);
+            }
+            layer.actSlope = getDouble(layerProps, "ActSlope", 1.0);
+            layer.actThreshold = getDouble(layerProps, "ActThres", 0.0);
+            for (int u = 0; u < layer.unitCount; u++) {
+                final String unitKey = unitKey(l + 1, u + 1);
+                final Map<String, String> unitProps = unitProperties.get(unitKey);
+                if (unitProps == null) {
+                    throw new IOException("missing unit " + unitKey);
+                }
+                layer.inpScales[u] = getDouble(unitProps, "InpScale", 1.0);
+                layer.inpBiases[u] = getDouble(unitProps, "InpBias", 0.0);
+                layer.outScales[u] = getDouble(unitProps, "OutScale", 1.0);
+                layer.outBiases[u] = getDouble(unitProps, "OutBias", 0.0);
+                for (String connection : unitConnections.get(unitKey)) {
+                    layer.addConnection(l + 1, u, connection);
+                }
+            }
+            layers[l] = layer;
+        }
+        return new MultiLayerPerceptron(layers);
+    }
+
+    /**
+     * @return the number of elements of an input vector
+     */
+    public int getInputCount() {
+        return unitCounts[0];
+    }
+
+    /**
+     * @return the number of elements of an output vector
+     */
+    public int getOutputCount() {
+        return unitCounts[unitCounts.length - 1];
+    }
+
+    /**
+     * @return the minimum number of elements of the scratch buffer passed to the <code>process</code> methods
+     */
+    public int getScratchSize() {
+        return getScratchSize(1);
+    }
+
+    /**
+     * @param batchSize the number of input vectors processed at once by
+     *                  {@link #process(double[], double[], int, double[])}
+     * @return the number of elements of a scratch buffer for processing the given number of input vectors at once
+     */
+    public int getScratchSize(int batchSize) {
+        return 2 * maxUnitCount * batchSize;
+    }
+
+    /**
+     * Creates a scratch buffer suitable for the <code>process</code> methods. A buffer must not be used by
+     * multiple threads at the same time.
+     *
+     * @return a new scratch buffer
+     */
+    public double[] createScratch() {
+        return createScratch(1);
+    }
+
+    /**
+     * Creates a scratch buffer suitable for the <code>process</code> methods, which is large enough for
+     * processing the given number of input vectors at once. A buffer must not be used by multiple threads at
+     * the same time.
+     *
+     * @param batchSize the number of input vectors processed at once by
+     *                  {@link #process(double[], double[], int, double[])}
+     * @return a new scratch buffer
+     */
+    public double[] createScratch(int batchSize) {
+        return new double[getScratchSize(batchSize)];
+    }
+
+    /**
+     * Evaluates the neural net for a single input vector.
+     *
+     * @param input   the input vector of at least {@link #getInputCount()} elements
+     * @param output  the output vector receiving {@link #getOutputCount()} elements
+     * @param scratch a scratch buffer of at least {@link #getScratchSize()} elements
+     */
+    public void process(double[] input, double[] output, double[] scratch) {
+        final int offset = process(input, 0, 1, scratch);
+        System.arraycopy(scratch, offset, output, 0, getOutputCount());
+    }
+
+    /**
+     * Evaluates a neural net having a single output for a single input vector.
+     *
+     * @param input   the input vector of at least {@link #getInputCount()} elements
+     * @param scratch a scratch buffer of at least {@link #getScratchSize()} elements
+     * @return the first element of the output vector
+     */
+    public double process(double[] input, double[] scratch) {
+        return scratch[process(input, 0, 1, scratch)];
+    }
+
+    /**
+     * Evaluates the neural net for a batch of input vectors, which are the rows of a row-major matrix. The
+     * vectors are processed layer by layer in blocks, each layer multiplying its weight matrix with the outputs
+     * of the preceding layer for all vectors of a block. The block size is given by the size of the scratch
+     * buffer, see {@link #createScratch(int)}. The results equal those of processing each vector on its own.
+     *
+     * @param inputMatrix  the input vectors, each one of {@link #getInputCount()} elements
+     * @param outputMatrix the output vectors, each one of {@link #getOutputCount()} elements
+     * @param count        the number of input vectors
+     * @param scratch      a scratch buffer of at least {@link #getScratchSize()} elements
+     */
+    public void process(double[] inputMatrix, double[] outputMatrix, int count, double[] scratch) {
+        final int blockSize = scratch.length / getScratchSize();
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("scratch.length < " + getScratchSize());
+        }
+        final int inputCount = getInputCount();
+        final int outputCount = getOutputCount();
+        for (int first = 0; first < count; first += blockSize) {
+            final int vectorCount = Math.min(blockSize, count - first);
+            final int offset = process(inputMatrix, first * inputCount, vectorCount, scratch);
+            System.arraycopy(scratch, offset, outputMatrix, first * outputCount, vectorCount * outputCount);
+        }
+    }
+
+    /**
+     * @return the offset of the output matrix in the scratch buffer
+     */
+    private int process(double[] inputMatrix, int inputOffset, int vectorCount, double[] scratch) {
+        // the outputs of two subsequent layers alternate between the two halves of the scratch buffer,
+        // each one holding a row-major matrix with one row per input vector
+        int srcOffset = 0;
+        int dstOffset = maxUnitCount * vectorCount;
+        for (int l = 0; l < unitCounts.length; l++) {
+            final int unitCount = unitCounts[l];
+            final double[] w = weights[l];
+            final double[] inpScale = inpScales[l];
+            final double[] inpBias = inpBiases[l];
+            final double[] outScale = outScales[l];
+            final double[] outBias = outBiases[l];
+            final boolean sigmoidLayer = sigmoid[l];
+            final double slope = actSlopes[l];
+            final double threshold = actThresholds[l];
+            final int srcCount = l > 0 ? unitCounts[l - 1] : 0;
+            // the weights of a unit are applied to all vectors before moving on to the next unit
+            for (int u = 0; u < unitCount; u++) {
+                final int row = u * srcCount;
+                for (int v = 0; v < vectorCount; v++) {
+                    double sum;
+                    if (l == 0) {
+                        sum = inputMatrix[inputOffset + v * unitCount + u];
+                    } else {
+                        sum = 0.0;
+                        final int src = srcOffset + v * srcCount;
+                        for (int k = 0; k < srcCount; k++) {
+                            sum += w[row + k] * scratch[src + k];
+                        }
+                    }
+                    double value = inpScale[u] * sum + inpBias[u];
+                    if (sigmoidLayer) {
+                        value = 1.0 / (1.0 + Math.exp(-slope * (value - threshold)));
+                    }
+                    scratch[dstOffset + v * unitCount + u] = outScale[u] * value + outBias[u];
+                }
+            }
+            final int swap = srcOffset;
+            srcOffset = dstOffset;
+            dstOffset = swap;
+        }
+        return srcOffset;
+    }
+
+    private static String unitKey(int layer, int unit) {
+        return layer + "," + unit;
+    }
+
+    private static void checkFunction(Map<String, String> properties, String key, String expected) throws IOException {
+        final String value = properties.get(key);
+        if (value != null && !expected.equals(value)) {
+            throw new IOException("unsupported function " + key + " = " + value);
+        }
+    }
+
+    private static int getInt(Map<String, String> properties, String key, int defaultValue) throws IOException {
+        final String value = properties.get(key);
+        try {
+            return value != null ? Integer.parseInt(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid value " + key + " = " + value);
+        }
+    }
+
+    private static double getDouble(Map<String, String> properties, String key, double defaultValue) throws IOException {
+        final String value = properties.get(key);
+        try {
+            return value != null ? Double.parseDouble(value) : defaultValue;
+        } catch (NumberFormatException e) {
+            throw new IOException("invalid value " + key + " = " + value);
+        }
+    }
+
+    private static final class Layer {
+
+        final int unitCount;
+        final int srcCount;
+        final double[] weights;
+        final double[] inpScales;
+        final double[] inpBiases;
+        final double[] outScales;
+        final double[] outBiases;
+        boolean sigmoid;
+        double actSlope;
+        double actThreshold;
+
+        Layer(int unitCount, int srcCount) throws IOException {
+            if (unitCount <= 0) {
+                throw new IOException("invalid number of units");
+            }
+            this.unitCount = unitCount;
+            this.srcCount = srcCount;
+            weights = new double[unitCount * srcCount];
+            inpScales = new double[unitCount];
+            inpBiases = new double[unitCount];
+            outScales = new double[unitCount];
+            outBiases = new double[unitCount];
+        }
+
+        void addConnection(int layer, int unitIndex, String connection) throws IOException {
+            final String[] tokens = connection.split(",");
+            if (tokens.length != 3) {
+                throw new IOException("unit " + unitKey(layer, unitIndex + 1) + ": invalid connection " + connection);
+            }
+            final int srcLayer;
+            final int srcUnit;
+            final double weight;
+            try {
+                srcLayer = Integer.parseInt(tokens[0].trim());
+                srcUnit = Integer.parseInt(tokens[1].trim());
+                weight = Double.parseDouble(tokens[2].trim());
+            } catch (NumberFormatException e) {
+                throw new IOException("unit " + unitKey(layer, unitIndex + 1) + ": invalid connection " + connection);
+            }
+            if (srcLayer != layer - 1 || srcUnit < 1 || srcUnit > srcCount) {
+                throw new IOException("unit " + unitKey(layer, unitIndex + 1) +
+                                      ": only connections from the preceding layer are supported");
+            }
+            weights[unitIndex * srcCount + srcUnit - 1] += weight;
+        }
+    }
+}
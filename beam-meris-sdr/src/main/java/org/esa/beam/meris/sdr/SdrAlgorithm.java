@@ -7,14 +7,42 @@
 package org.esa.beam.meris.sdr;
 
 import com.bc.jnn.JnnNet;
+import org.esa.beam.meris.nn.ApproximatePerceptron;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
+
+import java.util.Arrays;
 import org.esa.beam.util.math.MathUtils;
 
 /**
  * Implements an algorithm for the surface directional reflectance based
  * on a neural network (multi layer perceptron).
+ * <p/>
+ * An instance based on a {@link MultiLayerPerceptron} is thread-safe as long as each thread passes its own
+ * scratch buffer to {@link #computeSdr(double[], double[], int, double[])}. An instance based on a
+ * {@link JnnNet} must be cloned for each thread.
+ * <p/>
+ * An instance created by {@link #create(MultiLayerPerceptron, double)} evaluates an {@link ApproximatePerceptron}
+ * instead of the exact neural net. Since only the reflectance and the wavelength vary between the bands of a pixel,
+ * the contribution of the geometry and aerosol inputs is then computed once for subsequent input vectors sharing
+ * these inputs.
  */
 public final class SdrAlgorithm implements Cloneable {
+    /**
+     * The number of elements of an input vector.
+     */
+    public static final int INPUT_COUNT = 9;
+    /**
+     * The indexes of the inputs varying between the bands of a pixel, rhoNorm and wavelength.
+     */
+    private static final int[] BAND_INPUTS = {0, 1};
+    /**
+     * The number of input vectors the exact neural network processes at once in a batch.
+     */
+    private static final int BATCH_SIZE = 32;
+
     public final JnnNet _neuralNet;
+    private final MultiLayerPerceptron _perceptron;
+    private final ApproximatePerceptron _approximation;
 
     /**
      * Constructs a new algorithm instance.
@@ -22,10 +50,52 @@ public final class SdrAlgorithm implements Cloneable {
      * @param neuralNet the neural network
      */
     public SdrAlgorithm(JnnNet neuralNet) {
+        this(neuralNet, null, null);
         if (neuralNet == null) {
             throw new IllegalArgumentException("neuralNet == null");
         }
+    }
+
+    private SdrAlgorithm(JnnNet neuralNet, MultiLayerPerceptron perceptron, ApproximatePerceptron approximation) {
         _neuralNet = neuralNet;
+        _perceptron = perceptron;
+        _approximation = approximation;
+    }
+
+    /**
+     * Creates a new algorithm instance which can be shared by multiple threads.
+     *
+     * @param perceptron the neural network
+     * @return the algorithm
+     */
+    public static SdrAlgorithm create(MultiLayerPerceptron perceptron) {
+        checkPerceptron(perceptron);
+        return new SdrAlgorithm(null, perceptron, null);
+    }
+
+    /**
+     * Creates a new algorithm instance which can be shared by multiple threads and evaluates the neural network
+     * approximately.
+     *
+     * @param perceptron the neural network
+     * @param maxError   the maximum absolute deviation of the surface directional reflectance from the one computed
+     *                   with the exact neural network
+     * @return the algorithm
+     * @throws IllegalArgumentException if the neural network cannot be approximated or <code>maxError</code> is
+     *                                  not positive or too small
+     */
+    public static SdrAlgorithm create(MultiLayerPerceptron perceptron, double maxError) {
+        checkPerceptron(perceptron);
+        return new SdrAlgorithm(null, perceptron, ApproximatePerceptron.create(perceptron, BAND_INPUTS, maxError));
+    }
+
+    private static void checkPerceptron(MultiLayerPerceptron perceptron) {
+        if (perceptron == null) {
+            throw new IllegalArgumentException("perceptron == null");
+        }
+        if (perceptron.getInputCount() != INPUT_COUNT || perceptron.getOutputCount() != 1) {
+            throw new IllegalArgumentException("perceptron must have " + INPUT_COUNT + " inputs and 1 output");
+        }
     }
 
     /**
@@ -88,11 +158,100 @@ public final class SdrAlgorithm implements Cloneable {
      * @param outputVector the output vector as a <code>double[1]</code> containing the surface directional reflectance.
      */
     public void computeSdr(final double[] inputVector, final double[] outputVector) {
-        _neuralNet.process(inputVector, outputVector);
+        if (_approximation != null) {
+            computeSdr(inputVector, outputVector, 1, createScratch());
+        } else if (_perceptron != null) {
+            _perceptron.process(inputVector, outputVector, _perceptron.createScratch());
+        } else {
+            _neuralNet.process(inputVector, outputVector);
+        }
+    }
+
+    /**
+     * Computes the surface directional reflectance for a batch of input vectors, e.g. for all bands of the
+     * pixels of a tile row. The input vectors are the rows of the matrix <code>inputMatrix</code>, each one
+     * containing the {@link #INPUT_COUNT} elements described in {@link #computeSdr(double[], double[])}.
+     * <p/>
+     * An instance based on a {@link JnnNet} must still be cloned for each thread, since the net itself is not
+     * thread-safe.
+     *
+     * @param inputMatrix  the input vectors as a row-major matrix of at least <code>count</code> rows
+     * @param outputVector the output vector receiving the surface directional reflectance of each input vector,
+     *                     must have at least <code>count</code> elements
+     * @param count        the number of input vectors
+     */
+    public void computeSdr(final double[] inputMatrix, final double[] outputVector, final int count) {
+        if (_perceptron != null) {
+            computeSdr(inputMatrix, outputVector, count, createScratch());
+            return;
+        }
+        // allocated per batch, so that the buffers are not shared by threads
+        final double[] input = new double[INPUT_COUNT];
+        final double[] output = new double[1];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(inputMatrix, i * INPUT_COUNT, input, 0, INPUT_COUNT);
+            _neuralNet.process(input, output);
+            outputVector[i] = output[0];
+        }
+    }
+
+    /**
+     * Computes the surface directional reflectance for a batch of input vectors like
+     * {@link #computeSdr(double[], double[], int)}, but without allocating or modifying any state of this
+     * instance if it is based on a {@link MultiLayerPerceptron}.
+     *
+     * @param inputMatrix  the input vectors as a row-major matrix of at least <code>count</code> rows
+     * @param outputVector the output vector receiving the surface directional reflectance of each input vector,
+     *                     must have at least <code>count</code> elements
+     * @param count        the number of input vectors
+     * @param scratch      a scratch buffer created by {@link #createScratch()}, must not be used by other threads
+     */
+    public void computeSdr(final double[] inputMatrix, final double[] outputVector, final int count,
+                           final double[] scratch) {
+        if (_approximation != null) {
+            // the input vectors last used for computing the shared part are kept at the end of the scratch buffer
+            final int lastInputOffset = _approximation.getScratchSize();
+            for (int i = 0; i < count; i++) {
+                final int offset = i * INPUT_COUNT;
+                if (!hasSameSharedInputs(inputMatrix, offset, scratch, lastInputOffset)) {
+                    _approximation.computeSharedPart(inputMatrix, offset, scratch);
+                    System.arraycopy(inputMatrix, offset, scratch, lastInputOffset, INPUT_COUNT);
+                }
+                outputVector[i] = _approximation.process(inputMatrix, offset, scratch);
+            }
+        } else if (_perceptron != null) {
+            _perceptron.process(inputMatrix, outputVector, count, scratch);
+        } else {
+            computeSdr(inputMatrix, outputVector, count);
+        }
+    }
+
+    /**
+     * @return a new scratch buffer for {@link #computeSdr(double[], double[], int, double[])}
+     */
+    public double[] createScratch() {
+        if (_approximation != null) {
+            final double[] scratch = new double[_approximation.getScratchSize() + INPUT_COUNT];
+            // NaN never equals an input, so that the first input vector always computes the shared part
+            Arrays.fill(scratch, _approximation.getScratchSize(), scratch.length, Double.NaN);
+            return scratch;
+        }
+        return _perceptron != null ? _perceptron.createScratch(BATCH_SIZE) : new double[0];
+    }
+
+    private static boolean hasSameSharedInputs(double[] inputMatrix, int offset, double[] lastInput,
+                                               int lastInputOffset) {
+        // the band inputs 0 and 1 are not compared
+        for (int i = 2; i < INPUT_COUNT; i++) {
+            if (inputMatrix[offset + i] != lastInput[lastInputOffset + i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     protected SdrAlgorithm clone() {
-        return new SdrAlgorithm(_neuralNet.clone());
+        return _perceptron != null ? this : new SdrAlgorithm(_neuralNet.clone());
     }
 }
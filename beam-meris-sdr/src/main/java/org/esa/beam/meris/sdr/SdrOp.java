@@ -2,10 +2,6 @@ package org.esa.beam.meris.sdr;
 
 import com.bc.ceres.core.NullProgressMonitor;
 import com.bc.ceres.core.ProgressMonitor;
-import com.bc.jnn.Jnn;
-import com.bc.jnn.JnnException;
-import com.bc.jnn.JnnNet;
-import org.esa.beam.dataio.envisat.EnvisatConstants;
 import org.esa.beam.framework.datamodel.Band;
 import org.esa.beam.framework.datamodel.BitmaskDef;
 import org.esa.beam.framework.datamodel.FlagCoding;
@@ -22,6 +18,10 @@ import org.esa.beam.framework.gpf.annotations.TargetProduct;
 import org.esa.beam.gpf.operators.meris.MerisBasisOp;
 import org.esa.beam.meris.AlbedoUtils;
 import org.esa.beam.meris.AlbedomapConstants;
+import org.esa.beam.meris.l2auxdata.MerisGeometry;
+import org.esa.beam.meris.l2auxdata.MerisGeometryProvider;
+import org.esa.beam.meris.gpf.TileAccessor;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
 import org.esa.beam.util.ProductUtils;
 import org.esa.beam.util.ResourceInstaller;
 import org.esa.beam.util.StringUtils;
@@ -31,9 +31,7 @@ import org.esa.beam.util.math.MathUtils;
 import java.awt.Color;
 import java.awt.Rectangle;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.Map;
 
@@ -57,6 +55,7 @@ public class SdrOp extends MerisBasisOp {
     private Band[] sdrBands;
     private Band sdrFlagBand;
     private Band validBand;
+    private final ThreadLocal<boolean[]> validBuffer = new ThreadLocal<boolean[]>();
 
     @SourceProduct(alias="l1b")
     private Product l1bProduct;
@@ -78,6 +77,16 @@ public class SdrOp extends MerisBasisOp {
     private String angName;
     @Parameter
     private double angValue;
+    @Parameter(description = "If 'true' the neural net is evaluated approximately, which is considerably faster.",
+               defaultValue = "false")
+    private boolean approximateNeuralNet;
+    @Parameter(description = "The maximum deviation of the SDR from the exact neural net if 'approximateNeuralNet' is 'true'.",
+               defaultValue = "1.0E-4")
+    private double maxApproximationError;
+    @Parameter(description = "The maximum number of pixels of the tile geometries cached for the L1b product. " +
+                             "If 0, the geometries are not cached.",
+               defaultValue = "262144", interval = "[0, 16777216]")
+    private int geometryCacheCapacity = MerisGeometryProvider.DEFAULT_CAPACITY;
 	
     @Override
     public void initialize() throws OperatorException {
@@ -134,97 +143,126 @@ public class SdrOp extends MerisBasisOp {
 
         pm.beginTask("Processing frame...", rectangle.height);
         try {
-            Tile sza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_ZENITH_DS_NAME), rectangle);
-            Tile saa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_SUN_AZIMUTH_DS_NAME), rectangle);
-            Tile vza = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_ZENITH_DS_NAME), rectangle);
-            Tile vaa = getSourceTile(l1bProduct.getTiePointGrid(EnvisatConstants.MERIS_VIEW_AZIMUTH_DS_NAME), rectangle);
-
-            Tile ang = null;
+            final MerisGeometry geometry = MerisGeometryProvider.getInstance().getGeometry(l1bProduct, rectangle,
+                                                                                           geometryCacheCapacity);
+            final float[] saa = geometry.getSunAzimuth();
+            final float[] vaa = geometry.getViewAzimuth();
+            final double[] mus = geometry.getMus();
+            final double[] muv = geometry.getMuv();
+            final double[] sinv = geometry.getSinv();
+
+            final int size = rectangle.width * rectangle.height;
+            double[] ang = null;
             if (StringUtils.isNotNullAndNotEmpty(angName)) {
-            	ang = getSourceTile(aerosolProduct.getBand(angName), rectangle);
+            	ang = TileAccessor.getSamplesDouble(getSourceTile(aerosolProduct.getBand(angName), rectangle));
             }
-            Tile aot470 = getSourceTile(aerosolProduct.getBand(aot470Name), rectangle);
+            double[] aot470 = TileAccessor.getSamplesDouble(getSourceTile(aerosolProduct.getBand(aot470Name), rectangle));
 
 
-            Tile[] reflectance = new Tile[sdrBandNo.length];
-            Tile[] sdr = new Tile[sdrBandNo.length];
+            double[][] reflectance = new double[sdrBandNo.length][];
+            float[][] sdr = new float[sdrBandNo.length][];
             
             for (int i = 0; i < sdrBandNo.length; i++) {
-                reflectance[i] = getSourceTile(reflectanceBands[i], rectangle);
+                reflectance[i] = TileAccessor.getSamplesDouble(getSourceTile(reflectanceBands[i], rectangle));
             }
-            Tile isValidPixel = getSourceTile(validBand, rectangle);
+            boolean[] isValidPixel = TileAccessor.getSamplesBoolean(getSourceTile(validBand, rectangle),
+                                                                    validBuffer.get());
+            validBuffer.set(isValidPixel);
 
             for (int i = 0; i < sdrBands.length; i++) {
-            	sdr[i] = targetTiles.get(sdrBands[i]);
+            	sdr[i] = new float[size];
             }
-            Tile sdrFlag = targetTiles.get(sdrFlagBand);
+            int[] sdrFlag = new int[size];
 
-            SdrAlgorithm clonedAlgorithm = algorithm.clone();
+            final double[] scratch = algorithm.createScratch();
 
-            final double[] sdrAlgoInput = new double[9];
-            final double[] sdrAlgoOutput = new double[1];
+            final int bandCount = reflectanceBands.length;
+            final double[] wavelengths = new double[bandCount];
+            for (int bandId = 0; bandId < bandCount; bandId++) {
+                wavelengths[bandId] = reflectanceBands[bandId].getSpectralWavelength();
+            }
+            // the neural net inputs of all bands of the valid pixels of a row are evaluated at once
+            final boolean[] validPixels = new boolean[rectangle.width];
+            final double[] sdrAlgoInput = new double[rectangle.width * bandCount * SdrAlgorithm.INPUT_COUNT];
+            final double[] sdrAlgoOutput = new double[rectangle.width * bandCount];
             for (int y = rectangle.y; y < rectangle.y + rectangle.height; y++) {
-				for (int x = rectangle.x; x < rectangle.x+rectangle.width; x++) {
-	                if (isValidPixel.getSampleBoolean(x, y)) {
-	                    double t_sza = sza.getSampleDouble(x, y) * MathUtils.DTOR;
-	                    double t_vza = vza.getSampleDouble(x, y) * MathUtils.DTOR;
-	                    double ada = AlbedoUtils.computeAzimuthDifference(vaa.getSampleDouble(x, y), saa.getSampleDouble(x, y)) * MathUtils.DTOR;
-                        double mueSun = Math.cos(t_sza);
-	                    double geomX = Math.sin(t_vza) * Math.cos(ada);
-	                    double geomY = Math.sin(t_vza) * Math.sin(ada);
-	                    double geomZ = Math.cos(t_vza);
-
-	                    double t_sdr;
-	                    short sdrFlags = 0;
-	                    for (int bandId = 0; bandId < reflectanceBands.length; bandId++) {
-	                        final Band reflInputBand = reflectanceBands[bandId];
-                            double rhoNorm = reflectance[bandId].getSampleDouble(x, y) / Math.PI;
-                            double wavelength = reflInputBand.getSpectralWavelength();
-                            sdrAlgoInput[0] = rhoNorm;
-	                        sdrAlgoInput[1] = wavelength;
-	                        sdrAlgoInput[2] = mueSun;
-	                        sdrAlgoInput[3] = geomX;
-	                        sdrAlgoInput[4] = geomY;
-	                        sdrAlgoInput[5] = geomZ;
-	                        sdrAlgoInput[6] = aot470.getSampleDouble(x, y);
-	                        sdrAlgoInput[7] = 0; // aot 660; usage discontinued
-	                        if (ang != null) {
-	                        	sdrAlgoInput[8] = ang.getSampleDouble(x, y);
-	                        } else {
-	                        	sdrAlgoInput[8] = angValue;
-	                        }
-                            clonedAlgorithm.computeSdr(sdrAlgoInput, sdrAlgoOutput);
-	                        t_sdr = sdrAlgoOutput[0];
-	                        if (Double.isInfinite(t_sdr) || Double.isNaN(t_sdr)) {
-	                            t_sdr = 0.0;
-	                            sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
-	                        } else if (t_sdr < 0.0) {
-	                            t_sdr = 0.0;
-	                            sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
-	                        } else if (t_sdr > 1.0) {
-	                            t_sdr = 1.0;
-	                            sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
-	                        }
-	                        sdr[bandId].setSample(x, y, (float) t_sdr);
-	                    }
-	                    // Combine SDR-Flags to single INVALID Flag
-	                    sdrFlags |= (sdrFlags == 0 ? 0 : 1); 
-	                    sdrFlag.setSample(x, y, sdrFlags);
-	                } else {
-	                    for (int j = 0; j < reflectanceBands.length; j++) {
-	                        sdr[j].setSample(x, y, -1);
-	                    }
-	                    sdrFlag.setSample(x, y, SDR_INVALID_FLAG_VALUE);
-	                }
-				}
-			}
-			pm.worked(1);
+                final int lineOffset = (y - rectangle.y) * rectangle.width - rectangle.x;
+                int inputCount = 0;
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    final int i = lineOffset + x;
+                    final boolean valid = isValidPixel[i];
+                    validPixels[x - rectangle.x] = valid;
+                    if (valid) {
+                        final int geometryIndex = geometry.getIndex(x, y);
+                        double ada = AlbedoUtils.computeAzimuthDifference(vaa[geometryIndex], saa[geometryIndex]) * MathUtils.DTOR;
+                        double mueSun = mus[geometryIndex];
+                        double geomX = sinv[geometryIndex] * Math.cos(ada);
+                        double geomY = sinv[geometryIndex] * Math.sin(ada);
+                        double geomZ = muv[geometryIndex];
+                        double t_aot470 = aot470[i];
+                        double t_ang = ang != null ? ang[i] : angValue;
+
+                        for (int bandId = 0; bandId < bandCount; bandId++) {
+                            final int offset = inputCount * SdrAlgorithm.INPUT_COUNT;
+                            sdrAlgoInput[offset] = reflectance[bandId][i] / Math.PI;
+                            sdrAlgoInput[offset + 1] = wavelengths[bandId];
+                            sdrAlgoInput[offset + 2] = mueSun;
+                            sdrAlgoInput[offset + 3] = geomX;
+                            sdrAlgoInput[offset + 4] = geomY;
+                            sdrAlgoInput[offset + 5] = geomZ;
+                            sdrAlgoInput[offset + 6] = t_aot470;
+                            sdrAlgoInput[offset + 7] = 0; // aot 660; usage discontinued
+                            sdrAlgoInput[offset + 8] = t_ang;
+                            inputCount++;
+                        }
+                    }
+                }
+
+                algorithm.computeSdr(sdrAlgoInput, sdrAlgoOutput, inputCount, scratch);
+
+                int outputIndex = 0;
+                for (int x = rectangle.x; x < rectangle.x + rectangle.width; x++) {
+                    final int i = lineOffset + x;
+                    if (validPixels[x - rectangle.x]) {
+                        double t_sdr;
+                        short sdrFlags = 0;
+                        for (int bandId = 0; bandId < bandCount; bandId++) {
+                            final Band reflInputBand = reflectanceBands[bandId];
+                            t_sdr = sdrAlgoOutput[outputIndex++];
+                            if (Double.isInfinite(t_sdr) || Double.isNaN(t_sdr)) {
+                                t_sdr = 0.0;
+                                sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
+                            } else if (t_sdr < 0.0) {
+                                t_sdr = 0.0;
+                                sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
+                            } else if (t_sdr > 1.0) {
+                                t_sdr = 1.0;
+                                sdrFlags |= 1 << (reflInputBand.getSpectralBandIndex() + 1);
+                            }
+                            sdr[bandId][i] = (float) t_sdr;
+                        }
+                        // Combine SDR-Flags to single INVALID Flag
+                        sdrFlags |= (sdrFlags == 0 ? 0 : 1);
+                        sdrFlag[i] = sdrFlags;
+                    } else {
+                        for (int j = 0; j < bandCount; j++) {
+                            sdr[j][i] = -1;
+                        }
+                        sdrFlag[i] = SDR_INVALID_FLAG_VALUE;
+                    }
+                }
+                pm.worked(1);
+            }
+            for (int i = 0; i < sdrBands.length; i++) {
+                targetTiles.get(sdrBands[i]).setSamples(sdr[i]);
+            }
+            targetTiles.get(sdrFlagBand).setSamples(sdrFlag);
         } finally {
             pm.done();
         }
     }
 
-    private void loadNeuralNet() throws IOException, JnnException {
+    private void loadNeuralNet() throws IOException {
         String auxdataSrcPath = "auxdata/sdr";
         final String auxdataDestPath = ".beam/" +
                 AlbedomapConstants.SYMBOLIC_NAME + "/" + auxdataSrcPath;
@@ -235,12 +273,12 @@ public class SdrOp extends MerisBasisOp {
         resourceInstaller.install(".*", new NullProgressMonitor());
         
         File nnFile = new File(auxdataTargetDir, neuralNetFile);
-        final JnnNet neuralNet;
-        try (InputStreamReader reader = new FileReader(nnFile)) {
-            Jnn.setOptimizing(true);
-            neuralNet = Jnn.readNna(reader);
+        final MultiLayerPerceptron perceptron = MultiLayerPerceptron.read(nnFile);
+        if (approximateNeuralNet) {
+            algorithm = SdrAlgorithm.create(perceptron, maxApproximationError);
+        } else {
+            algorithm = SdrAlgorithm.create(perceptron);
         }
-        algorithm = new SdrAlgorithm(neuralNet);
     }
 
 
@@ -0,0 +1,326 @@
+package org.esa.beam.meris.brr.dpm;
+
+import org.esa.beam.dataio.envisat.EnvisatConstants;
+import org.esa.beam.framework.datamodel.Band;
+import org.esa.beam.framework.datamodel.Product;
+import org.esa.beam.framework.datamodel.ProductData;
+import org.esa.beam.framework.datamodel.TiePointGrid;
+import org.esa.beam.meris.brr.operator.BrrOp;
+import org.esa.beam.meris.brr.operator.CorrectionSurfaceEnum;
+import org.esa.beam.meris.brr.operator.MerisL1BProduct;
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.esa.beam.meris.l2auxdata.L2AuxData;
+import org.esa.beam.meris.l2auxdata.L2AuxDataProvider;
+import org.esa.beam.util.BitSetter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.awt.image.Raster;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the {@link DpmFrame} based modules with the {@link DpmPixel} based baseline implementation
+ * (<code>Baseline*</code> classes of this package) on a varied copy of the synthetic MERIS product.
+ */
+public class DpmFrameRegressionTest implements Constants {
+
+    private static final long SEED = 2014L;
+    // an incomplete 4x4 window in both directions
+    private static final int WIDTH = 10;
+    private static final int HEIGHT = 7;
+    private static final double EPS = 1.0e-10;
+    private static final float BRR_EPS = 1.0e-6f;
+
+    private Product product;
+    private L2AuxData auxData;
+
+    @Before
+    public void setUp() throws Exception {
+        product = MerisL1BProduct.create(WIDTH, HEIGHT);
+        vary(product, new Random(SEED));
+        auxData = L2AuxDataProvider.getInstance().getAuxdata(product);
+    }
+
+    @Test
+    public void testModulesGiveBaselineResults() {
+        final DpmPixel[][] block = computeBaseline();
+        final DpmFrame frame = new DpmFrame(WIDTH, HEIGHT);
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                final DpmPixel pixel = new DpmPixel(i, j);
+                extract(pixel, i, j);
+                copyInputs(pixel, frame, frame.getIndex(i, j));
+            }
+        }
+
+        final GaseousAbsorptionCorrection gasCorrection = new GaseousAbsorptionCorrection(auxData);
+        final PixelIdentification pixelIdentification = new PixelIdentification(auxData, gasCorrection);
+        final RayleighCorrection rayleighCorrection = new RayleighCorrection(auxData);
+        final CloudClassification cloudClassification = new CloudClassification(auxData, rayleighCorrection);
+        final AtmosphericCorrectionLand atmosphericCorrection = new AtmosphericCorrectionLand(rayleighCorrection);
+        pixelIdentification.setCorrectionSurface(CorrectionSurfaceEnum.ALL_SURFACES);
+        atmosphericCorrection.setCorrectionSurface(CorrectionSurfaceEnum.ALL_SURFACES);
+        for (int p = 0; p < frame.getSize(); p++) {
+            if (!BitSetter.isFlagSet(frame.l2flags[p], F_INVALID)) {
+                pixelIdentification.rad2reflect(frame, p);
+                cloudClassification.classify_cloud(frame, p);
+            }
+        }
+        for (int il0 = 0; il0 < HEIGHT; il0 += SUBWIN_HEIGHT) {
+            for (int ic0 = 0; ic0 < WIDTH; ic0 += SUBWIN_WIDTH) {
+                final int ic1 = Math.min(WIDTH, ic0 + SUBWIN_WIDTH) - 1;
+                final int il1 = Math.min(HEIGHT, il0 + SUBWIN_HEIGHT) - 1;
+                pixelIdentification.pixel_classification(frame, ic0, ic1, il0, il1);
+                atmosphericCorrection.landAtmCor(frame, ic0, ic1, il0, il1);
+            }
+        }
+
+        boolean anyCloud = false;
+        boolean anyLandCorrected = false;
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                final DpmPixel expected = block[j][i];
+                final int p = frame.getIndex(i, j);
+                final String pos = " at pixel (" + i + "," + j + ")";
+                assertEquals("l2flags" + pos, expected.l2flags, frame.l2flags[p]);
+                assertEquals("ANNOT_F" + pos, expected.ANNOT_F, frame.ANNOT_F[p]);
+                for (int b = 0; b < L1_BAND_NUM; b++) {
+                    assertEquals("rho_toa[" + b + "]" + pos, expected.rho_toa[b], frame.rho_toa[b][p], EPS);
+                    assertEquals("rho_ag[" + b + "]" + pos, expected.rho_ag[b], frame.rho_ag[b][p], EPS);
+                    assertEquals("rho_top[" + b + "]" + pos, expected.rho_top[b], frame.rho_top[b][p], EPS);
+                }
+                anyCloud |= BitSetter.isFlagSet(expected.l2flags, F_CLOUD);
+                anyLandCorrected |= BitSetter.isFlagSet(expected.l2flags, F_LANDCONS)
+                                    && expected.rho_top[bb1] != BAD_VALUE;
+            }
+        }
+        // the varied product must exercise the cloud and the land branches
+        assertTrue(anyCloud);
+        assertTrue(anyLandCorrected);
+    }
+
+    @Test
+    public void testBrrOpGivesBaselineResults() {
+        final DpmPixel[][] block = computeBaseline();
+
+        final BrrOp op = new BrrOp();
+        op.setSourceProduct(product);
+        op.outputToar = true;
+        final Product targetProduct = op.getTargetProduct();
+
+        for (int b = 0; b < L1_BAND_NUM; b++) {
+            final Raster toar = targetProduct.getBand("toar_" + (b + 1)).getSourceImage().getData();
+            final Band brrBand = b != bb11 && b != bb15 ? targetProduct.getBand("brr_" + (b + 1)) : null;
+            final Raster brr = brrBand != null ? brrBand.getSourceImage().getData() : null;
+            for (int j = 0; j < HEIGHT; j++) {
+                for (int i = 0; i < WIDTH; i++) {
+                    final DpmPixel expected = block[j][i];
+                    final String pos = " at pixel (" + i + "," + j + ")";
+                    assertEquals("toar_" + (b + 1) + pos, (float) expected.rho_toa[b], toar.getSampleFloat(i, j, 0),
+                                 BRR_EPS);
+                    if (brr != null) {
+                        final float expectedBrr = BitSetter.isFlagSet(expected.l2flags, F_INVALID)
+                                                  ? (float) brrBand.getNoDataValue() : (float) expected.rho_top[b];
+                        assertEquals("brr_" + (b + 1) + pos, expectedBrr, brr.getSampleFloat(i, j, 0), BRR_EPS);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the baseline modules on the whole product, in the same order as <code>BrrOp</code> does for a tile.
+     */
+    private DpmPixel[][] computeBaseline() {
+        final GaseousAbsorptionCorrection gasCorrection = new GaseousAbsorptionCorrection(auxData);
+        final BaselinePixelIdentification pixelIdentification = new BaselinePixelIdentification(auxData, gasCorrection);
+        final RayleighCorrection rayleighCorrection = new RayleighCorrection(auxData);
+        final BaselineCloudClassification cloudClassification =
+                new BaselineCloudClassification(auxData, rayleighCorrection);
+        final BaselineAtmosphericCorrectionLand atmosphericCorrection =
+                new BaselineAtmosphericCorrectionLand(rayleighCorrection);
+        pixelIdentification.setCorrectionSurface(CorrectionSurfaceEnum.ALL_SURFACES);
+        atmosphericCorrection.setCorrectionSurface(CorrectionSurfaceEnum.ALL_SURFACES);
+
+        final DpmPixel[][] block = new DpmPixel[HEIGHT][WIDTH];
+        for (int j = 0; j < HEIGHT; j++) {
+            for (int i = 0; i < WIDTH; i++) {
+                final DpmPixel pixel = new DpmPixel(i, j);
+                extract(pixel, i, j);
+                if (!BitSetter.isFlagSet(pixel.l2flags, F_INVALID)) {
+                    pixelIdentification.rad2reflect(pixel);
+                    cloudClassification.classify_cloud(pixel);
+                }
+                block[j][i] = pixel;
+            }
+        }
+        for (int il0 = 0; il0 < HEIGHT; il0 += SUBWIN_HEIGHT) {
+            for (int ic0 = 0; ic0 < WIDTH; ic0 += SUBWIN_WIDTH) {
+                final int ic1 = Math.min(WIDTH, ic0 + SUBWIN_WIDTH) - 1;
+                final int il1 = Math.min(HEIGHT, il0 + SUBWIN_HEIGHT) - 1;
+                pixelIdentification.pixel_classification(block, ic0, ic1, il0, il1);
+                atmosphericCorrection.landAtmCor(block, ic0, ic1, il0, il1);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * The baseline L1b data extraction, reading the product data instead of tiles.
+     */
+    private void extract(DpmPixel pixel, int x, int y) {
+        final int index = y * WIDTH + x;
+        pixel.x = x;
+        pixel.y = y;
+        pixel.ANNOT_F = 0;
+        for (int band = 0; band < L1_BAND_NUM; band++) {
+            pixel.rho_ag[band] = BAD_VALUE;
+            pixel.rho_toa[band] = BAD_VALUE;
+            pixel.rho_top[band] = BAD_VALUE;
+        }
+        pixel.SATURATED_F = 0;
+        for (int band = 0; band < L1_BAND_NUM; band++) {
+            pixel.TOAR[band] = getBandData(EnvisatConstants.MERIS_L1B_SPECTRAL_BAND_NAMES[band]).getElemDoubleAt(index);
+            if (pixel.TOAR[band] > auxData.Saturation_L[band]) {
+                pixel.SATURATED_F = BitSetter.setFlag(pixel.SATURATED_F, band);
+            }
+        }
+        pixel.detector = getBandData(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME).getElemIntAt(index);
+        pixel.l1flags = getBandData(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME).getElemIntAt(index);
+        pixel.l2flags = 0L;
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_COSMETIC)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_COSMETIC);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_DUPLICATED)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_DUPLICATED);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_LAND)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_LAND);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_BRIGHT)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_BRIGHT);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_COAST)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_COASTLINE);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_INVALID)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_INVALID);
+        }
+        if (BitSetter.isFlagSet(pixel.l1flags, L1_F_SUSPECT)) {
+            pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_SUSPECT);
+        }
+        if (pixel.detector < 0 || pixel.detector >= auxData.detector_count) {
+            pixel.detector = -1;
+            if (!BitSetter.isFlagSet(pixel.l1flags, L1_F_INVALID)) {
+                pixel.l1flags = BitSetter.setFlag(pixel.l1flags, F_INVALID);
+                pixel.l2flags = BitSetter.setFlag(pixel.l2flags, F_INVALID);
+            }
+        }
+
+        pixel.sun_zenith = getTiePoint("sun_zenith", index);
+        pixel.view_zenith = getTiePoint("view_zenith", index);
+        final double view_azimuth = getTiePoint("view_azimuth", index);
+        pixel.sun_azimuth = getTiePoint("sun_azimuth", index);
+        pixel.altitude = getTiePoint("dem_alt", index);
+        pixel.press_ecmwf = getTiePoint("atm_press", index);
+        pixel.windu = getTiePoint("zonal_wind", index);
+        pixel.windv = getTiePoint("merid_wind", index);
+        pixel.ozone_ecmwf = getTiePoint("ozone", index);
+        pixel.delta_azimuth = DEG * Math.acos(Math.cos(RAD * (view_azimuth - pixel.sun_azimuth)));
+        if (BitSetter.isFlagSet(pixel.l2flags, F_LAND)) {
+            pixel.press_ecmwf *= Math.exp(-Math.max(0.0, pixel.altitude) / auxData.press_scale_height);
+        }
+        pixel.muv = Math.cos(RAD * pixel.view_zenith);
+        pixel.mus = Math.cos(RAD * pixel.sun_zenith);
+        pixel.airMass = 1.0 / pixel.mus + 1.0 / pixel.muv;
+    }
+
+    private static void copyInputs(DpmPixel pixel, DpmFrame frame, int p) {
+        frame.detector[p] = pixel.detector;
+        frame.view_zenith[p] = (float) pixel.view_zenith;
+        frame.sun_zenith[p] = (float) pixel.sun_zenith;
+        frame.delta_azimuth[p] = pixel.delta_azimuth;
+        frame.sun_azimuth[p] = (float) pixel.sun_azimuth;
+        frame.mus[p] = pixel.mus;
+        frame.muv[p] = pixel.muv;
+        frame.airMass[p] = pixel.airMass;
+        frame.altitude[p] = (float) pixel.altitude;
+        frame.windu[p] = (float) pixel.windu;
+        frame.windv[p] = (float) pixel.windv;
+        frame.press_ecmwf[p] = pixel.press_ecmwf;
+        frame.ozone_ecmwf[p] = (float) pixel.ozone_ecmwf;
+        frame.l1flags[p] = pixel.l1flags;
+        frame.l2flags[p] = pixel.l2flags;
+        frame.SATURATED_F[p] = pixel.SATURATED_F;
+        frame.ANNOT_F[p] = pixel.ANNOT_F;
+        for (int b = 0; b < L1_BAND_NUM; b++) {
+            frame.TOAR[b][p] = pixel.TOAR[b];
+            frame.rho_ag[b][p] = pixel.rho_ag[b];
+            frame.rho_toa[b][p] = pixel.rho_toa[b];
+            frame.rho_top[b][p] = pixel.rho_top[b];
+        }
+    }
+
+    private ProductData getBandData(String name) {
+        return product.getBand(name).getData();
+    }
+
+    private float getTiePoint(String name, int index) {
+        return product.getTiePointGrid(name).getTiePoints()[index];
+    }
+
+    /**
+     * Varies the two pixels of the synthetic product, so that land, water, bright, cloudy and invalid pixels
+     * in several geometries occur.
+     */
+    private static void vary(Product product, Random random) {
+        final int size = WIDTH * HEIGHT;
+        final float[] brightness = new float[size];
+        for (int i = 0; i < size; i++) {
+            brightness[i] = 0.6f + 5.0f * random.nextFloat() * random.nextFloat();
+        }
+        for (String name : EnvisatConstants.MERIS_L1B_SPECTRAL_BAND_NAMES) {
+            final ProductData data = product.getBand(name).getData();
+            for (int i = 0; i < size; i++) {
+                final float jitter = 0.95f + 0.1f * random.nextFloat();
+                data.setElemFloatAt(i, data.getElemFloatAt(i) * brightness[i] * jitter);
+            }
+        }
+        final ProductData detectorData = product.getBand(EnvisatConstants.MERIS_DETECTOR_INDEX_DS_NAME).getData();
+        final ProductData flagData = product.getBand(EnvisatConstants.MERIS_L1B_FLAGS_DS_NAME).getData();
+        for (int i = 0; i < size; i++) {
+            // a few detector indexes are out of range
+            detectorData.setElemIntAt(i, random.nextInt(FR_DETECTOR_COUNT + 100) - 50);
+            int flags = 0;
+            if (random.nextInt(3) != 0) {
+                flags = BitSetter.setFlag(flags, L1_F_LAND);
+            }
+            if (brightness[i] > 2.5f) {
+                flags = BitSetter.setFlag(flags, L1_F_BRIGHT);
+            }
+            if (random.nextInt(10) == 0) {
+                flags = BitSetter.setFlag(flags, L1_F_COAST);
+            }
+            if (random.nextInt(20) == 0) {
+                flags = BitSetter.setFlag(flags, L1_F_INVALID);
+            }
+            flagData.setElemIntAt(i, flags);
+        }
+        vary(product.getTiePointGrid("sun_zenith"), random, -15.0f, 35.0f);
+        vary(product.getTiePointGrid("view_zenith"), random, -29.0f, 10.0f);
+        vary(product.getTiePointGrid("sun_azimuth"), random, -60.0f, 60.0f);
+        vary(product.getTiePointGrid("view_azimuth"), random, -90.0f, 90.0f);
+        vary(product.getTiePointGrid("dem_alt"), random, -176.0f, 1500.0f);
+        vary(product.getTiePointGrid("atm_press"), random, -30.0f, 20.0f);
+        vary(product.getTiePointGrid("ozone"), random, -80.0f, 40.0f);
+    }
+
+    private static void vary(TiePointGrid grid, Random random, float min, float max) {
+        final float[] tiePoints = grid.getTiePoints();
+        for (int i = 0; i < tiePoints.length; i++) {
+            tiePoints[i] += min + (max - min) * random.nextFloat();
+        }
+    }
+}
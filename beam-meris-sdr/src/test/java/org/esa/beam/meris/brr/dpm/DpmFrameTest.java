@@ -0,0 +1,38 @@
+package org.esa.beam.meris.brr.dpm;
+
+import org.esa.beam.meris.l2auxdata.Constants;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class DpmFrameTest {
+
+    @Test
+    public void testIndexing() {
+        final DpmFrame frame = new DpmFrame(5, 3);
+
+        assertEquals(15, frame.getSize());
+        assertEquals(0, frame.getIndex(0, 0));
+        assertEquals(4, frame.getIndex(4, 0));
+        assertEquals(5, frame.getIndex(0, 1));
+        assertEquals(14, frame.getIndex(4, 2));
+    }
+
+    @Test
+    public void testArrayDimensions() {
+        final DpmFrame frame = new DpmFrame(4, 2);
+
+        assertEquals(8, frame.detector.length);
+        assertEquals(8, frame.sun_zenith.length);
+        assertEquals(8, frame.l2flags.length);
+        assertEquals(8, frame.ANNOT_F.length);
+        assertEquals(Constants.L1_BAND_NUM, frame.TOAR.length);
+        assertEquals(Constants.L1_BAND_NUM, frame.rho_top.length);
+        for (int b = 0; b < Constants.L1_BAND_NUM; b++) {
+            assertEquals(8, frame.TOAR[b].length);
+            assertEquals(8, frame.rho_ag[b].length);
+            assertEquals(8, frame.rho_toa[b].length);
+            assertEquals(8, frame.rho_top[b].length);
+        }
+    }
+}
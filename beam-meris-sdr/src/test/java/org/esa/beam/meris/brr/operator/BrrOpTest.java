@@ -18,6 +18,8 @@ package org.esa.beam.meris.brr.operator;
 
 import junit.framework.TestCase;
 
+import java.awt.Dimension;
+
 /**
  * Created by marcoz.
  *
@@ -36,4 +38,50 @@ public class BrrOpTest extends TestCase {
         assertFalse(BrrOp.isValidRhoSpectralIndex(-1));
         assertFalse(BrrOp.isValidRhoSpectralIndex(15));
     }
+
+    public void testTileMemoryBudget() {
+        assertEquals(64L * 1024 * 1024, BrrOp.getTileMemoryBudget(64, 1024L * 1024 * 1024, 8));
+        assertEquals(32L * 1024 * 1024, BrrOp.getTileMemoryBudget(0, 1024L * 1024 * 1024, 8));
+        assertEquals(256L * 1024 * 1024, BrrOp.getTileMemoryBudget(0, 1024L * 1024 * 1024, 0));
+    }
+
+    public void testPreferredTileSize() {
+        // 1000 bytes per pixel, budget for 300 x 300 pixels
+        Dimension tileSize = BrrOp.computePreferredTileSize(90000L * 1000, 1000, 1121, 14000);
+        assertEquals(299, tileSize.width);
+        assertEquals(90000 / 299, tileSize.height);
+
+        // the tile width must not leave a single column at the end of a line
+        tileSize = BrrOp.computePreferredTileSize(90000L * 1000, 1000, 1197, 14000);
+        assertEquals(297, tileSize.width);
+        assertEquals(90000 / 297, tileSize.height);
+
+        // small scenes form a single tile
+        tileSize = BrrOp.computePreferredTileSize(90000L * 1000, 1000, 120, 60);
+        assertEquals(120, tileSize.width);
+        assertEquals(60, tileSize.height);
+
+        // tiny budgets fall back to a minimum tile size
+        tileSize = BrrOp.computePreferredTileSize(1000, 1000, 1121, 14000);
+        assertEquals(33, tileSize.width);
+        assertEquals(32, tileSize.height);
+
+        // the adjustments must not go below the minimum width, 1123 % 33 == 1
+        tileSize = BrrOp.computePreferredTileSize(1000, 1000, 1123, 14000);
+        assertEquals(35, tileSize.width);
+        assertEquals(32, tileSize.height);
+        tileSize = BrrOp.computePreferredTileSize(34L * 34 * 1000, 1000, 1123, 14000);
+        assertEquals(35, tileSize.width);
+        assertEquals(34 * 34 / 35, tileSize.height);
+
+        // the shrunk width is checked again, 9999 is a multiple of 101 and of 99
+        tileSize = BrrOp.computePreferredTileSize(101L * 101 * 1000, 1000, 10000, 14000);
+        assertEquals(97, tileSize.width);
+        assertEquals(101 * 101 / 97, tileSize.height);
+
+        // 1155 is a multiple of 35 and of 33, so the width grows beyond both
+        tileSize = BrrOp.computePreferredTileSize(35L * 35 * 1000, 1000, 1156, 14000);
+        assertEquals(37, tileSize.width);
+        assertEquals(35 * 35 / 37, tileSize.height);
+    }
 }
@@ -6,14 +6,22 @@ import org.esa.beam.framework.datamodel.Product;
 import org.esa.beam.framework.datamodel.ProductData;
 import org.esa.beam.framework.datamodel.TiePointGrid;
 
-class MerisL1BProduct {
+public class MerisL1BProduct {
 
     // due to the 4x4 constraint in the algorithm, the two pixels we'd like to test are distributed
     // [0,0]                         -> px1
     // all other 15 raster positions -> px2
     // tb 2014-01-22
-    static Product create() {
-        final Product merisL1BProduct = new Product("Meris L1B", "MER_FR__1P", 4, 4);
+    public static Product create() {
+        return create(4, 4);
+    }
+
+    /**
+     * Creates a product of the given size by repeating the 4x4 pattern of {@link #create()}: px1 is placed at
+     * every pixel whose coordinates are both multiples of 4, px2 everywhere else.
+     */
+    public static Product create(int width, int height) {
+        final Product merisL1BProduct = new Product("Meris L1B", "MER_FR__1P", width, height);
 
         addRadiance_01(merisL1BProduct);
         addRadiance_02(merisL1BProduct);
@@ -116,9 +124,9 @@ class MerisL1BProduct {
     private static void addFloatBand(Product merisL1BProduct, String bandName, float[] data) {
         final Band band = merisL1BProduct.addBand(bandName, ProductData.TYPE_FLOAT32);
         final ProductData rasterData = band.createCompatibleRasterData();
-        rasterData.setElemFloatAt(0, data[0]);
-        for (int i = 1; i < 16; i++) {
-            rasterData.setElemFloatAt(i, data[1]);
+        final int width = merisL1BProduct.getSceneRasterWidth();
+        for (int i = 0; i < rasterData.getNumElems(); i++) {
+            rasterData.setElemFloatAt(i, isPixel1(i, width) ? data[0] : data[1]);
         }
         band.setData(rasterData);
     }
@@ -126,7 +134,7 @@ class MerisL1BProduct {
     private static void addDetectorIndex(Product merisL1BProduct) {
         final Band band = merisL1BProduct.addBand("detector_index", ProductData.TYPE_INT16);
         final ProductData rasterData = band.createCompatibleRasterData();
-        for (int i = 0; i < 16; i++) {
+        for (int i = 0; i < rasterData.getNumElems(); i++) {
             rasterData.setElemIntAt(i, 3258);
         }
         band.setData(rasterData);
@@ -135,7 +143,7 @@ class MerisL1BProduct {
     private static void addFlagBand(Product merisL1BProduct) {
         final Band band = merisL1BProduct.addBand("l1_flags", ProductData.TYPE_UINT8);
         final ProductData rasterData = band.createCompatibleRasterData();
-        for (int i = 0; i < 16; i++) {
+        for (int i = 0; i < rasterData.getNumElems(); i++) {
             rasterData.setElemIntAt(i, 0);
         }
         band.setData(rasterData);
@@ -202,12 +210,17 @@ class MerisL1BProduct {
     }
 
     private static void addTiePointRaster(Product merisL1BProduct, String name, float[] data) {
-        float[] tiePointData = new float[16];
-        tiePointData[0] = data[0];
-        for (int i = 1; i < 16; i++) {
-            tiePointData[i] = data[1];
+        final int width = merisL1BProduct.getSceneRasterWidth();
+        final int height = merisL1BProduct.getSceneRasterHeight();
+        float[] tiePointData = new float[width * height];
+        for (int i = 0; i < tiePointData.length; i++) {
+            tiePointData[i] = isPixel1(i, width) ? data[0] : data[1];
         }
 
-        merisL1BProduct.addTiePointGrid(new TiePointGrid(name, 4, 4, 0.5f, 0.5f, 1, 1, tiePointData));
+        merisL1BProduct.addTiePointGrid(new TiePointGrid(name, width, height, 0.5f, 0.5f, 1, 1, tiePointData));
+    }
+
+    private static boolean isPixel1(int index, int width) {
+        return (index % width) % 4 == 0 && (index / width) % 4 == 0;
     }
 }
@@ -54,6 +54,34 @@ public class CloudAlgorithmTest extends TestCase {
         assertEquals("cloud NN result", 0.004993, out, 0.00001);
     }
 
+    /**
+     * The expected values are reference outputs of the exact evaluation of the land and ocean nets, computed
+     * independently of {@link org.esa.beam.meris.nn.MultiLayerPerceptron}.
+     */
+    public void testLandAndOceanCloudProbability() throws Exception {
+        URL codeSourceUrl = CloudAlgorithm.class.getProtectionDomain().getCodeSource().getLocation();
+        File cloudAuxdataDir = new File(new File(codeSourceUrl.toURI()), "auxdata/cloudprob");
+
+        final CloudAlgorithm landAlgorithm = new CloudAlgorithm(cloudAuxdataDir, "nn_config_land.txt");
+        final double[] landScratch = landAlgorithm.createScratch();
+        final double[] vegetation = new double[]{0.06, 0.055, 0.05, 0.06, 0.045, 0.04, 0.25, 0.28,
+                0.30, 0.35, 1005.0, 761.6, 0.7, 0.97, 0.15};
+        assertEquals(0.0176083279, landAlgorithm.computeCloudProbability(vegetation, landScratch), 1.0e-9);
+        // the pressure is out of range and clamped
+        final double[] landCloud = new double[]{0.33, 0.33, 0.32, 0.32, 0.31, 0.30, 0.31, 0.31,
+                0.30, 0.55, 1100.0, 761.6, 0.7, 0.97, 0.15};
+        assertEquals(0.8965153348, landAlgorithm.computeCloudProbability(landCloud, landScratch), 1.0e-9);
+
+        final CloudAlgorithm oceanAlgorithm = new CloudAlgorithm(cloudAuxdataDir, "nn_config_ocean.txt");
+        final double[] oceanScratch = oceanAlgorithm.createScratch();
+        final double[] water = new double[]{0.07, 0.055, 0.035, 0.025, 0.017, 0.011, 0.007, 0.006,
+                0.013, 0.25, 1013.0, 761.8, 0.6, 0.95, 0.1};
+        assertEquals(0.0050545917, oceanAlgorithm.computeCloudProbability(water, oceanScratch), 1.0e-9);
+        final double[] oceanCloud = new double[]{0.30, 0.30, 0.29, 0.29, 0.29, 0.29, 0.28, 0.28,
+                0.28, 0.6, 1013.0, 761.8, 0.6, 0.95, 0.1};
+        assertEquals(0.9998739139, oceanAlgorithm.computeCloudProbability(oceanCloud, oceanScratch), 1.0e-9);
+    }
+
     /*
       * Test method for 'org.esa.beam.processor.cloud.CloudAlgorithm.nn2Probability(double)'
       */
@@ -62,4 +90,14 @@ public class CloudAlgorithmTest extends TestCase {
         assertEquals("probability", 0.01313, probability, 0.00001);
     }
 
+    public void testFastMathNn2Probability() {
+        for (int i = -1000; i <= 1000; i++) {
+            final double nnResult = i * 0.01;
+            testAlgorithm.setFastMath(false);
+            final double expected = testAlgorithm.nn2Probability(nnResult);
+            testAlgorithm.setFastMath(true);
+            assertEquals(expected, testAlgorithm.nn2Probability(nnResult), 1.0e-14);
+        }
+    }
+
 }
@@ -0,0 +1,92 @@
+package org.esa.beam.meris.nn;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Random;
+
+public class ApproximatePerceptronTest extends TestCase {
+
+    private static final String NEURAL_NET_RESOURCE_PATH = "/org/esa/beam/meris/sdr/run05_100.nna";
+    private static final int[] VARYING_INPUTS = {0, 1};
+
+    private MultiLayerPerceptron perceptron;
+
+    @Override
+    protected void setUp() throws Exception {
+        final Reader reader = new InputStreamReader(
+                ApproximatePerceptronTest.class.getResourceAsStream(NEURAL_NET_RESOURCE_PATH));
+        try {
+            perceptron = MultiLayerPerceptron.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testErrorBoundIsKept() {
+        for (double maxError : new double[]{1.0e-2, 1.0e-4, 1.0e-6}) {
+            final ApproximatePerceptron approximation = ApproximatePerceptron.create(perceptron, VARYING_INPUTS,
+                                                                                     maxError);
+            assertTrue(approximation.getErrorBound() <= maxError);
+            assertMaxDeviation(approximation, maxError);
+        }
+    }
+
+    public void testSharedPartIsReused() {
+        final ApproximatePerceptron approximation = ApproximatePerceptron.create(perceptron, VARYING_INPUTS, 1.0e-5);
+        final double[] scratch = approximation.createScratch();
+        final double[] exactScratch = perceptron.createScratch();
+        final double[] input = {0.02, 412.5, 0.78, -0.05, -0.04, 0.99, 0.49, 0.28, 1.59};
+        approximation.computeSharedPart(input, 0, scratch);
+        for (int i = 0; i < 10; i++) {
+            input[0] = 0.01 + 0.03 * i;
+            input[1] = 412.5 + 50.0 * i;
+            assertEquals(perceptron.process(input, exactScratch), approximation.process(input, 0, scratch), 1.0e-5);
+        }
+    }
+
+    public void testNaNIsPropagated() {
+        final ApproximatePerceptron approximation = ApproximatePerceptron.create(perceptron, VARYING_INPUTS, 1.0e-4);
+        final double[] scratch = approximation.createScratch();
+        final double[] input = {Double.NaN, 412.5, 0.78, -0.05, -0.04, 0.99, 0.49, 0.28, 1.59};
+        approximation.computeSharedPart(input, 0, scratch);
+        assertTrue(Double.isNaN(approximation.process(input, 0, scratch)));
+    }
+
+    public void testInvalidArguments() {
+        try {
+            ApproximatePerceptron.create(perceptron, VARYING_INPUTS, 0.0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            ApproximatePerceptron.create(perceptron, new int[]{9}, 1.0e-4);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertMaxDeviation(ApproximatePerceptron approximation, double maxError) {
+        final double[] scratch = approximation.createScratch();
+        final double[] exactScratch = perceptron.createScratch();
+        final double[] input = new double[perceptron.getInputCount()];
+        final Random random = new Random(5);
+        for (int n = 0; n < 10000; n++) {
+            // roughly the value ranges of the SDR neural net inputs
+            input[0] = 0.4 * random.nextDouble();
+            input[1] = 412.5 + 472.5 * random.nextDouble();
+            input[2] = 0.25 + 0.75 * random.nextDouble();
+            input[3] = 1.3 * random.nextDouble() - 0.65;
+            input[4] = 1.3 * random.nextDouble() - 0.65;
+            input[5] = 0.75 + 0.25 * random.nextDouble();
+            input[6] = 1.3 * random.nextDouble();
+            input[7] = 0.0;
+            input[8] = 1.75 * random.nextDouble();
+            approximation.computeSharedPart(input, 0, scratch);
+            final double expected = perceptron.process(input, exactScratch);
+            assertEquals(expected, approximation.process(input, 0, scratch), maxError);
+        }
+    }
+}
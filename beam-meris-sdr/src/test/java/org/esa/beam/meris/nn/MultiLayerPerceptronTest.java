@@ -0,0 +1,271 @@
+package org.esa.beam.meris.nn;
+
+import com.bc.jnn.Jnn;
+import com.bc.jnn.JnnException;
+import com.bc.jnn.JnnNet;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+public class MultiLayerPerceptronTest extends TestCase {
+
+    private static final String NEURAL_NET_RESOURCE_PATH = "/org/esa/beam/meris/sdr/run05_100.nna";
+    private static final String LAND_CTP_NEURAL_NET_RESOURCE_PATH = "/auxdata/ctp/ctp_NN_1.nna";
+    private static final String WATER_CTP_NEURAL_NET_RESOURCE_PATH = "/auxdata/ctp/ctp_NN_2.nna";
+    private static final String SDR_NEURAL_NET_RESOURCE_PATH = "/auxdata/sdr/run05_040.nna";
+    private static final String CLOUD_AUXDATA_RESOURCE_PATH = "/auxdata/cloudprob/";
+    private static final String TEST_PIXEL_RESOURCE_PATH = "/org/esa/beam/meris/sdr/run05_100_test_pixel.dat";
+    private static final double EPS = 1e-5;
+    /**
+     * The maximum deviation from the optimized JNN evaluation, relative for outputs larger than 1.
+     */
+    private static final double JNN_EPS = 1e-4;
+
+    public void testRead() throws IOException {
+        final MultiLayerPerceptron perceptron = readNeuralNet();
+        assertEquals(9, perceptron.getInputCount());
+        assertEquals(1, perceptron.getOutputCount());
+        assertTrue(perceptron.getScratchSize() >= 2 * 9);
+    }
+
+    public void testProcess() throws IOException {
+        final MultiLayerPerceptron perceptron = readNeuralNet();
+        final double[] scratch = perceptron.createScratch();
+        final double[] input = new double[9];
+        final double[] output = new double[1];
+        for (double[] testVector : readTestPixels()) {
+            System.arraycopy(testVector, 0, input, 0, input.length);
+            perceptron.process(input, output, scratch);
+            assertEquals(testVector[9], output[0], EPS);
+            assertEquals(testVector[9], perceptron.process(input, scratch), EPS);
+        }
+    }
+
+    public void testProcessBatch() throws IOException {
+        final MultiLayerPerceptron perceptron = readNeuralNet();
+        final double[][] testVectors = readTestPixels();
+        final double[] inputMatrix = new double[testVectors.length * 9];
+        for (int i = 0; i < testVectors.length; i++) {
+            System.arraycopy(testVectors[i], 0, inputMatrix, i * 9, 9);
+        }
+        final double[] outputMatrix = new double[testVectors.length];
+        perceptron.process(inputMatrix, outputMatrix, testVectors.length, perceptron.createScratch());
+        for (int i = 0; i < testVectors.length; i++) {
+            assertEquals(testVectors[i][9], outputMatrix[i], EPS);
+        }
+    }
+
+    public void testProcessBatchInBlocks() throws IOException {
+        final MultiLayerPerceptron perceptron = readNeuralNet();
+        final double[][] testVectors = readTestPixels();
+        final double[] inputMatrix = new double[testVectors.length * 9];
+        for (int i = 0; i < testVectors.length; i++) {
+            System.arraycopy(testVectors[i], 0, inputMatrix, i * 9, 9);
+        }
+        // the last block is incomplete
+        final int count = testVectors.length - 1;
+        final double[] scratch = perceptron.createScratch(4);
+        assertEquals(perceptron.getScratchSize(4), scratch.length);
+        final double[] outputMatrix = new double[count];
+        perceptron.process(inputMatrix, outputMatrix, count, scratch);
+
+        final double[] singleScratch = perceptron.createScratch();
+        for (int i = 0; i < count; i++) {
+            assertEquals(perceptron.process(testVectors[i], singleScratch), outputMatrix[i], 0.0);
+        }
+    }
+
+    /**
+     * The expected values are reference outputs of the exact evaluation of the cloud top pressure nets, computed
+     * independently of {@link MultiLayerPerceptron}.
+     */
+    public void testCloudTopPressureNets() throws IOException {
+        final MultiLayerPerceptron landNet = readNeuralNet(LAND_CTP_NEURAL_NET_RESOURCE_PATH);
+        assertEquals(7, landNet.getInputCount());
+        final double[] landInput = {0.12, 120.0, 0.45, 0.7, 0.95, 0.2, 761.5};
+        assertEquals(533.0749933759, landNet.process(landInput, landNet.createScratch()), 1.0e-7);
+
+        final MultiLayerPerceptron waterNet = readNeuralNet(WATER_CTP_NEURAL_NET_RESOURCE_PATH);
+        assertEquals(6, waterNet.getInputCount());
+        final double[] waterInput = {95.0, 0.5, 0.6, 0.9, -0.3, 761.8};
+        assertEquals(429.6832793422, waterNet.process(waterInput, waterNet.createScratch()), 1.0e-7);
+    }
+
+    /**
+     * The operators used to evaluate the shipped nets with <code>Jnn.setOptimizing(true)</code>, this test
+     * bounds the deviation of the exact evaluation from those results.
+     */
+    public void testShippedNetsMatchOptimizedJnnNets() throws IOException, JnnException {
+        final double[][] testPixels = readTestPixels();
+        assertMatchesJnnNet(NEURAL_NET_RESOURCE_PATH, testPixels);
+        assertMatchesJnnNet(SDR_NEURAL_NET_RESOURCE_PATH, testPixels);
+
+        assertMatchesJnnNet(LAND_CTP_NEURAL_NET_RESOURCE_PATH,
+                            new double[][]{{0.12, 120.0, 0.45, 0.7, 0.95, 0.2, 761.5},
+                                    {0.45, 40.0, 0.8, 0.3, 0.6, -0.4, 759.0},
+                                    {0.8, 250.0, 0.2, 0.95, 1.0, 0.6, 764.0}});
+        assertMatchesJnnNet(WATER_CTP_NEURAL_NET_RESOURCE_PATH,
+                            new double[][]{{95.0, 0.5, 0.6, 0.9, -0.3, 761.8},
+                                    {30.0, 0.2, 0.9, 0.7, 0.5, 759.5},
+                                    {200.0, 0.9, 0.3, 1.0, 0.0, 764.0}});
+
+        assertMatchesJnnNet("nn_config_land.txt", 100);
+        assertMatchesJnnNet("nn_config_ocean.txt", 100);
+    }
+
+    public void testSmallNet() throws IOException {
+        final String nna = "[Net]\n" +
+                           "NumLayers = 2\n" +
+                           "[ Layer(1) ] ; input\n" +
+                           "NumUnits = 2\n" +
+                           "ActFunc = Identity\n" +
+                           "[Layer(2)]\n" +
+                           "NumUnits = 1\n" +
+                           "ActFunc = Sigmoid_1\n" +
+                           "ActSlope = 2.0\n" +
+                           "ActThres = 0.5\n" +
+                           "[Unit(1,1)]\n" +
+                           "OutScale = 2.0\n" +
+                           "[Unit(1,2)]\n" +
+                           "OutBias = 1.0\n" +
+                           "[Unit(2,1)]\n" +
+                           "NumConns = 2\n" +
+                           "C(1) = 1, 2, -0.5\n" +
+                           "C(0) = 1, 1, 0.25\n" +
+                           "InpBias = 0.1\n" +
+                           "OutScale = 3.0\n";
+        final MultiLayerPerceptron perceptron = MultiLayerPerceptron.read(new StringReader(nna));
+        final double sum = 0.25 * (2.0 * 0.8) - 0.5 * (0.3 + 1.0) + 0.1;
+        final double expected = 3.0 / (1.0 + Math.exp(-2.0 * (sum - 0.5)));
+        assertEquals(expected, perceptron.process(new double[]{0.8, 0.3}, perceptron.createScratch()), 1e-12);
+    }
+
+    public void testUnsupportedConnection() {
+        final String nna = "[Net]\n" +
+                           "NumLayers = 3\n" +
+                           "[Layer(1)]\nNumUnits = 1\n" +
+                           "[Layer(2)]\nNumUnits = 1\n" +
+                           "[Layer(3)]\nNumUnits = 1\n" +
+                           "[Unit(1,1)]\n" +
+                           "[Unit(2,1)]\nC(1) = 1, 1, 1.0\n" +
+                           "[Unit(3,1)]\nC(1) = 1, 1, 1.0\n";
+        try {
+            MultiLayerPerceptron.read(new StringReader(nna));
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    public void testUnsupportedActivationFunction() {
+        final String nna = "[Net]\n" +
+                           "NumLayers = 2\n" +
+                           "[Layer(1)]\nNumUnits = 1\n" +
+                           "[Layer(2)]\nNumUnits = 1\nActFunc = Tanh\n" +
+                           "[Unit(1,1)]\n" +
+                           "[Unit(2,1)]\nC(1) = 1, 1, 1.0\n";
+        try {
+            MultiLayerPerceptron.read(new StringReader(nna));
+            fail("IOException expected");
+        } catch (IOException expected) {
+        }
+    }
+
+    private static void assertMatchesJnnNet(String resourcePath, double[][] inputs) throws IOException,
+                                                                                           JnnException {
+        final MultiLayerPerceptron perceptron = readNeuralNet(resourcePath);
+        final JnnNet jnnNet = readJnnNet(resourcePath);
+        final double[] scratch = perceptron.createScratch();
+        final double[] input = new double[perceptron.getInputCount()];
+        final double[] jnnOutput = new double[perceptron.getOutputCount()];
+        for (double[] vector : inputs) {
+            System.arraycopy(vector, 0, input, 0, input.length);
+            jnnNet.process(input, jnnOutput);
+            final double expected = jnnOutput[0];
+            assertEquals(resourcePath, expected, perceptron.process(input, scratch),
+                         JNN_EPS * Math.max(1.0, Math.abs(expected)));
+        }
+    }
+
+    /**
+     * Compares the cloud net of the given configuration at random inputs within its valid input range.
+     */
+    private static void assertMatchesJnnNet(String configName, int count) throws IOException, JnnException {
+        final Properties config = new Properties();
+        final InputStream stream = MultiLayerPerceptronTest.class.getResourceAsStream(
+                CLOUD_AUXDATA_RESOURCE_PATH + configName);
+        try {
+            config.load(stream);
+        } finally {
+            stream.close();
+        }
+        final double[][] inputs = new double[count][15];
+        final Random random = new Random(5);
+        for (double[] input : inputs) {
+            for (int j = 0; j < input.length; j++) {
+                final double min = Double.parseDouble(config.getProperty("min_" + (j + 1)));
+                final double max = Double.parseDouble(config.getProperty("max_" + (j + 1)));
+                input[j] = min + random.nextDouble() * (max - min);
+            }
+        }
+        assertMatchesJnnNet(CLOUD_AUXDATA_RESOURCE_PATH + config.getProperty("neural_net"), inputs);
+    }
+
+    private static JnnNet readJnnNet(String resourcePath) throws IOException, JnnException {
+        final Reader reader = new InputStreamReader(
+                MultiLayerPerceptronTest.class.getResourceAsStream(resourcePath));
+        try {
+            Jnn.setOptimizing(true);
+            return Jnn.readNna(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static MultiLayerPerceptron readNeuralNet() throws IOException {
+        return readNeuralNet(NEURAL_NET_RESOURCE_PATH);
+    }
+
+    private static MultiLayerPerceptron readNeuralNet(String resourcePath) throws IOException {
+        final Reader reader = new InputStreamReader(
+                MultiLayerPerceptronTest.class.getResourceAsStream(resourcePath));
+        try {
+            return MultiLayerPerceptron.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static double[][] readTestPixels() throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                MultiLayerPerceptronTest.class.getResourceAsStream(TEST_PIXEL_RESOURCE_PATH)));
+        final List<double[]> testVectors = new ArrayList<double[]>();
+        try {
+            // skip header
+            reader.readLine();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    final String[] tokens = line.split("\\s+");
+                    final double[] testVector = new double[tokens.length];
+                    for (int i = 0; i < tokens.length; i++) {
+                        testVector[i] = Double.parseDouble(tokens[i]);
+                    }
+                    testVectors.add(testVector);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return testVectors.toArray(new double[testVectors.size()][]);
+    }
+}
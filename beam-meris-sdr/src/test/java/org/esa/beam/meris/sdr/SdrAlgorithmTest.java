@@ -10,6 +10,7 @@ import com.bc.jnn.Jnn;
 import com.bc.jnn.JnnException;
 import com.bc.jnn.JnnNet;
 import junit.framework.TestCase;
+import org.esa.beam.meris.nn.MultiLayerPerceptron;
 import org.esa.beam.util.io.CsvReader;
 
 import java.io.IOException;
@@ -69,6 +70,70 @@ public class SdrAlgorithmTest extends TestCase {
         }
     }
 
+    public void testBatchedNeuralNetFunction() throws IOException, JnnException {
+        final JnnNet neuralNet = readNeuralNet();
+        final SdrAlgorithm algorithm = new SdrAlgorithm(neuralNet);
+        final double[][] testVectors = readTestPixels();
+        final double[] inputMatrix = new double[testVectors.length * SdrAlgorithm.INPUT_COUNT];
+        for (int i = 0; i < testVectors.length; i++) {
+            System.arraycopy(testVectors[i], 0, inputMatrix, i * SdrAlgorithm.INPUT_COUNT, SdrAlgorithm.INPUT_COUNT);
+        }
+        final double[] actualOutput = new double[testVectors.length + 1];
+        actualOutput[testVectors.length] = -1.0;
+        algorithm.computeSdr(inputMatrix, actualOutput, testVectors.length);
+        for (int i = 0; i < testVectors.length; i++) {
+            assertEquals(testVectors[i][SdrAlgorithm.INPUT_COUNT], actualOutput[i], EPS);
+        }
+        assertEquals(-1.0, actualOutput[testVectors.length], 0.0);
+    }
+
+    public void testSharedPerceptronNeuralNetFunction() throws IOException {
+        final SdrAlgorithm algorithm = SdrAlgorithm.create(readPerceptron());
+        final double[][] testVectors = readTestPixels();
+        final double[] inputMatrix = new double[testVectors.length * SdrAlgorithm.INPUT_COUNT];
+        for (int i = 0; i < testVectors.length; i++) {
+            System.arraycopy(testVectors[i], 0, inputMatrix, i * SdrAlgorithm.INPUT_COUNT, SdrAlgorithm.INPUT_COUNT);
+        }
+        final double[] actualOutput = new double[testVectors.length];
+        algorithm.computeSdr(inputMatrix, actualOutput, testVectors.length, algorithm.createScratch());
+        for (int i = 0; i < testVectors.length; i++) {
+            assertEquals(testVectors[i][SdrAlgorithm.INPUT_COUNT], actualOutput[i], EPS);
+        }
+        assertSame(algorithm, algorithm.clone());
+    }
+
+    public void testApproximatedNeuralNetFunction() throws IOException {
+        final MultiLayerPerceptron perceptron = readPerceptron();
+        final SdrAlgorithm exactAlgorithm = SdrAlgorithm.create(perceptron);
+        final SdrAlgorithm algorithm = SdrAlgorithm.create(perceptron, 1.0e-6);
+        final double[][] testVectors = readTestPixels();
+        final double[] inputMatrix = new double[testVectors.length * SdrAlgorithm.INPUT_COUNT];
+        for (int i = 0; i < testVectors.length; i++) {
+            System.arraycopy(testVectors[i], 0, inputMatrix, i * SdrAlgorithm.INPUT_COUNT, SdrAlgorithm.INPUT_COUNT);
+        }
+        final double[] expectedOutput = new double[testVectors.length];
+        exactAlgorithm.computeSdr(inputMatrix, expectedOutput, testVectors.length, exactAlgorithm.createScratch());
+        final double[] scratch = algorithm.createScratch();
+        final double[] actualOutput = new double[testVectors.length];
+        // twice, so that the second call starts with the shared part of the last input vector of the first one
+        for (int k = 0; k < 2; k++) {
+            algorithm.computeSdr(inputMatrix, actualOutput, testVectors.length, scratch);
+            for (int i = 0; i < testVectors.length; i++) {
+                assertEquals(expectedOutput[i], actualOutput[i], 1.0e-6);
+            }
+        }
+    }
+
+    private MultiLayerPerceptron readPerceptron() throws IOException {
+        final InputStream stream = SdrAlgorithmTest.class.getResourceAsStream(NEURAL_NET_RESOURCE_PATH);
+        final Reader reader = new InputStreamReader(stream);
+        try {
+            return MultiLayerPerceptron.read(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
     private JnnNet readNeuralNet() throws IOException, JnnException {
         final InputStream stream = SdrAlgorithmTest.class.getResourceAsStream(NEURAL_NET_RESOURCE_PATH);
         final Reader reader = new InputStreamReader(stream);